@@ -0,0 +1,79 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An opening burst of crossing orders, matched continuously on every placement or collected by
+ * a call auction and uncrossed once at the end of the burst. Buys and sells are spread around
+ * the market price, so most of them cross. Scores are bursts, not orders.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuctionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Exchange extends BenchmarkExchange {
+        /** "continuous" matches every order as it arrives, "auction" uncrosses once per burst */
+        @Param({"continuous", "auction"})
+        public String matching;
+
+        /** Orders per burst */
+        @Param({"256"})
+        public int burst;
+
+        @Override
+        void prefill(SplittableRandom random) {
+            if ("auction".equals(matching)) {
+                for (Stock stock : stocks) {
+                    // The benchmark uncrosses itself; the window only has to outlast the iteration
+                    exchange.enableAuction(stock.getSymbol(), Duration.ofHours(1));
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void stopAuctions() {
+            for (Stock stock : stocks) {
+                exchange.disableAuction(stock.getSymbol());
+            }
+        }
+    }
+
+    @Benchmark
+    public int openingBurst(Exchange state, BenchmarkThread thread) {
+        for (int i = 0; i < state.burst; i++) {
+            Stock stock = state.stocks[i % state.stocks.length];
+            double price = BenchmarkExchange.MARKET_PRICE + (thread.random.nextInt(21) - 10) * Stock.DEFAULT_TICK_SIZE;
+            if ((thread.counter++ & 1) == 0) {
+                state.exchange.placeBuyOrder(new BuyOrder(thread.trader, stock, 1 + thread.random.nextInt(100), price));
+            } else {
+                state.exchange.placeSellOrder(new SellOrder(thread.trader, stock, 1 + thread.random.nextInt(100), price));
+            }
+        }
+        int fills = 0;
+        if ("auction".equals(state.matching)) {
+            for (Stock stock : state.stocks) {
+                fills += state.exchange.uncross(stock.getSymbol());
+            }
+        }
+        return fills;
+    }
+}
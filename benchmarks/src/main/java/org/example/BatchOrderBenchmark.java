@@ -0,0 +1,72 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of orders placed with one placeOrders call against the same burst placed one order at
+ * a time. Each burst is spread over the symbols and half of it crosses: buys and sells alternate
+ * at the market price, the rest rest away from the market. Scores are bursts, not orders.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchOrderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Exchange extends BenchmarkExchange {
+        /** Orders per burst */
+        @Param({"16", "256"})
+        public int burst;
+    }
+
+    @Benchmark
+    public boolean[] placeOrders(Exchange state, BenchmarkThread thread) {
+        return state.exchange.placeOrders(burst(state, thread));
+    }
+
+    @Benchmark
+    public int placeOneByOne(Exchange state, BenchmarkThread thread) {
+        List<Order> orders = burst(state, thread);
+        for (Order order : orders) {
+            if (order instanceof BuyOrder buyOrder) {
+                state.exchange.placeBuyOrder(buyOrder);
+            } else {
+                state.exchange.placeSellOrder((SellOrder) order);
+            }
+        }
+        return orders.size();
+    }
+
+    private static List<Order> burst(Exchange state, BenchmarkThread thread) {
+        List<Order> orders = new ArrayList<>(state.burst);
+        for (int i = 0; i < state.burst; i++) {
+            Stock stock = state.stocks[i % state.stocks.length];
+            long n = thread.counter++;
+            if ((n & 2) == 0) {
+                orders.add((n & 1) == 0
+                    ? new BuyOrder(thread.trader, stock, 10, BenchmarkExchange.MARKET_PRICE)
+                    : new SellOrder(thread.trader, stock, 10, BenchmarkExchange.MARKET_PRICE));
+            } else {
+                orders.add((n & 1) == 0
+                    ? new BuyOrder(thread.trader, stock, 10, BenchmarkExchange.restingBidPrice(thread.random))
+                    : new SellOrder(thread.trader, stock, 10, BenchmarkExchange.restingAskPrice(thread.random)));
+            }
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+/**
+ * Shared exchange used by the benchmarks. A fresh exchange is built for every iteration,
+ * so books filled by one iteration do not slow down the next.
+ * The exchange echoes nothing to the console and log files go to a temporary directory.
+ */
+@State(Scope.Benchmark)
+public abstract class BenchmarkExchange {
+    /** Market price of every benchmark stock */
+    static final double MARKET_PRICE = 100.00;
+    /** Resting bids are spread over this many price levels below the market */
+    static final int PRICE_LEVELS = 1000;
+
+    /** "direct" places orders under the stock lock on the caller thread, "engine" goes through the matching engine */
+    @Param({"direct", "engine"})
+    public String mode;
+
+    /** Number of symbols the threads spread their orders over; 1 means every thread contends on one book */
+    @Param({"1", "8"})
+    public int symbols;
+
+    StockExchange exchange;
+    Stock[] stocks;
+
+    @Setup(Level.Trial)
+    public void quiet() throws IOException {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Logger.setDirectory(Files.createTempDirectory("bench-logs").toString());
+    }
+
+    @Setup(Level.Iteration)
+    public void createExchange() {
+        exchange = new StockExchange();
+        exchange.setConsoleEcho(StockExchange.ConsoleEcho.OFF, 1);
+        stocks = new Stock[symbols];
+        for (int i = 0; i < symbols; i++) {
+            stocks[i] = new Stock("SYM" + i, MARKET_PRICE);
+            exchange.addStock(stocks[i]);
+        }
+        if ("engine".equals(mode)) {
+            exchange.enableMatchingEngine(Math.min(symbols, Runtime.getRuntime().availableProcessors()), 4096);
+        }
+        exchange.start();
+        prefill(new SplittableRandom(42));
+    }
+
+    @TearDown(Level.Iteration)
+    public void destroyExchange() {
+        exchange.disableMatchingEngine();
+    }
+
+    @TearDown(Level.Trial)
+    public void flushLogs() {
+        Logger.shutdown();
+    }
+
+    /**
+     * Fills the books before each iteration; nothing by default.
+     */
+    void prefill(SplittableRandom random) {
+    }
+
+    /**
+     * Places a non-crossing buy order on a random level below the market.
+     */
+    BuyOrder placeRestingBuy(String trader, SplittableRandom random) {
+        BuyOrder order = new BuyOrder(trader, stocks[random.nextInt(stocks.length)], 1 + random.nextInt(100),
+            restingBidPrice(random));
+        exchange.placeBuyOrder(order);
+        return order;
+    }
+
+    static double restingBidPrice(SplittableRandom random) {
+        return MARKET_PRICE / 2 + random.nextInt(PRICE_LEVELS) * Stock.DEFAULT_TICK_SIZE;
+    }
+
+    static double restingAskPrice(SplittableRandom random) {
+        return MARKET_PRICE * 1.5 + random.nextInt(PRICE_LEVELS) * Stock.DEFAULT_TICK_SIZE;
+    }
+}
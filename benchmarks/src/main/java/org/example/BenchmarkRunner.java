@@ -0,0 +1,75 @@
+package org.example;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmark suites once per thread count and writes all results into one JSON file,
+ * so two builds can be compared by diffing their result files.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar [-t 1,2,4,8,16,32,64] [-o results.json] [-p name=value] [-prof gc] [regex...]
+ * </pre>
+ * Without a regex every benchmark runs; {@code -p} overrides a benchmark parameter, e.g. {@code -p mode=direct},
+ * and {@code -prof} adds a JMH profiler, e.g. {@code gc} for the bytes allocated per operation.
+ */
+public class BenchmarkRunner {
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws RunnerException, FileNotFoundException {
+        int[] threadCounts = DEFAULT_THREADS;
+        String output = "benchmark-results.json";
+        List<String> includes = new ArrayList<>();
+        List<String[]> params = new ArrayList<>();
+        List<String> profilers = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t" -> {
+                    String[] parts = args[++i].split(",");
+                    threadCounts = new int[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        threadCounts[j] = Integer.parseInt(parts[j].trim());
+                    }
+                }
+                case "-o" -> output = args[++i];
+                case "-p" -> params.add(args[++i].split("=", 2));
+                case "-prof" -> profilers.add(args[++i]);
+                default -> includes.add(args[i]);
+            }
+        }
+
+        List<RunResult> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder().threads(threads);
+            for (String include : includes) {
+                options.include(include);
+            }
+            if (includes.isEmpty()) {
+                options.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+            }
+            for (String[] param : params) {
+                options.param(param[0], param[1].split(","));
+            }
+            for (String profiler : profilers) {
+                options.addProfiler(profiler);
+            }
+            results.addAll(new Runner(options.build()).run());
+        }
+
+        try (PrintStream out = new PrintStream(output)) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Results for " + results.size() + " runs written to " + output);
+    }
+}
@@ -0,0 +1,24 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+
+/**
+ * Per-thread trader identity and random source
+ */
+@State(Scope.Thread)
+public class BenchmarkThread {
+    String trader;
+    SplittableRandom random;
+    long counter;
+
+    @Setup
+    public void setUp(ThreadParams threadParams) {
+        trader = "Bench-" + threadParams.getThreadIndex();
+        random = new SplittableRandom(threadParams.getThreadIndex());
+    }
+}
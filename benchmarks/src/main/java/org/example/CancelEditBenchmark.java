@@ -0,0 +1,65 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cancelBuyOrderById and editBuyOrder against books holding a given number of resting orders.
+ * The order to cancel or edit is placed in a per-invocation setup on a random level, so only
+ * the cancel or edit itself is measured. A cancel leaves the depth unchanged; every edit leaves
+ * one more order in the book until the next iteration starts from a fresh exchange.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CancelEditBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Exchange extends BenchmarkExchange {
+        /** Resting buy orders in the books before the iteration starts */
+        @Param({"100", "10000", "100000"})
+        public int depth;
+
+        @Override
+        void prefill(SplittableRandom random) {
+            for (int i = 0; i < depth; i++) {
+                placeRestingBuy("Prefill", random);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Target {
+        long orderId;
+
+        @Setup(Level.Invocation)
+        public void placeTarget(Exchange state, BenchmarkThread thread) {
+            orderId = state.placeRestingBuy(thread.trader, thread.random).getOrderId();
+        }
+    }
+
+    @Benchmark
+    public boolean cancelBuyOrderById(Exchange state, Target target) {
+        return state.exchange.cancelBuyOrderById(target.orderId);
+    }
+
+    @Benchmark
+    public boolean editBuyOrder(Exchange state, Target target, BenchmarkThread thread) {
+        return state.exchange.editBuyOrder(target.orderId, 1 + thread.random.nextInt(100));
+    }
+}
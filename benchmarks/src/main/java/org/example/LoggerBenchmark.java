@@ -0,0 +1,52 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logger call throughput with the background writer draining to a temporary directory.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LoggerState {
+        @Param({"BLOCK", "DROP"})
+        public Logger.OverflowPolicy policy;
+
+        @Setup(Level.Trial)
+        public void configure() throws IOException {
+            Logger.setDirectory(Files.createTempDirectory("bench-logs").toString());
+            Logger.configure(65536, policy, 100, 512, 100);
+        }
+
+        @TearDown(Level.Trial)
+        public void flush() {
+            Logger.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void logEvent(LoggerState state, BenchmarkThread thread) {
+        Logger.logEvent("Benchmark event from " + thread.trader);
+    }
+}
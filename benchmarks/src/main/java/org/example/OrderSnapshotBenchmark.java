@@ -0,0 +1,46 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getBuyOrders copying every resting buy order, with the books at a given depth.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderSnapshotBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Exchange extends BenchmarkExchange {
+        /** Resting buy orders in the books */
+        @Param({"100", "10000"})
+        public int depth;
+
+        @Override
+        void prefill(SplittableRandom random) {
+            for (int i = 0; i < depth; i++) {
+                placeRestingBuy("Prefill", random);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<BuyOrder> getBuyOrders(Exchange state) {
+        return state.exchange.getBuyOrders();
+    }
+}
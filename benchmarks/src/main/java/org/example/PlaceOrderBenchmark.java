@@ -0,0 +1,56 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * placeBuyOrder / placeSellOrder with orders that rest in the book and with orders that trade.
+ * Resting orders land on one of {@link BenchmarkExchange#PRICE_LEVELS} levels away from the market,
+ * crossing orders alternate buy and sell at the market price so each sell fills the previous buy.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceOrderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Exchange extends BenchmarkExchange {
+    }
+
+    @Benchmark
+    public BuyOrder placeBuyOrderResting(Exchange state, BenchmarkThread thread) {
+        return state.placeRestingBuy(thread.trader, thread.random);
+    }
+
+    @Benchmark
+    public SellOrder placeSellOrderResting(Exchange state, BenchmarkThread thread) {
+        SellOrder order = new SellOrder(thread.trader, state.stocks[thread.random.nextInt(state.stocks.length)],
+            1 + thread.random.nextInt(100), BenchmarkExchange.restingAskPrice(thread.random));
+        state.exchange.placeSellOrder(order);
+        return order;
+    }
+
+    @Benchmark
+    public Order placeOrderCrossing(Exchange state, BenchmarkThread thread) {
+        Stock stock = state.stocks[(int) ((thread.counter >> 1) % state.stocks.length)];
+        if ((thread.counter++ & 1) == 0) {
+            BuyOrder order = new BuyOrder(thread.trader, stock, 10, BenchmarkExchange.MARKET_PRICE);
+            state.exchange.placeBuyOrder(order);
+            return order;
+        }
+        SellOrder order = new SellOrder(thread.trader, stock, 10, BenchmarkExchange.MARKET_PRICE);
+        state.exchange.placeSellOrder(order);
+        return order;
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one pre-trade risk check: the account lookup, the limit checks and the reservation,
+ * released again so the account never fills up. All threads trade as one trader, so with
+ * several threads they contend on its accounts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RiskCheckBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Risk {
+        /** Whether the order rate is limited too, which reads the clock on every check */
+        @Param({"false", "true"})
+        public boolean rateLimited;
+
+        RiskEngine engine;
+        BuyOrder[] orders;
+
+        @Setup
+        public void setUp() {
+            engine = new RiskEngine(new RiskLimits(1_000_000, 1e12,
+                rateLimited ? 1_000_000_000L : RiskLimits.UNLIMITED, 1_000_000));
+            orders = new BuyOrder[8];
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = new BuyOrder("Bench", new Stock("SYM" + i, BenchmarkExchange.MARKET_PRICE), 10,
+                    BenchmarkExchange.MARKET_PRICE);
+            }
+        }
+    }
+
+    @Benchmark
+    public RiskEngine.Reject checkAndRelease(Risk risk, BenchmarkThread thread) {
+        BuyOrder order = risk.orders[(int) (thread.counter++ & 7)];
+        RiskEngine.Reject reject = risk.engine.check(order);
+        RiskEngine.release(order);
+        return reject;
+    }
+}
@@ -0,0 +1,650 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Replays recorded order flow through a {@link StockExchange} as fast as it will go: nothing is
+ * paced, and every event runs through the exchange's public place, cancel and edit methods.
+ * Two inputs are supported, both memory-mapped and parsed in place without allocating per event:
+ * <ul>
+ * <li>A CSV file with one event per line, {@code action,side,symbol,trader,orderId,quantity,price}.
+ *     The action is PLACE, CANCEL or EDIT and the side is BUY or SELL. A cancel needs no trader,
+ *     quantity or price, and an edit no trader or price. Other lines (a header, comments, FILL)
+ *     are skipped. Files over 2 GB are mapped one window at a time.</li>
+ * <li>An {@link OrderJournal} directory, whose PLACE, STOP, CANCEL and EDIT records are replayed.
+ *     Orders keep their recorded time in force, display quantity and stop price. A pending stop
+ *     triggers on the replay's own trades, so the PLACE recording its trigger is not replayed,
+ *     and the recorded cancel of an immediate-or-cancel rest finds it already cancelled by the
+ *     replay. Its FILL records are only counted, to compare with the fills of the replay.</li>
+ * </ul>
+ * The input's order ids only identify the order a cancel or edit refers to; replayed orders get
+ * fresh ids. With several threads the symbols are partitioned over them: each thread scans the
+ * whole input and replays only its own symbols, so every symbol sees its events in input order.
+ * Events of symbols the exchange does not list are skipped.
+ */
+public class Backtester {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * Replayed event types
+     */
+    public enum EventType {
+        PLACE, CANCEL, EDIT
+    }
+
+    private final StockExchange exchange;
+    private final int threadCount;
+    private final Map<String, Integer> partitions = new HashMap<>();
+    private final long[] events = new long[EventType.values().length];
+    private final long[] misses = new long[EventType.values().length];
+    private long skipped;
+    private long recordedFills;
+    private long fills;
+    private long elapsedNanos;
+    private String source;
+
+    /**
+     * @param threadCount Number of replay threads the symbols are partitioned over
+     */
+    public Backtester(StockExchange exchange, int threadCount) {
+        this.exchange = exchange;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Replays a CSV file to the end.
+     */
+    public void replayCsv(Path file) throws IOException, InterruptedException {
+        CsvReplayer[] replayers = new CsvReplayer[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            replayers[i] = new CsvReplayer(i, file);
+        }
+        run(file.toString(), replayers);
+    }
+
+    /**
+     * Replays every segment of a journal directory.
+     */
+    public void replayJournal(Path directory) throws IOException, InterruptedException {
+        JournalReplayer[] replayers = new JournalReplayer[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            replayers[i] = new JournalReplayer(i, directory);
+        }
+        run(directory + " (journal)", replayers);
+    }
+
+    /**
+     * Replays a journal directory or else a CSV file.
+     */
+    public void replay(Path input) throws IOException, InterruptedException {
+        if (Files.isDirectory(input)) {
+            replayJournal(input);
+        } else {
+            replayCsv(input);
+        }
+    }
+
+    private void run(String source, Replayer[] replayers) throws IOException, InterruptedException {
+        List<Stock> stocks = exchange.getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        partitions.clear();
+        for (int i = 0; i < stocks.size(); i++) {
+            partitions.put(stocks.get(i).getSymbol(), i % threadCount);
+        }
+
+        long fillsBefore = exchange.getTransactionHistory().getTotalCount();
+        Thread[] threads = new Thread[replayers.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < replayers.length; i++) {
+            threads[i] = new Thread(replayers[i], "backtest-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        fills = exchange.getTransactionHistory().getTotalCount() - fillsBefore;
+        this.source = source;
+
+        Arrays.fill(events, 0);
+        Arrays.fill(misses, 0);
+        skipped = 0;
+        recordedFills = 0;
+        for (Replayer replayer : replayers) {
+            if (replayer.failure != null) throw replayer.failure;
+            for (int type = 0; type < events.length; type++) {
+                events[type] += replayer.events[type];
+                misses[type] += replayer.misses[type];
+            }
+            skipped += replayer.skipped;
+            recordedFills += replayer.recordedFills;
+        }
+    }
+
+    public long getEventCount() {
+        long total = 0;
+        for (long count : events) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getEvents(EventType type) {
+        return events[type.ordinal()];
+    }
+
+    /**
+     * @return Cancels and edits of orders that were no longer resting
+     */
+    public long getMisses(EventType type) {
+        return misses[type.ordinal()];
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return Fills the replay produced
+     */
+    public long getFills() {
+        return fills;
+    }
+
+    public double getEventsPerSecond() {
+        return elapsedNanos > 0 ? getEventCount() * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return A multi-line report of the throughput, the event counts and every book's end state
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Backtest of %s on %d threads: %d events in %.2f s = %.0f events/s%n",
+            source, threadCount, getEventCount(), elapsedNanos / 1e9, getEventsPerSecond()));
+        for (EventType type : EventType.values()) {
+            sb.append(String.format("   %-6s %d", type, events[type.ordinal()]));
+            if (misses[type.ordinal()] > 0) sb.append(" (").append(misses[type.ordinal()]).append(" no longer resting)");
+            sb.append('\n');
+        }
+        sb.append(String.format("   Skipped %d lines or records%n", skipped));
+        sb.append(String.format("   Fills %d%s%n", fills, recordedFills > 0 ? " (" + recordedFills + " recorded)" : ""));
+        sb.append("End of run:\n");
+        exchange.getOrderBooks().stream()
+            .sorted(Comparator.comparing(book -> book.getStock().getSymbol()))
+            .forEach(book -> {
+                BookDepth top = book.getDepth(1);
+                Stock stock = book.getStock();
+                sb.append(String.format("   %-6s $%-10.2f %6d bids %6d asks", stock.getSymbol(), stock.getCurrentPrice(),
+                    book.getBuyOrderCount(), book.getSellOrderCount()));
+                if (top.getBidLevels() > 0) {
+                    sb.append(String.format("   best bid %d @ $%.2f", top.getBidQuantity(0), top.getBidPrice(0)));
+                }
+                if (top.getAskLevels() > 0) {
+                    sb.append(String.format("   best ask %d @ $%.2f", top.getAskQuantity(0), top.getAskPrice(0)));
+                }
+                sb.append('\n');
+            });
+        return sb.toString();
+    }
+
+    /**
+     * A symbol as the replay threads see it: null stock if the exchange does not list it
+     */
+    private record SymbolEntry(Stock stock, int partition) {
+    }
+
+    private SymbolEntry symbolEntry(String symbol) {
+        Integer partition = partitions.get(symbol);
+        return new SymbolEntry(partition != null ? exchange.getStock(symbol) : null, partition != null ? partition : -1);
+    }
+
+    /**
+     * One replay thread: its partition of the symbols, its counters and the input's ids of its
+     * orders that may still rest
+     */
+    private abstract class Replayer implements Runnable {
+        final int partition;
+        final long[] events = new long[EventType.values().length];
+        final long[] misses = new long[EventType.values().length];
+        final OrderIdMap orders = new OrderIdMap();
+        long skipped;
+        long recordedFills;
+        IOException failure;
+
+        Replayer(int partition) {
+            this.partition = partition;
+        }
+
+        abstract void replay() throws IOException;
+
+        @Override
+        public void run() {
+            try {
+                replay();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Lines and records every thread reads are counted by the first thread only
+         */
+        void skip() {
+            if (partition == 0) skipped++;
+        }
+
+        void place(boolean buy, Stock stock, String trader, long inputId, int quantity, long priceTicks) {
+            place(buy, stock, trader, inputId, quantity, priceTicks, Order.TimeInForce.GOOD_TILL_CANCELLED, 0, Order.NO_STOP);
+        }
+
+        void place(boolean buy, Stock stock, String trader, long inputId, int quantity, long priceTicks,
+                   Order.TimeInForce timeInForce, int displayQuantity, long stopPriceTicks) {
+            if (quantity <= 0 || priceTicks <= 0) {
+                skipped++;
+                return;
+            }
+            events[EventType.PLACE.ordinal()]++;
+            long orderId = Order.newOrderId();
+            Order order;
+            boolean placed;
+            if (buy) {
+                BuyOrder buyOrder = new BuyOrder(orderId, trader, stock, quantity, priceTicks,
+                    timeInForce, displayQuantity, stopPriceTicks);
+                placed = exchange.placeBuyOrder(buyOrder);
+                order = buyOrder;
+            } else {
+                SellOrder sellOrder = new SellOrder(orderId, trader, stock, quantity, priceTicks,
+                    timeInForce, displayQuantity, stopPriceTicks);
+                placed = exchange.placeSellOrder(sellOrder);
+                order = sellOrder;
+            }
+            if (placed) orders.put(inputId, order);
+        }
+
+        void cancel(long inputId) {
+            events[EventType.CANCEL.ordinal()]++;
+            Order order = orders.remove(inputId);
+            boolean cancelled = order != null && (order instanceof BuyOrder buyOrder
+                ? exchange.cancelBuyOrder(buyOrder) : exchange.cancelSellOrder((SellOrder) order));
+            // The rest of an immediate-or-cancel or fill-or-kill order was cancelled when it was placed
+            boolean expected = order != null && order.getTimeInForce() != Order.TimeInForce.GOOD_TILL_CANCELLED;
+            if (!cancelled && !expected) misses[EventType.CANCEL.ordinal()]++;
+        }
+
+        /**
+         * @param newInputId The id the input knows the edited order by from now on
+         */
+        void edit(long inputId, long newInputId, int quantity) {
+            events[EventType.EDIT.ordinal()]++;
+            Order order = orders.remove(inputId);
+            boolean edited = order != null && quantity > 0 && (order instanceof BuyOrder
+                ? exchange.editBuyOrder(order.getOrderId(), quantity) : exchange.editSellOrder(order.getOrderId(), quantity));
+            if (edited) {
+                orders.put(newInputId, order.replacement);
+            } else {
+                misses[EventType.EDIT.ordinal()]++;
+            }
+        }
+    }
+
+    private final class CsvReplayer extends Replayer {
+        private final Path file;
+        private final NameTable<SymbolEntry> symbols = new NameTable<>(Backtester.this::symbolEntry);
+        private final NameTable<String> traders = new NameTable<>(Function.identity());
+
+        CsvReplayer(int partition, Path file) {
+            super(partition);
+            this.file = file;
+        }
+
+        @Override
+        void replay() throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long length = Math.min(WINDOW_BYTES, size - position);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    int consumed = replayWindow(buffer, (int) length, position + length == size);
+                    if (consumed == 0) {
+                        throw new IOException("Line longer than " + WINDOW_BYTES + " bytes at byte " + position + " of " + file);
+                    }
+                    position += consumed;
+                }
+            }
+        }
+
+        /**
+         * @param last Whether the window ends the file, so its last line needs no line break
+         * @return The bytes up to the end of the last complete line
+         */
+        private int replayWindow(ByteBuffer buffer, int length, boolean last) {
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == length && !last) return lineStart;
+                replayLine(buffer, lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+            }
+            return length;
+        }
+
+        private void replayLine(ByteBuffer line, int start, int end) {
+            if (end > start && line.get(end - 1) == '\r') end--;
+            if (start == end) return;
+            int actionEnd = fieldEnd(line, start, end);
+            EventType type = action(line, start, actionEnd);
+            if (type == null) {
+                skip();
+                return;
+            }
+            int sideEnd = fieldEnd(line, actionEnd + 1, end);
+            int symbolEnd = fieldEnd(line, sideEnd + 1, end);
+            SymbolEntry symbol = symbols.lookup(line, sideEnd + 1, symbolEnd);
+            if (symbol.stock() == null) {
+                skip();
+                return;
+            }
+            if (symbol.partition() != partition) return;
+            boolean buy = actionEnd + 1 < sideEnd && line.get(actionEnd + 1) == 'B';
+            int traderEnd = fieldEnd(line, symbolEnd + 1, end);
+            int idEnd = fieldEnd(line, traderEnd + 1, end);
+            int quantityEnd = fieldEnd(line, idEnd + 1, end);
+            int priceEnd = fieldEnd(line, quantityEnd + 1, end);
+            long inputId = parseLong(line, traderEnd + 1, idEnd);
+            int quantity = (int) parseLong(line, idEnd + 1, quantityEnd);
+            switch (type) {
+                case PLACE -> place(buy, symbol.stock(), traders.lookup(line, symbolEnd + 1, traderEnd), inputId, quantity,
+                    symbol.stock().toTicks(parseDecimal(line, quantityEnd + 1, priceEnd)));
+                case CANCEL -> cancel(inputId);
+                case EDIT -> edit(inputId, inputId, quantity);
+            }
+        }
+
+        private EventType action(ByteBuffer line, int start, int end) {
+            int length = end - start;
+            if (length == 5 && line.get(start) == 'P' && line.get(start + 4) == 'E') return EventType.PLACE;
+            if (length == 6 && line.get(start) == 'C' && line.get(start + 5) == 'L') return EventType.CANCEL;
+            if (length == 4 && line.get(start) == 'E' && line.get(start + 3) == 'T') return EventType.EDIT;
+            return null;
+        }
+    }
+
+    private final class JournalReplayer extends Replayer implements OrderJournal.Visitor {
+        private final Path directory;
+        private SymbolEntry[] symbols = new SymbolEntry[64];
+        private String[] traders = new String[64];
+
+        JournalReplayer(int partition, Path directory) {
+            super(partition);
+            this.directory = directory;
+        }
+
+        @Override
+        void replay() throws IOException {
+            OrderJournal.read(directory, this);
+        }
+
+        @Override
+        public void visit(JournalRecord record) {
+            switch (record.getType()) {
+                // Every segment repeats the dictionaries, but the names stay the same
+                case JournalRecord.SYMBOL -> {
+                    if (record.getSymbolId() >= symbols.length) {
+                        symbols = Arrays.copyOf(symbols, Math.max(record.getSymbolId() + 1, symbols.length * 2));
+                    }
+                    if (symbols[record.getSymbolId()] == null) symbols[record.getSymbolId()] = symbolEntry(record.getName());
+                }
+                case JournalRecord.TRADER -> {
+                    if (record.getSymbolId() >= traders.length) {
+                        traders = Arrays.copyOf(traders, Math.max(record.getSymbolId() + 1, traders.length * 2));
+                    }
+                    if (traders[record.getSymbolId()] == null) traders[record.getSymbolId()] = record.getName();
+                }
+                case JournalRecord.FILL -> {
+                    if (partition == 0) recordedFills++;
+                }
+                case JournalRecord.PLACE, JournalRecord.STOP, JournalRecord.CANCEL, JournalRecord.EDIT -> {
+                    SymbolEntry symbol = record.getSymbolId() < symbols.length ? symbols[record.getSymbolId()] : null;
+                    if (symbol == null || symbol.stock() == null) {
+                        skip();
+                    } else if (symbol.partition() == partition) {
+                        replay(record, symbol.stock());
+                    }
+                }
+                default -> skip();
+            }
+        }
+
+        private void replay(JournalRecord record, Stock stock) {
+            switch (record.getType()) {
+                case JournalRecord.PLACE -> {
+                    // A PLACE with a stop price records a trigger; the stop replayed from its STOP record triggers by itself
+                    if (record.getStopPriceTicks() == Order.NO_STOP) place(record, stock, Order.NO_STOP);
+                }
+                case JournalRecord.STOP -> place(record, stock, record.getStopPriceTicks());
+                case JournalRecord.CANCEL -> cancel(record.getOrderId());
+                default -> edit(record.getOrderId(), record.getRelatedOrderId(), record.getQuantity());
+            }
+        }
+
+        private void place(JournalRecord record, Stock stock, long stopPriceTicks) {
+            place(record.getSide() == JournalRecord.BUY, stock, traders[record.getTraderId()], record.getOrderId(),
+                record.getQuantity(), record.getPriceTicks(), Order.TimeInForce.values()[record.getTimeInForce()],
+                record.getDisplayQuantity(), stopPriceTicks);
+        }
+    }
+
+    /**
+     * @return The index of the comma ending the field that starts at {@code start}, or the line's end
+     */
+    private static int fieldEnd(ByteBuffer line, int start, int end) {
+        int i = start;
+        while (i < end && line.get(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    private static long parseLong(ByteBuffer line, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte c = line.get(i);
+            if (c >= '0' && c <= '9') value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static double parseDecimal(ByteBuffer line, int start, int end) {
+        long digits = 0;
+        long scale = 1;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            byte c = line.get(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                if (fraction) scale *= 10;
+            }
+        }
+        return (double) digits / scale;
+    }
+
+    /**
+     * Names seen in the input, looked up by their bytes so a known name costs no String.
+     * Open addressing with linear probing; a name is only decoded the first time it is seen.
+     */
+    private static final class NameTable<V> {
+        private final Function<String, V> resolve;
+        private byte[][] names = new byte[64][];
+        private Object[] values = new Object[64];
+        private int size;
+
+        NameTable(Function<String, V> resolve) {
+            this.resolve = resolve;
+        }
+
+        @SuppressWarnings("unchecked")
+        V lookup(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = names.length - 1;
+            int slot = spread(hash) & mask;
+            for (; names[slot] != null; slot = (slot + 1) & mask) {
+                if (matches(names[slot], buffer, start, end)) return (V) values[slot];
+            }
+            byte[] name = new byte[end - start];
+            buffer.get(start, name);
+            V value = resolve.apply(new String(name, StandardCharsets.UTF_8));
+            names[slot] = name;
+            values[slot] = value;
+            if (++size * 2 > names.length) grow();
+            return value;
+        }
+
+        private static boolean matches(byte[] name, ByteBuffer buffer, int start, int end) {
+            if (name.length != end - start) return false;
+            for (int i = 0; i < name.length; i++) {
+                if (name[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private void grow() {
+            byte[][] oldNames = names;
+            Object[] oldValues = values;
+            names = new byte[oldNames.length * 2][];
+            values = new Object[oldNames.length * 2];
+            int mask = names.length - 1;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] == null) continue;
+                int hash = 1;
+                for (byte b : oldNames[i]) {
+                    hash = 31 * hash + b;
+                }
+                int slot = spread(hash) & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Orders by their id in the input, with primitive keys so lookups never box. Filled and
+     * cancelled orders are only dropped when the table would grow, so a long replay keeps about
+     * as many entries as there are resting orders. Immediate-or-cancel and fill-or-kill orders the
+     * exchange cancelled are kept until the input's cancel of them removes them.
+     */
+    private static final class OrderIdMap {
+        private static final int MIN_CAPACITY = 1024;
+
+        private long[] keys;
+        private Order[] values;
+        private int mask;
+        private int size;
+
+        OrderIdMap() {
+            allocate(MIN_CAPACITY);
+        }
+
+        void put(long key, Order order) {
+            int i = slot(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = order;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = order;
+            if (++size * 2 > values.length) rebuild();
+        }
+
+        Order remove(long key) {
+            int i = slot(key);
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            Order order = values[i];
+            if (order == null) return null;
+            size--;
+            // Shift back every following entry that would no longer be reachable
+            int gap = i;
+            for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            values[gap] = null;
+            return order;
+        }
+
+        /**
+         * Drops the orders that no longer rest, then makes the table at least four times their number
+         */
+        private void rebuild() {
+            long[] oldKeys = keys;
+            Order[] oldValues = values;
+            int live = 0;
+            for (Order order : oldValues) {
+                if (order != null && isLive(order)) live++;
+            }
+            allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(live, 1) * 4 - 1) << 1));
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null && isLive(oldValues[i])) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        /**
+         * @return Whether the input may still refer to the order: it rests, or it is the cancelled
+         *         rest of an immediate-or-cancel or fill-or-kill order whose recorded cancel is to come
+         */
+        private static boolean isLive(Order order) {
+            if (order.getTimeInForce() != Order.TimeInForce.GOOD_TILL_CANCELLED && order.isCancelled()) return true;
+            return order.peekQuantity() > 0 && !order.isCancelled() && order.replacement == null;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Order[capacity];
+            mask = capacity - 1;
+        }
+    }
+}
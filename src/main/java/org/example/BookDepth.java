@@ -0,0 +1,103 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated top levels of one order book (L2): per price level the total resting quantity and
+ * the number of orders, best level first. Immutable; all levels were read at the same book version.
+ */
+public final class BookDepth {
+    private final Stock stock;
+    private final long version;
+    private final long[] bidTicks;
+    private final long[] bidQuantities;
+    private final int[] bidOrders;
+    private final long[] askTicks;
+    private final long[] askQuantities;
+    private final int[] askOrders;
+
+    BookDepth(Stock stock, long version, long[] bidTicks, long[] bidQuantities, int[] bidOrders, int bidLevels,
+              long[] askTicks, long[] askQuantities, int[] askOrders, int askLevels) {
+        this.stock = stock;
+        this.version = version;
+        this.bidTicks = Arrays.copyOf(bidTicks, bidLevels);
+        this.bidQuantities = Arrays.copyOf(bidQuantities, bidLevels);
+        this.bidOrders = Arrays.copyOf(bidOrders, bidLevels);
+        this.askTicks = Arrays.copyOf(askTicks, askLevels);
+        this.askQuantities = Arrays.copyOf(askQuantities, askLevels);
+        this.askOrders = Arrays.copyOf(askOrders, askLevels);
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    /**
+     * @return The book version the levels were read at; grows with every change of the book
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getBidLevels() {
+        return bidTicks.length;
+    }
+
+    /**
+     * @param level 0 for the best bid
+     */
+    public long getBidPriceTicks(int level) {
+        return bidTicks[level];
+    }
+
+    public double getBidPrice(int level) {
+        return stock.toPrice(bidTicks[level]);
+    }
+
+    public long getBidQuantity(int level) {
+        return bidQuantities[level];
+    }
+
+    public int getBidOrderCount(int level) {
+        return bidOrders[level];
+    }
+
+    public int getAskLevels() {
+        return askTicks.length;
+    }
+
+    /**
+     * @param level 0 for the best ask
+     */
+    public long getAskPriceTicks(int level) {
+        return askTicks[level];
+    }
+
+    public double getAskPrice(int level) {
+        return stock.toPrice(askTicks[level]);
+    }
+
+    public long getAskQuantity(int level) {
+        return askQuantities[level];
+    }
+
+    public int getAskOrderCount(int level) {
+        return askOrders[level];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(stock.getSymbol()).append(" depth #").append(version);
+        for (int i = Math.max(bidTicks.length, askTicks.length) - 1; i >= 0; i--) {
+            if (i < askTicks.length) {
+                out.append("\n   ASK ").append(askQuantities[i]).append(" @ $");
+                LogFormat.money(out, getAskPrice(i)).append(" (").append(askOrders[i]).append(" orders)");
+            }
+        }
+        for (int i = 0; i < bidTicks.length; i++) {
+            out.append("\n   BID ").append(bidQuantities[i]).append(" @ $");
+            LogFormat.money(out, getBidPrice(i)).append(" (").append(bidOrders[i]).append(" orders)");
+        }
+        return out.toString();
+    }
+}
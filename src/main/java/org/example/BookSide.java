@@ -0,0 +1,228 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One side (bids or asks) of an order book.
+ * Price levels are kept in a primitive array sorted worst-first, so the best level is the last
+ * element: reading it, and dropping it once it is filled, is O(1). New levels usually open near
+ * the top of the book, where inserting shifts only a few entries. Orders joining an existing
+ * level are appended in O(1) through a price index, and are held in {@link OrderNode}s so
+ * removing one never scans its level. Prices are ticks, so nothing here boxes, and emptied
+ * levels are kept for reuse, so a level that keeps opening and closing at the top of the book
+ * does not allocate.
+ * A side can also hold pending stop orders keyed by their stop price, with the stop nearest to
+ * triggering last: buy stops sorted like asks (lowest first), sell stops like bids.
+ */
+class BookSide<T extends Order> {
+    private static final int MAX_SPARE_LEVELS = 64;
+
+    private final boolean bid;
+    private final boolean stops;
+    private final PriceLevelIndex<T> levelsByPrice;
+    // Sort keys (the price for bids, the negated price for asks), ascending, so the best level is last
+    private long[] keys;
+    private PriceLevel<T>[] levels;
+    private int levelCount;
+    private int orderCount;
+    private PriceLevel<T>[] spareLevels;
+    private int spareCount;
+
+    BookSide(boolean bid) {
+        this(bid, false);
+    }
+
+    /**
+     * @param stops Whether the side is keyed by the orders' stop prices rather than their limits
+     */
+    @SuppressWarnings("unchecked")
+    BookSide(boolean bid, boolean stops) {
+        this.bid = bid;
+        this.stops = stops;
+        this.levelsByPrice = new PriceLevelIndex<>(64);
+        this.keys = new long[64];
+        this.levels = (PriceLevel<T>[]) new PriceLevel[64];
+        this.spareLevels = (PriceLevel<T>[]) new PriceLevel[MAX_SPARE_LEVELS];
+    }
+
+    boolean isBid() {
+        return bid;
+    }
+
+    boolean isEmpty() {
+        return levelCount == 0;
+    }
+
+    int orderCount() {
+        return orderCount;
+    }
+
+    int levelCount() {
+        return levelCount;
+    }
+
+    PriceLevel<T> best() {
+        return levelCount > 0 ? levels[levelCount - 1] : null;
+    }
+
+    /**
+     * @param rank 0 for the best level
+     */
+    PriceLevel<T> level(int rank) {
+        return levels[levelCount - 1 - rank];
+    }
+
+    /**
+     * Appends the order to the queue of its price level.
+     * @return The handle used to cancel or reduce the order later
+     */
+    OrderNode<T> add(T order) {
+        long priceTicks = stops ? order.getStopPriceTicks() : order.getPriceTicks();
+        PriceLevel<T> level = levelsByPrice.get(priceTicks);
+        if (level == null) {
+            level = newLevel(priceTicks);
+            levelsByPrice.put(priceTicks, level);
+            insertLevel(level);
+        }
+        OrderNode<T> node = new OrderNode<>(order);
+        level.add(node);
+        orderCount++;
+        return node;
+    }
+
+    /**
+     * Unlinks a resting order in O(1) using its handle.
+     * @return false if the order was no longer resting
+     */
+    boolean remove(OrderNode<T> node) {
+        PriceLevel<T> level = node.level;
+        if (level == null) {
+            return false;
+        }
+        level.remove(node);
+        onOrdersRemoved(level, 1);
+        return true;
+    }
+
+    /**
+     * Applies a fill to a resting order wherever it sits in the book.
+     * @return true if the order was fully filled and removed
+     */
+    boolean reduce(OrderNode<T> node, int quantity) {
+        PriceLevel<T> level = node.level;
+        if (level == null || !level.reduce(node, quantity)) {
+            return false;
+        }
+        onOrdersRemoved(level, 1);
+        return true;
+    }
+
+    /**
+     * Called after orders were taken off a level during matching.
+     */
+    void onOrdersRemoved(PriceLevel<T> level, int count) {
+        orderCount -= count;
+        if (level.isEmpty()) {
+            levelsByPrice.remove(level.getPriceTicks());
+            removeLevel(level);
+            if (spareCount < MAX_SPARE_LEVELS) {
+                spareLevels[spareCount++] = level;
+            }
+        }
+    }
+
+    private PriceLevel<T> newLevel(long priceTicks) {
+        if (spareCount == 0) {
+            return new PriceLevel<>(priceTicks);
+        }
+        PriceLevel<T> level = spareLevels[--spareCount];
+        spareLevels[spareCount] = null;
+        level.reset(priceTicks);
+        return level;
+    }
+
+    /**
+     * Copies all resting orders, best price first and oldest first within a level.
+     */
+    void addTo(Collection<? super T> target) {
+        for (int i = levelCount - 1; i >= 0; i--) {
+            levels[i].addTo(target);
+        }
+    }
+
+    /**
+     * Copies the best levels, best first. Also called without the lock while the book changes
+     * (the book's version tells the caller whether to trust the result), so nothing read here is
+     * assumed to be consistent.
+     * @return The number of levels copied, or -1 if the side was caught mid-update
+     */
+    int copyLevels(int maxLevels, long[] priceTicks, long[] quantities, int[] orderCounts) {
+        PriceLevel<T>[] levels = this.levels;
+        int count = Math.min(levelCount, levels.length);
+        int copied = Math.min(count, maxLevels);
+        for (int i = 0; i < copied; i++) {
+            PriceLevel<T> level = levels[count - 1 - i];
+            if (level == null) return -1;
+            priceTicks[i] = level.getPriceTicks();
+            quantities[i] = level.getDisplayedQuantity();
+            orderCounts[i] = level.size();
+        }
+        return copied;
+    }
+
+    /**
+     * Copies every resting order, best first, under the same terms as {@link #copyLevels}.
+     * @return false if the side was caught mid-update
+     */
+    boolean copyOrders(List<BookSnapshot.Entry> target) {
+        PriceLevel<T>[] levels = this.levels;
+        int count = Math.min(levelCount, levels.length);
+        // A consistent side has exactly orderCount orders; more means the links were changing
+        int remaining = orderCount;
+        for (int i = count - 1; i >= 0; i--) {
+            PriceLevel<T> level = levels[i];
+            if (level == null) return false;
+            for (OrderNode<T> node = level.peek(); node != null; node = node.next) {
+                if (--remaining < 0) return false;
+                T order = node.order;
+                target.add(new BookSnapshot.Entry(order.getOrderId(), order.getTraderName(),
+                    order.peekDisplayedQuantity(), order.getPriceTicks()));
+            }
+        }
+        return true;
+    }
+
+    private long sortKey(long priceTicks) {
+        return bid ? priceTicks : -priceTicks;
+    }
+
+    private void insertLevel(PriceLevel<T> level) {
+        long key = sortKey(level.getPriceTicks());
+        if (levelCount == keys.length) {
+            keys = Arrays.copyOf(keys, levelCount * 2);
+            levels = Arrays.copyOf(levels, levelCount * 2);
+        }
+        int pos = levelCount;
+        if (pos > 0 && keys[pos - 1] > key) {
+            pos = -Arrays.binarySearch(keys, 0, levelCount, key) - 1;
+            System.arraycopy(keys, pos, keys, pos + 1, levelCount - pos);
+            System.arraycopy(levels, pos, levels, pos + 1, levelCount - pos);
+        }
+        keys[pos] = key;
+        levels[pos] = level;
+        levelCount++;
+    }
+
+    private void removeLevel(PriceLevel<T> level) {
+        int pos = levelCount - 1;
+        if (levels[pos] != level) {
+            pos = Arrays.binarySearch(keys, 0, levelCount, sortKey(level.getPriceTicks()));
+            System.arraycopy(keys, pos + 1, keys, pos, levelCount - pos - 1);
+            System.arraycopy(levels, pos + 1, levels, pos, levelCount - pos - 1);
+        }
+        levelCount--;
+        levels[levelCount] = null;
+    }
+}
@@ -0,0 +1,51 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * Every resting order of one order book as it was at a single book version, best price first and
+ * oldest first within a price. Immutable: the entries are copies, not the live orders.
+ */
+public final class BookSnapshot {
+    /**
+     * A resting order with its remaining quantity at the snapshot's version
+     */
+    public record Entry(long orderId, String traderName, int quantity, long priceTicks) {
+    }
+
+    private final Stock stock;
+    private final long version;
+    private final List<Entry> bids;
+    private final List<Entry> asks;
+
+    BookSnapshot(Stock stock, long version, List<Entry> bids, List<Entry> asks) {
+        this.stock = stock;
+        this.version = version;
+        this.bids = List.copyOf(bids);
+        this.asks = List.copyOf(asks);
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    /**
+     * @return The book version the orders were read at; grows with every change of the book
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Entry> getBids() {
+        return bids;
+    }
+
+    public List<Entry> getAsks() {
+        return asks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s book #%d: %d bids, %d asks", stock.getSymbol(), version, bids.size(), asks.size());
+    }
+}
@@ -9,6 +9,28 @@ public class BuyOrder extends Order {
         super(traderName, stock, quantity);
     }
 
+    public BuyOrder(String traderName, Stock stock, int quantity, double price) {
+        super(traderName, stock, quantity, price);
+    }
+
+    /**
+     * @param displayQuantity Shares shown in the book at a time, for an iceberg order; 0 to show them all
+     * @param stopPrice The price the last trade has to reach before the order enters the book, or 0
+     */
+    public BuyOrder(String traderName, Stock stock, int quantity, double price, TimeInForce timeInForce,
+                    int displayQuantity, double stopPrice) {
+        super(traderName, stock, quantity, price, timeInForce, displayQuantity, stopPrice);
+    }
+
+    BuyOrder(long orderId, String traderName, Stock stock, int quantity, long priceTicks) {
+        super(orderId, traderName, stock, quantity, priceTicks);
+    }
+
+    BuyOrder(long orderId, String traderName, Stock stock, int quantity, long priceTicks, TimeInForce timeInForce,
+             int displayQuantity, long stopPriceTicks) {
+        super(orderId, traderName, stock, quantity, priceTicks, timeInForce, displayQuantity, stopPriceTicks);
+    }
+
     @Override
     public String getOrderType() {
         return "BUY";
@@ -0,0 +1,106 @@
+package org.example;
+
+import java.time.Instant;
+
+/**
+ * Open/high/low/close/volume bar of one symbol over one period, as returned by the {@link CandleAggregator}.
+ * Prices are kept in ticks and converted with the stock's tick size.
+ */
+public class Candle {
+    private final Stock stock;
+    private final CandleAggregator.Resolution resolution;
+    private final long startMillis;
+    private final long openTicks;
+    private final long highTicks;
+    private final long lowTicks;
+    private final long closeTicks;
+    private final long volume;
+    private final long notionalTicks;
+    private final long tradeCount;
+
+    Candle(Stock stock, CandleAggregator.Resolution resolution, long startMillis, long openTicks, long highTicks,
+           long lowTicks, long closeTicks, long volume, long notionalTicks, long tradeCount) {
+        this.stock = stock;
+        this.resolution = resolution;
+        this.startMillis = startMillis;
+        this.openTicks = openTicks;
+        this.highTicks = highTicks;
+        this.lowTicks = lowTicks;
+        this.closeTicks = closeTicks;
+        this.volume = volume;
+        this.notionalTicks = notionalTicks;
+        this.tradeCount = tradeCount;
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    public CandleAggregator.Resolution getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return Start of the period in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public Instant getStart() {
+        return Instant.ofEpochMilli(startMillis);
+    }
+
+    public double getOpen() {
+        return stock.toPrice(openTicks);
+    }
+
+    public double getHigh() {
+        return stock.toPrice(highTicks);
+    }
+
+    public double getLow() {
+        return stock.toPrice(lowTicks);
+    }
+
+    public double getClose() {
+        return stock.toPrice(closeTicks);
+    }
+
+    public long getOpenTicks() {
+        return openTicks;
+    }
+
+    public long getHighTicks() {
+        return highTicks;
+    }
+
+    public long getLowTicks() {
+        return lowTicks;
+    }
+
+    public long getCloseTicks() {
+        return closeTicks;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    /**
+     * @return The volume-weighted average price of the period
+     */
+    public double getVwap() {
+        return (double) notionalTicks / volume * stock.getTickSize();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s O %.2f H %.2f L %.2f C %.2f V %d VWAP %.4f",
+            stock.getSymbol(), resolution, getStart(), getOpen(), getHigh(), getLow(), getClose(), volume, getVwap());
+    }
+}
@@ -0,0 +1,260 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open/high/low/close/volume/VWAP candles of every stock at 1s, 1m, 5m and 1h resolutions,
+ * fed from the fill path.
+ * Each fill only updates the current 1s bar. When a bar closes it is folded into the bar of the
+ * next coarser resolution, so coarse bars are built from fine ones instead of being recomputed,
+ * and the still open bar of a coarse resolution is the folded part plus the open finer bars.
+ * Bars live in preallocated primitive ring arrays per resolution, indexed by period, so reading
+ * a bar is O(1). Writers and readers of a symbol both hold the stock lock.
+ */
+public class CandleAggregator {
+    /**
+     * Bar lengths, finest first. Each one is a multiple of the previous one.
+     */
+    public enum Resolution {
+        SECOND(1_000L, 600),
+        MINUTE(60_000L, 1440),
+        FIVE_MINUTES(300_000L, 576),
+        HOUR(3_600_000L, 720);
+
+        private final long millis;
+        private final int capacity;
+
+        Resolution(long millis, int capacity) {
+            this.millis = millis;
+            this.capacity = capacity;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return How many of the most recent bars are kept
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        long startOf(long timeMillis) {
+            return Math.floorDiv(timeMillis, millis) * millis;
+        }
+    }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    private static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * Bars of one resolution, one primitive array per field
+     */
+    private static final class BarRing {
+        final Resolution resolution;
+        final long[] start;
+        final long[] open;
+        final long[] high;
+        final long[] low;
+        final long[] close;
+        final long[] volume;
+        final long[] notional;
+        final long[] trades;
+
+        BarRing(Resolution resolution) {
+            int capacity = resolution.capacity;
+            this.resolution = resolution;
+            this.start = new long[capacity];
+            this.open = new long[capacity];
+            this.high = new long[capacity];
+            this.low = new long[capacity];
+            this.close = new long[capacity];
+            this.volume = new long[capacity];
+            this.notional = new long[capacity];
+            this.trades = new long[capacity];
+            Arrays.fill(start, NONE);
+        }
+
+        int slot(long barStart) {
+            return (int) Math.floorMod(barStart / resolution.millis, (long) resolution.capacity);
+        }
+
+        void add(int slot, long barStart, long openTicks, long highTicks, long lowTicks, long closeTicks,
+                 long quantity, long notionalTicks, long tradeCount) {
+            if (start[slot] != barStart) {
+                // First data of this period; overwrites the bar one capacity ago
+                start[slot] = barStart;
+                open[slot] = openTicks;
+                high[slot] = highTicks;
+                low[slot] = lowTicks;
+                volume[slot] = 0;
+                notional[slot] = 0;
+                trades[slot] = 0;
+            } else {
+                high[slot] = Math.max(high[slot], highTicks);
+                low[slot] = Math.min(low[slot], lowTicks);
+            }
+            close[slot] = closeTicks;
+            volume[slot] += quantity;
+            notional[slot] += notionalTicks;
+            trades[slot] += tradeCount;
+        }
+    }
+
+    private static final class SymbolCandles {
+        final Stock stock;
+        final BarRing[] rings = new BarRing[RESOLUTIONS.length];
+        // Start of the bar the last fill went into, per resolution
+        final long[] openStart = new long[RESOLUTIONS.length];
+        long lastTime = NONE;
+
+        SymbolCandles(Stock stock) {
+            this.stock = stock;
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                rings[i] = new BarRing(RESOLUTIONS[i]);
+            }
+            Arrays.fill(openStart, NONE);
+        }
+    }
+
+    /**
+     * Running merge of bars, oldest first
+     */
+    private static final class Accumulator {
+        boolean empty = true;
+        long open, high, low, close, volume, notional, trades;
+
+        void add(BarRing ring, int slot) {
+            if (empty) {
+                open = ring.open[slot];
+                high = ring.high[slot];
+                low = ring.low[slot];
+                empty = false;
+            } else {
+                high = Math.max(high, ring.high[slot]);
+                low = Math.min(low, ring.low[slot]);
+            }
+            close = ring.close[slot];
+            volume += ring.volume[slot];
+            notional += ring.notional[slot];
+            trades += ring.trades[slot];
+        }
+    }
+
+    private final Map<String, SymbolCandles> symbols = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a fill to the current 1s bar of its stock, first closing the bars it has moved past.
+     * Must be called while holding the stock's lock.
+     * @param timeMillis Time of the fill in epoch milliseconds; a time before the previous fill counts as the previous time
+     */
+    void onFill(Stock stock, long priceTicks, int quantity, long timeMillis) {
+        SymbolCandles candles = symbols.get(stock.getSymbol());
+        if (candles == null) {
+            candles = symbols.computeIfAbsent(stock.getSymbol(), symbol -> new SymbolCandles(stock));
+        }
+        if (timeMillis < candles.lastTime) {
+            timeMillis = candles.lastTime;
+        }
+        candles.lastTime = timeMillis;
+
+        if (candles.openStart[0] != NONE) {
+            // Periods nest, so once a resolution's bar is unchanged all coarser ones are too
+            for (int i = 0; i < RESOLUTIONS.length - 1; i++) {
+                if (RESOLUTIONS[i].startOf(timeMillis) == candles.openStart[i]) break;
+                rollUp(candles, i);
+            }
+        }
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            candles.openStart[i] = RESOLUTIONS[i].startOf(timeMillis);
+        }
+
+        BarRing seconds = candles.rings[0];
+        long barStart = candles.openStart[0];
+        seconds.add(seconds.slot(barStart), barStart, priceTicks, priceTicks, priceTicks, priceTicks,
+            quantity, priceTicks * quantity, 1);
+    }
+
+    /**
+     * Folds the closed open bar of one resolution into the bar of the next coarser one
+     */
+    private static void rollUp(SymbolCandles candles, int index) {
+        BarRing source = candles.rings[index];
+        BarRing target = candles.rings[index + 1];
+        int slot = source.slot(candles.openStart[index]);
+        long targetStart = target.resolution.startOf(candles.openStart[index]);
+        target.add(target.slot(targetStart), targetStart, source.open[slot], source.high[slot], source.low[slot],
+            source.close[slot], source.volume[slot], source.notional[slot], source.trades[slot]);
+    }
+
+    /**
+     * @return The bar that contains the time, or null if the stock did not trade in that period
+     *         or the bar is older than the resolution's capacity
+     */
+    public Candle getCandle(Stock stock, Resolution resolution, long timeMillis) {
+        SymbolCandles candles = symbols.get(stock.getSymbol());
+        if (candles == null) return null;
+        synchronized (stock.getLock()) {
+            return read(candles, resolution, resolution.startOf(timeMillis));
+        }
+    }
+
+    /**
+     * @return The bar the last fill went into, or null if the stock has not traded
+     */
+    public Candle getLatestCandle(Stock stock, Resolution resolution) {
+        SymbolCandles candles = symbols.get(stock.getSymbol());
+        if (candles == null) return null;
+        synchronized (stock.getLock()) {
+            long barStart = candles.openStart[resolution.ordinal()];
+            return barStart != NONE ? read(candles, resolution, barStart) : null;
+        }
+    }
+
+    /**
+     * @return The bars starting in [from, to) that are still kept, oldest first; periods without trades are skipped
+     */
+    public List<Candle> getCandles(Stock stock, Resolution resolution, long fromMillis, long toMillis) {
+        List<Candle> result = new ArrayList<>();
+        SymbolCandles candles = symbols.get(stock.getSymbol());
+        if (candles == null) return result;
+        synchronized (stock.getLock()) {
+            long latest = candles.openStart[resolution.ordinal()];
+            long oldestKept = latest - (resolution.capacity - 1) * resolution.millis;
+            long last = Math.min(toMillis - 1, latest);
+            for (long barStart = Math.max(resolution.startOf(fromMillis), resolution.startOf(oldestKept));
+                 barStart <= last; barStart += resolution.millis) {
+                Candle candle = read(candles, resolution, barStart);
+                if (candle != null) result.add(candle);
+            }
+        }
+        return result;
+    }
+
+    private static Candle read(SymbolCandles candles, Resolution resolution, long barStart) {
+        Accumulator accumulator = new Accumulator();
+        accumulate(candles, resolution.ordinal(), barStart, accumulator);
+        if (accumulator.empty) return null;
+        return new Candle(candles.stock, resolution, barStart, accumulator.open, accumulator.high, accumulator.low,
+            accumulator.close, accumulator.volume, accumulator.notional, accumulator.trades);
+    }
+
+    /**
+     * Adds the stored part of a bar and, if the bar is still open, the open bars of the finer resolutions
+     */
+    private static void accumulate(SymbolCandles candles, int index, long barStart, Accumulator accumulator) {
+        BarRing ring = candles.rings[index];
+        int slot = ring.slot(barStart);
+        if (ring.start[slot] == barStart) {
+            accumulator.add(ring, slot);
+        }
+        if (index > 0 && candles.openStart[index] == barStart) {
+            accumulate(candles, index - 1, candles.openStart[index - 1], accumulator);
+        }
+    }
+}
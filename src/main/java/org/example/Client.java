@@ -1,6 +1,5 @@
 package org.example;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -14,7 +13,6 @@ abstract public class Client{
     protected final int maxDelayMs;
     protected final int maxOrders;
     protected final List<Stock> availableStocks;
-    protected final List<Long> activeOrderIds;
 
     public Client(String name, StockExchange exchange, int minShares, int maxShares, 
                  int minDelayMs, int maxDelayMs, int maxOrders){
@@ -27,7 +25,6 @@ abstract public class Client{
         this.maxDelayMs = maxDelayMs;
         this.maxOrders = maxOrders;
         this.availableStocks = exchange.getAllStocks();
-        this.activeOrderIds = new ArrayList<>();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a large population of {@link Buyer}s and {@link Seller}s, one virtual thread per client.
+ * Clients spend most of their life sleeping between orders, which costs a virtual thread almost
+ * nothing, so hundreds of thousands of them can trade at once on a few carrier threads.
+ * A {@link ContentionMonitor} records where clients still block their carrier, such as
+ * waiting for a stock lock.
+ */
+public class ClientRuntime {
+    private final StockExchange exchange;
+    private final PopulationSpec population;
+    private final int clientCount;
+    private final ContentionMonitor contention;
+
+    private final AtomicInteger activeClients = new AtomicInteger();
+    private final AtomicInteger peakActiveClients = new AtomicInteger();
+    private int completedClients;
+    private int failedClients;
+    private long elapsedMs;
+
+    /**
+     * @param pinThreshold Shortest carrier pin or stock lock wait that is reported
+     */
+    public ClientRuntime(StockExchange exchange, PopulationSpec population, int clientCount, Duration pinThreshold) {
+        this.exchange = exchange;
+        this.population = population;
+        this.clientCount = clientCount;
+        this.contention = new ContentionMonitor(pinThreshold);
+    }
+
+    /**
+     * Starts every client and waits until all of them have finished trading.
+     */
+    public void run() throws InterruptedException {
+        List<Callable<String>> clients = population.createClients(exchange, clientCount);
+        long start = System.currentTimeMillis();
+        contention.start();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> futures = new ArrayList<>(clients.size());
+            for (Callable<String> client : clients) {
+                futures.add(executor.submit(() -> runClient(client)));
+            }
+            for (Future<String> future : futures) {
+                try {
+                    future.get();
+                    completedClients++;
+                } catch (ExecutionException e) {
+                    failedClients++;
+                }
+            }
+        } finally {
+            contention.close();
+        }
+        elapsedMs = System.currentTimeMillis() - start;
+        Logger.logEvent(String.format("Client runtime finished: %d clients in %d ms", completedClients, elapsedMs));
+    }
+
+    private String runClient(Callable<String> client) throws Exception {
+        peakActiveClients.accumulateAndGet(activeClients.incrementAndGet(), Math::max);
+        try {
+            return client.call();
+        } finally {
+            activeClients.decrementAndGet();
+        }
+    }
+
+    public int getCompletedClients() {
+        return completedClients;
+    }
+
+    public int getFailedClients() {
+        return failedClients;
+    }
+
+    /**
+     * @return The largest number of clients that were trading at the same time
+     */
+    public int getPeakActiveClients() {
+        return peakActiveClients.get();
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public ContentionMonitor getContention() {
+        return contention;
+    }
+
+    public String report() {
+        return String.format("Clients: %d completed, %d failed, peak %d concurrent, %.1f s (population %s)%n",
+                completedClients, failedClients, peakActiveClients.get(), elapsedMs / 1000.0, population)
+            + contention.report();
+    }
+}
@@ -0,0 +1,224 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * One partition of a symbol-partitioned exchange cluster: a {@link StockExchange} in its own
+ * JVM, serving the {@link ClusterRouter} over loopback sockets. Each router connection is
+ * handled by its own thread and its requests run synchronously on the exchange.
+ * A response is built in full before any of it is sent. A request that fails is answered with
+ * an error and its connection closed, since the rest of the request may still be unread.
+ */
+public class ClusterNode {
+    private final int partition;
+    private final StockExchange exchange;
+    private final ServerSocket server;
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+
+    /**
+     * @param port Loopback port to listen on, or 0 for any free port
+     */
+    public ClusterNode(int partition, StockExchange exchange, int port) throws IOException {
+        this.partition = partition;
+        this.exchange = exchange;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        // Orders created here by edits get ids no other partition or the router uses
+        Order.reserveOrderIds(((long) partition + 1) << ClusterProtocol.NODE_ID_SHIFT);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void start() {
+        exchange.start();
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-node-" + partition);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Blocks until the router asks the node to shut down.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        shutdown.await();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread handler = new Thread(() -> serve(socket), "cluster-node-" + partition + "-conn");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Error accepting router connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream response = new DataOutputStream(buffer);
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return; // Router closed the connection
+                }
+                buffer.reset();
+                try {
+                    handle(operation, in, response);
+                } catch (RuntimeException e) {
+                    out.writeByte(ClusterProtocol.ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                    out.flush();
+                    return;
+                }
+                buffer.writeTo(out);
+                out.flush();
+                if (operation == ClusterProtocol.SHUTDOWN) {
+                    exchange.stop();
+                    server.close();
+                    shutdown.countDown();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                System.err.println("Router connection lost: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (operation) {
+            case ClusterProtocol.PLACE -> {
+                byte side = in.readByte();
+                long orderId = in.readLong();
+                String trader = in.readUTF();
+                Stock stock = exchange.getStock(in.readUTF());
+                int quantity = in.readInt();
+                long priceTicks = in.readLong();
+                Order.TimeInForce timeInForce = Order.TimeInForce.values()[in.readByte()];
+                int displayQuantity = in.readInt();
+                long stopPriceTicks = in.readLong();
+                boolean placed = stock != null && (side == ClusterProtocol.BUY
+                    ? exchange.submitBuyOrder(new BuyOrder(orderId, trader, stock, quantity, priceTicks,
+                        timeInForce, displayQuantity, stopPriceTicks)).join()
+                    : exchange.submitSellOrder(new SellOrder(orderId, trader, stock, quantity, priceTicks,
+                        timeInForce, displayQuantity, stopPriceTicks)).join());
+                ok(out).writeBoolean(placed);
+            }
+            case ClusterProtocol.CANCEL -> {
+                byte side = in.readByte();
+                long orderId = in.readLong();
+                ok(out).writeBoolean(side == ClusterProtocol.BUY
+                    ? exchange.cancelBuyOrderById(orderId) : exchange.cancelSellOrderById(orderId));
+            }
+            case ClusterProtocol.EDIT -> {
+                byte side = in.readByte();
+                long orderId = in.readLong();
+                int quantity = in.readInt();
+                ok(out).writeBoolean(side == ClusterProtocol.BUY
+                    ? exchange.editBuyOrder(orderId, quantity) : exchange.editSellOrder(orderId, quantity));
+            }
+            case ClusterProtocol.ADD_STOCK -> {
+                String symbol = in.readUTF();
+                double tickSize = in.readDouble();
+                long priceTicks = in.readLong();
+                boolean added = exchange.getStock(symbol) == null;
+                if (added) exchange.addStock(new Stock(symbol, priceTicks * tickSize, tickSize));
+                ok(out).writeBoolean(added);
+            }
+            case ClusterProtocol.LIST_STOCKS -> {
+                List<Stock> stocks = exchange.getAllStocks();
+                ok(out).writeInt(stocks.size());
+                for (Stock stock : stocks) {
+                    out.writeUTF(stock.getSymbol());
+                    out.writeDouble(stock.getTickSize());
+                    out.writeLong(stock.getCurrentPriceTicks());
+                }
+            }
+            case ClusterProtocol.LIST_ORDERS -> {
+                List<? extends Order> orders = in.readByte() == ClusterProtocol.BUY
+                    ? exchange.getBuyOrders() : exchange.getSellOrders();
+                ok(out).writeInt(orders.size());
+                for (Order order : orders) {
+                    out.writeUTF(order.getStock().getSymbol());
+                    out.writeLong(order.getOrderId());
+                    out.writeUTF(order.getTraderName());
+                    out.writeInt(order.getQuantity());
+                    out.writeLong(order.getPriceTicks());
+                }
+            }
+            case ClusterProtocol.STATS -> {
+                ok(out).writeLong(exchange.getTransactionHistory().getTotalCount());
+                out.writeInt(exchange.getAllStocks().size());
+                out.writeLong(exchange.getMetrics().getOrdersPlaced());
+            }
+            case ClusterProtocol.EXPORT_SYMBOL -> {
+                ExchangeSnapshot.SymbolImage image = exchange.detachSymbol(in.readUTF());
+                ok(out).writeBoolean(image != null);
+                if (image != null) ClusterProtocol.writeImage(out, image);
+            }
+            case ClusterProtocol.IMPORT_SYMBOL -> {
+                ExchangeSnapshot.SymbolImage image = ClusterProtocol.readImage(in, exchange);
+                try {
+                    for (Order order : image.buyOrders) exchange.restoreOrder(order);
+                    for (Order order : image.sellOrders) exchange.restoreOrder(order);
+                    for (Order order : image.stopOrders) exchange.restoreStop(order);
+                } catch (RuntimeException e) {
+                    // All or nothing: the router puts the symbol back on its source partition
+                    exchange.detachSymbol(image.symbol);
+                    throw e;
+                }
+                ok(out).writeBoolean(true);
+            }
+            case ClusterProtocol.SHUTDOWN -> ok(out).writeBoolean(true);
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private static DataOutputStream ok(DataOutputStream out) throws IOException {
+        out.writeByte(ClusterProtocol.OK);
+        return out;
+    }
+
+    /**
+     * Entry point of a node process: {@code ClusterNode <partition>}.
+     * Prints {@code READY <port>} on the first line of standard output once it accepts connections.
+     */
+    public static void main(String[] args) throws Exception {
+        int partition = Integer.parseInt(args[0]);
+        Logger.clearLogs();
+        ClusterNode node = new ClusterNode(partition, new StockExchange(), 0);
+        System.out.println("READY " + node.getPort());
+        System.out.flush();
+        // Standard output only carries the handshake; the exchange's console echo is dropped
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        node.start();
+        node.awaitShutdown();
+        Logger.shutdown();
+    }
+}
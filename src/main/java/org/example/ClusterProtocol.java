@@ -0,0 +1,114 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request/response messages between a {@link ClusterRouter} and its {@link ClusterNode}s.
+ * Every request is an operation byte followed by its fields; every response starts with a
+ * status byte, followed by the result or an error message.
+ */
+final class ClusterProtocol {
+    static final byte PLACE = 1;
+    static final byte CANCEL = 2;
+    static final byte EDIT = 3;
+    static final byte ADD_STOCK = 4;
+    static final byte LIST_STOCKS = 5;
+    static final byte LIST_ORDERS = 6;
+    static final byte STATS = 7;
+    static final byte EXPORT_SYMBOL = 8;
+    static final byte IMPORT_SYMBOL = 9;
+    static final byte SHUTDOWN = 10;
+
+    static final byte BUY = 0;
+    static final byte SELL = 1;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // Order ids created on a node (edits) start at partition << NODE_ID_SHIFT, so they never
+    // collide with the router's ids or another node's
+    static final int NODE_ID_SHIFT = 48;
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * Writes a symbol's price, resting orders and pending stops, with the quantities captured under its lock
+     */
+    static void writeImage(DataOutputStream out, ExchangeSnapshot.SymbolImage image) throws IOException {
+        out.writeUTF(image.symbol);
+        out.writeDouble(image.tickSize);
+        out.writeLong(image.priceTicks);
+        writeOrders(out, image.buyOrders, image.buyQuantities);
+        writeOrders(out, image.sellOrders, image.sellQuantities);
+        out.writeInt(image.stopOrders.length);
+        for (Order stop : image.stopOrders) {
+            out.writeBoolean(stop instanceof BuyOrder);
+            out.writeLong(stop.getOrderId());
+            out.writeUTF(stop.getTraderName());
+            out.writeInt(stop.getQuantity());
+            out.writeLong(stop.getPriceTicks());
+            out.writeInt(stop.getDisplayQuantity());
+            out.writeByte(stop.getTimeInForce().ordinal());
+            out.writeLong(stop.getStopPriceTicks());
+        }
+    }
+
+    private static void writeOrders(DataOutputStream out, Order[] orders, int[] quantities) throws IOException {
+        out.writeInt(orders.length);
+        for (int i = 0; i < orders.length; i++) {
+            out.writeLong(orders[i].getOrderId());
+            out.writeUTF(orders[i].getTraderName());
+            out.writeInt(quantities[i]);
+            out.writeLong(orders[i].getPriceTicks());
+            out.writeInt(orders[i].getDisplayQuantity());
+        }
+    }
+
+    /**
+     * Reads an image written by {@link #writeImage} and, once all of it is decoded, adds its stock
+     * to the exchange. The orders and stops are returned but not put in the book.
+     * @param exchange The exchange to add the stock to, or null to only decode the image
+     * @throws IllegalStateException If the exchange already lists the symbol
+     */
+    static ExchangeSnapshot.SymbolImage readImage(DataInputStream in, StockExchange exchange) throws IOException {
+        String symbol = in.readUTF();
+        double tickSize = in.readDouble();
+        long priceTicks = in.readLong();
+        Stock stock = new Stock(symbol, priceTicks * tickSize, tickSize);
+        stock.setCurrentPriceTicks(priceTicks);
+        List<BuyOrder> buys = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            buys.add(new BuyOrder(in.readLong(), in.readUTF(), stock, in.readInt(), in.readLong(),
+                Order.TimeInForce.GOOD_TILL_CANCELLED, in.readInt(), Order.NO_STOP));
+        }
+        List<SellOrder> sells = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            sells.add(new SellOrder(in.readLong(), in.readUTF(), stock, in.readInt(), in.readLong(),
+                Order.TimeInForce.GOOD_TILL_CANCELLED, in.readInt(), Order.NO_STOP));
+        }
+        List<Order> stops = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            boolean buy = in.readBoolean();
+            long orderId = in.readLong();
+            String trader = in.readUTF();
+            int quantity = in.readInt();
+            long limitTicks = in.readLong();
+            int displayQuantity = in.readInt();
+            Order.TimeInForce timeInForce = Order.TimeInForce.values()[in.readByte()];
+            long stopTicks = in.readLong();
+            stops.add(buy
+                ? new BuyOrder(orderId, trader, stock, quantity, limitTicks, timeInForce, displayQuantity, stopTicks)
+                : new SellOrder(orderId, trader, stock, quantity, limitTicks, timeInForce, displayQuantity, stopTicks));
+        }
+        if (exchange != null) {
+            if (exchange.getStock(symbol) != null) throw new IllegalStateException(symbol + " is already listed");
+            exchange.addStock(stock);
+        }
+        return new ExchangeSnapshot.SymbolImage(symbol, tickSize, priceTicks, 0, buys, sells, stops);
+    }
+}
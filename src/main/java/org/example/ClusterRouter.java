@@ -0,0 +1,478 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Front end of a symbol-partitioned exchange cluster. The router owns the symbol to partition
+ * map and forwards order commands to the {@link ClusterNode} of the symbol over loopback sockets;
+ * queries over all symbols fan out to every node in parallel and are merged here.
+ * A symbol can be moved to another partition while the cluster runs: its commands wait while
+ * the source node hands over the book and the target node takes it in.
+ * Order ids are assigned by the router, so they stay unique when a book moves.
+ */
+public class ClusterRouter implements AutoCloseable {
+    private static final String READY = "READY ";
+
+    /**
+     * Where a symbol lives. Commands hold the read lock, a move holds the write lock.
+     */
+    private static final class Route {
+        final Stock stock;
+        volatile int partition;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Route(Stock stock, int partition) {
+            this.stock = stock;
+            this.partition = partition;
+        }
+    }
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Connections to one node. Each call borrows an idle connection, so callers on different
+     * threads do not wait for each other.
+     */
+    private static final class NodeClient {
+        final InetSocketAddress address;
+        final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+        NodeClient(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Only a connection whose response was read in full goes back to the idle pool; after a
+         * failure the node closes its end, and the rest of the stream could not be trusted anyway.
+         */
+        <T> T call(Request request, Response<T> response) {
+            Connection connection = idle.poll();
+            boolean reusable = false;
+            try {
+                if (connection == null) connection = new Connection(address);
+                request.write(connection.out);
+                connection.out.flush();
+                byte status = connection.in.readByte();
+                if (status != ClusterProtocol.OK) {
+                    throw new IllegalStateException("Node " + address + " failed: " + connection.in.readUTF());
+                }
+                T result = response.read(connection.in);
+                reusable = true;
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Node " + address + " unreachable", e);
+            } finally {
+                if (connection != null) {
+                    if (reusable) idle.add(connection);
+                    else connection.close();
+                }
+            }
+        }
+
+        void close() {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+    }
+
+    private final List<NodeClient> nodes = new ArrayList<>();
+    private final List<Process> processes;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final ExecutorService fanOut = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Routes to nodes that are already running, partition i being the i-th address
+     */
+    public ClusterRouter(List<InetSocketAddress> nodeAddresses) {
+        this(nodeAddresses, List.of());
+    }
+
+    private ClusterRouter(List<InetSocketAddress> nodeAddresses, List<Process> processes) {
+        for (InetSocketAddress address : nodeAddresses) {
+            nodes.add(new NodeClient(address));
+        }
+        this.processes = processes;
+    }
+
+    /**
+     * Starts one node JVM per partition on this host, each with the same class path and its own
+     * working directory (for its logs) under the given directory.
+     * @param jvmOptions Extra options for the node JVMs, e.g. a small {@code -Xmx}
+     */
+    public static ClusterRouter launchLocal(int partitions, Path workDirectory, List<String> jvmOptions) throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < partitions; i++) {
+                Path directory = workDirectory.resolve("node-" + i);
+                Files.createDirectories(directory);
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmOptions);
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                    ClusterNode.class.getName(), String.valueOf(i)));
+                Process process = new ProcessBuilder(command)
+                    .directory(directory.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+                processes.add(process);
+                // The node's first line tells which port it listens on
+                String line = new BufferedReader(new InputStreamReader(process.getInputStream())).readLine();
+                if (line == null || !line.startsWith(READY)) {
+                    throw new IOException("Cluster node " + i + " did not start: " + line);
+                }
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(line.substring(READY.length()).trim())));
+            }
+        } catch (IOException | RuntimeException e) {
+            processes.forEach(Process::destroy);
+            throw e;
+        }
+        Logger.logEvent("Cluster started with " + partitions + " partitions");
+        return new ClusterRouter(addresses, processes);
+    }
+
+    public int getPartitionCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return The partition currently holding the symbol, or -1 if it is unknown
+     */
+    public int getPartition(String symbol) {
+        Route route = routes.get(symbol);
+        return route != null ? route.partition : -1;
+    }
+
+    /**
+     * Adds a stock to the partition chosen by the hash of its symbol.
+     */
+    public void addStock(Stock stock) {
+        addStock(stock, Math.floorMod(stock.getSymbol().hashCode(), nodes.size()));
+    }
+
+    public void addStock(Stock stock, int partition) {
+        Route route = new Route(stock, partition);
+        if (routes.putIfAbsent(stock.getSymbol(), route) != null) return;
+        nodes.get(partition).call(out -> {
+            out.writeByte(ClusterProtocol.ADD_STOCK);
+            out.writeUTF(stock.getSymbol());
+            out.writeDouble(stock.getTickSize());
+            out.writeLong(stock.getCurrentPriceTicks());
+        }, DataInputStream::readBoolean);
+    }
+
+    /**
+     * @return The router's instance of the stock, to create orders with
+     */
+    public Stock getStock(String symbol) {
+        Route route = routes.get(symbol);
+        return route != null ? route.stock : null;
+    }
+
+    public boolean placeBuyOrder(BuyOrder order) {
+        return place(ClusterProtocol.BUY, order);
+    }
+
+    public boolean placeSellOrder(SellOrder order) {
+        return place(ClusterProtocol.SELL, order);
+    }
+
+    private boolean place(byte side, Order order) {
+        return route(order.getStock().getSymbol(), out -> {
+            out.writeByte(ClusterProtocol.PLACE);
+            out.writeByte(side);
+            out.writeLong(order.getOrderId());
+            out.writeUTF(order.getTraderName());
+            out.writeUTF(order.getStock().getSymbol());
+            out.writeInt(order.getQuantity());
+            out.writeLong(order.getPriceTicks());
+            out.writeByte(order.getTimeInForce().ordinal());
+            out.writeInt(order.getDisplayQuantity());
+            out.writeLong(order.getStopPriceTicks());
+        });
+    }
+
+    public boolean cancelBuyOrder(String symbol, long orderId) {
+        return cancel(ClusterProtocol.BUY, symbol, orderId);
+    }
+
+    public boolean cancelSellOrder(String symbol, long orderId) {
+        return cancel(ClusterProtocol.SELL, symbol, orderId);
+    }
+
+    private boolean cancel(byte side, String symbol, long orderId) {
+        return route(symbol, out -> {
+            out.writeByte(ClusterProtocol.CANCEL);
+            out.writeByte(side);
+            out.writeLong(orderId);
+        });
+    }
+
+    public boolean editBuyOrder(String symbol, long orderId, int newQuantity) {
+        return edit(ClusterProtocol.BUY, symbol, orderId, newQuantity);
+    }
+
+    public boolean editSellOrder(String symbol, long orderId, int newQuantity) {
+        return edit(ClusterProtocol.SELL, symbol, orderId, newQuantity);
+    }
+
+    private boolean edit(byte side, String symbol, long orderId, int newQuantity) {
+        if (newQuantity <= 0) return false;
+        return route(symbol, out -> {
+            out.writeByte(ClusterProtocol.EDIT);
+            out.writeByte(side);
+            out.writeLong(orderId);
+            out.writeInt(newQuantity);
+        });
+    }
+
+    /**
+     * Sends a command to the partition of the symbol, waiting while the symbol is being moved
+     */
+    private boolean route(String symbol, Request request) {
+        Route route = routes.get(symbol);
+        if (route == null) return false;
+        route.lock.readLock().lock();
+        try {
+            return nodes.get(route.partition).call(request, DataInputStream::readBoolean);
+        } finally {
+            route.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Every stock of the cluster with its current price fetched from its partition
+     */
+    public List<Stock> getAllStocks() {
+        List<Stock> stocks = new ArrayList<>();
+        for (Map<String, Long> prices : fanOut(out -> out.writeByte(ClusterProtocol.LIST_STOCKS), in -> {
+            Map<String, Long> result = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String symbol = in.readUTF();
+                in.readDouble(); // Tick size, already known here
+                result.put(symbol, in.readLong());
+            }
+            return result;
+        })) {
+            prices.forEach((symbol, priceTicks) -> {
+                Route route = routes.get(symbol);
+                if (route == null) return;
+                route.stock.setCurrentPriceTicks(priceTicks);
+                stocks.add(route.stock);
+            });
+        }
+        return stocks;
+    }
+
+    public List<BuyOrder> getBuyOrders() {
+        List<BuyOrder> orders = new ArrayList<>();
+        for (List<Order> partition : listOrders(ClusterProtocol.BUY)) {
+            for (Order order : partition) orders.add((BuyOrder) order);
+        }
+        return orders;
+    }
+
+    public List<SellOrder> getSellOrders() {
+        List<SellOrder> orders = new ArrayList<>();
+        for (List<Order> partition : listOrders(ClusterProtocol.SELL)) {
+            for (Order order : partition) orders.add((SellOrder) order);
+        }
+        return orders;
+    }
+
+    private List<List<Order>> listOrders(byte side) {
+        return fanOut(out -> {
+            out.writeByte(ClusterProtocol.LIST_ORDERS);
+            out.writeByte(side);
+        }, in -> {
+            List<Order> result = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                Route route = routes.get(in.readUTF());
+                long orderId = in.readLong();
+                String trader = in.readUTF();
+                int quantity = in.readInt();
+                long priceTicks = in.readLong();
+                if (route == null) continue;
+                result.add(side == ClusterProtocol.BUY
+                    ? new BuyOrder(orderId, trader, route.stock, quantity, priceTicks)
+                    : new SellOrder(orderId, trader, route.stock, quantity, priceTicks));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @return The number of transactions recorded by all partitions
+     */
+    public long getTransactionCount() {
+        long total = 0;
+        for (long[] stats : stats()) total += stats[0];
+        return total;
+    }
+
+    private List<long[]> stats() {
+        return fanOut(out -> out.writeByte(ClusterProtocol.STATS),
+            in -> new long[] {in.readLong(), in.readInt(), in.readLong()});
+    }
+
+    /**
+     * Sends the same request to every node in parallel.
+     * @return The responses, in partition order
+     */
+    private <T> List<T> fanOut(Request request, Response<T> response) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(nodes.size());
+        for (NodeClient node : nodes) {
+            futures.add(CompletableFuture.supplyAsync(() -> node.call(request, response), fanOut));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Moves a symbol's book to another partition. Commands for the symbol wait until the move is
+     * done; all other symbols keep trading. If the target does not take the book it is put back.
+     */
+    public void moveSymbol(String symbol, int partition) {
+        Route route = routes.get(symbol);
+        if (route == null) throw new IllegalArgumentException("Unknown symbol: " + symbol);
+        if (partition < 0 || partition >= nodes.size()) {
+            throw new IllegalArgumentException("No partition " + partition);
+        }
+        route.lock.writeLock().lock();
+        try {
+            int source = route.partition;
+            if (source == partition) return;
+            long start = System.nanoTime();
+            ExchangeSnapshot.SymbolImage image = nodes.get(source).call(out -> {
+                out.writeByte(ClusterProtocol.EXPORT_SYMBOL);
+                out.writeUTF(symbol);
+            }, in -> in.readBoolean() ? ClusterProtocol.readImage(in, null) : null);
+            if (image == null) throw new IllegalStateException(symbol + " is not on partition " + source);
+            try {
+                importImage(partition, image);
+            } catch (RuntimeException e) {
+                importImage(source, image);
+                throw e;
+            }
+            route.partition = partition;
+            Logger.logEvent(String.format("Moved %s from partition %d to %d (%d orders) in %d us", symbol, source,
+                partition, image.buyOrders.length + image.sellOrders.length, (System.nanoTime() - start) / 1000));
+        } finally {
+            route.lock.writeLock().unlock();
+        }
+    }
+
+    private void importImage(int partition, ExchangeSnapshot.SymbolImage image) {
+        nodes.get(partition).call(out -> {
+            out.writeByte(ClusterProtocol.IMPORT_SYMBOL);
+            ClusterProtocol.writeImage(out, image);
+        }, DataInputStream::readBoolean);
+    }
+
+    /**
+     * @return Per-partition symbols, resting orders and transactions, like the exchange's own summary
+     */
+    public String summary() {
+        List<long[]> stats = stats();
+        List<Stock> stocks = getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        StringBuilder summary = new StringBuilder("\n📊 CLUSTER SUMMARY (" + nodes.size() + " partitions):\n");
+        long transactions = 0;
+        for (int i = 0; i < stats.size(); i++) {
+            long[] partition = stats.get(i);
+            transactions += partition[0];
+            summary.append(String.format("   Partition %d: %d symbols, %d orders placed, %d transactions%n",
+                i, partition[1], partition[2], partition[0]));
+        }
+        summary.append("   Total Transactions: ").append(transactions).append('\n');
+        summary.append("   Active Buy Orders: ").append(getBuyOrders().size()).append('\n');
+        summary.append("   Active Sell Orders: ").append(getSellOrders().size()).append('\n');
+        summary.append("\n📈 STOCK PRICES:\n");
+        for (Stock stock : stocks) {
+            summary.append("   ").append(stock).append(" [partition ").append(getPartition(stock.getSymbol())).append("]\n");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Shuts down the nodes and waits for the node processes started by {@link #launchLocal}.
+     */
+    @Override
+    public void close() {
+        for (NodeClient node : nodes) {
+            try {
+                node.call(out -> out.writeByte(ClusterProtocol.SHUTDOWN), DataInputStream::readBoolean);
+            } catch (RuntimeException e) {
+                System.err.println("Error stopping cluster node: " + e.getMessage());
+            }
+            node.close();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroy();
+            }
+        }
+        fanOut.shutdown();
+    }
+}
@@ -0,0 +1,137 @@
+package org.example;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams JFR events about threads blocked in the exchange while it runs:
+ * virtual threads pinning their carrier ({@code jdk.VirtualThreadPinned}) and threads waiting
+ * to enter a monitor ({@code jdk.JavaMonitorEnter}). Only monitor waits with an
+ * {@link StockExchange} frame on the stack are kept, which are the waits for {@link Stock#getLock()}.
+ * Events are grouped by the innermost {@code org.example} frame, so the report names the
+ * exchange method where the blocking happened.
+ */
+public class ContentionMonitor implements AutoCloseable {
+    private static final String PINNED = "jdk.VirtualThreadPinned";
+    private static final String MONITOR_ENTER = "jdk.JavaMonitorEnter";
+    private static final String PACKAGE_PREFIX = Main.class.getPackageName() + ".";
+
+    /**
+     * Number of events and total blocked time at one call site
+     */
+    private static final class Site {
+        long count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private final RecordingStream stream;
+    private final Map<String, Site> pinnedSites = new HashMap<>();
+    private final Map<String, Site> lockWaitSites = new HashMap<>();
+
+    /**
+     * @param threshold Shortest pin or monitor wait that is recorded
+     */
+    public ContentionMonitor(Duration threshold) {
+        this.stream = new RecordingStream();
+        stream.enable(PINNED).withThreshold(threshold).withStackTrace();
+        stream.enable(MONITOR_ENTER).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED, event -> record(pinnedSites, event));
+        stream.onEvent(MONITOR_ENTER, event -> {
+            if (hasFrame(event, StockExchange.class.getName())) {
+                record(lockWaitSites, event);
+            }
+        });
+    }
+
+    public void start() {
+        stream.startAsync();
+    }
+
+    /**
+     * Stops recording after all events recorded so far have been processed
+     */
+    @Override
+    public void close() {
+        stream.stop();
+        stream.close();
+    }
+
+    public synchronized long getPinnedCount() {
+        return total(pinnedSites).count;
+    }
+
+    public synchronized long getLockWaitCount() {
+        return total(lockWaitSites).count;
+    }
+
+    /**
+     * @return Totals and the call sites with the most blocked time, for pinning and for stock lock waits
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "Carrier pinned", pinnedSites);
+        append(sb, "Stock lock wait", lockWaitSites);
+        return sb.toString();
+    }
+
+    private synchronized void record(Map<String, Site> sites, RecordedEvent event) {
+        Site site = sites.computeIfAbsent(callSite(event), key -> new Site());
+        long nanos = event.getDuration().toNanos();
+        site.count++;
+        site.totalNanos += nanos;
+        site.maxNanos = Math.max(site.maxNanos, nanos);
+    }
+
+    private static void append(StringBuilder sb, String title, Map<String, Site> sites) {
+        Site total = total(sites);
+        sb.append(String.format("%s: %d events, %.1f ms total, %.1f ms max%n",
+            title, total.count, total.totalNanos / 1e6, total.maxNanos / 1e6));
+        sites.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos))
+            .limit(5)
+            .forEach(e -> sb.append(String.format("   %-50s %8d events %10.1f ms%n",
+                e.getKey(), e.getValue().count, e.getValue().totalNanos / 1e6)));
+    }
+
+    private static Site total(Map<String, Site> sites) {
+        Site total = new Site();
+        for (Site site : sites.values()) {
+            total.count += site.count;
+            total.totalNanos += site.totalNanos;
+            total.maxNanos = Math.max(total.maxNanos, site.maxNanos);
+        }
+        return total;
+    }
+
+    private static String callSite(RecordedEvent event) {
+        for (RecordedFrame frame : frames(event)) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(PACKAGE_PREFIX)) {
+                return type.substring(PACKAGE_PREFIX.length()) + "." + frame.getMethod().getName();
+            }
+        }
+        return "(outside " + PACKAGE_PREFIX + "*)";
+    }
+
+    private static boolean hasFrame(RecordedEvent event, String className) {
+        for (RecordedFrame frame : frames(event)) {
+            if (frame.getMethod().getType().getName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<RecordedFrame> frames(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        return stackTrace != null ? stackTrace.getFrames() : List.of();
+    }
+}
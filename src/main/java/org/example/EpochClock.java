@@ -0,0 +1,43 @@
+package org.example;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Wall-clock time as nanoseconds since the epoch, read without allocating.
+ * The offset between {@link System#nanoTime()} and the wall clock is taken once, so stamps are
+ * monotonic and cheap; converting them to dates is left to whoever formats them, off the hot path.
+ */
+final class EpochClock {
+    static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final long OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private EpochClock() {
+    }
+
+    /**
+     * @return The current time in nanoseconds since the epoch
+     */
+    static long nanos() {
+        return OFFSET + System.nanoTime();
+    }
+
+    static long fromMillis(long epochMillis) {
+        return epochMillis * 1_000_000L;
+    }
+
+    static long toMillis(long epochNanos) {
+        return Math.floorDiv(epochNanos, 1_000_000L);
+    }
+
+    static LocalDateTime toDateTime(long epochNanos) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos), ZoneId.systemDefault());
+    }
+
+    static String format(long epochNanos) {
+        return toDateTime(epochNanos).format(FORMATTER);
+    }
+}
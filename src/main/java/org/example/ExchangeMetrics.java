@@ -0,0 +1,230 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms recorded on the exchange's hot paths.
+ * Recording only touches striped counters ({@link LongAdder}, {@link StripedHistogram}),
+ * so it never allocates or locks; readers merge the stripes when JMX asks for a value.
+ */
+public class ExchangeMetrics implements ExchangeMetricsMXBean {
+    public static final String OBJECT_NAME = "org.example:type=StockExchange";
+    private static final long RATE_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Metrics currently published under OBJECT_NAME, guarded by the class lock
+    private static ExchangeMetrics registered;
+
+    private final StockExchange exchange;
+    private final LongAdder ordersPlaced = new LongAdder();
+    private final LongAdder cancels = new LongAdder();
+    private final LongAdder edits = new LongAdder();
+    private final LongAdder fills = new LongAdder();
+    private final LongAdder[] riskRejects = new LongAdder[RiskEngine.Reject.values().length];
+    private final StripedHistogram lockWait = new StripedHistogram();
+    private final StripedHistogram matchTime = new StripedHistogram();
+    private final StripedHistogram fillsPerMatch = new StripedHistogram();
+
+    // Rates are recomputed when read at least one interval after the previous computation
+    private long rateSampleTime = System.nanoTime();
+    private long rateSampleOrders;
+    private long rateSampleCancels;
+    private double ordersPerSecond;
+    private double cancelsPerSecond;
+
+    ExchangeMetrics(StockExchange exchange) {
+        this.exchange = exchange;
+        for (int i = 0; i < riskRejects.length; i++) {
+            riskRejects[i] = new LongAdder();
+        }
+    }
+
+    void recordOrderPlaced() {
+        ordersPlaced.increment();
+    }
+
+    void recordCancel() {
+        cancels.increment();
+    }
+
+    void recordEdit() {
+        edits.increment();
+    }
+
+    void recordFill() {
+        fills.increment();
+    }
+
+    void recordRiskReject(RiskEngine.Reject reject) {
+        riskRejects[reject.ordinal()].increment();
+    }
+
+    void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    void recordMatch(long nanos, int fillCount) {
+        matchTime.record(nanos);
+        fillsPerMatch.record(fillCount);
+    }
+
+    /**
+     * Publishes these metrics as the platform MBean {@value #OBJECT_NAME}, replacing the
+     * metrics of any exchange registered before.
+     */
+    public void register() {
+        synchronized (ExchangeMetrics.class) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                registered = this;
+            } catch (JMException e) {
+                System.err.println("Error registering metrics MBean: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Removes the MBean if it still belongs to these metrics.
+     */
+    public void unregister() {
+        synchronized (ExchangeMetrics.class) {
+            if (registered != this) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                System.err.println("Error unregistering metrics MBean: " + e.getMessage());
+            }
+            registered = null;
+        }
+    }
+
+    @Override
+    public long getOrdersPlaced() {
+        return ordersPlaced.sum();
+    }
+
+    @Override
+    public long getCancels() {
+        return cancels.sum();
+    }
+
+    @Override
+    public long getEdits() {
+        return edits.sum();
+    }
+
+    @Override
+    public long getFills() {
+        return fills.sum();
+    }
+
+    @Override
+    public long getRiskRejects() {
+        long total = 0;
+        for (LongAdder rejects : riskRejects) {
+            total += rejects.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getRiskRejectsByReason() {
+        Map<String, Long> rejects = new TreeMap<>();
+        for (RiskEngine.Reject reject : RiskEngine.Reject.values()) {
+            rejects.put(reject.name(), riskRejects[reject.ordinal()].sum());
+        }
+        return rejects;
+    }
+
+    @Override
+    public synchronized double getOrdersPerSecond() {
+        updateRates();
+        return ordersPerSecond;
+    }
+
+    @Override
+    public synchronized double getCancelsPerSecond() {
+        updateRates();
+        return cancelsPerSecond;
+    }
+
+    private void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleTime;
+        if (elapsed < RATE_INTERVAL_NANOS) return;
+        long orders = getOrdersPlaced();
+        long cancelled = getCancels();
+        ordersPerSecond = (orders - rateSampleOrders) * 1e9 / elapsed;
+        cancelsPerSecond = (cancelled - rateSampleCancels) * 1e9 / elapsed;
+        rateSampleTime = now;
+        rateSampleOrders = orders;
+        rateSampleCancels = cancelled;
+    }
+
+    @Override
+    public HistogramSummary getLockWaitNanos() {
+        return new HistogramSummary(lockWait.snapshot());
+    }
+
+    @Override
+    public HistogramSummary getMatchNanos() {
+        return new HistogramSummary(matchTime.snapshot());
+    }
+
+    @Override
+    public HistogramSummary getFillsPerMatch() {
+        return new HistogramSummary(fillsPerMatch.snapshot());
+    }
+
+    @Override
+    public Map<String, Integer> getBuyDepth() {
+        Map<String, Integer> depth = new TreeMap<>();
+        // Read without the stock locks: a monitoring value may be slightly stale
+        for (OrderBook book : exchange.getOrderBooks()) {
+            depth.put(book.getStock().getSymbol(), book.getBuyOrderCount());
+        }
+        return depth;
+    }
+
+    @Override
+    public Map<String, Integer> getSellDepth() {
+        Map<String, Integer> depth = new TreeMap<>();
+        for (OrderBook book : exchange.getOrderBooks()) {
+            depth.put(book.getStock().getSymbol(), book.getSellOrderCount());
+        }
+        return depth;
+    }
+
+    @Override
+    public int getLoggerQueueSize() {
+        return Logger.getQueueSize();
+    }
+
+    @Override
+    public long getLoggerDropped() {
+        return Logger.getDroppedCount();
+    }
+
+    @Override
+    public HistogramSummary getLoggerFlushNanos() {
+        return new HistogramSummary(Logger.getFlushTimes());
+    }
+
+    @Override
+    public void resetHistograms() {
+        lockWait.reset();
+        matchTime.reset();
+        fillsPerMatch.reset();
+    }
+
+}
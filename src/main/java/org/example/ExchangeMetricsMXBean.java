@@ -0,0 +1,49 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ExchangeMetrics}, published as {@code org.example:type=StockExchange}.
+ * Latencies are in nanoseconds.
+ */
+public interface ExchangeMetricsMXBean {
+    long getOrdersPlaced();
+
+    long getCancels();
+
+    long getEdits();
+
+    long getFills();
+
+    /** Orders and edits rejected by the pre-trade risk checks */
+    long getRiskRejects();
+
+    Map<String, Long> getRiskRejectsByReason();
+
+    double getOrdersPerSecond();
+
+    double getCancelsPerSecond();
+
+    /** Time spent waiting to acquire a stock lock for a place, cancel or edit */
+    HistogramSummary getLockWaitNanos();
+
+    /** Time of one matching pass over a book, including handling its fills */
+    HistogramSummary getMatchNanos();
+
+    HistogramSummary getFillsPerMatch();
+
+    /** Resting buy orders per symbol */
+    Map<String, Integer> getBuyDepth();
+
+    /** Resting sell orders per symbol */
+    Map<String, Integer> getSellDepth();
+
+    int getLoggerQueueSize();
+
+    long getLoggerDropped();
+
+    HistogramSummary getLoggerFlushNanos();
+
+    /** Clears the histograms; counters keep counting */
+    void resetHistograms();
+}
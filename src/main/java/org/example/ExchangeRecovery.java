@@ -0,0 +1,160 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds a {@link StockExchange} after a restart from its newest {@link ExchangeSnapshot}
+ * and the {@link OrderJournal} records written after it.
+ * Places, stops, cancels and edits are applied directly to the books and fills are applied to the
+ * orders they reference, so no matching runs and no stop triggers: the resulting state is exactly
+ * the one recorded.
+ */
+public class ExchangeRecovery implements OrderJournal.Visitor {
+    private final StockExchange exchange;
+    private final ExchangeSnapshot snapshot;
+    private final List<Stock> symbols = new ArrayList<>();
+    private long[] appliedUpTo = new long[16];
+    private final List<String> traders = new ArrayList<>();
+    private long maxOrderId;
+    private long lastSequence;
+    private long ordersRestored;
+    private long fillsRestored;
+
+    private ExchangeRecovery(StockExchange exchange, ExchangeSnapshot snapshot) {
+        this.exchange = exchange;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Replays a journal directory into an exchange. Stocks that are not registered yet are
+     * added with the price they had when first journaled.
+     * @return The recovery statistics
+     */
+    public static ExchangeRecovery recover(Path journalDirectory, StockExchange exchange) throws IOException {
+        return recover(journalDirectory, null, exchange);
+    }
+
+    /**
+     * Loads the newest snapshot (if any) and then replays only the journal records recorded after it.
+     * Journal segments that lie entirely before the snapshot are not read.
+     * @param snapshotDirectory Directory holding snapshot files, or null to replay the whole journal
+     * @return The recovery statistics
+     */
+    public static ExchangeRecovery recover(Path journalDirectory, Path snapshotDirectory,
+                                           StockExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        ExchangeSnapshot snapshot = snapshotDirectory != null
+            ? ExchangeSnapshot.restoreLatest(snapshotDirectory, exchange) : null;
+        ExchangeRecovery recovery = new ExchangeRecovery(exchange, snapshot);
+        long records = OrderJournal.read(journalDirectory,
+            snapshot != null ? snapshot.getStartSequence() : 0, recovery);
+        Order.reserveOrderIds(recovery.maxOrderId);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        Logger.logEvent(String.format("Recovered %d journal records (%d orders, %d fills) in %d ms",
+            records, recovery.ordersRestored, recovery.fillsRestored, elapsedMs));
+        return recovery;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getOrdersRestored() {
+        return ordersRestored;
+    }
+
+    public long getFillsRestored() {
+        return fillsRestored;
+    }
+
+    @Override
+    public void visit(JournalRecord record) {
+        lastSequence = Math.max(lastSequence, record.getSequence());
+        switch (record.getType()) {
+            case JournalRecord.SYMBOL -> {
+                String symbol = record.getName();
+                Stock stock = exchange.getStock(symbol);
+                if (stock == null) {
+                    stock = new Stock(symbol, record.getPriceTicks() * record.getTickSize(), record.getTickSize());
+                    exchange.addStock(stock);
+                }
+                set(symbols, record.getSymbolId(), stock);
+                if (record.getSymbolId() >= appliedUpTo.length) {
+                    appliedUpTo = Arrays.copyOf(appliedUpTo, Math.max(record.getSymbolId() + 1, appliedUpTo.length * 2));
+                }
+                appliedUpTo[record.getSymbolId()] = snapshot != null ? snapshot.getSequence(symbol) : 0;
+            }
+            case JournalRecord.TRADER -> set(traders, record.getSymbolId(), record.getName());
+            default -> {
+                // Order events already contained in the snapshot are skipped
+                if (record.getSequence() > appliedUpTo[record.getSymbolId()]) {
+                    apply(record);
+                }
+            }
+        }
+    }
+
+    private void apply(JournalRecord record) {
+        switch (record.getType()) {
+            case JournalRecord.PLACE -> {
+                // The PLACE of a stop order is its trigger: it leaves the pending stops for the book
+                if (record.getStopPriceTicks() != Order.NO_STOP) {
+                    exchange.restoreCancel(record.getSide() == JournalRecord.BUY, record.getOrderId());
+                }
+                // Only orders that entered the book are journaled, so a recovered order always rests
+                exchange.restoreOrder(order(record));
+                maxOrderId = Math.max(maxOrderId, record.getOrderId());
+                ordersRestored++;
+            }
+            case JournalRecord.STOP -> {
+                exchange.restoreStop(order(record));
+                maxOrderId = Math.max(maxOrderId, record.getOrderId());
+                ordersRestored++;
+            }
+            case JournalRecord.CANCEL -> exchange.restoreCancel(record.getSide() == JournalRecord.BUY, record.getOrderId());
+            case JournalRecord.EDIT -> {
+                Order old = exchange.restoreCancel(record.getSide() == JournalRecord.BUY, record.getOrderId());
+                if (old == null) return;
+                long newOrderId = record.getRelatedOrderId();
+                Order order = old instanceof BuyOrder
+                    ? new BuyOrder(newOrderId, old.getTraderName(), old.getStock(), record.getQuantity(),
+                        record.getPriceTicks(), old.getTimeInForce(), old.getDisplayQuantity(), Order.NO_STOP)
+                    : new SellOrder(newOrderId, old.getTraderName(), old.getStock(), record.getQuantity(),
+                        record.getPriceTicks(), old.getTimeInForce(), old.getDisplayQuantity(), Order.NO_STOP);
+                exchange.restoreOrder(order);
+                maxOrderId = Math.max(maxOrderId, newOrderId);
+            }
+            case JournalRecord.FILL -> {
+                if (exchange.restoreFill(record.getOrderId(), record.getRelatedOrderId(),
+                        record.getQuantity(), record.getPriceTicks(), EpochClock.fromMillis(record.getTimestamp())) != null) {
+                    fillsRestored++;
+                }
+            }
+            default -> {
+                // Unknown record types from newer versions are skipped
+            }
+        }
+    }
+
+    private Order order(JournalRecord record) {
+        Stock stock = symbols.get(record.getSymbolId());
+        String trader = traders.get(record.getTraderId());
+        Order.TimeInForce timeInForce = Order.TimeInForce.values()[record.getTimeInForce()];
+        return record.getSide() == JournalRecord.BUY
+            ? new BuyOrder(record.getOrderId(), trader, stock, record.getQuantity(), record.getPriceTicks(),
+                timeInForce, record.getDisplayQuantity(), record.getStopPriceTicks())
+            : new SellOrder(record.getOrderId(), trader, stock, record.getQuantity(), record.getPriceTicks(),
+                timeInForce, record.getDisplayQuantity(), record.getStopPriceTicks());
+    }
+
+    private static <T> void set(List<T> list, int index, T value) {
+        while (list.size() <= index) {
+            list.add(null);
+        }
+        list.set(index, value);
+    }
+}
@@ -0,0 +1,346 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time image of all books and prices, used to restart without replaying the whole journal.
+ * Each symbol is copied under its own lock (copy-on-snapshot) together with the journal sequence
+ * at that moment, so matching on a symbol pauses only for the copy of that symbol's book and the
+ * file itself is written without holding any lock. On recovery, journal records of a symbol are
+ * applied only if they come after that symbol's sequence.
+ */
+public class ExchangeSnapshot {
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int VERSION = 4; // 2: prices stored as ticks, 3: iceberg display quantities, 4: pending stops
+    private static final int OLDEST_READABLE_VERSION = 3;
+
+    /**
+     * Copy of one symbol's state, taken while holding the stock lock
+     */
+    static final class SymbolImage {
+        final String symbol;
+        final double tickSize;
+        final long priceTicks;
+        final long sequence;
+        final Order[] buyOrders;
+        final Order[] sellOrders;
+        final int[] buyQuantities;
+        final int[] sellQuantities;
+        // Pending stops never trade, so their quantities need no copy
+        final Order[] stopOrders;
+
+        SymbolImage(String symbol, double tickSize, long priceTicks, long sequence,
+                    List<BuyOrder> buys, List<SellOrder> sells, List<? extends Order> stops) {
+            this.symbol = symbol;
+            this.tickSize = tickSize;
+            this.priceTicks = priceTicks;
+            this.sequence = sequence;
+            this.buyOrders = buys.toArray(new Order[0]);
+            this.sellOrders = sells.toArray(new Order[0]);
+            this.stopOrders = stops.toArray(new Order[0]);
+            // Quantities change while the file is written, so they are copied too
+            this.buyQuantities = new int[buyOrders.length];
+            this.sellQuantities = new int[sellOrders.length];
+            for (int i = 0; i < buyOrders.length; i++) buyQuantities[i] = buyOrders[i].getQuantity();
+            for (int i = 0; i < sellOrders.length; i++) sellQuantities[i] = sellOrders[i].getQuantity();
+        }
+    }
+
+    private final long startSequence;
+    private final long maxOrderId;
+    private final List<SymbolImage> symbols;
+    private final Map<String, Long> sequencesBySymbol;
+
+    private ExchangeSnapshot(long startSequence, long maxOrderId, List<SymbolImage> symbols) {
+        this.startSequence = startSequence;
+        this.maxOrderId = maxOrderId;
+        this.symbols = symbols;
+        this.sequencesBySymbol = new HashMap<>();
+        for (SymbolImage image : symbols) {
+            sequencesBySymbol.put(image.symbol, image.sequence);
+        }
+    }
+
+    /**
+     * @return The journal sequence before any symbol was copied; every record after it may be missing
+     */
+    public long getStartSequence() {
+        return startSequence;
+    }
+
+    /**
+     * @return The journal sequence this symbol's image includes, or the start sequence for
+     *         symbols that were not part of the snapshot
+     */
+    public long getSequence(String symbol) {
+        return sequencesBySymbol.getOrDefault(symbol, startSequence);
+    }
+
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    /**
+     * Captures the exchange symbol by symbol and writes it to {@code snapshot-<sequence>.bin}
+     * in the directory. The file appears atomically once complete.
+     * @return The path of the written snapshot
+     */
+    public static Path write(StockExchange exchange, Path directory) throws IOException {
+        ExchangeSnapshot snapshot = capture(exchange);
+        Files.createDirectories(directory);
+        long lastSequence = snapshot.startSequence;
+        for (SymbolImage image : snapshot.symbols) {
+            lastSequence = Math.max(lastSequence, image.sequence);
+        }
+        Path target = directory.resolve(String.format("%s%019d%s", FILE_PREFIX, lastSequence, FILE_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        snapshot.writeTo(temp);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Logger.logEvent(String.format("Snapshot written: %s (%d symbols)", target.getFileName(), snapshot.symbols.size()));
+        return target;
+    }
+
+    /**
+     * Writes a snapshot while the exchange keeps trading, reads it back, and then deletes the
+     * older snapshots and the journal segments whose records it already includes.
+     * @return The path of the written snapshot
+     */
+    public static Path writeAndPrune(StockExchange exchange, Path directory) throws IOException {
+        Path target = write(exchange, directory);
+        // Nothing is deleted unless the new file restores, since it is then the only way back
+        ExchangeSnapshot snapshot = read(target, exchange, new HashMap<>());
+        int snapshots = 0;
+        for (Path file : list(directory)) {
+            if (file.getFileName().toString().compareTo(target.getFileName().toString()) < 0) {
+                Files.delete(file);
+                snapshots++;
+            }
+        }
+        OrderJournal journal = exchange.getJournal();
+        int segments = journal != null ? journal.deleteSegmentsBefore(snapshot.startSequence) : 0;
+        if (snapshots > 0 || segments > 0) {
+            Logger.logEvent(String.format("Deleted %d older snapshots and %d journal segments", snapshots, segments));
+        }
+        return target;
+    }
+
+    static ExchangeSnapshot capture(StockExchange exchange) {
+        OrderJournal journal = exchange.getJournal();
+        long startSequence = journal != null ? journal.getLastSequence() : 0;
+        List<Stock> stocks = exchange.getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        List<SymbolImage> images = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            images.add(exchange.captureSymbol(stock));
+        }
+        // Every copied order was created before this point
+        long maxOrderId = Order.peekNextOrderId() - 1;
+        return new ExchangeSnapshot(startSequence, maxOrderId, images);
+    }
+
+    private void writeTo(Path path) throws IOException {
+        // Trader names are written once and referenced by index
+        Map<String, Integer> traderIndex = new HashMap<>();
+        List<String> traders = new ArrayList<>();
+        for (SymbolImage image : symbols) {
+            for (Order order : image.buyOrders) index(order.getTraderName(), traderIndex, traders);
+            for (Order order : image.sellOrders) index(order.getTraderName(), traderIndex, traders);
+            for (Order order : image.stopOrders) index(order.getTraderName(), traderIndex, traders);
+        }
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startSequence);
+            out.writeLong(maxOrderId);
+            out.writeInt(traders.size());
+            for (String trader : traders) {
+                out.writeUTF(trader);
+            }
+            out.writeInt(symbols.size());
+            for (SymbolImage image : symbols) {
+                out.writeUTF(image.symbol);
+                out.writeDouble(image.tickSize);
+                out.writeLong(image.priceTicks);
+                out.writeLong(image.sequence);
+                writeOrders(out, image.buyOrders, image.buyQuantities, traderIndex);
+                writeOrders(out, image.sellOrders, image.sellQuantities, traderIndex);
+                writeStops(out, image.stopOrders, traderIndex);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    private static void writeOrders(DataOutputStream out, Order[] orders, int[] quantities,
+                                    Map<String, Integer> traderIndex) throws IOException {
+        out.writeInt(orders.length);
+        for (int i = 0; i < orders.length; i++) {
+            out.writeLong(orders[i].getOrderId());
+            out.writeInt(traderIndex.get(orders[i].getTraderName()));
+            out.writeInt(quantities[i]);
+            out.writeLong(orders[i].getPriceTicks());
+            out.writeInt(orders[i].getDisplayQuantity());
+        }
+    }
+
+    private static void writeStops(DataOutputStream out, Order[] stops, Map<String, Integer> traderIndex)
+            throws IOException {
+        out.writeInt(stops.length);
+        for (Order stop : stops) {
+            out.writeBoolean(stop instanceof BuyOrder);
+            out.writeLong(stop.getOrderId());
+            out.writeInt(traderIndex.get(stop.getTraderName()));
+            out.writeInt(stop.getQuantity());
+            out.writeLong(stop.getPriceTicks());
+            out.writeInt(stop.getDisplayQuantity());
+            out.writeByte(stop.getTimeInForce().ordinal());
+            out.writeLong(stop.getStopPriceTicks());
+        }
+    }
+
+    private static void index(String trader, Map<String, Integer> traderIndex, List<String> traders) {
+        if (traderIndex.putIfAbsent(trader, traders.size()) == null) {
+            traders.add(trader);
+        }
+    }
+
+    /**
+     * Loads the newest snapshot in a directory that reads back intact and puts its books and
+     * prices into the exchange. Stocks that are not registered yet are added. A truncated or
+     * corrupt file is logged and skipped in favour of the next older one; the journal replay
+     * after it then simply starts from an earlier sequence.
+     * @return The loaded snapshot, or null if the directory has no readable one
+     */
+    public static ExchangeSnapshot restoreLatest(Path directory, StockExchange exchange) throws IOException {
+        List<Path> candidates = list(directory);
+        for (Path file : candidates.reversed()) {
+            Map<String, Stock> newStocks = new HashMap<>();
+            ExchangeSnapshot snapshot;
+            try {
+                snapshot = read(file, exchange, newStocks);
+            } catch (IOException | RuntimeException e) {
+                // Garbage can fail anywhere before the checksum is reached, not only as an IOException
+                Logger.logEvent("Snapshot skipped: " + file.getFileName() + " (" + e + ")");
+                continue;
+            }
+
+            // Only touch the exchange once the whole file has been verified
+            for (Stock stock : newStocks.values()) {
+                exchange.addStock(stock);
+            }
+            for (SymbolImage image : snapshot.symbols) {
+                exchange.getStock(image.symbol).setCurrentPriceTicks(image.priceTicks);
+                for (Order order : image.buyOrders) exchange.restoreOrder(order);
+                for (Order order : image.sellOrders) exchange.restoreOrder(order);
+                for (Order order : image.stopOrders) exchange.restoreStop(order);
+            }
+            Order.reserveOrderIds(snapshot.maxOrderId);
+            Logger.logEvent(String.format("Snapshot loaded: %s (%d symbols)", file.getFileName(), snapshot.symbols.size()));
+            return snapshot;
+        }
+        return null;
+    }
+
+    /**
+     * @return The snapshot files in a directory, oldest first
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                    String name = p.getFileName().toString();
+                    return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                })
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * Parses and verifies one snapshot file without changing the exchange. Orders of symbols the
+     * exchange does not know yet refer to new stocks collected in {@code newStocks}.
+     */
+    private static ExchangeSnapshot read(Path file, StockExchange exchange, Map<String, Stock> newStocks)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = in.readInt();
+            if (version < OLDEST_READABLE_VERSION || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long startSequence = in.readLong();
+            long maxOrderId = in.readLong();
+            String[] traders = new String[in.readInt()];
+            for (int i = 0; i < traders.length; i++) {
+                traders[i] = in.readUTF();
+            }
+            int symbolCount = in.readInt();
+            List<SymbolImage> images = new ArrayList<>();
+            for (int s = 0; s < symbolCount; s++) {
+                String symbol = in.readUTF();
+                double tickSize = in.readDouble();
+                long priceTicks = in.readLong();
+                long sequence = in.readLong();
+                Stock stock = exchange.getStock(symbol);
+                if (stock == null) {
+                    stock = newStocks.computeIfAbsent(symbol, k -> new Stock(k, priceTicks * tickSize, tickSize));
+                }
+                List<BuyOrder> buys = new ArrayList<>();
+                List<SellOrder> sells = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    buys.add(new BuyOrder(in.readLong(), traders[in.readInt()], stock, in.readInt(), in.readLong(),
+                        Order.TimeInForce.GOOD_TILL_CANCELLED, in.readInt(), Order.NO_STOP));
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    sells.add(new SellOrder(in.readLong(), traders[in.readInt()], stock, in.readInt(), in.readLong(),
+                        Order.TimeInForce.GOOD_TILL_CANCELLED, in.readInt(), Order.NO_STOP));
+                }
+                List<Order> stops = new ArrayList<>();
+                for (int i = version >= 4 ? in.readInt() : 0; i > 0; i--) {
+                    boolean buy = in.readBoolean();
+                    long orderId = in.readLong();
+                    String trader = traders[in.readInt()];
+                    int quantity = in.readInt();
+                    long limitTicks = in.readLong();
+                    int displayQuantity = in.readInt();
+                    Order.TimeInForce timeInForce = Order.TimeInForce.values()[in.readByte()];
+                    long stopTicks = in.readLong();
+                    stops.add(buy
+                        ? new BuyOrder(orderId, trader, stock, quantity, limitTicks, timeInForce, displayQuantity, stopTicks)
+                        : new SellOrder(orderId, trader, stock, quantity, limitTicks, timeInForce, displayQuantity, stopTicks));
+                }
+                images.add(new SymbolImage(symbol, tickSize, priceTicks, sequence, buys, sells, stops));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            return new ExchangeSnapshot(startSequence, maxOrderId, images);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmark of the {@link OrderGateway}: many connections, one virtual thread each,
+ * every one keeping a window of new orders in flight and timing each order until its ack.
+ * Buy and sell prices overlap around the market price, so part of the orders trade and the
+ * fill reports flow back on the same connections.
+ */
+public class GatewayBenchmark {
+    private final InetSocketAddress address;
+    private final List<Stock> stocks;
+    private final int connections;
+    private final int ordersPerConnection;
+    private final int window;
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final AtomicLong acks = new AtomicLong();
+    private final AtomicLong rejects = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private long elapsedNanos;
+
+    /**
+     * @param window Orders each connection sends before waiting for an ack
+     */
+    public GatewayBenchmark(InetSocketAddress address, List<Stock> stocks, int connections,
+                            int ordersPerConnection, int window) {
+        this.address = address;
+        this.stocks = stocks;
+        this.connections = connections;
+        this.ordersPerConnection = ordersPerConnection;
+        this.window = window;
+    }
+
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<LatencyHistogram>> results = new ArrayList<>(connections);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                long seed = i;
+                results.add(executor.submit(() -> runConnection(seed)));
+            }
+            for (Future<LatencyHistogram> result : results) {
+                try {
+                    ackLatency.merge(result.get());
+                } catch (ExecutionException e) {
+                    System.err.println("Gateway connection failed: " + e.getCause());
+                }
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    private LatencyHistogram runConnection(long seed) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] sentAt = new long[window];
+        long[] symbols = new long[stocks.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = GatewayProtocol.encodeSymbol(stocks.get(i).getSymbol());
+        }
+        long[] answered = new long[1];
+        GatewayClient.Listener listener = new GatewayClient.Listener() {
+            @Override
+            public void onAck(byte side, long clientOrderId, long orderId) {
+                latency.record(System.nanoTime() - sentAt[(int) (clientOrderId % window)]);
+                answered[0]++;
+                acks.incrementAndGet();
+            }
+
+            @Override
+            public void onReject(byte reason, long clientOrderId) {
+                answered[0]++;
+                rejects.incrementAndGet();
+            }
+
+            @Override
+            public void onFill(byte side, long orderId, int quantity, long priceTicks) {
+                fills.incrementAndGet();
+            }
+        };
+
+        try (GatewayClient client = new GatewayClient(address)) {
+            long sent = 0;
+            while (answered[0] < ordersPerConnection) {
+                while (sent < ordersPerConnection && sent - answered[0] < window) {
+                    int index = random.nextInt(stocks.size());
+                    long mid = stocks.get(index).getCurrentPriceTicks();
+                    boolean buy = random.nextBoolean();
+                    // Buys mostly below and sells mostly above the market, with some overlap
+                    long priceTicks = buy ? mid - random.nextInt(-2, 10) : mid + random.nextInt(-2, 10);
+                    sentAt[(int) (sent % window)] = System.nanoTime();
+                    client.newOrder(buy ? GatewayProtocol.BUY : GatewayProtocol.SELL, sent, symbols[index],
+                        1 + random.nextInt(100), priceTicks);
+                    sent++;
+                }
+                client.flush();
+                client.receive(listener);
+            }
+        }
+        return latency;
+    }
+
+    public String report() {
+        long orders = acks.get() + rejects.get();
+        double seconds = elapsedNanos / 1e9;
+        return String.format("%n📡 GATEWAY BENCHMARK: %d connections, window %d%n", connections, window)
+            + String.format("   Orders: %d acked, %d rejected in %.2f s (%.0f orders/s)%n",
+                acks.get(), rejects.get(), seconds, orders / seconds)
+            + String.format("   Fill reports: %d%n", fills.get())
+            + "   Ack latency: " + ackLatency;
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of the {@link OrderGateway}, for tests and benchmarks.
+ * Requests are buffered until {@link #flush()}, so several can be pipelined in one write.
+ * Not thread-safe; meant to be driven by one (possibly virtual) thread.
+ */
+public class GatewayClient implements AutoCloseable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Receives the gateway's responses
+     */
+    public interface Listener {
+        default void onAck(byte side, long clientOrderId, long orderId) {
+        }
+
+        default void onReject(byte reason, long clientOrderId) {
+        }
+
+        default void onFill(byte side, long orderId, int quantity, long priceTicks) {
+        }
+    }
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public GatewayClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    public void newOrder(byte side, long clientOrderId, long symbol, int quantity, long priceTicks) throws IOException {
+        reserve(GatewayProtocol.NEW_ORDER_LENGTH);
+        GatewayProtocol.putNewOrder(out, side, clientOrderId, symbol, quantity, priceTicks);
+    }
+
+    public void cancel(byte side, long clientOrderId, long orderId) throws IOException {
+        reserve(GatewayProtocol.CANCEL_LENGTH);
+        GatewayProtocol.putCancel(out, side, clientOrderId, orderId);
+    }
+
+    public void amend(byte side, long clientOrderId, long orderId, int quantity) throws IOException {
+        reserve(GatewayProtocol.AMEND_LENGTH);
+        GatewayProtocol.putAmend(out, side, clientOrderId, orderId, quantity);
+    }
+
+    private void reserve(int length) throws IOException {
+        if (out.remaining() < length) flush();
+    }
+
+    /**
+     * Sends every buffered request
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Waits for data and dispatches every complete response received.
+     * @return The number of responses dispatched
+     */
+    public int receive(Listener listener) throws IOException {
+        if (channel.read(in) < 0) throw new IOException("Gateway closed the connection");
+        in.flip();
+        int count = 0;
+        while (in.remaining() >= GatewayProtocol.HEADER_LENGTH) {
+            int at = in.position();
+            int length = in.getShort(at) & 0xFFFF;
+            if (in.remaining() < length) break;
+            switch (in.get(at + 2)) {
+                case GatewayProtocol.ACK -> listener.onAck(in.get(at + 3), in.getLong(at + 4), in.getLong(at + 12));
+                case GatewayProtocol.REJECT -> listener.onReject(in.get(at + 3), in.getLong(at + 4));
+                case GatewayProtocol.FILL -> listener.onFill(in.get(at + 3), in.getLong(at + 4),
+                    in.getInt(at + 12), in.getLong(at + 16));
+                default -> throw new IOException("Unknown message type " + in.get(at + 2));
+            }
+            in.position(at + length);
+            count++;
+        }
+        in.compact();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
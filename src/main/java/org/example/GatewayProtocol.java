@@ -0,0 +1,114 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-layout binary messages of the {@link OrderGateway}, big-endian.
+ * Every message starts with its total length (u16) and type (u8); the remaining fields sit at
+ * fixed offsets, so they are read straight out of the receive buffer.
+ *
+ * <pre>
+ * NEW_ORDER 32: side(3) clientOrderId(4) symbol(12, 8 ASCII bytes, zero padded) quantity(20) priceTicks(24)
+ * CANCEL    20: side(3) clientOrderId(4) orderId(12)
+ * AMEND     24: side(3) clientOrderId(4) orderId(12) quantity(20)
+ * ACK       20: side(3) clientOrderId(4) orderId(12)
+ * REJECT    12: reason(3) clientOrderId(4)
+ * FILL      24: side(3) orderId(4) quantity(12) priceTicks(16)
+ * </pre>
+ */
+public final class GatewayProtocol {
+    public static final byte NEW_ORDER = 1;
+    public static final byte CANCEL = 2;
+    public static final byte AMEND = 3;
+    public static final byte ACK = 4;
+    public static final byte REJECT = 5;
+    public static final byte FILL = 6;
+
+    public static final int NEW_ORDER_LENGTH = 32;
+    public static final int CANCEL_LENGTH = 20;
+    public static final int AMEND_LENGTH = 24;
+    public static final int ACK_LENGTH = 20;
+    public static final int REJECT_LENGTH = 12;
+    public static final int FILL_LENGTH = 24;
+    static final int MAX_LENGTH = 32;
+    static final int HEADER_LENGTH = 3;
+
+    public static final byte BUY = 0;
+    public static final byte SELL = 1;
+
+    public static final byte REJECT_UNKNOWN_SYMBOL = 1;
+    public static final byte REJECT_UNKNOWN_ORDER = 2;
+    public static final byte REJECT_INVALID = 3;
+    public static final byte REJECT_NOT_RUNNING = 4;
+    public static final byte REJECT_RISK = 5;
+
+    private GatewayProtocol() {
+    }
+
+    /**
+     * @return The symbol as the 8-byte field of a NEW_ORDER message
+     */
+    public static long encodeSymbol(String symbol) {
+        byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > 8) throw new IllegalArgumentException("Symbol longer than 8 characters: " + symbol);
+        long encoded = 0;
+        for (int i = 0; i < 8; i++) {
+            encoded = (encoded << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+        return encoded;
+    }
+
+    public static void putNewOrder(ByteBuffer buffer, byte side, long clientOrderId, long symbol,
+                                   int quantity, long priceTicks) {
+        int at = header(buffer, NEW_ORDER_LENGTH, NEW_ORDER, side);
+        buffer.putLong(at + 4, clientOrderId);
+        buffer.putLong(at + 12, symbol);
+        buffer.putInt(at + 20, quantity);
+        buffer.putLong(at + 24, priceTicks);
+    }
+
+    public static void putCancel(ByteBuffer buffer, byte side, long clientOrderId, long orderId) {
+        int at = header(buffer, CANCEL_LENGTH, CANCEL, side);
+        buffer.putLong(at + 4, clientOrderId);
+        buffer.putLong(at + 12, orderId);
+    }
+
+    public static void putAmend(ByteBuffer buffer, byte side, long clientOrderId, long orderId, int quantity) {
+        int at = header(buffer, AMEND_LENGTH, AMEND, side);
+        buffer.putLong(at + 4, clientOrderId);
+        buffer.putLong(at + 12, orderId);
+        buffer.putInt(at + 20, quantity);
+    }
+
+    static void putAck(ByteBuffer buffer, byte side, long clientOrderId, long orderId) {
+        int at = header(buffer, ACK_LENGTH, ACK, side);
+        buffer.putLong(at + 4, clientOrderId);
+        buffer.putLong(at + 12, orderId);
+    }
+
+    static void putReject(ByteBuffer buffer, byte reason, long clientOrderId) {
+        int at = header(buffer, REJECT_LENGTH, REJECT, reason);
+        buffer.putLong(at + 4, clientOrderId);
+    }
+
+    static void putFill(ByteBuffer buffer, byte side, long orderId, int quantity, long priceTicks) {
+        int at = header(buffer, FILL_LENGTH, FILL, side);
+        buffer.putLong(at + 4, orderId);
+        buffer.putInt(at + 12, quantity);
+        buffer.putLong(at + 16, priceTicks);
+    }
+
+    /**
+     * Writes the header at the buffer's position and advances it past the whole message
+     * @return The offset of the message
+     */
+    private static int header(ByteBuffer buffer, int length, byte type, byte third) {
+        int at = buffer.position();
+        buffer.putShort(at, (short) length);
+        buffer.put(at + 2, type);
+        buffer.put(at + 3, third);
+        buffer.position(at + length);
+        return at;
+    }
+}
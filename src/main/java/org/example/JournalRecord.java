@@ -0,0 +1,223 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Fixed-size little-endian journal record, read and written in place over a ByteBuffer.
+ * One instance is reused for every record so reading a journal does not allocate.
+ *
+ * <pre>
+ *  0 type (1)        1 side / name length (1)   2 time in force (1)   3 reserved (1)   4 symbol id (4)
+ *  8 sequence (8)   16 timestamp millis (8)    24 order id (8)  32 related order id / stop price ticks (8)
+ * 40 quantity (4)   44 trader id (4)           48 price ticks (8)   56 display quantity (4)   60 CRC32C (4)
+ * </pre>
+ * PLACE and STOP records carry the order's time in force (as its ordinal), the stop price in the
+ * related order id field (0 for an order without one) and the display quantity of an iceberg order;
+ * these fields are 0 in every other record. A STOP record holds a stop order until it triggers;
+ * the trigger is the PLACE record of the same order id.
+ * Dictionary records (SYMBOL, TRADER) store the name in bytes 16..39 and the id in the symbol id field;
+ * SYMBOL records also carry the tick size in bytes 40..47 and the price at the time in the price field.
+ */
+public final class JournalRecord {
+    public static final int SIZE = 64;
+    public static final int MAX_NAME_BYTES = 24;
+
+    public static final byte SYMBOL = 1;
+    public static final byte TRADER = 2;
+    public static final byte PLACE = 3;
+    public static final byte CANCEL = 4;
+    public static final byte EDIT = 5;
+    public static final byte FILL = 6;
+    public static final byte STOP = 7;
+
+    public static final byte BUY = 0;
+    public static final byte SELL = 1;
+
+    private static final int TYPE = 0;
+    private static final int SIDE = 1;
+    private static final int TIME_IN_FORCE = 2;
+    private static final int SYMBOL_ID = 4;
+    private static final int SEQUENCE = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int NAME = 16;
+    private static final int ORDER_ID = 24;
+    private static final int RELATED_ID = 32;
+    private static final int STOP_PRICE = 32;
+    private static final int QUANTITY = 40;
+    private static final int TRADER_ID = 44;
+    private static final int TICK_SIZE = 40;
+    private static final int PRICE = 48;
+    private static final int DISPLAY_QUANTITY = 56;
+    private static final int CHECKSUM = 60;
+
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Points this record at the bytes starting at the given offset.
+     */
+    public JournalRecord wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        return this;
+    }
+
+    public byte getType() {
+        return buffer.get(offset + TYPE);
+    }
+
+    public byte getSide() {
+        return buffer.get(offset + SIDE);
+    }
+
+    public int getSymbolId() {
+        return buffer.getInt(offset + SYMBOL_ID);
+    }
+
+    public long getSequence() {
+        return buffer.getLong(offset + SEQUENCE);
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    public long getOrderId() {
+        return buffer.getLong(offset + ORDER_ID);
+    }
+
+    public long getRelatedOrderId() {
+        return buffer.getLong(offset + RELATED_ID);
+    }
+
+    /**
+     * @return The ordinal of the time in force carried by a PLACE or STOP record
+     */
+    public byte getTimeInForce() {
+        return buffer.get(offset + TIME_IN_FORCE);
+    }
+
+    /**
+     * @return The stop price carried by a PLACE or STOP record, 0 for an order without one
+     */
+    public long getStopPriceTicks() {
+        return buffer.getLong(offset + STOP_PRICE);
+    }
+
+    public int getQuantity() {
+        return buffer.getInt(offset + QUANTITY);
+    }
+
+    public int getTraderId() {
+        return buffer.getInt(offset + TRADER_ID);
+    }
+
+    public long getPriceTicks() {
+        return buffer.getLong(offset + PRICE);
+    }
+
+    public int getDisplayQuantity() {
+        return buffer.getInt(offset + DISPLAY_QUANTITY);
+    }
+
+    /**
+     * @return The tick size carried by a SYMBOL record
+     */
+    public double getTickSize() {
+        return buffer.getDouble(offset + TICK_SIZE);
+    }
+
+    /**
+     * @return The name carried by a SYMBOL or TRADER record
+     */
+    public String getName() {
+        byte[] bytes = new byte[buffer.get(offset + SIDE) & 0xFF];
+        buffer.get(offset + NAME, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the stored checksum matches the record contents (false for torn or empty records)
+     */
+    public boolean isValid() {
+        if (getType() == 0) return false;
+        return buffer.getInt(offset + CHECKSUM) == checksum();
+    }
+
+    /**
+     * @return Whether a SYMBOL or TRADER record can hold the name, worked out without encoding it
+     */
+    static boolean fitsName(String name) {
+        if (name.length() > MAX_NAME_BYTES) return false;
+        int bytes = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            // A surrogate pair takes 4 bytes, 2 per char
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes <= MAX_NAME_BYTES;
+    }
+
+    void writeOrderEvent(byte type, byte side, int symbolId, long sequence, long timestamp,
+                         long orderId, long relatedOrderId, int quantity, int traderId, long priceTicks,
+                         int displayQuantity, byte timeInForce) {
+        clear();
+        buffer.put(offset + TYPE, type);
+        buffer.put(offset + SIDE, side);
+        buffer.put(offset + TIME_IN_FORCE, timeInForce);
+        buffer.putInt(offset + SYMBOL_ID, symbolId);
+        buffer.putLong(offset + SEQUENCE, sequence);
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+        buffer.putLong(offset + ORDER_ID, orderId);
+        buffer.putLong(offset + RELATED_ID, relatedOrderId);
+        buffer.putInt(offset + QUANTITY, quantity);
+        buffer.putInt(offset + TRADER_ID, traderId);
+        buffer.putLong(offset + PRICE, priceTicks);
+        buffer.putInt(offset + DISPLAY_QUANTITY, displayQuantity);
+        buffer.putInt(offset + CHECKSUM, checksum());
+    }
+
+    JournalRecord writeName(byte type, int id, long sequence, String name, long priceTicks, double tickSize) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name too long for the journal: " + name);
+        }
+        clear();
+        buffer.put(offset + TYPE, type);
+        buffer.put(offset + SIDE, (byte) bytes.length);
+        buffer.putInt(offset + SYMBOL_ID, id);
+        buffer.putLong(offset + SEQUENCE, sequence);
+        buffer.put(offset + NAME, bytes);
+        buffer.putDouble(offset + TICK_SIZE, tickSize);
+        buffer.putLong(offset + PRICE, priceTicks);
+        buffer.putInt(offset + CHECKSUM, checksum());
+        return this;
+    }
+
+    /**
+     * Copies the raw bytes of this record into another buffer.
+     */
+    void copyTo(ByteBuffer target, int targetOffset) {
+        target.put(targetOffset, buffer, offset, SIZE);
+    }
+
+    private void clear() {
+        for (int i = 0; i < SIZE; i += 8) {
+            buffer.putLong(offset + i, 0L);
+        }
+    }
+
+    private int checksum() {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(offset + CHECKSUM).position(offset);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(limit).position(position);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,329 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop synthetic load: generator threads issue operations on a fixed schedule, whatever
+ * the exchange's response time, so a slow exchange builds up a backlog instead of slowing the load.
+ * Latency is measured from the time an operation was scheduled to start, which corrects for
+ * coordinated omission; the time from the actual start (service time) is reported alongside.
+ * Symbols are picked with a Zipf popularity over the exchange's stocks sorted by symbol.
+ * Limit prices are seeded offsets from each symbol's price at the start of the run, so the
+ * operations a thread issues are a function of the seed and the thread's index alone. Only the
+ * interleaving of the threads is not reproducible, and with it which orders trade, the order ids
+ * and whether a cancel or edit still finds its order.
+ */
+public class LoadGenerator {
+    /**
+     * Operation types of the mix
+     */
+    public enum OpType {
+        BUY, SELL, CANCEL, EDIT
+    }
+
+    private static final int OPEN_ORDERS_PER_THREAD = 4096;
+    private static final long SPIN_THRESHOLD_NANOS = 50_000;
+
+    private final StockExchange exchange;
+    private final double ordersPerSecond;
+    private final long durationNanos;
+    private final int threadCount;
+    private final long seed;
+    private final int[] mixWeights = {45, 45, 5, 5};
+    private double zipfExponent = 1.0;
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[OpType.values().length];
+    private final LatencyHistogram[] serviceTime = new LatencyHistogram[OpType.values().length];
+    private final long[] misses = new long[OpType.values().length];
+    private long elapsedNanos;
+
+    /**
+     * @param ordersPerSecond Target rate of operations of all types, across all threads
+     * @param durationSeconds How long to keep issuing operations
+     * @param threadCount Number of generator threads sharing the rate
+     * @param seed Seed of the random streams; the same seed and starting prices give every
+     *             thread the same operations
+     */
+    public LoadGenerator(StockExchange exchange, double ordersPerSecond, double durationSeconds,
+                         int threadCount, long seed) {
+        this.exchange = exchange;
+        this.ordersPerSecond = ordersPerSecond;
+        this.durationNanos = (long) (durationSeconds * 1_000_000_000L);
+        this.threadCount = threadCount;
+        this.seed = seed;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LatencyHistogram();
+            serviceTime[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Sets the relative weights of the operation types. Cancels and edits target orders the
+     * same thread placed earlier; they are counted as misses when the order has already traded.
+     */
+    public void setMix(int buy, int sell, int cancel, int edit) {
+        mixWeights[OpType.BUY.ordinal()] = buy;
+        mixWeights[OpType.SELL.ordinal()] = sell;
+        mixWeights[OpType.CANCEL.ordinal()] = cancel;
+        mixWeights[OpType.EDIT.ordinal()] = edit;
+    }
+
+    /**
+     * @param exponent Zipf exponent of the symbol popularity; 0 is uniform, higher is more skewed
+     */
+    public void setZipfExponent(double exponent) {
+        this.zipfExponent = exponent;
+    }
+
+    /**
+     * Runs the load to completion and merges the per-thread results.
+     */
+    public void run() throws InterruptedException {
+        List<Stock> stocks = exchange.getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        Stock[] symbols = stocks.toArray(new Stock[0]);
+        double[] symbolCdf = zipfCdf(symbols.length, zipfExponent);
+        // Taken once, so prices do not depend on what traded earlier in the run
+        double[] referencePrices = new double[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            referencePrices[i] = symbols[i].getCurrentPrice();
+        }
+        double intervalNanos = 1_000_000_000.0 * threadCount / ordersPerSecond;
+
+        SplittableRandom root = new SplittableRandom(seed);
+        Worker[] workers = new Worker[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime() + 10_000_000; // Let every thread get ready first
+        for (int i = 0; i < threadCount; i++) {
+            // Thread i is offset by i intervals / threadCount so the threads interleave evenly
+            long firstStart = start + (long) (intervalNanos * i / threadCount);
+            workers[i] = new Worker("Load-" + i, root.split(), symbols, referencePrices, symbolCdf,
+                firstStart, intervalNanos);
+            threads[i] = new Thread(workers[i], "loadgen-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        for (Worker worker : workers) {
+            for (int op = 0; op < latency.length; op++) {
+                latency[op].merge(worker.latency[op]);
+                serviceTime[op].merge(worker.serviceTime[op]);
+                misses[op] += worker.misses[op];
+            }
+        }
+    }
+
+    /**
+     * @return Latency from the scheduled start of each operation of this type
+     */
+    public LatencyHistogram getLatency(OpType type) {
+        return latency[type.ordinal()];
+    }
+
+    /**
+     * @return Latency from the actual start of each operation of this type
+     */
+    public LatencyHistogram getServiceTime(OpType type) {
+        return serviceTime[type.ordinal()];
+    }
+
+    public long getMisses(OpType type) {
+        return misses[type.ordinal()];
+    }
+
+    public long getOperationCount() {
+        long total = 0;
+        for (LatencyHistogram histogram : latency) {
+            total += histogram.getCount();
+        }
+        return total;
+    }
+
+    public double getThroughput() {
+        return elapsedNanos > 0 ? getOperationCount() * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return A multi-line report of the run settings, throughput and per-operation latencies
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Load: target %.0f ops/s, %d threads, seed %d, mix %s, zipf %.2f%n",
+            ordersPerSecond, threadCount, seed, Arrays.toString(mixWeights), zipfExponent));
+        sb.append(String.format("Throughput: %d ops in %.2f s = %.0f ops/s%n",
+            getOperationCount(), elapsedNanos / 1e9, getThroughput()));
+        for (OpType type : OpType.values()) {
+            int op = type.ordinal();
+            if (latency[op].getCount() == 0) continue;
+            sb.append(String.format("%-6s latency %s%n", type, latency[op]));
+            sb.append(String.format("%-6s service %s%s%n", "", serviceTime[op],
+                misses[op] > 0 ? " misses=" + misses[op] : ""));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Cumulative probabilities of picking rank 0..n-1, with P(rank k) proportional to 1/(k+1)^exponent
+     */
+    static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= total;
+        }
+        return cdf;
+    }
+
+    /**
+     * One generator thread with its own schedule, random stream, open orders and histograms
+     */
+    private final class Worker implements Runnable {
+        private final String trader;
+        private final SplittableRandom random;
+        private final Stock[] symbols;
+        private final double[] referencePrices;
+        private final double[] symbolCdf;
+        private final long firstStart;
+        private final double intervalNanos;
+        private final int totalWeight;
+        // Recently placed orders that cancels and edits pick from
+        private final long[] openIds = new long[OPEN_ORDERS_PER_THREAD];
+        private final boolean[] openIsBuy = new boolean[OPEN_ORDERS_PER_THREAD];
+        private int openCount;
+
+        final LatencyHistogram[] latency = new LatencyHistogram[OpType.values().length];
+        final LatencyHistogram[] serviceTime = new LatencyHistogram[OpType.values().length];
+        final long[] misses = new long[OpType.values().length];
+
+        Worker(String trader, SplittableRandom random, Stock[] symbols, double[] referencePrices,
+               double[] symbolCdf, long firstStart, double intervalNanos) {
+            this.trader = trader;
+            this.random = random;
+            this.symbols = symbols;
+            this.referencePrices = referencePrices;
+            this.symbolCdf = symbolCdf;
+            this.firstStart = firstStart;
+            this.intervalNanos = intervalNanos;
+            this.totalWeight = Arrays.stream(mixWeights).sum();
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new LatencyHistogram();
+                serviceTime[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            long end = firstStart + durationNanos;
+            for (long i = 0; ; i++) {
+                long scheduled = firstStart + (long) (i * intervalNanos);
+                if (scheduled >= end) break;
+                awaitTime(scheduled);
+
+                OpType type = nextOpType();
+                long started = System.nanoTime();
+                boolean done = execute(type);
+                long finished = System.nanoTime();
+
+                // A late start (backlog) counts against the operation, not just its own run time
+                latency[type.ordinal()].record(finished - scheduled);
+                serviceTime[type.ordinal()].record(finished - started);
+                if (!done) misses[type.ordinal()]++;
+            }
+        }
+
+        private boolean execute(OpType type) {
+            switch (type) {
+                case BUY, SELL -> {
+                    int symbol = nextSymbol();
+                    Stock stock = symbols[symbol];
+                    int quantity = 1 + random.nextInt(100);
+                    // Limit price within +/- 1% of the starting price, so part of the orders cross
+                    double price = referencePrices[symbol] * (1 + (random.nextDouble() - 0.5) * 0.02);
+                    Order order;
+                    if (type == OpType.BUY) {
+                        BuyOrder buyOrder = new BuyOrder(trader, stock, quantity, price);
+                        exchange.placeBuyOrder(buyOrder);
+                        order = buyOrder;
+                    } else {
+                        SellOrder sellOrder = new SellOrder(trader, stock, quantity, price);
+                        exchange.placeSellOrder(sellOrder);
+                        order = sellOrder;
+                    }
+                    remember(order.getOrderId(), type == OpType.BUY);
+                    return true;
+                }
+                case CANCEL -> {
+                    if (openCount == 0) return false;
+                    int slot = random.nextInt(openCount);
+                    boolean buy = openIsBuy[slot];
+                    long orderId = forget(slot);
+                    return buy ? exchange.cancelBuyOrderById(orderId) : exchange.cancelSellOrderById(orderId);
+                }
+                case EDIT -> {
+                    if (openCount == 0) return false;
+                    int slot = random.nextInt(openCount);
+                    boolean buy = openIsBuy[slot];
+                    // An edited order gets a new id, so the old one is no longer tracked
+                    long orderId = forget(slot);
+                    int quantity = 1 + random.nextInt(100);
+                    return buy ? exchange.editBuyOrder(orderId, quantity) : exchange.editSellOrder(orderId, quantity);
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        private OpType nextOpType() {
+            int pick = random.nextInt(totalWeight);
+            for (OpType type : OpType.values()) {
+                pick -= mixWeights[type.ordinal()];
+                if (pick < 0) return type;
+            }
+            return OpType.BUY;
+        }
+
+        private int nextSymbol() {
+            int rank = Arrays.binarySearch(symbolCdf, random.nextDouble());
+            if (rank < 0) rank = -rank - 1;
+            return Math.min(rank, symbols.length - 1);
+        }
+
+        private void remember(long orderId, boolean buy) {
+            // When full, overwrite a random entry; the oldest orders have usually traded anyway
+            int slot = openCount < openIds.length ? openCount++ : random.nextInt(openIds.length);
+            openIds[slot] = orderId;
+            openIsBuy[slot] = buy;
+        }
+
+        private long forget(int slot) {
+            long orderId = openIds[slot];
+            openCount--;
+            openIds[slot] = openIds[openCount];
+            openIsBuy[slot] = openIsBuy[openCount];
+            return orderId;
+        }
+    }
+
+    private static void awaitTime(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
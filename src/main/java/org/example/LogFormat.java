@@ -0,0 +1,76 @@
+package org.example;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Builds the text of log and console lines by appending to a {@link StringBuilder}, which is far
+ * cheaper than {@link String#format}. The static helpers are shared by {@code toString()};
+ * an instance additionally caches the date and time down to the second, for the log writer
+ * that formats one line after another.
+ */
+final class LogFormat {
+    private final StringBuilder line = new StringBuilder(256);
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
+
+    /**
+     * @return The builder, emptied, to format the next line into
+     */
+    StringBuilder begin() {
+        line.setLength(0);
+        return line;
+    }
+
+    /**
+     * Appends the time as "[yyyy-MM-dd HH:mm:ss.SSS] "
+     */
+    StringBuilder timestamp(long epochNanos) {
+        long epochMillis = EpochClock.toMillis(epochNanos);
+        long second = Math.floorDiv(epochMillis, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedPrefix = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone).format(EpochClock.FORMATTER)
+                .substring(0, 19);
+        }
+        int millis = Math.floorMod(epochMillis, 1000);
+        line.append('[').append(cachedPrefix).append('.');
+        if (millis < 100) line.append('0');
+        if (millis < 10) line.append('0');
+        return line.append(millis).append("] ");
+    }
+
+    /**
+     * Appends the value rounded to two decimals, like {@code %.2f}
+     */
+    static StringBuilder money(StringBuilder out, double value) {
+        long cents = Math.round(value * 100);
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) out.append('0');
+        return out.append(fraction);
+    }
+
+    static StringBuilder order(StringBuilder out, String orderType, long orderId, String traderName, Stock stock,
+                               int quantity, long priceTicks) {
+        out.append(orderType).append(" Order #").append(orderId).append(" [").append(traderName).append("] - ")
+            .append(stock.getSymbol()).append(": ").append(quantity).append(" shares @ $");
+        return money(out, stock.toPrice(priceTicks));
+    }
+
+    static StringBuilder transaction(StringBuilder out, Transaction transaction) {
+        out.append("TRANSACTION: ").append(transaction.getBuyer()).append(" bought ").append(transaction.getQuantity())
+            .append(" shares of ").append(transaction.getStock().getSymbol()).append(" from ")
+            .append(transaction.getSeller()).append(" @ $");
+        money(out, transaction.getPricePerShare()).append("/share (Total: $");
+        money(out, transaction.getTotalValue()).append(") [Buy Order #").append(transaction.getBuyOrderId())
+            .append(", Sell Order #").append(transaction.getSellOrderId());
+        return out.append(']');
+    }
+}
@@ -1,75 +1,516 @@
 package org.example;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Utility class for logging events and transactions to files
+ * Utility class for logging events and transactions to files.
+ * Log calls fill a preallocated slot of a lock-free ring with the raw fields of the event
+ * (references and primitives, stamped with epoch nanos) and return; a background thread formats
+ * the lines, keeps the log files open and flushes them in batches. Callers therefore never
+ * allocate, format or wait on disk I/O (unless the ring is full and the overflow policy is
+ * {@link OverflowPolicy#BLOCK}).
  */
 public class Logger {
     private static final String TRANSACTIONS_FILE = "transactions.log";
     private static final String EVENTS_FILE = "events.log";
     private static final String PRICE_CHANGES_FILE = "price_changes.log";
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
-    public static synchronized void logTransaction(Transaction transaction) {
-        writeToFile(TRANSACTIONS_FILE, transaction.toString());
+    private static final int TRANSACTIONS = 0;
+    private static final int EVENTS = 1;
+    private static final int PRICE_CHANGES = 2;
+    private static final String[] FILE_NAMES = { TRANSACTIONS_FILE, EVENTS_FILE, PRICE_CHANGES_FILE };
+
+    // Kinds of log event, each formatted by the writer thread
+    private static final int MESSAGE = 0;
+    private static final int TRANSACTION = 1;
+    private static final int PRICE_CHANGE = 2;
+    private static final int ORDER_PLACED = 3;
+    private static final int ORDER_CANCELLED = 4;
+    private static final int ORDER_MODIFIED = 5;
+
+    /**
+     * What to do with a log line when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait until the writer frees a slot; nothing is lost */
+        BLOCK,
+        /** Discard the line and count it as dropped */
+        DROP,
+        /** Keep one line out of every sampleRate (waiting for a slot), drop the others */
+        SAMPLE
+    }
+
+    private static volatile String directory = ".";
+    private static volatile int queueCapacity = 65536;
+    private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private static volatile int sampleRate = 100;
+    private static volatile int batchSize = 512;
+    private static volatile long flushIntervalMs = 100;
+
+    private static final LongAdder enqueued = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder written = new LongAdder();
+    private static final LongAdder overflows = new LongAdder();
+    private static final StripedHistogram flushTimes = new StripedHistogram();
+
+    private static volatile AsyncWriter writer;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::shutdown, "logger-shutdown"));
     }
 
-    public static synchronized void logEvent(String event) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        writeToFile(EVENTS_FILE, String.format("[%s] %s", timestamp, event));
+    /**
+     * Changes the queue and flush settings. Pending lines are flushed first.
+     * Should be called before logging starts or while no other thread is logging.
+     * @param capacity Queue capacity in events (power of two), all preallocated
+     * @param policy What to do when the queue is full
+     * @param sample For {@link OverflowPolicy#SAMPLE}: keep one line out of this many while full
+     * @param batch Flush after this many lines have been written
+     * @param flushMs Flush at least this often while lines are pending
+     */
+    public static synchronized void configure(int capacity, OverflowPolicy policy, int sample,
+                                              int batch, long flushMs) {
+        shutdown();
+        queueCapacity = capacity;
+        overflowPolicy = policy;
+        sampleRate = Math.max(1, sample);
+        batchSize = Math.max(1, batch);
+        flushIntervalMs = Math.max(1, flushMs);
     }
 
-    public static synchronized void logPriceChange(Stock stock, double oldPrice, double newPrice) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String message = String.format("[%s] PRICE CHANGE: %s from $%.2f to $%.2f (%.2f%%)",
-            timestamp, stock.getSymbol(), oldPrice, newPrice, 
-            ((newPrice - oldPrice) / oldPrice) * 100);
-        writeToFile(PRICE_CHANGES_FILE, message);
+    /**
+     * Sets the directory the log files are written to. Pending lines are flushed first.
+     */
+    public static synchronized void setDirectory(String logDirectory) {
+        shutdown();
+        directory = logDirectory;
     }
 
-    public static synchronized void logOrderPlaced(Order order) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String message = String.format("[%s] ORDER PLACED: %s", timestamp, order);
-        writeToFile(EVENTS_FILE, message);
+    public static void logTransaction(Transaction transaction) {
+        AsyncWriter current = writer();
+        long position = claim(current);
+        if (position < 0) return;
+        LogEvent event = current.event(position);
+        event.kind = TRANSACTION;
+        event.transaction = transaction;
+        current.publish(position);
     }
 
-    public static synchronized void logOrderCancelled(Order order) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String message = String.format("[%s] ORDER CANCELLED: %s", timestamp, order);
-        writeToFile(EVENTS_FILE, message);
+    public static void logEvent(String event) {
+        AsyncWriter current = writer();
+        long position = claim(current);
+        if (position < 0) return;
+        LogEvent slot = current.event(position);
+        slot.kind = MESSAGE;
+        slot.timeNanos = EpochClock.nanos();
+        slot.text = event;
+        current.publish(position);
     }
 
-    public static synchronized void logOrderModified(Order order, int oldQuantity, int newQuantity) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String message = String.format("[%s] ORDER MODIFIED: %s - Quantity changed from %d to %d",
-            timestamp, order, oldQuantity, newQuantity);
-        writeToFile(EVENTS_FILE, message);
+    public static void logPriceChange(Stock stock, long oldPriceTicks, long newPriceTicks) {
+        AsyncWriter current = writer();
+        long position = claim(current);
+        if (position < 0) return;
+        LogEvent event = current.event(position);
+        event.kind = PRICE_CHANGE;
+        event.timeNanos = EpochClock.nanos();
+        event.stock = stock;
+        event.oldValue = oldPriceTicks;
+        event.newValue = newPriceTicks;
+        current.publish(position);
     }
 
-    private static void writeToFile(String filename, String message) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename, true))) {
-            writer.println(message);
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    public static void logOrderPlaced(Order order) {
+        logOrder(ORDER_PLACED, order, 0, 0);
+    }
+
+    public static void logOrderCancelled(Order order) {
+        logOrder(ORDER_CANCELLED, order, 0, 0);
+    }
+
+    public static void logOrderModified(Order order, int oldQuantity, int newQuantity) {
+        logOrder(ORDER_MODIFIED, order, oldQuantity, newQuantity);
+    }
+
+    /**
+     * Copies the order's fields into the event, since its quantity keeps changing after the call
+     */
+    private static void logOrder(int kind, Order order, int oldQuantity, int newQuantity) {
+        AsyncWriter current = writer();
+        long position = claim(current);
+        if (position < 0) return;
+        LogEvent event = current.event(position);
+        event.kind = kind;
+        event.timeNanos = EpochClock.nanos();
+        event.text = order.getOrderType();
+        event.trader = order.getTraderName();
+        event.stock = order.getStock();
+        event.orderId = order.getOrderId();
+        event.quantity = order.getQuantity();
+        event.priceTicks = order.getPriceTicks();
+        event.oldValue = oldQuantity;
+        event.newValue = newQuantity;
+        current.publish(position);
+    }
+
+    /**
+     * Claims the next slot of the ring, applying the overflow policy when it is full.
+     * @return The claimed position, to be filled and published; -1 if the event is dropped
+     */
+    private static long claim(AsyncWriter current) {
+        long position = current.tryClaim();
+        if (position >= 0) {
+            enqueued.increment();
+            return position;
+        }
+        if (position == AsyncWriter.CLOSED) {
+            // The writer stopped after this caller picked it up
+            dropped.increment();
+            return -1;
         }
+        overflows.increment();
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                return put(current);
+            }
+            case SAMPLE -> {
+                if (ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+                    return put(current);
+                }
+            }
+            default -> {
+            }
+        }
+        dropped.increment();
+        return -1;
+    }
+
+    private static long put(AsyncWriter current) {
+        long position;
+        while ((position = current.tryClaim()) < 0) {
+            if (!current.running) {
+                dropped.increment();
+                return -1;
+            }
+            LockSupport.parkNanos(10_000);
+        }
+        enqueued.increment();
+        return position;
+    }
+
+    private static AsyncWriter writer() {
+        AsyncWriter current = writer;
+        if (current != null) return current;
+        synchronized (Logger.class) {
+            if (writer == null) {
+                writer = new AsyncWriter(directory, queueCapacity, batchSize, flushIntervalMs);
+                writer.start();
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * Writes and flushes everything queued so far, then stops the writer thread.
+     * The next log call starts a new writer; a call that picked up the stopped writer just before
+     * counts its line as dropped.
+     */
+    public static synchronized void shutdown() {
+        AsyncWriter current = writer;
+        if (current == null) return;
+        writer = null;
+        current.stop();
+    }
+
+    /**
+     * @return Number of log lines discarded because the queue was full
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Number of times a log call found the queue full
+     */
+    public static long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    public static long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public static long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * @return Time the writer spent per flush of the log files, in nanoseconds
+     */
+    public static LatencyHistogram getFlushTimes() {
+        return flushTimes.snapshot();
+    }
+
+    public static int getQueueSize() {
+        AsyncWriter current = writer;
+        return current != null ? current.size() : 0;
     }
 
-    public static void clearLogs() {
+    public static synchronized void clearLogs() {
+        shutdown();
         clearFile(TRANSACTIONS_FILE);
         clearFile(EVENTS_FILE);
         clearFile(PRICE_CHANGES_FILE);
     }
 
     private static void clearFile(String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename, false))) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(Path.of(directory, filename).toFile(), false))) {
             // Just opening in write mode clears the file
         } catch (IOException e) {
             System.err.println("Error clearing log file: " + e.getMessage());
         }
     }
+
+    /**
+     * A reusable slot of the ring: the raw fields of one log event.
+     * Only the fields its kind needs are set; the writer clears the references once written.
+     */
+    private static final class LogEvent {
+        int kind;
+        long timeNanos;
+        String text;
+        Transaction transaction;
+        Stock stock;
+        String trader;
+        long orderId;
+        int quantity;
+        long priceTicks;
+        long oldValue;
+        long newValue;
+
+        int file() {
+            return switch (kind) {
+                case TRANSACTION -> TRANSACTIONS;
+                case PRICE_CHANGE -> PRICE_CHANGES;
+                default -> EVENTS;
+            };
+        }
+
+        /**
+         * Formats the line into the writer's builder
+         */
+        StringBuilder format(LogFormat format) {
+            StringBuilder out = format.begin();
+            if (kind == TRANSACTION) {
+                format.timestamp(transaction.getTimestampNanos());
+                return LogFormat.transaction(out, transaction);
+            }
+            format.timestamp(timeNanos);
+            switch (kind) {
+                case PRICE_CHANGE -> {
+                    out.append("PRICE CHANGE: ").append(stock.getSymbol()).append(" from $");
+                    LogFormat.money(out, stock.toPrice(oldValue)).append(" to $");
+                    LogFormat.money(out, stock.toPrice(newValue)).append(" (");
+                    LogFormat.money(out, ((double) (newValue - oldValue) / oldValue) * 100).append("%)");
+                }
+                case ORDER_PLACED -> order(out.append("ORDER PLACED: "));
+                case ORDER_CANCELLED -> order(out.append("ORDER CANCELLED: "));
+                case ORDER_MODIFIED -> order(out.append("ORDER MODIFIED: ")).append(" - Quantity changed from ")
+                    .append(oldValue).append(" to ").append(newValue);
+                default -> out.append(text);
+            }
+            return out;
+        }
+
+        private StringBuilder order(StringBuilder out) {
+            return LogFormat.order(out, text, orderId, trader, stock, quantity, priceTicks);
+        }
+
+        void clear() {
+            text = null;
+            transaction = null;
+            stock = null;
+            trader = null;
+        }
+    }
+
+    /**
+     * Background thread that owns the open log files.
+     * Its ring works like {@link MpscRingBuffer}, except that producers fill preallocated
+     * events in place instead of handing over a new object per line.
+     */
+    private static final class AsyncWriter implements Runnable {
+        // Value of tail once the stopped writer has drained the ring; no slot can be claimed after it
+        static final long CLOSED = -2;
+
+        private final LogEvent[] events;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private final int mask;
+        private long head; // Only touched by the writer thread
+        private final Writer[] files;
+        private final LogFormat format = new LogFormat();
+        private char[] chars = new char[256];
+        private final String directory;
+        private final int batchSize;
+        private final long flushIntervalNanos;
+        private final Thread thread;
+        private volatile boolean running;
+
+        AsyncWriter(String directory, int capacity, int batchSize, long flushIntervalMs) {
+            if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+            }
+            this.events = new LogEvent[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                events[i] = new LogEvent();
+                sequences.set(i, i);
+            }
+            this.mask = capacity - 1;
+            this.files = new Writer[FILE_NAMES.length];
+            this.directory = directory;
+            this.batchSize = batchSize;
+            this.flushIntervalNanos = flushIntervalMs * 1_000_000L;
+            this.thread = new Thread(this, "logger-writer");
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Claims the next slot. Safe to call from any number of threads.
+         * @return The claimed position, -1 if the ring is full, or {@link #CLOSED} if the writer has stopped
+         */
+        long tryClaim() {
+            while (true) {
+                long position = tail.get();
+                if (position == CLOSED) return CLOSED;
+                long sequence = sequences.getAcquire((int) (position & mask));
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        return position;
+                    }
+                } else if (sequence < position) {
+                    return -1; // The writer has not freed this slot yet
+                }
+            }
+        }
+
+        LogEvent event(long position) {
+            return events[(int) (position & mask)];
+        }
+
+        /**
+         * Hands a claimed and filled slot to the writer thread
+         */
+        void publish(long position) {
+            sequences.setRelease((int) (position & mask), position + 1);
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+
+        void start() {
+            running = true;
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            int unflushed = 0;
+            long lastFlush = System.nanoTime();
+            while (true) {
+                int index = (int) (head & mask);
+                if (sequences.getAcquire(index) == head + 1) {
+                    LogEvent event = events[index];
+                    write(event);
+                    event.clear();
+                    sequences.setRelease(index, head + events.length);
+                    head++;
+                    unflushed++;
+                } else if (!running) {
+                    // Ring drained: close it unless a producer claimed the next slot meanwhile,
+                    // in which case that slot is waited for and written first
+                    if (tail.compareAndSet(head, CLOSED)) break;
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(flushIntervalNanos / 4);
+                }
+
+                // Group flush: by batch size, or by time when lines are pending
+                if (unflushed >= batchSize
+                        || (unflushed > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos)) {
+                    flush();
+                    unflushed = 0;
+                    lastFlush = System.nanoTime();
+                }
+            }
+            close();
+        }
+
+        private void write(LogEvent event) {
+            try {
+                int index = event.file();
+                Writer file = files[index];
+                if (file == null) {
+                    file = new BufferedWriter(
+                        new FileWriter(Path.of(directory, FILE_NAMES[index]).toFile(), true), 1 << 16);
+                    files[index] = file;
+                }
+                StringBuilder line = event.format(format);
+                if (line.length() > chars.length) chars = new char[line.length() * 2];
+                line.getChars(0, line.length(), chars, 0);
+                file.write(chars, 0, line.length());
+                file.write(System.lineSeparator());
+                written.increment();
+            } catch (IOException e) {
+                System.err.println("Error writing to log file: " + e.getMessage());
+            }
+        }
+
+        private void flush() {
+            long start = System.nanoTime();
+            for (Writer file : files) {
+                if (file == null) continue;
+                try {
+                    file.flush();
+                } catch (IOException e) {
+                    System.err.println("Error writing to log file: " + e.getMessage());
+                }
+            }
+            flushTimes.record(System.nanoTime() - start);
+        }
+
+        private void close() {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] == null) continue;
+                try {
+                    files[i].close();
+                } catch (IOException e) {
+                    System.err.println("Error writing to log file: " + e.getMessage());
+                }
+                files[i] = null;
+            }
+        }
+    }
 }
@@ -1,16 +1,24 @@
 package org.example;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) {
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-
         // Clear previous logs
         Logger.clearLogs();
         
@@ -27,57 +35,365 @@ public class Main {
         exchange.addStock(new Stock("META", 512.32));  // Meta
         exchange.addStock(new Stock("NFLX", 628.73));  // Netflix
         
+        // Rebuild the books from the journal of a previous run, then keep journaling
+        OrderJournal journal = null;
+        Path snapshotDirectory = Path.of("snapshots");
+        if (List.of(args).contains("--journal")) {
+            try {
+                Path journalDirectory = Path.of("journal");
+                ExchangeRecovery recovery = ExchangeRecovery.recover(journalDirectory, snapshotDirectory, exchange);
+                System.out.println("Recovered " + recovery.getOrdersRestored() + " orders and "
+                    + recovery.getFillsRestored() + " fills from the journal");
+                journal = new OrderJournal(journalDirectory);
+                exchange.setJournal(journal);
+            } catch (IOException e) {
+                System.err.println("Error opening journal: " + e.getMessage());
+            }
+        }
+
+        // --snapshot-interval=S: snapshot the books every S seconds while trading, so a restart after
+        // a crash only replays the journal written since the last one
+        ScheduledExecutorService snapshotTimer = null;
+        String snapshotInterval = option(args, "snapshot-interval", null);
+        if (journal != null && snapshotInterval != null) {
+            long seconds = Long.parseLong(snapshotInterval);
+            snapshotTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "snapshot-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotTimer.scheduleWithFixedDelay(() -> {
+                try {
+                    ExchangeSnapshot.writeAndPrune(exchange, snapshotDirectory);
+                } catch (IOException | RuntimeException e) {
+                    // The next run tries again; recovery uses the previous snapshot meanwhile
+                    System.err.println("Error writing snapshot: " + e.getMessage());
+                }
+            }, seconds, seconds, TimeUnit.SECONDS);
+        }
+
+        // Keep a bounded transaction history, spilling older transactions to disk
+        String historyDirectory = option(args, "history-dir", null);
+        if (historyDirectory != null) {
+            exchange.setTransactionHistory(new TransactionHistory(
+                Integer.parseInt(option(args, "history-size", "65536")),
+                Duration.ofSeconds(Long.parseLong(option(args, "history-age-s", "0"))),
+                Path.of(historyDirectory)));
+        }
+
+        // --archive=file: also store every transaction in a columnar archive for later scans
+        TransactionArchive archive = null;
+        String archivePath = option(args, "archive", null);
+        if (archivePath != null) {
+            try {
+                archive = new TransactionArchive(Path.of(archivePath));
+                exchange.setArchive(archive);
+            } catch (IOException e) {
+                System.err.println("Error opening archive: " + e.getMessage());
+            }
+        }
+
+        // --echo=off|sampled|all, with --echo-every=N for sampled
+        String echo = option(args, "echo", null);
+        if (echo != null) {
+            exchange.setConsoleEcho(StockExchange.ConsoleEcho.valueOf(echo.toUpperCase()),
+                Integer.parseInt(option(args, "echo-every", "1000")));
+        }
+
+        // --risk=maxOpenQuantity:maxNotional:maxOrdersPerSecond:maxPosition, per trader and symbol
+        String risk = option(args, "risk", null);
+        if (risk != null) {
+            String[] limits = risk.split(":");
+            exchange.enableRiskChecks(new RiskLimits(Long.parseLong(limits[0]), Double.parseDouble(limits[1]),
+                Long.parseLong(limits[2]), Long.parseLong(limits[3])));
+        }
+
         // Start the exchange
         exchange.start();
+
+        // Optionally hand every symbol to a dedicated matcher thread
+        if (List.of(args).contains("--engine")) {
+            exchange.enableMatchingEngine(Runtime.getRuntime().availableProcessors(), 1024);
+        }
+
+        // --auction-ms=N: collect orders in call auctions uncrossed every N ms instead of matching each one
+        String auction = option(args, "auction-ms", null);
+        if (auction != null) {
+            for (Stock stock : exchange.getAllStocks()) {
+                exchange.enableAuction(stock.getSymbol(), Duration.ofMillis(Long.parseLong(auction)));
+            }
+        }
         
-        // Create buyer threads with names
-        List<Buyer> buyers = new ArrayList<>();
-        buyers.add(new Buyer("Buyer-Alice", exchange, 5, 50, 200, 1000, 8));
-        buyers.add(new Buyer("Buyer-Bob", exchange, 10, 100, 300, 1200, 7));
-        buyers.add(new Buyer("Buyer-Charlie", exchange, 3, 30, 150, 800, 10));
-        buyers.add(new Buyer("Buyer-Diana", exchange, 8, 60, 250, 1100, 9));
-        buyers.add(new Buyer("Buyer-Ethan", exchange, 15, 80, 400, 1500, 6));
+        if (List.of(args).contains("--load")) {
+            // High-rate synthetic load instead of the scripted traders
+            runLoadGenerator(exchange, args);
+        } else if (option(args, "clients", null) != null) {
+            // Large client population on virtual threads
+            runClientRuntime(exchange, args);
+        } else if (List.of(args).contains("--gateway")) {
+            // Orders over TCP instead of in-process calls
+            runGateway(exchange, args);
+        } else if (option(args, "backtest", null) != null) {
+            // Recorded order flow, replayed as fast as possible
+            runBacktest(exchange, args);
+        } else if (option(args, "cluster", null) != null) {
+            // Same symbols, partitioned across node processes
+            runCluster(exchange.getAllStocks(), args);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(10);
+
+            // Create buyer threads with names
+            List<Buyer> buyers = new ArrayList<>();
+            buyers.add(new Buyer("Buyer-Alice", exchange, 5, 50, 200, 1000, 8));
+            buyers.add(new Buyer("Buyer-Bob", exchange, 10, 100, 300, 1200, 7));
+            buyers.add(new Buyer("Buyer-Charlie", exchange, 3, 30, 150, 800, 10));
+            buyers.add(new Buyer("Buyer-Diana", exchange, 8, 60, 250, 1100, 9));
+            buyers.add(new Buyer("Buyer-Ethan", exchange, 15, 80, 400, 1500, 6));
         
-        // Create seller threads with names
-        List<Seller> sellers = new ArrayList<>();
-        sellers.add(new Seller("Seller-Frank", exchange, 5, 50, 250, 1000, 8));
-        sellers.add(new Seller("Seller-Grace", exchange, 10, 100, 350, 1200, 7));
-        sellers.add(new Seller("Seller-Henry", exchange, 3, 30, 200, 800, 10));
-        sellers.add(new Seller("Seller-Ivy", exchange, 8, 60, 300, 1100, 9));
-        sellers.add(new Seller("Seller-Jack", exchange, 15, 80, 450, 1500, 6));
+            // Create seller threads with names
+            List<Seller> sellers = new ArrayList<>();
+            sellers.add(new Seller("Seller-Frank", exchange, 5, 50, 250, 1000, 8));
+            sellers.add(new Seller("Seller-Grace", exchange, 10, 100, 350, 1200, 7));
+            sellers.add(new Seller("Seller-Henry", exchange, 3, 30, 200, 800, 10));
+            sellers.add(new Seller("Seller-Ivy", exchange, 8, 60, 300, 1100, 9));
+            sellers.add(new Seller("Seller-Jack", exchange, 15, 80, 450, 1500, 6));
         
-        List<Future<String>> sellerFutures = new ArrayList<>();
-        List<Future<String>> buyersFutures = new ArrayList<>();
-        // Start all threads
-        for (Buyer buyer : buyers) {
-            Future<String> future = executor.submit(buyer);
-            buyersFutures.add(future);
-        }
+            List<Future<String>> sellerFutures = new ArrayList<>();
+            List<Future<String>> buyersFutures = new ArrayList<>();
+            // Start all threads
+            for (Buyer buyer : buyers) {
+                Future<String> future = executor.submit(buyer);
+                buyersFutures.add(future);
+            }
         
-        for (Seller seller : sellers) {
-            Future<String> future = executor.submit(seller);
-            sellerFutures.add(future);
-        }
+            for (Seller seller : sellers) {
+                Future<String> future = executor.submit(seller);
+                sellerFutures.add(future);
+            }
+        
+            // Wait for all threads to complete
+            for (Future<String> future : sellerFutures) {
+                try {
+                    String result = future.get();   //Read the output for each seller thread
+                    System.out.println("Task completed: " + result);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            for (Future<String> future : buyersFutures) {
+                try {
+                    String result = future.get();  //Read the output for each buyer thread
+                    System.out.println("Task completed: " + result);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
         
-        // Wait for all threads to complete
-        for (Future<String> future : sellerFutures) {
+            executor.shutdown();
+        }
+
+        exchange.getTransactionHistory().close();
+
+        if (archive != null) {
+            exchange.setArchive(null);
+            printArchiveSummary(archive);
+        }
+
+        if (snapshotTimer != null) {
+            snapshotTimer.shutdown();
             try {
-                String result = future.get();   //Read the output for each seller thread
-                System.out.println("Task completed: " + result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+                snapshotTimer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
 
-        for (Future<String> future : buyersFutures) {
+        if (journal != null) {
             try {
-                String result = future.get();  //Read the output for each buyer thread
-                System.out.println("Task completed: " + result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+                // Next start loads this image and only replays what is journaled after it
+                ExchangeSnapshot.writeAndPrune(exchange, snapshotDirectory);
+            } catch (IOException e) {
+                System.err.println("Error writing snapshot: " + e.getMessage());
+            }
+            exchange.setJournal(null);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
             }
         }
-        
-        executor.shutdown();
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the {@link LoadGenerator} with settings from {@code --name=value} arguments:
+     * rate (ops/s), duration (s), threads, seed, mix (buy,sell,cancel,edit weights) and zipf.
+     */
+    private static void runLoadGenerator(StockExchange exchange, String[] args) {
+        LoadGenerator generator = new LoadGenerator(exchange,
+            Double.parseDouble(option(args, "rate", "10000")),
+            Double.parseDouble(option(args, "duration", "10")),
+            Integer.parseInt(option(args, "threads", "4")),
+            Long.parseLong(option(args, "seed", "42")));
+        String[] mix = option(args, "mix", "45,45,5,5").split(",");
+        generator.setMix(Integer.parseInt(mix[0]), Integer.parseInt(mix[1]),
+            Integer.parseInt(mix[2]), Integer.parseInt(mix[3]));
+        generator.setZipfExponent(Double.parseDouble(option(args, "zipf", "1.0")));
+
+        // Echoing every order to the console would dominate the measured latency
+        withoutConsoleEcho(exchange, generator::run);
+        System.out.println(generator.report());
+    }
+
+    /**
+     * Runs the {@link ClientRuntime} with {@code --clients=N}, an optional
+     * {@code --population=} spec (see {@link PopulationSpec#parse}) and {@code --pin-threshold-ms=}.
+     */
+    private static void runClientRuntime(StockExchange exchange, String[] args) {
+        String spec = option(args, "population", null);
+        ClientRuntime runtime = new ClientRuntime(exchange,
+            spec != null ? PopulationSpec.parse(spec) : PopulationSpec.defaultSpec(),
+            Integer.parseInt(option(args, "clients", "100000")),
+            Duration.ofMillis(Long.parseLong(option(args, "pin-threshold-ms", "1"))));
+        withoutConsoleEcho(exchange, runtime::run);
+        System.out.println(runtime.report());
+    }
+
+    /**
+     * Starts {@code --cluster=N} node processes (with {@code --node-heap=} as their -Xmx), trades
+     * the given symbols through a {@link ClusterRouter} from a few threads, moves a symbol to
+     * another partition halfway and prints the merged summary.
+     */
+    private static void runCluster(List<Stock> symbols, String[] args) {
+        int partitions = Integer.parseInt(option(args, "cluster", "2"));
+        int ordersPerThread = Integer.parseInt(option(args, "orders", "2000"));
+        try (ClusterRouter router = ClusterRouter.launchLocal(partitions, Path.of("cluster"),
+                List.of("-Xmx" + option(args, "node-heap", "256m")))) {
+            for (Stock stock : symbols) {
+                router.addStock(new Stock(stock.getSymbol(), stock.getCurrentPrice()));
+            }
+            String moved = symbols.get(0).getSymbol();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(thread);
+                    for (int i = 0; i < ordersPerThread; i++) {
+                        if (thread == 0 && i == ordersPerThread / 2) {
+                            router.moveSymbol(moved, (router.getPartition(moved) + 1) % partitions);
+                            System.out.println("🔀 Moved " + moved + " to partition " + router.getPartition(moved));
+                        }
+                        Stock stock = router.getStock(symbols.get(random.nextInt(symbols.size())).getSymbol());
+                        double price = stock.getCurrentPrice() * (0.98 + random.nextDouble() * 0.04);
+                        int quantity = 1 + random.nextInt(100);
+                        if (random.nextBoolean()) {
+                            router.placeBuyOrder(new BuyOrder("Trader-" + thread, stock, quantity, price));
+                        } else {
+                            router.placeSellOrder(new SellOrder("Trader-" + thread, stock, quantity, price));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            System.out.println(router.summary());
+        } catch (IOException e) {
+            System.err.println("Error starting cluster: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts the {@link OrderGateway} on {@code --gateway-port=} (0 for any) with {@code --reactors=}
+     * selector threads and runs the {@link GatewayBenchmark} against it with {@code --connections=},
+     * {@code --orders=} per connection and {@code --window=} orders in flight per connection.
+     */
+    private static void runGateway(StockExchange exchange, String[] args) {
+        try (OrderGateway gateway = new OrderGateway(exchange,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(option(args, "gateway-port", "0"))),
+                Integer.parseInt(option(args, "reactors", "2")))) {
+            gateway.start();
+            GatewayBenchmark benchmark = new GatewayBenchmark(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.getPort()),
+                exchange.getAllStocks(),
+                Integer.parseInt(option(args, "connections", "1000")),
+                Integer.parseInt(option(args, "orders", "200")),
+                Integer.parseInt(option(args, "window", "8")));
+            withoutConsoleEcho(exchange, benchmark::run);
+            System.out.println(benchmark.report());
+        } catch (IOException e) {
+            System.err.println("Error starting gateway: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays {@code --backtest=} (a journal directory or a CSV file, see {@link Backtester}) on
+     * {@code --backtest-threads=} threads.
+     */
+    private static void runBacktest(StockExchange exchange, String[] args) {
+        Backtester backtester = new Backtester(exchange, Integer.parseInt(option(args, "backtest-threads", "1")));
+        Path input = Path.of(option(args, "backtest", null));
+        withoutConsoleEcho(exchange, () -> backtester.replay(input));
+        System.out.println(backtester.report());
+    }
+
+    /**
+     * Closes the archive and prints every symbol's trades in it, scanned in parallel
+     */
+    private static void printArchiveSummary(TransactionArchive archive) {
+        try {
+            archive.close();
+            try (TransactionArchiveReader reader = new TransactionArchiveReader(archive.getPath())) {
+                System.out.println("\n🗄️ ARCHIVE: " + reader.getTransactionCount() + " transactions in "
+                    + reader.getBlockCount() + " blocks (" + archive.getPath() + ")");
+                for (String symbol : reader.getSymbols()) {
+                    System.out.println("   " + reader.summarize(symbol, null, null));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading archive: " + e.getMessage());
+        }
+    }
+
+    private interface Task {
+        void run() throws InterruptedException, IOException;
+    }
+
+    /**
+     * Runs the task with the exchange's echo off, so no console line is even formatted,
+     * and with anything else printed in the meantime discarded.
+     */
+    private static void withoutConsoleEcho(StockExchange exchange, Task task) {
+        PrintStream console = System.out;
+        StockExchange.ConsoleEcho echo = exchange.getConsoleEcho();
+        int sampleEvery = exchange.getEchoSampleEvery();
+        exchange.setConsoleEcho(StockExchange.ConsoleEcho.OFF, 1);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            task.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            System.setOut(console);
+            exchange.setConsoleEcho(echo, sampleEvery);
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
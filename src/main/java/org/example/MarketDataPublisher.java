@@ -0,0 +1,297 @@
+package org.example;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes per-symbol best bid/ask, last trade and trade prints to any number of subscribers.
+ * The matching side only writes a few numbers into a preallocated per-symbol slot and marks the
+ * symbol dirty; it never touches a subscriber. A single publisher thread turns each dirty symbol
+ * into one immutable {@link Quote} and fans it out to the subscribers' conflating mailboxes, so a
+ * slow consumer costs the matcher nothing.
+ */
+public class MarketDataPublisher {
+    public static final int DEFAULT_MAX_SYMBOLS = 1024;
+    public static final int DEFAULT_TRADE_CAPACITY = 1024;
+    private static final int TRADE_QUEUE_CAPACITY = 1 << 16;
+    private static final int SPINS_BEFORE_PARK = 1000;
+
+    /**
+     * Book and last-trade state of one symbol. Written under the stock lock and read by the
+     * publisher thread without locking: the writer makes the version odd while it updates the
+     * fields (a seqlock), and the reader retries if the version changed while it was reading.
+     */
+    static final class SymbolState {
+        final int index;
+        final Stock stock;
+        final AtomicBoolean dirty = new AtomicBoolean();
+        private volatile long version;
+        private long bidTicks;
+        private long bidQuantity;
+        private long askTicks;
+        private long askQuantity;
+        private long lastTicks;
+        private int lastQuantity;
+        private long volume;
+        private long tradeCount;
+
+        SymbolState(int index, Stock stock) {
+            this.index = index;
+            this.stock = stock;
+        }
+
+        private void beginWrite() {
+            version = version + 1;
+            VarHandle.storeStoreFence();
+        }
+
+        private void endWrite() {
+            version = version + 1;
+        }
+
+        Quote read() {
+            while (true) {
+                long before = version;
+                if ((before & 1) == 0) {
+                    long bid = bidTicks, bidQty = bidQuantity, ask = askTicks, askQty = askQuantity;
+                    long last = lastTicks, vol = volume, trades = tradeCount;
+                    int lastQty = lastQuantity;
+                    VarHandle.loadLoadFence();
+                    if (version == before) {
+                        return new Quote(stock, before >>> 1, bid, bidQty, ask, askQty, last, lastQty, vol, trades);
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private final int maxSymbols;
+    private final Map<String, SymbolState> symbols = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final MpscRingBuffer<SymbolState> dirtySymbols;
+    private final MpscRingBuffer<Transaction> trades;
+    private final LongAdder tradesDropped = new LongAdder();
+    private final ConcurrentLinkedQueue<MarketDataSubscription> joining = new ConcurrentLinkedQueue<>();
+    private final List<MarketDataSubscription> subscribers = new ArrayList<>(); // Publisher thread only
+    private volatile int subscriberCount;
+    private volatile long quotesPublished;
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running;
+
+    public MarketDataPublisher() {
+        this(DEFAULT_MAX_SYMBOLS);
+    }
+
+    /**
+     * @param maxSymbols Number of symbols that can be published; the mailboxes are sized for it
+     */
+    public MarketDataPublisher(int maxSymbols) {
+        if (maxSymbols <= 0) {
+            throw new IllegalArgumentException("maxSymbols must be positive: " + maxSymbols);
+        }
+        this.maxSymbols = maxSymbols;
+        // Every symbol is queued at most once, so this queue never fills up
+        this.dirtySymbols = new MpscRingBuffer<>(Integer.highestOneBit(Math.max(1, maxSymbols - 1)) << 1);
+        this.trades = new MpscRingBuffer<>(TRADE_QUEUE_CAPACITY);
+        this.thread = new Thread(this::run, "market-data-publisher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Publishes what is still pending and stops the publisher thread.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registers a consumer. It first receives the current quote of every symbol that has one.
+     * @param tradeCapacity Number of trade prints the mailbox holds (power of two)
+     */
+    public MarketDataSubscription subscribe(int tradeCapacity) {
+        MarketDataSubscription subscription = new MarketDataSubscription(this, maxSymbols, tradeCapacity);
+        // Joins are handled by the publisher thread, so every mailbox has a single producer
+        joining.add(subscription);
+        wakeUp();
+        return subscription;
+    }
+
+    public MarketDataSubscription subscribe() {
+        return subscribe(DEFAULT_TRADE_CAPACITY);
+    }
+
+    void unsubscribe(MarketDataSubscription subscription) {
+        // The publisher drops closed subscriptions on its next pass
+        wakeUp();
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount;
+    }
+
+    public long getQuotesPublished() {
+        return quotesPublished;
+    }
+
+    /**
+     * @return Trade prints lost because the publisher itself fell behind the matchers
+     */
+    public long getTradesDropped() {
+        return tradesDropped.sum();
+    }
+
+    /**
+     * @return The latest state of a symbol, or null if it has not been published
+     */
+    public Quote getQuote(String symbol) {
+        SymbolState state = symbols.get(symbol);
+        return state != null ? state.read() : null;
+    }
+
+    // Called by the exchange while holding the stock lock
+
+    void onBookChanged(OrderBook book) {
+        SymbolState state = stateFor(book.getStock());
+        if (state == null) return;
+        state.beginWrite();
+        state.bidTicks = book.getBestBidTicks();
+        state.bidQuantity = book.getBestBidQuantity();
+        state.askTicks = book.getBestAskTicks();
+        state.askQuantity = book.getBestAskQuantity();
+        state.endWrite();
+        markDirty(state);
+    }
+
+    void onTrade(Transaction transaction) {
+        SymbolState state = stateFor(transaction.getStock());
+        if (state == null) return;
+        state.beginWrite();
+        state.lastTicks = transaction.getPriceTicks();
+        state.lastQuantity = transaction.getQuantity();
+        state.volume += transaction.getQuantity();
+        state.tradeCount++;
+        state.endWrite();
+        if (!trades.offer(transaction)) {
+            tradesDropped.increment();
+        }
+        markDirty(state);
+    }
+
+    private SymbolState stateFor(Stock stock) {
+        SymbolState state = symbols.get(stock.getSymbol());
+        if (state != null) return state;
+        return symbols.computeIfAbsent(stock.getSymbol(), symbol -> {
+            int index = nextIndex.getAndIncrement();
+            if (index >= maxSymbols) {
+                if (index == maxSymbols) Logger.logEvent("Market data not published for " + symbol + ": more than " + maxSymbols + " symbols");
+                return null;
+            }
+            return new SymbolState(index, stock);
+        });
+    }
+
+    private void markDirty(SymbolState state) {
+        if (!state.dirty.get() && state.dirty.compareAndSet(false, true)) {
+            dirtySymbols.offer(state);
+            if (sleeping) wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        int idleSpins = 0;
+        while (true) {
+            boolean worked = admitSubscribers();
+            worked |= publishTrades();
+            worked |= publishQuotes();
+            if (worked) {
+                for (MarketDataSubscription subscription : subscribers) {
+                    subscription.wakeUp();
+                }
+                idleSpins = 0;
+                continue;
+            }
+            if (!running) {
+                break; // Everything pending has been published
+            }
+            if (++idleSpins < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+                continue;
+            }
+            // Announce that we are going to sleep, then re-check so a concurrent update is not missed
+            sleeping = true;
+            if (dirtySymbols.isEmpty() && trades.isEmpty() && joining.isEmpty() && running) {
+                LockSupport.park(this);
+            }
+            sleeping = false;
+            idleSpins = 0;
+        }
+    }
+
+    private boolean admitSubscribers() {
+        boolean changed = subscribers.removeIf(MarketDataSubscription::isClosed);
+        MarketDataSubscription subscription;
+        while ((subscription = joining.poll()) != null) {
+            if (subscription.isClosed()) continue;
+            for (SymbolState state : symbols.values()) {
+                subscription.deliverQuote(state, state.read());
+            }
+            subscribers.add(subscription);
+            changed = true;
+        }
+        subscriberCount = subscribers.size();
+        return changed;
+    }
+
+    private boolean publishTrades() {
+        boolean published = false;
+        Transaction transaction;
+        while ((transaction = trades.poll()) != null) {
+            for (MarketDataSubscription subscription : subscribers) {
+                subscription.deliverTrade(transaction);
+            }
+            published = true;
+        }
+        return published;
+    }
+
+    private boolean publishQuotes() {
+        boolean published = false;
+        SymbolState state;
+        while ((state = dirtySymbols.poll()) != null) {
+            // Cleared before reading, so a change made while we read marks the symbol again
+            state.dirty.set(false);
+            Quote quote = state.read();
+            for (MarketDataSubscription subscription : subscribers) {
+                subscription.deliverQuote(state, quote);
+            }
+            quotesPublished++;
+            published = true;
+        }
+        return published;
+    }
+}
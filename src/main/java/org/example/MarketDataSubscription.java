@@ -0,0 +1,130 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded mailbox of one market-data consumer.
+ * Quotes are conflated per symbol: the mailbox holds at most one quote per symbol and a newer
+ * quote replaces one that was not taken yet, so a slow consumer skips to the latest state instead
+ * of falling behind. Trade prints are queued up to a fixed capacity and counted as dropped beyond it.
+ * The mailbox is filled by the publisher thread and must be drained by a single consumer thread.
+ */
+public class MarketDataSubscription implements AutoCloseable {
+    private final MarketDataPublisher publisher;
+    private final AtomicReferenceArray<Quote> latest;
+    private final MpscRingBuffer<MarketDataPublisher.SymbolState> pending;
+    private final MpscRingBuffer<Transaction> trades;
+    private volatile Thread waiter;
+    private volatile boolean closed;
+    private volatile long quotesConflated;
+    private volatile long tradesDropped;
+    private boolean delivered; // Publisher thread only
+
+    MarketDataSubscription(MarketDataPublisher publisher, int maxSymbols, int tradeCapacity) {
+        this.publisher = publisher;
+        this.latest = new AtomicReferenceArray<>(maxSymbols);
+        // Every symbol is queued at most once, so this queue never fills up
+        this.pending = new MpscRingBuffer<>(Integer.highestOneBit(Math.max(1, maxSymbols - 1)) << 1);
+        this.trades = new MpscRingBuffer<>(tradeCapacity);
+    }
+
+    /**
+     * @return The newest quote of the next symbol that changed, or null if none is waiting
+     */
+    public Quote pollQuote() {
+        MarketDataPublisher.SymbolState state = pending.poll();
+        return state != null ? latest.getAndSet(state.index, null) : null;
+    }
+
+    /**
+     * @return The oldest trade print not taken yet, or null if none is waiting
+     */
+    public Transaction pollTrade() {
+        return trades.poll();
+    }
+
+    /**
+     * Waits until a quote or a trade print is available.
+     * @return true if something is waiting, false if the timeout elapsed or the subscription was closed
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!hasPending()) {
+            if (closed) return false;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            // Announce the waiter, then re-check so a concurrent delivery is not missed
+            waiter = Thread.currentThread();
+            if (!hasPending() && !closed) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waiter = null;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return true;
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty() || !trades.isEmpty();
+    }
+
+    /**
+     * @return How many quotes were replaced by a newer one before the consumer took them
+     */
+    public long getQuotesConflated() {
+        return quotesConflated;
+    }
+
+    /**
+     * @return How many trade prints were dropped because the consumer did not keep up
+     */
+    public long getTradesDropped() {
+        return tradesDropped;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops deliveries to this mailbox; quotes and prints already in it can still be taken.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        publisher.unsubscribe(this);
+        Thread thread = waiter;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    // Called by the publisher thread only
+
+    void deliverQuote(MarketDataPublisher.SymbolState state, Quote quote) {
+        delivered = true;
+        if (latest.getAndSet(state.index, quote) == null) {
+            pending.offer(state);
+        } else {
+            quotesConflated++;
+        }
+    }
+
+    void deliverTrade(Transaction transaction) {
+        delivered = true;
+        if (!trades.offer(transaction)) {
+            tradesDropped++;
+        }
+    }
+
+    /**
+     * Unparks a waiting consumer if anything was delivered since the last call.
+     */
+    void wakeUp() {
+        if (!delivered) return;
+        delivered = false;
+        Thread thread = waiter;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,285 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer matching engine: every symbol belongs to exactly one matcher thread.
+ * Producers publish commands into the owning matcher's lock-free ring buffer and get a
+ * future that completes with the result, so the stock lock is never contended by clients.
+ * Callbacks attached to the returned futures run on the matcher thread and must be short.
+ */
+public class MatchingEngine {
+    private static final int SPINS_BEFORE_PARK = 1000;
+
+    private enum CommandType {
+        PLACE_BUY, PLACE_SELL, CANCEL_BUY, CANCEL_SELL, EDIT_BUY, EDIT_SELL, TASK
+    }
+
+    private static final class Command {
+        final CommandType type;
+        final Order order;
+        final long orderId;
+        final int quantity;
+        final BooleanSupplier task;
+        final CompletableFuture<Boolean> result;
+
+        Command(CommandType type, Order order, long orderId, int quantity) {
+            this(type, order, orderId, quantity, null);
+        }
+
+        Command(CommandType type, Order order, long orderId, int quantity, BooleanSupplier task) {
+            this.type = type;
+            this.order = order;
+            this.orderId = orderId;
+            this.quantity = quantity;
+            this.task = task;
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    private final StockExchange exchange;
+    private final Matcher[] matchers;
+    private final Map<String, Matcher> matchersBySymbol;
+    private volatile boolean running;
+    // Producers between their running check and their offer, which stop() waits for
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    /**
+     * @param exchange The exchange whose books the matchers own
+     * @param matcherCount Number of matcher threads; symbols are spread round-robin across them
+     * @param queueCapacity Capacity of each matcher's ring buffer (power of two)
+     */
+    public MatchingEngine(StockExchange exchange, int matcherCount, int queueCapacity) {
+        this.exchange = exchange;
+        this.matchers = new Matcher[matcherCount];
+        this.matchersBySymbol = new ConcurrentHashMap<>();
+        for (int i = 0; i < matcherCount; i++) {
+            matchers[i] = new Matcher(i, queueCapacity);
+        }
+        List<Stock> stocks = exchange.getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        for (int i = 0; i < stocks.size(); i++) {
+            matchersBySymbol.put(stocks.get(i).getSymbol(), matchers[i % matcherCount]);
+        }
+    }
+
+    public void start() {
+        running = true;
+        for (Matcher matcher : matchers) {
+            matcher.thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting commands, lets every matcher drain its queue and waits for the threads to exit.
+     */
+    public void stop() {
+        running = false;
+        for (Matcher matcher : matchers) {
+            LockSupport.unpark(matcher.thread);
+        }
+        // An interrupt does not cut the shutdown short, or queued futures would never complete
+        boolean interrupted = false;
+        for (Matcher matcher : matchers) {
+            while (matcher.thread.isAlive()) {
+                try {
+                    matcher.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // A producer that saw the engine running may still be offering its command
+        while (submitting.get() > 0) {
+            Thread.onSpinWait();
+        }
+        for (Matcher matcher : matchers) {
+            // Commands published while the matcher was exiting are run here so no future is left pending
+            Command command;
+            while ((command = matcher.queue.poll()) != null) {
+                matcher.execute(command);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getMatcherCount() {
+        return matchers.length;
+    }
+
+    /**
+     * Moves a symbol to a specific matcher, e.g. to group related symbols on one thread.
+     * Should only be called while no commands for the symbol are in flight.
+     */
+    public void assignSymbol(String symbol, int matcherIndex) {
+        matchersBySymbol.put(symbol, matchers[matcherIndex]);
+    }
+
+    public CompletableFuture<Boolean> placeBuyOrder(BuyOrder order) {
+        return submit(order.getStock().getSymbol(), new Command(CommandType.PLACE_BUY, order, order.getOrderId(), 0));
+    }
+
+    public CompletableFuture<Boolean> placeSellOrder(SellOrder order) {
+        return submit(order.getStock().getSymbol(), new Command(CommandType.PLACE_SELL, order, order.getOrderId(), 0));
+    }
+
+    public CompletableFuture<Boolean> cancelBuyOrder(BuyOrder order) {
+        return submit(order.getStock().getSymbol(), new Command(CommandType.CANCEL_BUY, order, order.getOrderId(), 0));
+    }
+
+    public CompletableFuture<Boolean> cancelSellOrder(SellOrder order) {
+        return submit(order.getStock().getSymbol(), new Command(CommandType.CANCEL_SELL, order, order.getOrderId(), 0));
+    }
+
+    public CompletableFuture<Boolean> editBuyOrder(BuyOrder order, int newQuantity) {
+        return submit(order.getStock().getSymbol(),
+            new Command(CommandType.EDIT_BUY, order, order.getOrderId(), newQuantity));
+    }
+
+    public CompletableFuture<Boolean> editSellOrder(SellOrder order, int newQuantity) {
+        return submit(order.getStock().getSymbol(),
+            new Command(CommandType.EDIT_SELL, order, order.getOrderId(), newQuantity));
+    }
+
+    /**
+     * Runs work on the symbol's matcher thread, in order with the symbol's other commands,
+     * e.g. a whole batch of orders for the symbol
+     */
+    CompletableFuture<Boolean> submitTask(String symbol, BooleanSupplier task) {
+        return submit(symbol, new Command(CommandType.TASK, null, 0, 0, task));
+    }
+
+    private CompletableFuture<Boolean> submit(String symbol, Command command) {
+        // Counted before the running check, so stop() either sees this producer or it sees the engine stopped
+        submitting.incrementAndGet();
+        try {
+            if (!running) {
+                return reject(command);
+            }
+            Matcher matcher = matcherFor(symbol);
+            int attempts = 0;
+            while (!matcher.queue.offer(command)) {
+                if (!running) {
+                    return reject(command);
+                }
+                // Queue is full: back off until the matcher catches up
+                if (++attempts < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(1_000);
+                }
+            }
+            if (matcher.sleeping) {
+                LockSupport.unpark(matcher.thread);
+            }
+            return command.result;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Completes a command that will not run, releasing the risk reservation of a new order
+     */
+    private static CompletableFuture<Boolean> reject(Command command) {
+        if (command.type == CommandType.PLACE_BUY || command.type == CommandType.PLACE_SELL) {
+            RiskEngine.release(command.order);
+        }
+        command.result.complete(false);
+        return command.result;
+    }
+
+    private Matcher matcherFor(String symbol) {
+        Matcher matcher = matchersBySymbol.get(symbol);
+        if (matcher == null) {
+            // Symbols added after the engine was created are assigned by hash
+            matcher = matchers[Math.floorMod(symbol.hashCode(), matchers.length)];
+            Matcher existing = matchersBySymbol.putIfAbsent(symbol, matcher);
+            if (existing != null) matcher = existing;
+        }
+        return matcher;
+    }
+
+    /**
+     * @return The number of commands waiting in each matcher's queue
+     */
+    public List<Integer> getQueueDepths() {
+        List<Integer> depths = new ArrayList<>(matchers.length);
+        for (Matcher matcher : matchers) {
+            depths.add(matcher.queue.size());
+        }
+        return depths;
+    }
+
+    private final class Matcher implements Runnable {
+        private final MpscRingBuffer<Command> queue;
+        private final Thread thread;
+        private volatile boolean sleeping;
+
+        Matcher(int index, int queueCapacity) {
+            this.queue = new MpscRingBuffer<>(queueCapacity);
+            this.thread = new Thread(this, "matcher-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idleSpins = 0;
+            while (true) {
+                Command command = queue.poll();
+                if (command != null) {
+                    idleSpins = 0;
+                    execute(command);
+                    continue;
+                }
+                if (!running) {
+                    break; // Queue fully drained
+                }
+                if (++idleSpins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                // Announce that we are going to sleep, then re-check so a concurrent offer is not missed
+                sleeping = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                idleSpins = 0;
+            }
+        }
+
+        private void execute(Command command) {
+            boolean result;
+            try {
+                result = switch (command.type) {
+                    case PLACE_BUY -> exchange.executePlaceBuyOrder((BuyOrder) command.order);
+                    case PLACE_SELL -> exchange.executePlaceSellOrder((SellOrder) command.order);
+                    case CANCEL_BUY -> exchange.executeCancelBuyOrder((BuyOrder) command.order);
+                    case CANCEL_SELL -> exchange.executeCancelSellOrder((SellOrder) command.order);
+                    case EDIT_BUY -> exchange.executeEditBuyOrder(command.orderId, command.quantity);
+                    case EDIT_SELL -> exchange.executeEditSellOrder(command.orderId, command.quantity);
+                    case TASK -> command.task.getAsBoolean();
+                };
+            } catch (RuntimeException e) {
+                command.result.completeExceptionally(e);
+                return;
+            }
+            command.result.complete(result);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring buffer.
+ * Every slot carries a sequence number: producers claim a slot with a CAS on the tail
+ * and publish it by advancing the slot's sequence, so the consumer never takes a lock.
+ */
+public class MpscRingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private long head; // Only touched by the consumer
+
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.tail = new AtomicLong();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Publishes an element. Safe to call from any number of threads.
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.getAcquire(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.setPlain(index, element);
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false; // The consumer has not freed this slot yet
+            }
+            // Another producer claimed the slot first, retry with the new tail
+        }
+    }
+
+    /**
+     * Takes the oldest published element. Must only be called by the single consumer.
+     * @return The element, or null if nothing has been published
+     */
+    public E poll() {
+        int index = (int) (head & mask);
+        if (sequences.getAcquire(index) != head + 1) {
+            return null;
+        }
+        E element = buffer.getPlain(index);
+        buffer.setPlain(index, null);
+        sequences.setRelease(index, head + capacity);
+        head++;
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * @return An estimate of the number of elements waiting to be consumed
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
@@ -8,23 +8,120 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public abstract class Order {
     private static final AtomicLong orderIdGenerator = new AtomicLong(1);
-    
+
+    /**
+     * Stop price of an order that is not a stop order
+     */
+    public static final long NO_STOP = 0;
+
+    /**
+     * How long an order stays in the book
+     */
+    public enum TimeInForce {
+        /** Rests until it is filled or cancelled */
+        GOOD_TILL_CANCELLED,
+        /** Trades what it can on arrival; the rest is cancelled */
+        IMMEDIATE_OR_CANCEL,
+        /** Trades its whole quantity on arrival, or is cancelled without trading */
+        FILL_OR_KILL
+    }
+
     private final long orderId;
     private final String traderName;
     private final Stock stock;
     private volatile int quantity;
-    private final LocalDateTime timestamp;
+    private final long priceTicks;
+    private final TimeInForce timeInForce;
+    private final int displayQuantity;
+    private final long stopPriceTicks;
+    private final long timestampNanos;
     private volatile boolean cancelled;
+    // Shares left in the displayed slice of an iceberg order, set under the stock's lock
+    private int displayed;
+    // The account the order is risk-checked against, if it passed a pre-trade check
+    RiskEngine.Account riskAccount;
+    // The order an edit replaced this one with, set under the stock's lock
+    volatile Order replacement;
+    // The trader's entry in the exchange's trader index, set when the order first rests
+    TraderIndex.Entry traderEntry;
 
+    /**
+     * Creates a limit order priced at the stock's current market price
+     */
     public Order(String traderName, Stock stock, int quantity) {
-        this.orderId = orderIdGenerator.getAndIncrement();
+        this(orderIdGenerator.getAndIncrement(), traderName, stock, quantity, stock.getCurrentPriceTicks());
+    }
+
+    /**
+     * @param price The limit price, rounded to the nearest tick of the stock
+     */
+    public Order(String traderName, Stock stock, int quantity, double price) {
+        this(orderIdGenerator.getAndIncrement(), traderName, stock, quantity, stock.toTicks(price));
+    }
+
+    /**
+     * @param price The limit price, rounded to the nearest tick of the stock
+     * @param displayQuantity Shares shown in the book at a time, for an iceberg order; 0 to show them all
+     * @param stopPrice The price the last trade has to reach before the order enters the book, or 0
+     */
+    public Order(String traderName, Stock stock, int quantity, double price, TimeInForce timeInForce,
+                 int displayQuantity, double stopPrice) {
+        this(orderIdGenerator.getAndIncrement(), traderName, stock, quantity, stock.toTicks(price), timeInForce,
+            displayQuantity, stopPrice > 0 ? stock.toTicks(stopPrice) : NO_STOP);
+    }
+
+    /**
+     * Recreates an order with a known id, e.g. when replaying the journal
+     */
+    Order(long orderId, String traderName, Stock stock, int quantity, long priceTicks) {
+        this(orderId, traderName, stock, quantity, priceTicks, TimeInForce.GOOD_TILL_CANCELLED, 0, NO_STOP);
+    }
+
+    Order(long orderId, String traderName, Stock stock, int quantity, long priceTicks, TimeInForce timeInForce,
+          int displayQuantity, long stopPriceTicks) {
+        if (quantity <= 0 || priceTicks <= 0) {
+            throw new IllegalArgumentException("Quantity and price must be positive: " + quantity + " shares @ "
+                + priceTicks + " ticks");
+        }
+        if (displayQuantity < 0 || stopPriceTicks < 0) {
+            throw new IllegalArgumentException("Negative display quantity or stop price");
+        }
+        if (displayQuantity > 0 && timeInForce != TimeInForce.GOOD_TILL_CANCELLED) {
+            throw new IllegalArgumentException("An iceberg order has to rest in the book");
+        }
+        this.orderId = orderId;
         this.traderName = traderName;
         this.stock = stock;
         this.quantity = quantity;
-        this.timestamp = LocalDateTime.now();
+        this.priceTicks = priceTicks;
+        this.timeInForce = timeInForce;
+        this.displayQuantity = displayQuantity;
+        this.stopPriceTicks = stopPriceTicks;
+        this.timestampNanos = EpochClock.nanos();
         this.cancelled = false;
     }
 
+    /**
+     * Makes sure newly created orders get ids above the given one
+     */
+    static void reserveOrderIds(long lastUsedId) {
+        orderIdGenerator.accumulateAndGet(lastUsedId + 1, Math::max);
+    }
+
+    /**
+     * Takes an id for an order created with a known price in ticks
+     */
+    static long newOrderId() {
+        return orderIdGenerator.getAndIncrement();
+    }
+
+    /**
+     * @return The id the next new order will get
+     */
+    static long peekNextOrderId() {
+        return orderIdGenerator.get();
+    }
+
     public long getOrderId() {
         return orderId;
     }
@@ -41,12 +138,103 @@ public abstract class Order {
         return quantity;
     }
 
+    /**
+     * Reads the quantity without taking the order's monitor, for lock-free book readers
+     */
+    int peekQuantity() {
+        return quantity;
+    }
+
     public synchronized void reduceQuantity(int amount) {
         this.quantity -= amount;
     }
 
+    /**
+     * @return The shares other traders see in the book: the current slice of an iceberg order,
+     *         otherwise the whole quantity. Must be called while holding the stock's lock.
+     */
+    int displayedQuantity() {
+        return displayQuantity == 0 ? quantity : displayed;
+    }
+
+    /**
+     * Reads the displayed quantity without the stock's lock, for lock-free book readers
+     */
+    int peekDisplayedQuantity() {
+        return displayQuantity == 0 ? quantity : Math.min(displayed, quantity);
+    }
+
+    /**
+     * Shows the next slice of an iceberg order. Must be called while holding the stock's lock.
+     */
+    void refillDisplay() {
+        displayed = Math.min(displayQuantity, quantity);
+    }
+
+    /**
+     * Takes traded shares off the displayed slice. Must be called while holding the stock's lock.
+     */
+    void reduceDisplayed(int amount) {
+        displayed = Math.max(0, displayed - amount);
+    }
+
+    /**
+     * @return The limit price: the highest a buyer pays or the lowest a seller accepts
+     */
+    public double getPrice() {
+        return stock.toPrice(priceTicks);
+    }
+
+    /**
+     * @return The limit price in ticks of the stock
+     */
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    public TimeInForce getTimeInForce() {
+        return timeInForce;
+    }
+
+    /**
+     * @return Shares shown in the book at a time, or 0 if the order is not an iceberg
+     */
+    public int getDisplayQuantity() {
+        return displayQuantity;
+    }
+
+    public boolean isIceberg() {
+        return displayQuantity > 0;
+    }
+
+    /**
+     * @return The trigger price of a stop order: a buy stop enters the book once a trade reaches
+     *         it or above, a sell stop once a trade reaches it or below. NaN if the order is not a stop.
+     */
+    public double getStopPrice() {
+        return stopPriceTicks != NO_STOP ? stock.toPrice(stopPriceTicks) : Double.NaN;
+    }
+
+    /**
+     * @return The trigger price in ticks of the stock, or {@link #NO_STOP}
+     */
+    public long getStopPriceTicks() {
+        return stopPriceTicks;
+    }
+
+    public boolean isStop() {
+        return stopPriceTicks != NO_STOP;
+    }
+
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return EpochClock.toDateTime(timestampNanos);
+    }
+
+    /**
+     * @return When the order was created, in nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     public boolean isCancelled() {
@@ -61,7 +249,12 @@ public abstract class Order {
 
     @Override
     public String toString() {
-        return String.format("%s Order #%d [%s] - %s: %d shares", 
-            getOrderType(), orderId, traderName, stock.getSymbol(), quantity);
+        StringBuilder out = LogFormat.order(new StringBuilder(64), getOrderType(), orderId, traderName, stock,
+            quantity, priceTicks);
+        if (displayQuantity > 0) out.append(", showing ").append(displayQuantity);
+        if (stopPriceTicks != NO_STOP) LogFormat.money(out.append(", stop @ $"), stock.toPrice(stopPriceTicks));
+        if (timeInForce == TimeInForce.IMMEDIATE_OR_CANCEL) out.append(", IOC");
+        if (timeInForce == TimeInForce.FILL_OR_KILL) out.append(", FOK");
+        return out.toString();
     }
 }
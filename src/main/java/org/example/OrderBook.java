@@ -0,0 +1,488 @@
+package org.example;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Limit order book for a single stock with price-time priority.
+ * Bids and asks are kept in sorted price levels, each level being a FIFO queue.
+ * Not thread-safe: callers must hold the stock's lock, except for {@link #getDepth} and
+ * {@link #getSnapshot}. Every change makes the book's version odd while it is under way (a
+ * seqlock), so those readers copy the book without the lock and retry if it changed meanwhile.
+ * Stop orders wait outside the bids and asks, keyed by stop price, until a trade reaches them;
+ * lock-free readers do not see them.
+ */
+public class OrderBook {
+    // A reader gives up on reading optimistically after this many changes got in its way
+    private static final int OPTIMISTIC_READS = 8;
+    // Passed to matchCrossing for continuous matching, where each trade has its own price
+    private static final long NO_CLEARING_PRICE = -1;
+
+    /**
+     * Receives every fill produced by {@link #match(FillHandler)}
+     */
+    public interface FillHandler {
+        void onFill(BuyOrder buyOrder, SellOrder sellOrder, int quantity, long priceTicks);
+    }
+
+    private final Stock stock;
+    private final BookSide<BuyOrder> bids;
+    private final BookSide<SellOrder> asks;
+    private final BookSide<BuyOrder> buyStops;
+    private final BookSide<SellOrder> sellStops;
+    private volatile long version;
+    private int writeDepth; // Nesting of changes, only touched under the stock's lock
+    private long arrivals; // Orders that entered the bids and asks, only touched under the stock's lock
+    private volatile boolean auction;
+
+    public OrderBook(Stock stock) {
+        this.stock = stock;
+        this.bids = new BookSide<>(true);
+        this.asks = new BookSide<>(false);
+        this.buyStops = new BookSide<>(false, true);
+        this.sellStops = new BookSide<>(true, true);
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    /**
+     * @return The handle of the resting order, used for O(1) cancel and lookup
+     */
+    public OrderNode<BuyOrder> addBuyOrder(BuyOrder order) {
+        beginWrite();
+        OrderNode<BuyOrder> node = bids.add(order);
+        node.arrival = ++arrivals;
+        endWrite();
+        return node;
+    }
+
+    /**
+     * @return The handle of the resting order, used for O(1) cancel and lookup
+     */
+    public OrderNode<SellOrder> addSellOrder(SellOrder order) {
+        beginWrite();
+        OrderNode<SellOrder> node = asks.add(order);
+        node.arrival = ++arrivals;
+        endWrite();
+        return node;
+    }
+
+    public boolean removeBuyOrder(OrderNode<BuyOrder> node) {
+        beginWrite();
+        boolean removed = bids.remove(node);
+        endWrite();
+        return removed;
+    }
+
+    public boolean removeSellOrder(OrderNode<SellOrder> node) {
+        beginWrite();
+        boolean removed = asks.remove(node);
+        endWrite();
+        return removed;
+    }
+
+    /**
+     * Holds a buy stop order until a trade reaches its stop price.
+     * @return The handle of the pending stop, used for O(1) cancel
+     */
+    public OrderNode<BuyOrder> addBuyStop(BuyOrder order) {
+        return buyStops.add(order);
+    }
+
+    /**
+     * Holds a sell stop order until a trade reaches its stop price.
+     * @return The handle of the pending stop, used for O(1) cancel
+     */
+    public OrderNode<SellOrder> addSellStop(SellOrder order) {
+        return sellStops.add(order);
+    }
+
+    public boolean removeBuyStop(OrderNode<BuyOrder> node) {
+        return buyStops.remove(node);
+    }
+
+    public boolean removeSellStop(OrderNode<SellOrder> node) {
+        return sellStops.remove(node);
+    }
+
+    public int getStopOrderCount() {
+        return buyStops.orderCount() + sellStops.orderCount();
+    }
+
+    public void addStopOrdersTo(Collection<? super Order> target) {
+        buyStops.addTo(target);
+        sellStops.addTo(target);
+    }
+
+    /**
+     * Takes out the next stop order that a trade at the given price triggers: a buy stop at or
+     * below the price, or a sell stop at or above it. Only the stop level nearest to the price
+     * is looked at on each side, so this is O(1) when nothing triggers.
+     * @return The triggered order, oldest first within a stop price, or null if none triggers
+     */
+    public Order pollTriggeredStop(long priceTicks) {
+        PriceLevel<BuyOrder> buyLevel = buyStops.best();
+        if (buyLevel != null && buyLevel.getPriceTicks() <= priceTicks) {
+            OrderNode<BuyOrder> node = buyLevel.peek();
+            buyStops.remove(node);
+            return node.order;
+        }
+        PriceLevel<SellOrder> sellLevel = sellStops.best();
+        if (sellLevel != null && sellLevel.getPriceTicks() >= priceTicks) {
+            OrderNode<SellOrder> node = sellLevel.peek();
+            sellStops.remove(node);
+            return node.order;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a fill-or-kill order would fill in full on arrival. Hidden iceberg shares
+     * count. Only the levels the order reaches are visited, and only until enough is found.
+     */
+    public boolean canFill(Order order) {
+        long needed = order.getQuantity();
+        BookSide<?> opposite = order instanceof BuyOrder ? asks : bids;
+        for (int rank = 0; rank < opposite.levelCount() && needed > 0; rank++) {
+            PriceLevel<?> level = opposite.level(rank);
+            if (opposite.isBid() ? level.getPriceTicks() < order.getPriceTicks()
+                                 : level.getPriceTicks() > order.getPriceTicks()) break;
+            needed -= level.getTotalQuantity();
+        }
+        return needed <= 0;
+    }
+
+    /**
+     * Applies a recorded fill to a resting buy order without matching.
+     * @return true if the order was fully filled and removed
+     */
+    public boolean reduceBuyOrder(OrderNode<BuyOrder> node, int quantity) {
+        beginWrite();
+        boolean filled = bids.reduce(node, quantity);
+        endWrite();
+        return filled;
+    }
+
+    /**
+     * Applies a recorded fill to a resting sell order without matching.
+     * @return true if the order was fully filled and removed
+     */
+    public boolean reduceSellOrder(OrderNode<SellOrder> node, int quantity) {
+        beginWrite();
+        boolean filled = asks.reduce(node, quantity);
+        endWrite();
+        return filled;
+    }
+
+    /**
+     * @return The highest bid price, or NaN if there are no bids
+     */
+    public double getBestBid() {
+        PriceLevel<BuyOrder> best = bids.best();
+        return best != null ? stock.toPrice(best.getPriceTicks()) : Double.NaN;
+    }
+
+    /**
+     * @return The highest bid price in ticks, or Long.MIN_VALUE if there are no bids
+     */
+    public long getBestBidTicks() {
+        PriceLevel<BuyOrder> best = bids.best();
+        return best != null ? best.getPriceTicks() : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return The lowest ask price, or NaN if there are no asks
+     */
+    public double getBestAsk() {
+        PriceLevel<SellOrder> best = asks.best();
+        return best != null ? stock.toPrice(best.getPriceTicks()) : Double.NaN;
+    }
+
+    /**
+     * @return The lowest ask price in ticks, or Long.MAX_VALUE if there are no asks
+     */
+    public long getBestAskTicks() {
+        PriceLevel<SellOrder> best = asks.best();
+        return best != null ? best.getPriceTicks() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The quantity displayed at the best bid, or 0 if there are no bids
+     */
+    public long getBestBidQuantity() {
+        PriceLevel<BuyOrder> best = bids.best();
+        return best != null ? best.getDisplayedQuantity() : 0;
+    }
+
+    /**
+     * @return The quantity displayed at the best ask, or 0 if there are no asks
+     */
+    public long getBestAskQuantity() {
+        PriceLevel<SellOrder> best = asks.best();
+        return best != null ? best.getDisplayedQuantity() : 0;
+    }
+
+    public int getBuyOrderCount() {
+        return bids.orderCount();
+    }
+
+    public int getSellOrderCount() {
+        return asks.orderCount();
+    }
+
+    public void addBuyOrdersTo(Collection<? super BuyOrder> target) {
+        bids.addTo(target);
+    }
+
+    public void addSellOrdersTo(Collection<? super SellOrder> target) {
+        asks.addTo(target);
+    }
+
+    /**
+     * Matches crossing orders until the best bid is below the best ask.
+     * Only the crossing levels are visited. Each trade executes at the price of the
+     * order that was resting first, which trades at most its displayed quantity; the other
+     * order trades its whole quantity.
+     * @param handler Called once per fill, after both orders have been reduced
+     * @return The number of fills
+     */
+    public int match(FillHandler handler) {
+        if (!crosses()) return 0;
+        beginWrite();
+        try {
+            return matchCrossing(handler, NO_CLEARING_PRICE);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return Whether the book is in a call auction: orders only accumulate until the next uncross
+     */
+    public boolean isAuction() {
+        return auction;
+    }
+
+    void setAuction(boolean auction) {
+        this.auction = auction;
+    }
+
+    /**
+     * Finds the price a call auction clears at: the one that executes the most shares, then
+     * leaves the smallest surplus on either side, then is closest to the reference price.
+     * Hidden iceberg shares count.
+     * Only prices of the crossing levels are candidates, so this is O(crossing levels).
+     * @param referenceTicks Usually the last traded price
+     * @return The clearing price in ticks, or -1 if the book does not cross
+     */
+    public long getClearingPriceTicks(long referenceTicks) {
+        if (!crosses()) return NO_CLEARING_PRICE;
+        long lowestTicks = asks.best().getPriceTicks();
+        long highestTicks = bids.best().getPriceTicks();
+        // Crossing levels of both sides in ascending price order, with their quantities
+        int bidCount = crossingLevels(bids, lowestTicks);
+        int askCount = crossingLevels(asks, highestTicks);
+        long[] bidTicks = new long[bidCount];
+        long[] bidQuantities = new long[bidCount];
+        long demand = 0;
+        for (int i = 0; i < bidCount; i++) {
+            PriceLevel<BuyOrder> level = bids.level(bidCount - 1 - i);
+            bidTicks[i] = level.getPriceTicks();
+            bidQuantities[i] = level.getTotalQuantity();
+            demand += bidQuantities[i];
+        }
+
+        // Walk the candidate prices upwards: supply grows with each ask level reached, demand
+        // shrinks by each bid level passed
+        long bestTicks = NO_CLEARING_PRICE;
+        long bestVolume = 0;
+        long bestSurplus = Long.MAX_VALUE;
+        long supply = 0;
+        int bid = 0;
+        int ask = 0;
+        while (bid < bidCount || ask < askCount) {
+            long askTicks = ask < askCount ? asks.level(ask).getPriceTicks() : Long.MAX_VALUE;
+            long priceTicks = Math.min(askTicks, bid < bidCount ? bidTicks[bid] : Long.MAX_VALUE);
+            while (ask < askCount && asks.level(ask).getPriceTicks() == priceTicks) {
+                supply += asks.level(ask++).getTotalQuantity();
+            }
+            long volume = Math.min(demand, supply);
+            long surplus = Math.abs(demand - supply);
+            if (volume > bestVolume || (volume == bestVolume && (surplus < bestSurplus || (surplus == bestSurplus
+                    && Math.abs(priceTicks - referenceTicks) < Math.abs(bestTicks - referenceTicks))))) {
+                bestTicks = priceTicks;
+                bestVolume = volume;
+                bestSurplus = surplus;
+            }
+            while (bid < bidCount && bidTicks[bid] == priceTicks) {
+                demand -= bidQuantities[bid++];
+            }
+        }
+        return bestTicks;
+    }
+
+    /**
+     * Uncrosses the book after a call auction: every trade executes at the clearing price,
+     * orders filling in price-time priority until one side no longer reaches it.
+     * @param clearingTicks The price from {@link #getClearingPriceTicks}
+     * @return The number of fills
+     */
+    public int uncross(FillHandler handler, long clearingTicks) {
+        if (clearingTicks == NO_CLEARING_PRICE || !crosses()) return 0;
+        beginWrite();
+        try {
+            return matchCrossing(handler, clearingTicks);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return How many of the side's best levels reach the price
+     */
+    private static int crossingLevels(BookSide<?> side, long priceTicks) {
+        int count = 0;
+        while (count < side.levelCount()) {
+            long levelTicks = side.level(count).getPriceTicks();
+            if (side.isBid() ? levelTicks < priceTicks : levelTicks > priceTicks) break;
+            count++;
+        }
+        return count;
+    }
+
+    private boolean crosses() {
+        PriceLevel<BuyOrder> bid = bids.best();
+        PriceLevel<SellOrder> ask = asks.best();
+        return bid != null && ask != null && bid.getPriceTicks() >= ask.getPriceTicks();
+    }
+
+    /**
+     * @param clearingTicks The auction's clearing price, or NO_CLEARING_PRICE to match continuously
+     */
+    private int matchCrossing(FillHandler handler, long clearingTicks) {
+        int fills = 0;
+        while (!bids.isEmpty() && !asks.isEmpty()) {
+            PriceLevel<BuyOrder> bidLevel = bids.best();
+            PriceLevel<SellOrder> askLevel = asks.best();
+            if (bidLevel.getPriceTicks() < askLevel.getPriceTicks()) break;
+            if (clearingTicks != NO_CLEARING_PRICE
+                    && (bidLevel.getPriceTicks() < clearingTicks || askLevel.getPriceTicks() > clearingTicks)) break;
+
+            OrderNode<BuyOrder> buyNode = bidLevel.peek();
+            OrderNode<SellOrder> sellNode = askLevel.peek();
+            BuyOrder buyOrder = buyNode.order;
+            SellOrder sellOrder = sellNode.order;
+
+            // The order resting first trades at most its displayed slice, in case it is an iceberg
+            boolean buyFirst = buyNode.arrival < sellNode.arrival;
+            int tradedQuantity = buyFirst
+                ? Math.min(buyOrder.displayedQuantity(), sellOrder.getQuantity())
+                : Math.min(buyOrder.getQuantity(), sellOrder.displayedQuantity());
+            long priceTicks = clearingTicks != NO_CLEARING_PRICE ? clearingTicks
+                : buyFirst ? bidLevel.getPriceTicks() : askLevel.getPriceTicks();
+
+            bids.reduce(buyNode, tradedQuantity);
+            asks.reduce(sellNode, tradedQuantity);
+            fills++;
+            handler.onFill(buyOrder, sellOrder, tradedQuantity, priceTicks);
+        }
+        return fills;
+    }
+
+    /**
+     * @return The version of the book, which grows with every change; odd while a change is under way
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Aggregated depth of the best levels of both sides, in O(levels) and normally without
+     * taking the stock's lock. Falls back to the lock only if the book keeps changing.
+     * @param maxLevels Number of levels per side at most
+     */
+    public BookDepth getDepth(int maxLevels) {
+        long[] bidTicks = new long[maxLevels];
+        long[] bidQuantities = new long[maxLevels];
+        int[] bidOrders = new int[maxLevels];
+        long[] askTicks = new long[maxLevels];
+        long[] askQuantities = new long[maxLevels];
+        int[] askOrders = new int[maxLevels];
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long before = version;
+            if ((before & 1) == 0) {
+                int bidLevels = bids.copyLevels(maxLevels, bidTicks, bidQuantities, bidOrders);
+                int askLevels = asks.copyLevels(maxLevels, askTicks, askQuantities, askOrders);
+                VarHandle.loadLoadFence();
+                if (bidLevels >= 0 && askLevels >= 0 && version == before) {
+                    return new BookDepth(stock, before >>> 1, bidTicks, bidQuantities, bidOrders, bidLevels,
+                        askTicks, askQuantities, askOrders, askLevels);
+                }
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (stock.getLock()) {
+            int bidLevels = bids.copyLevels(maxLevels, bidTicks, bidQuantities, bidOrders);
+            int askLevels = asks.copyLevels(maxLevels, askTicks, askQuantities, askOrders);
+            return new BookDepth(stock, version >>> 1, bidTicks, bidQuantities, bidOrders, bidLevels,
+                askTicks, askQuantities, askOrders, askLevels);
+        }
+    }
+
+    /**
+     * Copies every resting order as of one version of the book, normally without taking the
+     * stock's lock. Falls back to the lock only if the book keeps changing.
+     */
+    public BookSnapshot getSnapshot() {
+        List<BookSnapshot.Entry> bidEntries = new ArrayList<>();
+        List<BookSnapshot.Entry> askEntries = new ArrayList<>();
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long before = version;
+            if ((before & 1) == 0) {
+                boolean copied = bids.copyOrders(bidEntries) && asks.copyOrders(askEntries);
+                VarHandle.loadLoadFence();
+                if (copied && version == before) {
+                    return new BookSnapshot(stock, before >>> 1, bidEntries, askEntries);
+                }
+                bidEntries.clear();
+                askEntries.clear();
+            }
+            Thread.onSpinWait();
+        }
+        synchronized (stock.getLock()) {
+            bids.copyOrders(bidEntries);
+            asks.copyOrders(askEntries);
+            return new BookSnapshot(stock, version >>> 1, bidEntries, askEntries);
+        }
+    }
+
+    /**
+     * Groups the changes made until {@link #endUpdate()} into one version, so readers never see
+     * the book in between, e.g. with an order added but not yet matched. May be nested.
+     * Must be called while holding the stock's lock.
+     */
+    void beginUpdate() {
+        beginWrite();
+    }
+
+    void endUpdate() {
+        endWrite();
+    }
+
+    private void beginWrite() {
+        if (writeDepth++ == 0) {
+            version = version + 1;
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    private void endWrite() {
+        if (--writeDepth == 0) {
+            version = version + 1;
+        }
+    }
+}
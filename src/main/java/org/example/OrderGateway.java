@@ -0,0 +1,539 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP order-entry gateway speaking the {@link GatewayProtocol}.
+ * A few selector threads (reactors) each serve many non-blocking connections. Inbound messages
+ * are decoded in place from each connection's receive buffer; the new orders of one read are handed
+ * to the exchange as a batch, so a burst takes each symbol's lock once. Acks and rejects are written to the connection's send buffer on the same thread. Fill reports
+ * are queued per connection by the matching thread and written by the connection's reactor, so
+ * a slow client never blocks matching. A client that lets its fill queue overflow is disconnected.
+ * Amend is a cancel/replace: editing an order already gives up its time priority, and this way
+ * the ack can carry the new order id. The replacement passes the risk checks before the original
+ * is cancelled, so a rejected amend leaves the original order resting.
+ */
+public class OrderGateway implements AutoCloseable {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int FILL_QUEUE_CAPACITY = 4096;
+
+    /**
+     * An order entered through the gateway, with the connection that owns it
+     */
+    private static final class GatewayOrder {
+        final Order order;
+        final Session session;
+
+        GatewayOrder(Order order, Session session) {
+            this.order = order;
+            this.session = session;
+        }
+    }
+
+    private final class Session {
+        final SocketChannel channel;
+        final Reactor reactor;
+        final String traderName;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final MpscRingBuffer<Transaction> buyFills = new MpscRingBuffer<>(FILL_QUEUE_CAPACITY);
+        final MpscRingBuffer<Transaction> sellFills = new MpscRingBuffer<>(FILL_QUEUE_CAPACITY);
+        final AtomicBoolean fillsQueued = new AtomicBoolean();
+        // Ids of this connection's entries in the order map, so closing it does not scan the map
+        final Set<Long> orderIds = ConcurrentHashMap.newKeySet();
+        volatile boolean overflowed;
+        SelectionKey key;
+        boolean closed;
+
+        Session(SocketChannel channel, Reactor reactor, long id) {
+            this.channel = channel;
+            this.reactor = reactor;
+            this.traderName = "Gateway-" + id;
+        }
+    }
+
+    /**
+     * Symbol field to stock, open addressing with linear probing. Replaced as a whole when
+     * stocks are added, so lookups need no lock.
+     */
+    private static final class SymbolTable {
+        final long[] keys;
+        final Stock[] stocks;
+        final int mask;
+        final int size;
+
+        SymbolTable(List<Stock> all) {
+            int capacity = Integer.highestOneBit(Math.max(4, all.size() * 4) - 1) << 1;
+            keys = new long[capacity];
+            stocks = new Stock[capacity];
+            mask = capacity - 1;
+            size = all.size();
+            for (Stock stock : all) {
+                if (stock.getSymbol().length() > 8) continue; // Not reachable through the protocol
+                long key = GatewayProtocol.encodeSymbol(stock.getSymbol());
+                int slot = hash(key) & mask;
+                while (keys[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = key;
+                stocks[slot] = stock;
+            }
+        }
+
+        Stock get(long key) {
+            for (int slot = hash(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return stocks[slot];
+            }
+            return null;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final StockExchange exchange;
+    private final ServerSocketChannel server;
+    private final Reactor[] reactors;
+    private final Map<Long, GatewayOrder> orders = new ConcurrentHashMap<>();
+    private final StockExchange.TradeListener tradeListener = this::onTrade;
+    private final StockExchange.CancelListener cancelListener = order -> forget(order.getOrderId());
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private volatile SymbolTable symbols;
+    private volatile boolean running;
+    private int nextReactor; // Accepting reactor only
+
+    /**
+     * @param address Address to listen on; port 0 picks any free port
+     * @param reactorThreads Number of selector threads
+     */
+    public OrderGateway(StockExchange exchange, InetSocketAddress address, int reactorThreads) throws IOException {
+        this.exchange = exchange;
+        this.symbols = new SymbolTable(exchange.getAllStocks());
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address, 1024);
+        this.server.configureBlocking(false);
+        this.reactors = new Reactor[reactorThreads];
+        for (int i = 0; i < reactorThreads; i++) {
+            reactors[i] = new Reactor(i);
+        }
+        server.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public void start() {
+        running = true;
+        exchange.addTradeListener(tradeListener);
+        exchange.addCancelListener(cancelListener);
+        for (Reactor reactor : reactors) {
+            reactor.thread.start();
+        }
+        Logger.logEvent("Order gateway listening on port " + getPort() + " with " + reactors.length + " reactors");
+    }
+
+    /**
+     * Closes every connection and stops the reactors. Resting orders stay in the book.
+     */
+    @Override
+    public void close() {
+        running = false;
+        exchange.removeTradeListener(tradeListener);
+        exchange.removeCancelListener(cancelListener);
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        for (Reactor reactor : reactors) {
+            try {
+                reactor.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.err.println("Error closing gateway: " + e.getMessage());
+        }
+    }
+
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * @return Inbound messages decoded so far
+     */
+    public long getMessagesReceived() {
+        long total = 0;
+        for (Reactor reactor : reactors) total += reactor.messagesReceived;
+        return total;
+    }
+
+    // Called by the matching thread with the stock lock held
+
+    private void onTrade(Transaction transaction) {
+        queueFill(transaction.getBuyOrderId(), transaction, true);
+        queueFill(transaction.getSellOrderId(), transaction, false);
+    }
+
+    private void queueFill(long orderId, Transaction transaction, boolean buy) {
+        GatewayOrder entry = orders.get(orderId);
+        if (entry == null) return;
+        if (entry.order.getQuantity() == 0) {
+            forget(orderId);
+        }
+        Session session = entry.session;
+        if (!(buy ? session.buyFills : session.sellFills).offer(transaction)) {
+            // Reports cannot be dropped, so a client this far behind is cut off
+            session.overflowed = true;
+        }
+        if (!session.fillsQueued.get() && session.fillsQueued.compareAndSet(false, true)) {
+            session.reactor.fillReady.add(session);
+            session.reactor.selector.wakeup();
+        }
+    }
+
+    private void forget(long orderId) {
+        GatewayOrder entry = orders.remove(orderId);
+        if (entry != null) entry.session.orderIds.remove(orderId);
+    }
+
+    private final class Reactor implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Session> fillReady = new ConcurrentLinkedQueue<>();
+        // New orders decoded from the current read, acked but not yet submitted
+        final List<Order> pendingOrders = new ArrayList<>();
+        volatile long messagesReceived;
+
+        Reactor(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "gateway-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAccepted();
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Session session = (Session) key.attachment();
+                        if (key.isWritable()) flush(session);
+                        if (!session.closed && key.isReadable()) read(session);
+                    }
+                    selector.selectedKeys().clear();
+                    writeFills();
+                }
+            } catch (IOException e) {
+                System.err.println("Gateway reactor failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Session session) close(session);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Nothing left to release
+                }
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Reactor target = reactors[nextReactor++ % reactors.length];
+                target.accepted.add(channel);
+                // Also for this reactor: its next select must not block before the channel is registered
+                target.selector.wakeup();
+            }
+        }
+
+        private void registerAccepted() throws IOException {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                Session session = new Session(channel, this, sessionIds.incrementAndGet());
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                sessionCount.incrementAndGet();
+            }
+        }
+
+        private void read(Session session) {
+            try {
+                if (session.channel.read(session.in) < 0) {
+                    close(session);
+                    return;
+                }
+            } catch (IOException e) {
+                close(session);
+                return;
+            }
+            decode(session);
+            flush(session);
+        }
+
+        /**
+         * Handles every complete message in the receive buffer, as long as the send buffer has
+         * room for the response
+         */
+        private void decode(Session session) {
+            ByteBuffer in = session.in;
+            in.flip();
+            long decoded = 0;
+            while (in.remaining() >= GatewayProtocol.HEADER_LENGTH) {
+                int at = in.position();
+                int length = in.getShort(at) & 0xFFFF;
+                byte type = in.get(at + 2);
+                if (length != expectedLength(type)) {
+                    submitPending();
+                    close(session); // Malformed stream, nothing after this can be trusted
+                    return;
+                }
+                if (in.remaining() < length || session.out.remaining() < GatewayProtocol.MAX_LENGTH) break;
+                handle(session, in, at, type);
+                in.position(at + length);
+                decoded++;
+            }
+            in.compact();
+            messagesReceived += decoded;
+            submitPending();
+        }
+
+        private int expectedLength(byte type) {
+            return switch (type) {
+                case GatewayProtocol.NEW_ORDER -> GatewayProtocol.NEW_ORDER_LENGTH;
+                case GatewayProtocol.CANCEL -> GatewayProtocol.CANCEL_LENGTH;
+                case GatewayProtocol.AMEND -> GatewayProtocol.AMEND_LENGTH;
+                default -> -1;
+            };
+        }
+
+        private void handle(Session session, ByteBuffer in, int at, byte type) {
+            byte side = in.get(at + 3);
+            long clientOrderId = in.getLong(at + 4);
+            ByteBuffer out = session.out;
+            if (!running || !exchange.isRunning()) {
+                GatewayProtocol.putReject(out, GatewayProtocol.REJECT_NOT_RUNNING, clientOrderId);
+                return;
+            }
+            switch (type) {
+                case GatewayProtocol.NEW_ORDER -> {
+                    Stock stock = lookup(in.getLong(at + 12));
+                    int quantity = in.getInt(at + 20);
+                    long priceTicks = in.getLong(at + 24);
+                    if (stock == null) {
+                        GatewayProtocol.putReject(out, GatewayProtocol.REJECT_UNKNOWN_SYMBOL, clientOrderId);
+                    } else if (quantity <= 0 || priceTicks <= 0
+                            || (side != GatewayProtocol.BUY && side != GatewayProtocol.SELL)) {
+                        GatewayProtocol.putReject(out, GatewayProtocol.REJECT_INVALID, clientOrderId);
+                    } else {
+                        place(session, side, clientOrderId, stock, quantity, priceTicks);
+                    }
+                }
+                case GatewayProtocol.CANCEL -> {
+                    submitPending(); // The order to cancel may be one of them
+                    long orderId = in.getLong(at + 12);
+                    GatewayOrder entry = owned(session, side, orderId);
+                    if (entry != null && cancel(entry)) {
+                        GatewayProtocol.putAck(out, side, clientOrderId, orderId);
+                    } else {
+                        GatewayProtocol.putReject(out, GatewayProtocol.REJECT_UNKNOWN_ORDER, clientOrderId);
+                    }
+                }
+                case GatewayProtocol.AMEND -> {
+                    submitPending();
+                    long orderId = in.getLong(at + 12);
+                    int quantity = in.getInt(at + 20);
+                    GatewayOrder entry = owned(session, side, orderId);
+                    if (quantity <= 0) {
+                        GatewayProtocol.putReject(out, GatewayProtocol.REJECT_INVALID, clientOrderId);
+                    } else if (entry == null) {
+                        GatewayProtocol.putReject(out, GatewayProtocol.REJECT_UNKNOWN_ORDER, clientOrderId);
+                    } else {
+                        amend(session, side, clientOrderId, entry, quantity);
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected message type " + type);
+            }
+        }
+
+        /**
+         * Runs the risk checks and acks before the order is submitted, so the ack always precedes
+         * the order's fill reports. The order is submitted with the rest of the read by
+         * {@link #submitPending()}.
+         */
+        private void place(Session session, byte side, long clientOrderId, Stock stock, int quantity, long priceTicks) {
+            Order order = newOrder(session, side, stock, quantity, priceTicks);
+            if (!exchange.admit(order)) {
+                GatewayProtocol.putReject(session.out, GatewayProtocol.REJECT_RISK, clientOrderId);
+                return;
+            }
+            accept(session, side, clientOrderId, order);
+        }
+
+        /**
+         * Admits the replacement while the original still rests, so a risk reject leaves the
+         * original untouched; the original's open quantity still counts during that check.
+         */
+        private void amend(Session session, byte side, long clientOrderId, GatewayOrder entry, int quantity) {
+            Order replacement = newOrder(session, side, entry.order.getStock(), quantity, entry.order.getPriceTicks());
+            if (!exchange.admit(replacement)) {
+                GatewayProtocol.putReject(session.out, GatewayProtocol.REJECT_RISK, clientOrderId);
+            } else if (!cancel(entry)) {
+                // Filled or cancelled meanwhile
+                RiskEngine.release(replacement);
+                GatewayProtocol.putReject(session.out, GatewayProtocol.REJECT_UNKNOWN_ORDER, clientOrderId);
+            } else {
+                accept(session, side, clientOrderId, replacement);
+            }
+        }
+
+        private Order newOrder(Session session, byte side, Stock stock, int quantity, long priceTicks) {
+            long orderId = Order.newOrderId();
+            return side == GatewayProtocol.BUY
+                ? new BuyOrder(orderId, session.traderName, stock, quantity, priceTicks)
+                : new SellOrder(orderId, session.traderName, stock, quantity, priceTicks);
+        }
+
+        private void accept(Session session, byte side, long clientOrderId, Order order) {
+            orders.put(order.getOrderId(), new GatewayOrder(order, session));
+            session.orderIds.add(order.getOrderId());
+            GatewayProtocol.putAck(session.out, side, clientOrderId, order.getOrderId());
+            pendingOrders.add(order);
+        }
+
+        private void submitPending() {
+            if (pendingOrders.isEmpty()) return;
+            exchange.submitAdmittedOrders(pendingOrders);
+            pendingOrders.clear();
+        }
+
+        private GatewayOrder owned(Session session, byte side, long orderId) {
+            GatewayOrder entry = orders.get(orderId);
+            if (entry == null || entry.session != session) return null;
+            return (side == GatewayProtocol.BUY) == (entry.order instanceof BuyOrder) ? entry : null;
+        }
+
+        // The cancel listener drops the entry, whoever cancels the order
+        private boolean cancel(GatewayOrder entry) {
+            return entry.order instanceof BuyOrder buyOrder
+                ? exchange.cancelBuyOrder(buyOrder) : exchange.cancelSellOrder((SellOrder) entry.order);
+        }
+
+        private Stock lookup(long symbol) {
+            Stock stock = symbols.get(symbol);
+            if (stock == null && symbols.size != exchange.getStockCount()) {
+                // Stocks were added since the table was built
+                symbols = new SymbolTable(exchange.getAllStocks());
+                stock = symbols.get(symbol);
+            }
+            return stock;
+        }
+
+        private void writeFills() {
+            Session session;
+            int count = fillReady.size();
+            // Sessions whose send buffer is full are re-queued and retried after the next select
+            for (int i = 0; i < count && (session = fillReady.poll()) != null; i++) {
+                if (session.closed) continue;
+                session.fillsQueued.set(false);
+                if (session.overflowed) {
+                    Logger.logEvent(session.traderName + " disconnected: fill reports not read in time");
+                    close(session);
+                    continue;
+                }
+                boolean drained = drainFills(session, session.buyFills, GatewayProtocol.BUY)
+                    & drainFills(session, session.sellFills, GatewayProtocol.SELL);
+                flush(session);
+                if (!drained && session.fillsQueued.compareAndSet(false, true)) {
+                    fillReady.add(session);
+                }
+            }
+        }
+
+        /**
+         * @return false if reports were left in the queue because the send buffer is full
+         */
+        private boolean drainFills(Session session, MpscRingBuffer<Transaction> fills, byte side) {
+            ByteBuffer out = session.out;
+            while (out.remaining() >= GatewayProtocol.FILL_LENGTH) {
+                Transaction transaction = fills.poll();
+                if (transaction == null) return true;
+                GatewayProtocol.putFill(out, side,
+                    side == GatewayProtocol.BUY ? transaction.getBuyOrderId() : transaction.getSellOrderId(),
+                    transaction.getQuantity(), transaction.getPriceTicks());
+            }
+            return fills.isEmpty();
+        }
+
+        private void flush(Session session) {
+            if (session.closed) return;
+            ByteBuffer out = session.out;
+            try {
+                if (out.position() > 0) {
+                    out.flip();
+                    session.channel.write(out);
+                    out.compact();
+                }
+            } catch (IOException e) {
+                close(session);
+                return;
+            }
+            // Input waiting for send buffer space can be handled now
+            if (session.in.position() > 0 && out.remaining() >= GatewayProtocol.MAX_LENGTH) {
+                decode(session);
+                if (session.closed) return;
+            }
+            int ops = (session.in.hasRemaining() ? SelectionKey.OP_READ : 0)
+                | (out.position() > 0 ? SelectionKey.OP_WRITE : 0);
+            if (session.key.interestOps() != ops) {
+                session.key.interestOps(ops);
+            }
+        }
+
+        private void close(Session session) {
+            if (session.closed) return;
+            session.closed = true;
+            session.key.cancel();
+            try {
+                session.channel.close();
+            } catch (IOException e) {
+                // Already closed by the peer
+            }
+            sessionCount.decrementAndGet();
+            // Its orders keep resting, but nobody is left to report them to
+            for (Long orderId : session.orderIds) {
+                orders.remove(orderId);
+            }
+            session.orderIds.clear();
+        }
+    }
+}
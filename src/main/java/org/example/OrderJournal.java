@@ -0,0 +1,588 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary journal of order commands and fills.
+ * Records are {@link JournalRecord#SIZE} bytes, little-endian, written to segment files
+ * ({@code journal-000001.seg}, ...) in a directory. Appends only copy the record into a memory
+ * buffer; a committer thread writes and fsyncs everything appended since the last commit in one
+ * go (group commit). Appenders only wait on the disk when the active buffer fills before the
+ * committer has written the other one: {@link #nextRecord()} then blocks, usually under the
+ * caller's stock lock, which is the back-pressure that keeps the journal from falling behind.
+ * A batch whose write fails is kept and written again, and only counts as committed once it is on
+ * disk; a failed fsync leaves the journal failed, after which appends and {@link #sync()} throw.
+ * Every segment starts with a copy of the symbol and trader dictionaries, so it can be read
+ * without the segments before it (e.g. after a snapshot made them unnecessary).
+ */
+public class OrderJournal implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x4A524E4C; // "JRNL"
+    private static final int VERSION = 2; // 2: prices stored as ticks
+
+    /**
+     * Receives every valid record of a journal in sequence order
+     */
+    public interface Visitor {
+        void visit(JournalRecord record);
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long commitIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+    private final Condition bufferAvailable = lock.newCondition();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final Map<String, Integer> traderIds = new HashMap<>();
+    private final JournalRecord writeRecord = new JournalRecord();
+    private ByteBuffer dictionary = ByteBuffer.allocate(64 * JournalRecord.SIZE);
+    private int dictionaryBytes;
+    private final Thread committer;
+
+    private ByteBuffer activeBuffer;
+    private ByteBuffer commitBuffer;
+    private int activeBytes;
+    private int pendingBytes; // Bytes of the batch in commitBuffer not yet on disk
+    private int pendingPosition; // How much of that batch is already written
+    private long pendingSequence; // Last sequence of that batch
+    private volatile IOException failure;
+    private long lastSequence;
+    private volatile long committedSequence;
+    private volatile int segmentIndex; // Of the newest segment whose header is complete
+    private FileChannel segment;
+    private long segmentBytes;
+    private volatile boolean open;
+
+    /**
+     * Opens the journal in a directory, continuing after the last record of any existing segments.
+     * @param directory Directory holding the segment files (created if missing)
+     * @param segmentSize Maximum size of one segment file in bytes
+     * @param bufferSize Size of each of the two append buffers in bytes
+     * @param commitIntervalMs How often appended records are written and synced to disk
+     */
+    public OrderJournal(Path directory, long segmentSize, int bufferSize, long commitIntervalMs) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.max(HEADER_SIZE + JournalRecord.SIZE, segmentSize);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, commitIntervalMs));
+        int recordsPerBuffer = Math.max(1, bufferSize / JournalRecord.SIZE);
+        this.activeBuffer = ByteBuffer.allocateDirect(recordsPerBuffer * JournalRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.commitBuffer = ByteBuffer.allocateDirect(recordsPerBuffer * JournalRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        Files.createDirectories(directory);
+
+        // Recover the dictionaries and the last sequence so ids keep their meaning across restarts.
+        // Segments are self-describing, so the last one holding any record is enough.
+        List<Path> segments = listSegments(directory);
+        for (int i = segments.size() - 1; i >= 0 && lastSequence == 0; i--) {
+            lastSequence = Math.max(0, firstSequence(segments.get(i)) - 1);
+            read(List.of(segments.get(i)), record -> {
+                lastSequence = Math.max(lastSequence, record.getSequence());
+                if (record.getType() == JournalRecord.SYMBOL) {
+                    if (symbolIds.putIfAbsent(record.getName(), record.getSymbolId()) == null) {
+                        addToDictionary(record);
+                    }
+                } else if (record.getType() == JournalRecord.TRADER) {
+                    if (traderIds.putIfAbsent(record.getName(), record.getSymbolId()) == null) {
+                        addToDictionary(record);
+                    }
+                }
+            });
+        }
+        this.committedSequence = lastSequence;
+        this.segmentIndex = segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1));
+
+        this.open = true;
+        this.committer = new Thread(this::commitLoop, "journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public OrderJournal(Path directory) throws IOException {
+        this(directory, 64L << 20, 1 << 20, 5);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The sequence number of the last appended record
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The sequence number of the last record known to be on disk
+     */
+    public long getCommittedSequence() {
+        return committedSequence;
+    }
+
+    /**
+     * @return Whether an fsync failed, so nothing appended since is known to reach the disk
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return Whether the order's symbol and trader names fit in the journal's dictionary records
+     */
+    public boolean canRecord(Order order) {
+        return JournalRecord.fitsName(order.getStock().getSymbol()) && JournalRecord.fitsName(order.getTraderName());
+    }
+
+    /**
+     * Records that an order entered its book, or that a stop order recorded by {@link #recordStop} triggered.
+     */
+    public long recordPlace(Order order) {
+        return recordOrder(JournalRecord.PLACE, order);
+    }
+
+    /**
+     * Records a stop order that waits for its stop price outside the book.
+     */
+    public long recordStop(Order order) {
+        return recordOrder(JournalRecord.STOP, order);
+    }
+
+    private long recordOrder(byte type, Order order) {
+        lock.lock();
+        try {
+            int symbolId = symbolId(order.getStock());
+            int traderId = traderId(order.getTraderName());
+            long sequence = ++lastSequence;
+            nextRecord().writeOrderEvent(type, side(order), symbolId, sequence,
+                System.currentTimeMillis(), order.getOrderId(), order.getStopPriceTicks(), order.getQuantity(), traderId,
+                order.getPriceTicks(), order.getDisplayQuantity(), (byte) order.getTimeInForce().ordinal());
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long recordCancel(Order order) {
+        lock.lock();
+        try {
+            int symbolId = symbolId(order.getStock());
+            long sequence = ++lastSequence;
+            nextRecord().writeOrderEvent(JournalRecord.CANCEL, side(order), symbolId, sequence,
+                System.currentTimeMillis(), order.getOrderId(), 0L, 0, 0, 0L, 0, (byte) 0);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that an order was replaced by a new order with another id and quantity.
+     */
+    public long recordEdit(Order oldOrder, Order newOrder) {
+        lock.lock();
+        try {
+            int symbolId = symbolId(oldOrder.getStock());
+            long sequence = ++lastSequence;
+            nextRecord().writeOrderEvent(JournalRecord.EDIT, side(oldOrder), symbolId, sequence,
+                System.currentTimeMillis(), oldOrder.getOrderId(), newOrder.getOrderId(),
+                newOrder.getQuantity(), 0, newOrder.getPriceTicks(), 0, (byte) 0);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long recordFill(BuyOrder buyOrder, SellOrder sellOrder, int quantity, long priceTicks) {
+        lock.lock();
+        try {
+            int symbolId = symbolId(buyOrder.getStock());
+            long sequence = ++lastSequence;
+            nextRecord().writeOrderEvent(JournalRecord.FILL, JournalRecord.BUY, symbolId, sequence,
+                System.currentTimeMillis(), buyOrder.getOrderId(), sellOrder.getOrderId(), quantity, 0, priceTicks, 0, (byte) 0);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk.
+     * @throws IllegalStateException If the journal failed before they were
+     */
+    public void sync() throws InterruptedException {
+        lock.lock();
+        try {
+            long target = lastSequence;
+            while (committedSequence < target && open && failure == null) {
+                committed.await();
+            }
+            if (committedSequence < target && failure != null) {
+                throw new IllegalStateException("Journal failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int symbolId(Stock stock) {
+        Integer id = symbolIds.get(stock.getSymbol());
+        if (id == null) {
+            // Checked before anything changes: a failed write must not leave a reserved record behind
+            checkName(stock.getSymbol());
+            id = symbolIds.size() + 1;
+            symbolIds.put(stock.getSymbol(), id);
+            addToDictionary(nextRecord().writeName(JournalRecord.SYMBOL, id, ++lastSequence,
+                stock.getSymbol(), stock.getCurrentPriceTicks(), stock.getTickSize()));
+        }
+        return id;
+    }
+
+    private int traderId(String traderName) {
+        Integer id = traderIds.get(traderName);
+        if (id == null) {
+            checkName(traderName);
+            id = traderIds.size() + 1;
+            traderIds.put(traderName, id);
+            addToDictionary(nextRecord().writeName(JournalRecord.TRADER, id, ++lastSequence, traderName, 0L, 0.0));
+        }
+        return id;
+    }
+
+    private static void checkName(String name) {
+        if (!JournalRecord.fitsName(name)) {
+            throw new IllegalArgumentException("Name too long for the journal: " + name);
+        }
+    }
+
+    /**
+     * Keeps a copy of a dictionary record so it can be repeated at the start of every segment.
+     */
+    private void addToDictionary(JournalRecord record) {
+        if (dictionaryBytes + JournalRecord.SIZE > dictionary.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(dictionary.capacity() * 2);
+            larger.put(0, dictionary, 0, dictionaryBytes);
+            dictionary = larger;
+        }
+        record.copyTo(dictionary, dictionaryBytes);
+        dictionaryBytes += JournalRecord.SIZE;
+    }
+
+    private static byte side(Order order) {
+        return order instanceof BuyOrder ? JournalRecord.BUY : JournalRecord.SELL;
+    }
+
+    /**
+     * Reserves the next record slot in the active buffer, waiting for the committer if it is full.
+     * Must be called with the lock held.
+     */
+    private JournalRecord nextRecord() {
+        while (true) {
+            if (failure != null) throw new IllegalStateException("Journal failed", failure);
+            if (activeBytes + JournalRecord.SIZE <= activeBuffer.capacity()) break;
+            if (!open) throw new IllegalStateException("Journal is closed");
+            LockSupport.unpark(committer); // Wake the committer early
+            bufferAvailable.awaitUninterruptibly();
+        }
+        JournalRecord record = writeRecord.wrap(activeBuffer, activeBytes);
+        activeBytes += JournalRecord.SIZE;
+        return record;
+    }
+
+    private void commitLoop() {
+        boolean retrying = false;
+        while (true) {
+            boolean closing = !open;
+            try {
+                commit();
+                if (retrying) System.err.println("Journal writes recovered");
+                retrying = false;
+            } catch (IOException e) {
+                if (failure != null) {
+                    System.err.println("Journal failed, no further records will be written: " + e.getMessage());
+                    break;
+                }
+                // Logged once; the batch is kept and written again on every commit until it succeeds
+                if (!retrying) System.err.println("Error writing journal, will retry: " + e.getMessage());
+                retrying = true;
+            }
+            if (closing) break;
+            // Woken early when the buffer is full or the journal is closing
+            LockSupport.parkNanos(this, commitIntervalNanos);
+        }
+    }
+
+    private void commit() throws IOException {
+        if (pendingBytes > 0) {
+            // A batch left by a failed write goes first; appenders wait for it once their buffer is full
+            writePending();
+        }
+        lock.lock();
+        try {
+            if (activeBytes == 0) return;
+            // Swap buffers so appenders can continue while this batch is written
+            ByteBuffer batch = activeBuffer;
+            activeBuffer = commitBuffer;
+            commitBuffer = batch;
+            pendingBytes = activeBytes;
+            pendingPosition = 0;
+            pendingSequence = lastSequence;
+            activeBytes = 0;
+            bufferAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        writePending();
+    }
+
+    /**
+     * Writes and syncs the rest of the batch in the commit buffer, then marks it committed.
+     */
+    private void writePending() throws IOException {
+        while (pendingPosition < pendingBytes) {
+            if (segment == null || segmentBytes + JournalRecord.SIZE > segmentSize) {
+                rollSegment(commitBuffer.getLong(pendingPosition + 8));
+            }
+            // A segment always takes at least one record, even if the dictionary copy filled it
+            int room = (int) Math.min(pendingBytes - pendingPosition, Math.max(JournalRecord.SIZE,
+                (segmentSize - segmentBytes) / JournalRecord.SIZE * JournalRecord.SIZE));
+            ByteBuffer slice = commitBuffer.slice(pendingPosition, room);
+            try {
+                while (slice.hasRemaining()) {
+                    segment.write(slice);
+                }
+            } catch (IOException e) {
+                // Drop whatever part of the slice reached the file, so the retry writes it exactly once
+                try {
+                    segment.truncate(segmentBytes);
+                    segment.position(segmentBytes);
+                } catch (IOException truncateError) {
+                    e.addSuppressed(truncateError);
+                    fail(e);
+                }
+                throw e;
+            }
+            segmentBytes += room;
+            pendingPosition += room;
+        }
+        force(segment);
+
+        lock.lock();
+        try {
+            committedSequence = pendingSequence;
+            pendingBytes = 0;
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Syncs a segment, failing the journal if that does not work: after a failed fsync the kernel
+     * may have dropped the written pages, so a later fsync that succeeds proves nothing.
+     */
+    private void force(FileChannel channel) throws IOException {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            committed.signalAll();
+            bufferAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            force(segment);
+            segment.close();
+            segment = null;
+        }
+        int index = segmentIndex + 1;
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header;
+        lock.lock();
+        try {
+            header = ByteBuffer.allocate(HEADER_SIZE + dictionaryBytes).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(HEADER_SIZE, dictionary, 0, dictionaryBytes);
+        } finally {
+            lock.unlock();
+        }
+        header.putInt(MAGIC).putInt(VERSION).putInt(JournalRecord.SIZE).putInt(index).putLong(firstSequence);
+        header.clear();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            // The next attempt starts a new segment; a partial header must not be read as one
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        segment = channel;
+        segmentBytes = header.capacity();
+        segmentIndex = index;
+    }
+
+    /**
+     * Deletes the segments whose records all come at or before a sequence, e.g. once a snapshot
+     * includes them. The segment being written is never deleted.
+     * @return The number of segments deleted
+     */
+    public int deleteSegmentsBefore(long sequence) throws IOException {
+        // Only headers of segments the committer has finished starting are trusted
+        int newest = segmentIndex;
+        List<Path> segments = listSegments(directory);
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size() && segmentIndex(segments.get(i + 1)) <= newest; i++) {
+            // Every record of a segment comes before the first one of the next
+            if (firstSequence(segments.get(i + 1)) > sequence + 1) break;
+            Files.delete(segments.get(i));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Commits everything appended so far and closes the current segment.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!open) return;
+            open = false;
+            bufferAvailable.signalAll();
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segment != null) {
+            segment.close();
+        }
+        if (pendingBytes - pendingPosition > 0 || failure != null) {
+            throw new IOException("Journal closed with records not on disk", failure);
+        }
+    }
+
+    /**
+     * Reads every valid record of the journal in a directory, in sequence order.
+     * Segments are memory-mapped and records are decoded in place; a torn record at the end
+     * of a segment (e.g. after a crash) ends that segment.
+     * @return The number of records visited
+     */
+    public static long read(Path directory, Visitor visitor) throws IOException {
+        return read(listSegments(directory), visitor);
+    }
+
+    /**
+     * Reads the journal starting with the segment that holds the record after {@code afterSequence}.
+     * Older segments are not opened at all; records at or before the sequence that share the first
+     * segment read (including its dictionary copy) are still visited, so callers filter by sequence.
+     * @return The number of records visited
+     */
+    public static long read(Path directory, long afterSequence, Visitor visitor) throws IOException {
+        List<Path> segments = listSegments(directory);
+        int first = 0;
+        while (first + 1 < segments.size() && firstSequence(segments.get(first + 1)) <= afterSequence + 1) {
+            first++;
+        }
+        return read(segments.subList(first, segments.size()), visitor);
+    }
+
+    private static long read(List<Path> segments, Visitor visitor) throws IOException {
+        JournalRecord record = new JournalRecord();
+        long count = 0;
+        for (Path path : segments) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER_SIZE) continue;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a journal segment: " + path);
+                }
+                if (buffer.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported journal version " + buffer.getInt(4) + ": " + path);
+                }
+                int end = (int) (HEADER_SIZE + (size - HEADER_SIZE) / JournalRecord.SIZE * JournalRecord.SIZE);
+                for (int offset = HEADER_SIZE; offset < end; offset += JournalRecord.SIZE) {
+                    record.wrap(buffer, offset);
+                    if (!record.isValid()) break;
+                    visitor.visit(record);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The first sequence number stored in a segment's header
+     */
+    static long firstSequence(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            return header.getLong(16);
+        }
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> {
+                    String name = p.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted()
+                .forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static int segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
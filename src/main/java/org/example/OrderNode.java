@@ -0,0 +1,30 @@
+package org.example;
+
+/**
+ * Handle of a resting order inside its price level.
+ * Nodes are linked directly into the level's queue, so an order can be unlinked in O(1)
+ * from its handle without searching the book.
+ */
+public final class OrderNode<T extends Order> {
+    final T order;
+    OrderNode<T> prev;
+    OrderNode<T> next;
+    PriceLevel<T> level;
+    // When the order entered its book; a triggered stop enters long after it got its id
+    long arrival;
+
+    OrderNode(T order) {
+        this.order = order;
+    }
+
+    public T getOrder() {
+        return order;
+    }
+
+    /**
+     * @return true while the order rests in a book
+     */
+    public boolean isLinked() {
+        return level != null;
+    }
+}
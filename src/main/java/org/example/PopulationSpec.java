@@ -0,0 +1,143 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Describes a population of simulated clients as a list of cohorts.
+ * Each cohort gets a share of the clients, a buyer/seller ratio and the share and delay ranges
+ * its {@link Buyer}s and {@link Seller}s trade with.
+ */
+public class PopulationSpec {
+    /**
+     * A group of clients with the same trading behaviour
+     */
+    public static class Cohort {
+        private final String name;
+        private final double weight;
+        private final double buyerRatio;
+        private final int minShares;
+        private final int maxShares;
+        private final int minDelayMs;
+        private final int maxDelayMs;
+        private final int maxOrders;
+
+        /**
+         * @param weight Relative share of the population
+         * @param buyerRatio Fraction of the cohort that buys, the rest sells
+         */
+        public Cohort(String name, double weight, double buyerRatio, int minShares, int maxShares,
+                      int minDelayMs, int maxDelayMs, int maxOrders) {
+            if (weight < 0 || buyerRatio < 0 || buyerRatio > 1 || minShares > maxShares || minDelayMs > maxDelayMs) {
+                throw new IllegalArgumentException("Invalid cohort: " + name);
+            }
+            this.name = name;
+            this.weight = weight;
+            this.buyerRatio = buyerRatio;
+            this.minShares = minShares;
+            this.maxShares = maxShares;
+            this.minDelayMs = minDelayMs;
+            this.maxDelayMs = maxDelayMs;
+            this.maxOrders = maxOrders;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        public double getBuyerRatio() {
+            return buyerRatio;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%s:%s:%d-%d:%d-%d:%d", name, weight, buyerRatio,
+                minShares, maxShares, minDelayMs, maxDelayMs, maxOrders);
+        }
+    }
+
+    private final List<Cohort> cohorts;
+
+    public PopulationSpec(List<Cohort> cohorts) {
+        if (cohorts.isEmpty()) {
+            throw new IllegalArgumentException("A population needs at least one cohort");
+        }
+        this.cohorts = List.copyOf(cohorts);
+    }
+
+    /**
+     * Mostly slow retail clients with small orders plus a smaller group of active traders
+     */
+    public static PopulationSpec defaultSpec() {
+        return parse("retail:80:0.5:1-50:500-5000:5;active:20:0.5:10-200:50-500:20");
+    }
+
+    /**
+     * Parses cohorts separated by ';', each written as
+     * {@code name:weight:buyerRatio:minShares-maxShares:minDelayMs-maxDelayMs:maxOrders}.
+     */
+    public static PopulationSpec parse(String spec) {
+        List<Cohort> cohorts = new ArrayList<>();
+        for (String part : spec.split(";")) {
+            if (part.isBlank()) continue;
+            String[] fields = part.trim().split(":");
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("Expected name:weight:buyerRatio:shares:delayMs:maxOrders, got " + part);
+            }
+            String[] shares = fields[3].split("-");
+            String[] delays = fields[4].split("-");
+            cohorts.add(new Cohort(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                Integer.parseInt(shares[0]), Integer.parseInt(shares[1]),
+                Integer.parseInt(delays[0]), Integer.parseInt(delays[1]), Integer.parseInt(fields[5])));
+        }
+        return new PopulationSpec(cohorts);
+    }
+
+    public List<Cohort> getCohorts() {
+        return cohorts;
+    }
+
+    /**
+     * Creates the clients of a population of the given size. Cohort sizes follow the weights,
+     * with the rounding remainder going to the last cohort.
+     * @return Buyers and sellers, each a task that trades until it is done
+     */
+    public List<Callable<String>> createClients(StockExchange exchange, int clientCount) {
+        double totalWeight = cohorts.stream().mapToDouble(Cohort::getWeight).sum();
+        List<Callable<String>> clients = new ArrayList<>(clientCount);
+        int assigned = 0;
+        for (int c = 0; c < cohorts.size(); c++) {
+            Cohort cohort = cohorts.get(c);
+            int size = c == cohorts.size() - 1
+                ? clientCount - assigned
+                : (int) Math.round(clientCount * cohort.weight / totalWeight);
+            size = Math.min(size, clientCount - assigned);
+            int buyers = (int) Math.round(size * cohort.buyerRatio);
+            for (int i = 0; i < size; i++) {
+                if (i < buyers) {
+                    clients.add(new Buyer(cohort.name + "-Buyer-" + i, exchange, cohort.minShares, cohort.maxShares,
+                        cohort.minDelayMs, cohort.maxDelayMs, cohort.maxOrders));
+                } else {
+                    clients.add(new Seller(cohort.name + "-Seller-" + (i - buyers), exchange, cohort.minShares,
+                        cohort.maxShares, cohort.minDelayMs, cohort.maxDelayMs, cohort.maxOrders));
+                }
+            }
+            assigned += size;
+        }
+        // Interleave the cohorts so they start trading at the same time
+        Collections.shuffle(clients, new Random(clientCount));
+        return clients;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(";", cohorts.stream().map(Cohort::toString).toList());
+    }
+}
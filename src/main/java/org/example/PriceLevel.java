@@ -0,0 +1,128 @@
+package org.example;
+
+import java.util.Collection;
+
+/**
+ * All resting orders at a single price, kept in arrival order (FIFO).
+ * The queue is an intrusive doubly-linked list of {@link OrderNode}s, so any order can be
+ * removed in O(1) through its handle. An iceberg order shows one slice at a time; once the
+ * slice is filled, the next one joins the back of the queue.
+ */
+class PriceLevel<T extends Order> {
+    private long priceTicks;
+    private OrderNode<T> head;
+    private OrderNode<T> tail;
+    private int size;
+    private long totalQuantity;
+    private long displayedQuantity;
+
+    PriceLevel(long priceTicks) {
+        this.priceTicks = priceTicks;
+    }
+
+    /**
+     * Moves an empty level to another price so the book can reuse it
+     */
+    void reset(long priceTicks) {
+        this.priceTicks = priceTicks;
+        this.totalQuantity = 0;
+        this.displayedQuantity = 0;
+    }
+
+    long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * @return Every share at this price, hidden iceberg shares included
+     */
+    long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    /**
+     * @return The shares other traders see at this price
+     */
+    long getDisplayedQuantity() {
+        return displayedQuantity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    void add(OrderNode<T> node) {
+        node.level = this;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        size++;
+        node.order.refillDisplay();
+        totalQuantity += node.order.getQuantity();
+        displayedQuantity += node.order.displayedQuantity();
+    }
+
+    void remove(OrderNode<T> node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.level = null;
+        size--;
+        totalQuantity -= node.order.getQuantity();
+        displayedQuantity -= node.order.displayedQuantity();
+    }
+
+    /**
+     * @return The oldest order at this price, or null if the level is empty
+     */
+    OrderNode<T> peek() {
+        return head;
+    }
+
+    /**
+     * Reduces an order at this level by a traded quantity.
+     * @return true if the order was fully filled and unlinked from the level
+     */
+    boolean reduce(OrderNode<T> node, int quantity) {
+        T order = node.order;
+        int displayedBefore = order.displayedQuantity();
+        order.reduceQuantity(quantity);
+        order.reduceDisplayed(quantity);
+        totalQuantity -= quantity;
+        displayedQuantity -= displayedBefore - order.displayedQuantity();
+        if (order.getQuantity() == 0) {
+            remove(node);
+            return true;
+        }
+        if (order.displayedQuantity() == 0) {
+            // The iceberg's slice is used up: the next slice loses its time priority
+            remove(node);
+            add(node);
+        }
+        return false;
+    }
+
+    void addTo(Collection<? super T> target) {
+        for (OrderNode<T> node = head; node != null; node = node.next) {
+            target.add(node.order);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.example;
+
+/**
+ * Hash map from a price in ticks to its {@link PriceLevel}, with primitive long keys so lookups
+ * never box. Open addressing with linear probing; deletions shift later entries back so no
+ * tombstones are needed.
+ */
+class PriceLevelIndex<T extends Order> {
+    private long[] keys;
+    private PriceLevel<T>[] values;
+    private int mask;
+    private int size;
+
+    PriceLevelIndex(int expectedLevels) {
+        int capacity = Integer.highestOneBit(Math.max(expectedLevels, 8) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The level at this price, or null if there is none
+     */
+    PriceLevel<T> get(long priceTicks) {
+        for (int i = slot(priceTicks); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == priceTicks) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    void put(long priceTicks, PriceLevel<T> level) {
+        int i = slot(priceTicks);
+        while (values[i] != null) {
+            if (keys[i] == priceTicks) {
+                values[i] = level;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = priceTicks;
+        values[i] = level;
+        // Keep the table at most half full so probe sequences stay short
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+    }
+
+    void remove(long priceTicks) {
+        int i = slot(priceTicks);
+        while (values[i] != null && keys[i] != priceTicks) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) return;
+        size--;
+        // Shift back every following entry that would no longer be reachable
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private int slot(long key) {
+        // Prices of one book sit close together, so spread neighbouring values over the table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        PriceLevel<T>[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = (PriceLevel<T>[]) new PriceLevel[capacity];
+        mask = capacity - 1;
+    }
+}
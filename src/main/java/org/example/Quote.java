@@ -0,0 +1,131 @@
+package org.example;
+
+/**
+ * Immutable top-of-book and last-trade state of one symbol, as published by the
+ * {@link MarketDataPublisher}. Prices are kept in ticks and converted with the stock's tick size.
+ */
+public class Quote {
+    private final Stock stock;
+    private final long sequence;
+    private final long bidTicks;
+    private final long bidQuantity;
+    private final long askTicks;
+    private final long askQuantity;
+    private final long lastTicks;
+    private final int lastQuantity;
+    private final long volume;
+    private final long tradeCount;
+
+    Quote(Stock stock, long sequence, long bidTicks, long bidQuantity, long askTicks, long askQuantity,
+          long lastTicks, int lastQuantity, long volume, long tradeCount) {
+        this.stock = stock;
+        this.sequence = sequence;
+        this.bidTicks = bidTicks;
+        this.bidQuantity = bidQuantity;
+        this.askTicks = askTicks;
+        this.askQuantity = askQuantity;
+        this.lastTicks = lastTicks;
+        this.lastQuantity = lastQuantity;
+        this.volume = volume;
+        this.tradeCount = tradeCount;
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    public String getSymbol() {
+        return stock.getSymbol();
+    }
+
+    /**
+     * @return The number of book and trade changes of this symbol so far; a jump of more than one
+     *         means intermediate states were conflated
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean hasBid() {
+        return bidQuantity > 0;
+    }
+
+    public boolean hasAsk() {
+        return askQuantity > 0;
+    }
+
+    /**
+     * @return The best bid, or NaN if there are no bids
+     */
+    public double getBidPrice() {
+        return hasBid() ? stock.toPrice(bidTicks) : Double.NaN;
+    }
+
+    public long getBidTicks() {
+        return bidTicks;
+    }
+
+    /**
+     * @return The total quantity resting at the best bid
+     */
+    public long getBidQuantity() {
+        return bidQuantity;
+    }
+
+    /**
+     * @return The best ask, or NaN if there are no asks
+     */
+    public double getAskPrice() {
+        return hasAsk() ? stock.toPrice(askTicks) : Double.NaN;
+    }
+
+    public long getAskTicks() {
+        return askTicks;
+    }
+
+    /**
+     * @return The total quantity resting at the best ask
+     */
+    public long getAskQuantity() {
+        return askQuantity;
+    }
+
+    public boolean hasTraded() {
+        return tradeCount > 0;
+    }
+
+    /**
+     * @return The price of the last trade, or NaN if the symbol has not traded yet
+     */
+    public double getLastPrice() {
+        return hasTraded() ? stock.toPrice(lastTicks) : Double.NaN;
+    }
+
+    public long getLastTicks() {
+        return lastTicks;
+    }
+
+    public int getLastQuantity() {
+        return lastQuantity;
+    }
+
+    /**
+     * @return Shares traded since market data was enabled, including trades that were conflated away
+     */
+    public long getVolume() {
+        return volume;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    @Override
+    public String toString() {
+        String bid = hasBid() ? String.format("%.2f x %d", getBidPrice(), bidQuantity) : "-";
+        String ask = hasAsk() ? String.format("%.2f x %d", getAskPrice(), askQuantity) : "-";
+        String last = hasTraded() ? String.format("%.2f x %d", getLastPrice(), lastQuantity) : "-";
+        return String.format("%s bid %s / ask %s, last %s, volume %d (#%d)",
+            stock.getSymbol(), bid, ask, last, volume, sequence);
+    }
+}
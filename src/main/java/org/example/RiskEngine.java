@@ -0,0 +1,233 @@
+package org.example;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-trade risk checks, run on the caller's thread before an order reaches its book.
+ * Each trader has an account per symbol holding the open quantity, the open notional, the
+ * position and a token bucket for the order rate. An account is only touched by its own
+ * trader's orders and their fills, so the checks are striped by trader and symbol and
+ * never take a lock shared with other traders.
+ * <p>
+ * The limits of a trader in a symbol are the trader's limits (or the default ones), tightened
+ * by the symbol's limits where it has any. Only orders that passed a check are accounted for.
+ */
+public class RiskEngine {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    /**
+     * Why an order was rejected
+     */
+    public enum Reject {
+        ORDER_RATE,
+        OPEN_QUANTITY,
+        NOTIONAL,
+        POSITION
+    }
+
+    private final Map<String, Map<String, Account>> accounts = new ConcurrentHashMap<>();
+    private final Map<String, RiskLimits> traderLimits = new ConcurrentHashMap<>();
+    private final Map<String, RiskLimits> symbolLimits = new ConcurrentHashMap<>();
+    private volatile RiskLimits defaultLimits;
+    // Bumped when any limit changes; accounts recompute their limits when it moved
+    private volatile int limitsVersion;
+
+    public RiskEngine(RiskLimits defaultLimits) {
+        this.defaultLimits = defaultLimits;
+    }
+
+    public synchronized void setDefaultLimits(RiskLimits limits) {
+        defaultLimits = limits;
+        limitsVersion++;
+    }
+
+    /**
+     * @param limits The trader's limits, or null to fall back to the default ones
+     */
+    public synchronized void setTraderLimits(String traderName, RiskLimits limits) {
+        if (limits == null) traderLimits.remove(traderName); else traderLimits.put(traderName, limits);
+        limitsVersion++;
+    }
+
+    /**
+     * @param limits Limits every trader is held to in the symbol, or null for none
+     */
+    public synchronized void setSymbolLimits(String symbol, RiskLimits limits) {
+        if (limits == null) symbolLimits.remove(symbol); else symbolLimits.put(symbol, limits);
+        limitsVersion++;
+    }
+
+    /**
+     * @return The limits a trader is held to in a symbol
+     */
+    public RiskLimits getLimits(String traderName, String symbol) {
+        return traderLimits.getOrDefault(traderName, defaultLimits).tighten(symbolLimits.get(symbol));
+    }
+
+    /**
+     * @return Net shares the trader holds in the symbol from fills, negative when short
+     */
+    public long getPosition(String traderName, String symbol) {
+        Account account = find(traderName, symbol);
+        return account != null ? account.getPosition() : 0;
+    }
+
+    /**
+     * @return Shares of the trader's accounted orders still resting in the symbol
+     */
+    public long getOpenQuantity(String traderName, String symbol) {
+        Account account = find(traderName, symbol);
+        return account != null ? account.getOpenQuantity() : 0;
+    }
+
+    /**
+     * Checks a new order and, if it passes, reserves its quantity in the trader's account.
+     * @return Why the order is rejected, or null if it may be placed
+     */
+    Reject check(Order order) {
+        Account account = account(order.getTraderName(), order.getStock());
+        // The order is not shared yet, so its quantity is read without its monitor
+        Reject reject = account.reserve(order instanceof BuyOrder, order.peekQuantity(), order.getPriceTicks());
+        if (reject == null) order.riskAccount = account;
+        return reject;
+    }
+
+    /**
+     * Checks an edit of a resting order to a new quantity and, if it passes, moves the order's
+     * reservation to it. Must be called while holding the stock's lock.
+     * @return Why the edit is rejected, or null if it may go ahead
+     */
+    static Reject checkEdit(Order order, int newQuantity) {
+        Account account = order.riskAccount;
+        if (account == null) return null;
+        return account.replace(order instanceof BuyOrder, order.getQuantity(), newQuantity, order.getPriceTicks());
+    }
+
+    /**
+     * Accounts for a fill of an order: the quantity stops being open and moves the position
+     */
+    static void onFill(Order order, int quantity) {
+        Account account = order.riskAccount;
+        if (account != null) account.fill(order instanceof BuyOrder, quantity, order.getPriceTicks());
+    }
+
+    /**
+     * Releases what is left of an order that will not rest or fill any more
+     */
+    static void release(Order order) {
+        Account account = order.riskAccount;
+        if (account != null) account.release(order instanceof BuyOrder, order.getQuantity(), order.getPriceTicks());
+    }
+
+    private Account account(String traderName, Stock stock) {
+        Map<String, Account> traderAccounts = accounts.get(traderName);
+        if (traderAccounts == null) {
+            traderAccounts = accounts.computeIfAbsent(traderName, name -> new ConcurrentHashMap<>());
+        }
+        Account account = traderAccounts.get(stock.getSymbol());
+        if (account == null) {
+            account = traderAccounts.computeIfAbsent(stock.getSymbol(), symbol -> new Account(traderName, stock));
+        }
+        return account;
+    }
+
+    private Account find(String traderName, String symbol) {
+        Map<String, Account> traderAccounts = accounts.get(traderName);
+        return traderAccounts != null ? traderAccounts.get(symbol) : null;
+    }
+
+    /**
+     * One trader's exposure in one symbol. Notional is kept in ticks times shares.
+     */
+    final class Account {
+        private final String traderName;
+        private final Stock stock;
+        private long openBuyQuantity;
+        private long openSellQuantity;
+        private long openNotionalTicks;
+        private long position;
+        // Token bucket as a theoretical arrival time: the bucket is full when it is at most now
+        private long nextOrderNanos = Long.MIN_VALUE;
+
+        private int version = -1;
+        private long maxOpenQuantity;
+        private long maxNotionalTicks;
+        private long orderIntervalNanos;
+        private long maxPosition;
+
+        Account(String traderName, Stock stock) {
+            this.traderName = traderName;
+            this.stock = stock;
+        }
+
+        synchronized Reject reserve(boolean buy, int quantity, long priceTicks) {
+            refreshLimits();
+            if (!takeOrderToken()) return Reject.ORDER_RATE;
+            Reject reject = exceeds(buy, quantity, quantity * priceTicks);
+            if (reject == null) add(buy, quantity, quantity * priceTicks);
+            return reject;
+        }
+
+        synchronized Reject replace(boolean buy, int oldQuantity, int newQuantity, long priceTicks) {
+            refreshLimits();
+            if (!takeOrderToken()) return Reject.ORDER_RATE;
+            long delta = newQuantity - oldQuantity;
+            Reject reject = delta > 0 ? exceeds(buy, delta, delta * priceTicks) : null;
+            if (reject == null) add(buy, delta, delta * priceTicks);
+            return reject;
+        }
+
+        synchronized void fill(boolean buy, int quantity, long priceTicks) {
+            add(buy, -quantity, -quantity * priceTicks);
+            position += buy ? quantity : -quantity;
+        }
+
+        synchronized void release(boolean buy, int quantity, long priceTicks) {
+            add(buy, -quantity, -quantity * priceTicks);
+        }
+
+        synchronized long getPosition() {
+            return position;
+        }
+
+        synchronized long getOpenQuantity() {
+            return openBuyQuantity + openSellQuantity;
+        }
+
+        private Reject exceeds(boolean buy, long quantity, long notionalTicks) {
+            if (openBuyQuantity + openSellQuantity + quantity > maxOpenQuantity) return Reject.OPEN_QUANTITY;
+            if (openNotionalTicks + notionalTicks > maxNotionalTicks) return Reject.NOTIONAL;
+            // Worst case: every resting order on the order's side fills
+            long worstPosition = buy ? position + openBuyQuantity + quantity : openSellQuantity + quantity - position;
+            return worstPosition > maxPosition ? Reject.POSITION : null;
+        }
+
+        private void add(boolean buy, long quantity, long notionalTicks) {
+            if (buy) openBuyQuantity += quantity; else openSellQuantity += quantity;
+            openNotionalTicks += notionalTicks;
+        }
+
+        private boolean takeOrderToken() {
+            if (orderIntervalNanos == 0) return true;
+            long now = System.nanoTime();
+            long next = Math.max(nextOrderNanos, now) + orderIntervalNanos;
+            // Up to one second's worth of orders may be sent at once
+            if (next - now > SECOND_NANOS) return false;
+            nextOrderNanos = next;
+            return true;
+        }
+
+        private void refreshLimits() {
+            int current = limitsVersion;
+            if (version == current) return;
+            RiskLimits limits = getLimits(traderName, stock.getSymbol());
+            maxOpenQuantity = limits.getMaxOpenQuantity();
+            maxNotionalTicks = (long) Math.floor(limits.getMaxNotional() / stock.getTickSize());
+            orderIntervalNanos = limits.getMaxOrdersPerSecond() == RiskLimits.UNLIMITED
+                ? 0 : Math.max(1, SECOND_NANOS / limits.getMaxOrdersPerSecond());
+            maxPosition = limits.getMaxPosition();
+            version = current;
+        }
+    }
+}
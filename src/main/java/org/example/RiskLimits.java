@@ -0,0 +1,67 @@
+package org.example;
+
+/**
+ * Pre-trade limits on what one trader may hold and send in one symbol.
+ * Every limit may be {@link #UNLIMITED}; checked by the {@link RiskEngine}.
+ */
+public final class RiskLimits {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final RiskLimits NONE = new RiskLimits(UNLIMITED, Double.POSITIVE_INFINITY, UNLIMITED, UNLIMITED);
+
+    private final long maxOpenQuantity;
+    private final double maxNotional;
+    private final long maxOrdersPerSecond;
+    private final long maxPosition;
+
+    /**
+     * @param maxOpenQuantity Shares resting on both sides of the book together
+     * @param maxNotional Value of the resting orders at their limit prices
+     * @param maxOrdersPerSecond New and edited orders per second, with bursts of up to one second's worth
+     * @param maxPosition Net shares held long or short, counting resting orders as if they filled
+     */
+    public RiskLimits(long maxOpenQuantity, double maxNotional, long maxOrdersPerSecond, long maxPosition) {
+        if (maxOpenQuantity < 0 || maxNotional < 0 || maxOrdersPerSecond <= 0 || maxPosition < 0) {
+            throw new IllegalArgumentException("Risk limits must be positive");
+        }
+        this.maxOpenQuantity = maxOpenQuantity;
+        this.maxNotional = maxNotional;
+        this.maxOrdersPerSecond = maxOrdersPerSecond;
+        this.maxPosition = maxPosition;
+    }
+
+    public long getMaxOpenQuantity() {
+        return maxOpenQuantity;
+    }
+
+    public double getMaxNotional() {
+        return maxNotional;
+    }
+
+    public long getMaxOrdersPerSecond() {
+        return maxOrdersPerSecond;
+    }
+
+    public long getMaxPosition() {
+        return maxPosition;
+    }
+
+    /**
+     * @return For every limit the tighter of the two
+     */
+    RiskLimits tighten(RiskLimits other) {
+        if (other == null || other == this) return this;
+        return new RiskLimits(Math.min(maxOpenQuantity, other.maxOpenQuantity), Math.min(maxNotional, other.maxNotional),
+            Math.min(maxOrdersPerSecond, other.maxOrdersPerSecond), Math.min(maxPosition, other.maxPosition));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("open %s, notional %s, %s orders/s, position %s", limit(maxOpenQuantity),
+            Double.isInfinite(maxNotional) ? "unlimited" : String.format("$%.2f", maxNotional),
+            limit(maxOrdersPerSecond), limit(maxPosition));
+    }
+
+    private static String limit(long value) {
+        return value == UNLIMITED ? "unlimited" : Long.toString(value);
+    }
+}
@@ -1,6 +1,5 @@
 package org.example;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
@@ -35,30 +34,28 @@ public class Seller extends Client implements Callable<String> {
 
                 int quantity = minShares + random.nextInt(maxShares - minShares + 1);
                 
-                // Place sell order at current stock price
-                SellOrder order = new SellOrder(name, stock, quantity);
+                // Place sell limit order within +/- 1% of the current stock price (rounded to a tick by the order)
+                double price = stock.getCurrentPrice() * (1 + (random.nextDouble() - 0.5) * 0.02);
+                SellOrder order = new SellOrder(name, stock, quantity, price);
                 exchange.placeSellOrder(order);
-                activeOrderIds.add(order.getOrderId());
                 ordersPlaced++;
                 
-                // Randomly cancel or edit previous orders
-                if (!activeOrderIds.isEmpty() && random.nextDouble() < 0.2) { // 20% chance
+                // Randomly cancel or edit one of our resting orders, as indexed by the exchange
+                // (the list is a copy, so it is only fetched when it is needed)
+                List<Order> openOrders = random.nextDouble() < 0.2 // 20% chance
+                    ? exchange.getTraderIndex().getOpenOrders(name) : List.of();
+                if (!openOrders.isEmpty()) {
                     Thread.sleep(random.nextInt(300) + 100);
-                    long randomOrderId = activeOrderIds.get(random.nextInt(activeOrderIds.size()));
+                    long randomOrderId = openOrders.get(random.nextInt(openOrders.size())).getOrderId();
                     
                     double action = random.nextDouble();
                     if (action < 0.5) {
-                        // Cancel order
-                        if (exchange.cancelSellOrderById(randomOrderId)) {
-                            activeOrderIds.remove(randomOrderId);
-                        }
+                        // Cancel order (it may have been filled meanwhile)
+                        exchange.cancelSellOrderById(randomOrderId);
                     } else {
                         // Edit order quantity
                         int newQuantity = minShares + random.nextInt(maxShares - minShares + 1);
-                        if (!exchange.editSellOrder(randomOrderId, newQuantity)) {
-                            // Order doesn't exist anymore, remove from our list
-                            activeOrderIds.remove(randomOrderId);
-                        }
+                        exchange.editSellOrder(randomOrderId, newQuantity);
                     }
                 }
                 
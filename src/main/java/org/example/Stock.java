@@ -1,19 +1,35 @@
 package org.example;
 
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Represents a stock with a symbol/name and current market price
+ * Represents a stock with a symbol/name and current market price.
+ * Prices are held as a whole number of ticks (multiples of the stock's tick size), so price
+ * arithmetic is exact and allocation-free; decimal prices are only used at the edges.
  */
 public class Stock {
+    public static final double DEFAULT_TICK_SIZE = 0.01;
+
     private final String symbol;
-    private final AtomicReference<Double> currentPrice;
+    private final double tickSize;
+    private final AtomicLong currentPriceTicks;
     private final Object lock = new Object();
 
     public Stock(String symbol, double initialPrice) {
+        this(symbol, initialPrice, DEFAULT_TICK_SIZE);
+    }
+
+    /**
+     * @param tickSize The smallest price increment, e.g. 0.01
+     */
+    public Stock(String symbol, double initialPrice, double tickSize) {
+        if (tickSize <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive: " + tickSize);
+        }
         this.symbol = symbol;
-        this.currentPrice = new AtomicReference<>(initialPrice);
+        this.tickSize = tickSize;
+        this.currentPriceTicks = new AtomicLong(toTicks(initialPrice));
     }
 
     public Object getLock() {
@@ -24,12 +40,38 @@ public class Stock {
         return symbol;
     }
 
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    /**
+     * Converts a decimal price to the nearest whole number of ticks.
+     */
+    public long toTicks(double price) {
+        return Math.round(price / tickSize);
+    }
+
+    /**
+     * Converts a price in ticks to a decimal price, for display and logging.
+     */
+    public double toPrice(long ticks) {
+        return ticks * tickSize;
+    }
+
     public double getCurrentPrice() {
-        return currentPrice.get();
+        return toPrice(currentPriceTicks.get());
+    }
+
+    public long getCurrentPriceTicks() {
+        return currentPriceTicks.get();
     }
 
     public void setCurrentPrice(double newPrice) {
-        this.currentPrice.set(newPrice);
+        this.currentPriceTicks.set(toTicks(newPrice));
+    }
+
+    public void setCurrentPriceTicks(long newPriceTicks) {
+        this.currentPriceTicks.set(newPriceTicks);
     }
 
     @Override
@@ -47,6 +89,6 @@ public class Stock {
 
     @Override
     public String toString() {
-        return String.format("%s ($%.2f)", symbol, currentPrice.get());
+        return String.format("%s ($%.2f)", symbol, getCurrentPrice());
     }
 }
@@ -1,82 +1,403 @@
 package org.example;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 /**
  * Central stock exchange that manages all orders and matches buyers with sellers
  */
 public class StockExchange {
+    private static final int DEFAULT_HISTORY_CAPACITY = 65536;
+
+    /**
+     * How much of the order flow is echoed to the console
+     */
+    public enum ConsoleEcho {
+        /** Nothing: no line is formatted on the order path */
+        OFF,
+        /** One placement, cancel, edit or trade out of every sampleEvery */
+        SAMPLED,
+        /** Every placement, cancel, edit and trade */
+        ALL
+    }
+
+    /**
+     * Told about every trade, on the matching thread while the stock's lock is held.
+     * Must not block.
+     */
+    public interface TradeListener {
+        void onTrade(Transaction transaction);
+    }
+
+    /**
+     * Told about every cancelled order or pending stop, on the matching thread while the stock's
+     * lock is held. Must not block.
+     */
+    public interface CancelListener {
+        void onCancel(Order order);
+    }
+
     private final Map<String, Stock> stocks;
-    private final Map<String, LinkedBlockingDeque<BuyOrder>> buyBooks;
-    private final Map<String, LinkedBlockingDeque<SellOrder>> sellBooks;
-    private final Map<Long, BuyOrder> buyOrdersById;
-    private final Map<Long, SellOrder> sellOrdersById;
-    private final Queue<Transaction> transactionHistory;
+    private final Map<String, OrderBook> books;
+    // Resting orders by id, each with its handle in the book for O(1) cancel and lookup
+    private final Map<Long, OrderNode<BuyOrder>> buyOrdersById;
+    private final Map<Long, OrderNode<SellOrder>> sellOrdersById;
+    // Stop orders waiting for their stop price, with their handles in the books' stops
+    private final Map<Long, OrderNode<? extends Order>> stopOrdersById;
+    private volatile TransactionHistory transactionHistory;
+    private final OrderBook.FillHandler fillHandler;
+    private final ExchangeMetrics metrics;
+    private final CandleAggregator candles;
+    private final TraderIndex traderIndex;
+    private volatile MatchingEngine engine;
+    private volatile OrderJournal journal;
+    private volatile TransactionArchive archive;
+    private volatile MarketDataPublisher marketData;
+    private volatile RiskEngine risk;
+    // Periodic uncross of each symbol in auction mode, on one timer thread started on demand
+    private final Map<String, ScheduledFuture<?>> auctions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService auctionTimer;
+    private volatile TradeListener[] tradeListeners = new TradeListener[0];
+    private volatile CancelListener[] cancelListeners = new CancelListener[0];
+    private volatile ConsoleEcho consoleEcho = ConsoleEcho.ALL;
+    private volatile int echoSampleEvery = 1;
     private volatile boolean running;
 
     public StockExchange() {
         this.stocks = new ConcurrentHashMap<>();
-        this.buyBooks = new ConcurrentHashMap<>();
-        this.sellBooks = new ConcurrentHashMap<>();
+        this.books = new ConcurrentHashMap<>();
         this.buyOrdersById = new ConcurrentHashMap<>();
         this.sellOrdersById = new ConcurrentHashMap<>();
-        this.transactionHistory = new ConcurrentLinkedQueue<>();
+        this.stopOrdersById = new ConcurrentHashMap<>();
+        this.transactionHistory = new TransactionHistory(DEFAULT_HISTORY_CAPACITY);
+        this.fillHandler = this::onFill;
+        this.metrics = new ExchangeMetrics(this);
+        this.candles = new CandleAggregator();
+        this.traderIndex = new TraderIndex(TraderIndex.DEFAULT_FILLS_PER_TRADER);
         this.running = false;
     }
 
     public void addStock(Stock stock) {
         stocks.put(stock.getSymbol(), stock);
-        // Buy and sell books maintain chronological order (FIFO)
-        buyBooks.put(stock.getSymbol(), new LinkedBlockingDeque<>());
-        sellBooks.put(stock.getSymbol(), new LinkedBlockingDeque<>());
+        // Each book keeps price levels sorted and orders within a level in chronological order (FIFO)
+        books.put(stock.getSymbol(), new OrderBook(stock));
     }
 
     public Stock getStock(String symbol) {
         return stocks.get(symbol);
     }
 
+    public int getStockCount() {
+        return stocks.size();
+    }
+
     public List<Stock> getAllStocks() {
         return new ArrayList<>(stocks.values());
     }
 
-    public void placeBuyOrder(BuyOrder order) {
-        if (!running) return;
-        LinkedBlockingDeque<BuyOrder> buyBook = buyBooks.get(order.getStock().getSymbol());
-        if (buyBook != null) {
-            buyBook.add(order);
-            buyOrdersById.put(order.getOrderId(), order);
-            Logger.logOrderPlaced(order);
-            System.out.println("✓ " + order);
-            matchOrdersForStock(order.getStock());
+    /**
+     * Places an order and matches it. A stop order waits until a trade reaches its stop price.
+     * An immediate-or-cancel order has its unfilled rest cancelled, and a fill-or-kill order is
+     * cancelled unless it fills in full; both are cancelled without trading in auction mode.
+     * @return false if the order was rejected for having no quantity or by the risk checks, or
+     *         the exchange is not running
+     */
+    public boolean placeBuyOrder(BuyOrder order) {
+        if (!running || !admit(order)) return false;
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.placeBuyOrder(order).join();
+        }
+        return executePlaceBuyOrder(order);
+    }
+
+    /**
+     * Places the order without waiting for matching.
+     * Falls back to a synchronous placement when the matching engine is not enabled.
+     * @return A future completed with true once the order has been placed and matched, false if
+     *         it was rejected
+     */
+    public CompletableFuture<Boolean> submitBuyOrder(BuyOrder order) {
+        if (!running || !admit(order)) return CompletableFuture.completedFuture(false);
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.placeBuyOrder(order);
+        }
+        return CompletableFuture.completedFuture(executePlaceBuyOrder(order));
+    }
+
+    boolean executePlaceBuyOrder(BuyOrder order) {
+        Stock stock = order.getStock();
+        OrderBook book = books.get(stock.getSymbol());
+        if (book == null) {
+            RiskEngine.release(order);
+            return false;
+        }
+        long waitStart = System.nanoTime();
+        synchronized (stock.getLock()) {
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            book.beginUpdate();
+            try {
+                addLocked(book, order);
+                matchOrdersForStock(book);
+                cancelRemainderLocked(book, order);
+            } finally {
+                book.endUpdate();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places an order and matches it, like {@link #placeBuyOrder}.
+     * @return false if the order was rejected for having no quantity or by the risk checks, or
+     *         the exchange is not running
+     */
+    public boolean placeSellOrder(SellOrder order) {
+        if (!running || !admit(order)) return false;
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.placeSellOrder(order).join();
+        }
+        return executePlaceSellOrder(order);
+    }
+
+    /**
+     * Places the order without waiting for matching.
+     * Falls back to a synchronous placement when the matching engine is not enabled.
+     * @return A future completed with true once the order has been placed and matched, false if
+     *         it was rejected
+     */
+    public CompletableFuture<Boolean> submitSellOrder(SellOrder order) {
+        if (!running || !admit(order)) return CompletableFuture.completedFuture(false);
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.placeSellOrder(order);
+        }
+        return CompletableFuture.completedFuture(executePlaceSellOrder(order));
+    }
+
+    boolean executePlaceSellOrder(SellOrder order) {
+        Stock stock = order.getStock();
+        OrderBook book = books.get(stock.getSymbol());
+        if (book == null) {
+            RiskEngine.release(order);
+            return false;
+        }
+        long waitStart = System.nanoTime();
+        synchronized (stock.getLock()) {
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            book.beginUpdate();
+            try {
+                addLocked(book, order);
+                matchOrdersForStock(book);
+                cancelRemainderLocked(book, order);
+            } finally {
+                book.endUpdate();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places a batch of orders. Orders are grouped by symbol: each symbol's lock is taken once,
+     * all of its orders are added to the book in the order given and then matched in a single
+     * pass, so the orders of a batch count as arriving together. Immediate-or-cancel and
+     * fill-or-kill orders are the exception: each is matched on its own as it is added.
+     * @return Whether each order was placed, in the collection's iteration order; false for
+     *         orders of unknown symbols and orders rejected by the risk checks
+     */
+    public boolean[] placeOrders(Collection<? extends Order> orders) {
+        return submitOrders(orders).join();
+    }
+
+    /**
+     * Places a batch of orders like {@link #placeOrders} without waiting for matching.
+     * With the matching engine enabled, each symbol's orders go to its matcher as one command.
+     * @return A future completed with whether each order was placed, once all are matched
+     */
+    public CompletableFuture<boolean[]> submitOrders(Collection<? extends Order> orders) {
+        return submitOrders(orders, true);
+    }
+
+    /**
+     * Places a batch of orders that already passed {@link #admit}
+     */
+    CompletableFuture<boolean[]> submitAdmittedOrders(Collection<? extends Order> orders) {
+        return submitOrders(orders, false);
+    }
+
+    private CompletableFuture<boolean[]> submitOrders(Collection<? extends Order> orders, boolean checkRisk) {
+        boolean[] results = new boolean[orders.size()];
+        if (!running) return CompletableFuture.completedFuture(results);
+        Map<OrderBook, SymbolBatch<Order>> batches = new HashMap<>();
+        int position = 0;
+        for (Order order : orders) {
+            OrderBook book = books.get(order.getStock().getSymbol());
+            if (book == null) {
+                if (!checkRisk) RiskEngine.release(order);
+            } else if (!checkRisk || admit(order)) {
+                batches.computeIfAbsent(book, SymbolBatch::new).add(order, position);
+            }
+            position++;
         }
+        return runBatches(batches, batch -> executePlaceBatch(batch, results), results);
     }
 
-    public void placeSellOrder(SellOrder order) {
-        if (!running) return;
-        LinkedBlockingDeque<SellOrder> sellBook = sellBooks.get(order.getStock().getSymbol());
-        if (sellBook != null) {
-            sellBook.add(order);
-            sellOrdersById.put(order.getOrderId(), order);
+    private void executePlaceBatch(SymbolBatch<Order> batch, boolean[] results) {
+        OrderBook book = batch.book;
+        long waitStart = System.nanoTime();
+        synchronized (book.getStock().getLock()) {
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            book.beginUpdate();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Order order = batch.get(i);
+                    if (order.getTimeInForce() != Order.TimeInForce.GOOD_TILL_CANCELLED) {
+                        // It must meet a book without crosses left by the orders before it
+                        matchOrdersForStock(book);
+                        addLocked(book, order);
+                        matchOrdersForStock(book);
+                        cancelRemainderLocked(book, order);
+                    } else {
+                        addLocked(book, order);
+                    }
+                    results[batch.position(i)] = true;
+                }
+                matchOrdersForStock(book);
+            } finally {
+                book.endUpdate();
+            }
+        }
+    }
+
+    /**
+     * Runs the pre-trade risk checks on a new order, counting and logging a reject.
+     * Orders left without quantity, e.g. reduced before they were placed, orders whose names
+     * the journal cannot hold, and any order once the journal has failed never reach a book.
+     * @return Whether the order may be placed
+     */
+    boolean admit(Order order) {
+        if (order.getQuantity() <= 0) {
+            Logger.logEvent("Invalid order rejected: " + order);
+            if (echo()) System.out.println("⛔ Rejected (no quantity): " + order);
+            return false;
+        }
+        OrderJournal journal = this.journal;
+        if (journal != null && !journal.canRecord(order)) {
+            Logger.logEvent("Order rejected, name too long for the journal: " + order);
+            if (echo()) System.out.println("⛔ Rejected (name too long): " + order);
+            return false;
+        }
+        if (journal != null && journal.isFailed()) {
+            Logger.logEvent("Order rejected, journal failed: " + order);
+            if (echo()) System.out.println("⛔ Rejected (journal failed): " + order);
+            return false;
+        }
+        RiskEngine risk = this.risk;
+        if (risk == null) return true;
+        RiskEngine.Reject reject = risk.check(order);
+        if (reject == null) return true;
+        onRiskReject(order, reject);
+        return false;
+    }
+
+    private void onRiskReject(Order order, RiskEngine.Reject reject) {
+        metrics.recordRiskReject(reject);
+        Logger.logEvent("Risk reject (" + reject + "): " + order);
+        if (echo()) System.out.println("⛔ Rejected (" + reject + "): " + order);
+    }
+
+    /**
+     * Adds an order to its book, or a stop order to the book's stops, without matching.
+     * Must be called while holding the stock's lock.
+     */
+    private void addLocked(OrderBook book, Order order) {
+        metrics.recordOrderPlaced();
+        if (order.isStop()) {
+            stopOrdersById.put(order.getOrderId(), order instanceof BuyOrder buyOrder
+                ? book.addBuyStop(buyOrder) : book.addSellStop((SellOrder) order));
+            traderIndex.onRest(order);
+            OrderJournal journal = this.journal;
+            if (journal != null) journal.recordStop(order);
             Logger.logOrderPlaced(order);
-            System.out.println("✓ " + order);
-            matchOrdersForStock(order.getStock());
+            if (echo()) System.out.println("⏳ " + order);
+            return;
         }
+        enterLocked(book, order);
+    }
+
+    /**
+     * Puts a new or triggered order in its book without matching, or cancels a fill-or-kill
+     * order that would not fill in full. Only orders that enter the book are journaled, except
+     * that a killed stop is journaled as cancelled since it was journaled while pending.
+     * Must be called while holding the stock's lock.
+     */
+    private void enterLocked(OrderBook book, Order order) {
+        if (order.getTimeInForce() == Order.TimeInForce.FILL_OR_KILL && (book.isAuction() || !book.canFill(order))) {
+            RiskEngine.release(order);
+            TraderIndex.onDone(order);
+            order.cancel();
+            metrics.recordCancel();
+            OrderJournal journal = this.journal;
+            if (journal != null && order.isStop()) journal.recordCancel(order);
+            Logger.logOrderCancelled(order);
+            if (echo()) System.out.println("✗ Killed: " + order);
+            return;
+        }
+        if (order instanceof BuyOrder buyOrder) {
+            buyOrdersById.put(order.getOrderId(), book.addBuyOrder(buyOrder));
+        } else {
+            sellOrdersById.put(order.getOrderId(), book.addSellOrder((SellOrder) order));
+        }
+        traderIndex.onRest(order);
+        OrderJournal journal = this.journal;
+        if (journal != null) journal.recordPlace(order);
+        Logger.logOrderPlaced(order);
+        if (echo()) System.out.println("✓ " + order);
+    }
+
+    /**
+     * Cancels what is left of an immediate-or-cancel or fill-or-kill order after it was matched.
+     * Must be called while holding the stock's lock.
+     */
+    private void cancelRemainderLocked(OrderBook book, Order order) {
+        if (order.getTimeInForce() == Order.TimeInForce.GOOD_TILL_CANCELLED) return;
+        OrderNode<? extends Order> node = order instanceof BuyOrder
+            ? buyOrdersById.get(order.getOrderId()) : sellOrdersById.get(order.getOrderId());
+        if (node != null && node.order == order) cancelLocked(book, node);
     }
 
     public boolean cancelBuyOrder(BuyOrder order) {
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.cancelBuyOrder(order).join();
+        }
+        return executeCancelBuyOrder(order);
+    }
+
+    boolean executeCancelBuyOrder(BuyOrder order) {
+        long waitStart = System.nanoTime();
         synchronized (order.getStock().getLock()) {
-            LinkedBlockingDeque<BuyOrder> buyBook = buyBooks.get(order.getStock().getSymbol());
-            if (buyBook != null && buyBook.remove(order)) {
-                buyOrdersById.remove(order.getOrderId());
-                order.cancel();
-                Logger.logOrderCancelled(order);
-                System.out.println("✗ Cancelled: " + order);
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            OrderBook book = books.get(order.getStock().getSymbol());
+            OrderNode<? extends Order> node = buyOrdersById.get(order.getOrderId());
+            if (node == null && order.isStop()) node = stopOrdersById.get(order.getOrderId());
+            if (book != null && node != null && node.order == order && cancelLocked(book, node)) {
+                publishBook(book);
                 return true;
             }
             return false;
@@ -84,30 +405,188 @@ public class StockExchange {
     }
 
     public boolean cancelSellOrder(SellOrder order) {
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            return engine.cancelSellOrder(order).join();
+        }
+        return executeCancelSellOrder(order);
+    }
+
+    boolean executeCancelSellOrder(SellOrder order) {
+        long waitStart = System.nanoTime();
         synchronized (order.getStock().getLock()) {
-            LinkedBlockingDeque<SellOrder> sellBook = sellBooks.get(order.getStock().getSymbol());
-            if (sellBook != null && sellBook.remove(order)) {
-                sellOrdersById.remove(order.getOrderId());
-                order.cancel();
-                Logger.logOrderCancelled(order);
-                System.out.println("✗ Cancelled: " + order);
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            OrderBook book = books.get(order.getStock().getSymbol());
+            OrderNode<? extends Order> node = sellOrdersById.get(order.getOrderId());
+            if (node == null && order.isStop()) node = stopOrdersById.get(order.getOrderId());
+            if (book != null && node != null && node.order == order && cancelLocked(book, node)) {
+                publishBook(book);
                 return true;
             }
             return false;
         }
     }
 
+    /**
+     * Cancels a batch of resting orders, buy or sell, by id. Orders are grouped by symbol and
+     * each symbol's lock is taken once for all of its cancels.
+     * @return Whether each order was cancelled, in the order of the ids; false for unknown ids
+     */
+    public boolean[] cancelOrders(long[] orderIds) {
+        boolean[] results = new boolean[orderIds.length];
+        Map<OrderBook, SymbolBatch<OrderNode<? extends Order>>> batches = new HashMap<>();
+        for (int i = 0; i < orderIds.length; i++) {
+            OrderNode<? extends Order> node = buyOrdersById.get(orderIds[i]);
+            if (node == null) node = sellOrdersById.get(orderIds[i]);
+            if (node == null) node = stopOrdersById.get(orderIds[i]);
+            if (node == null) continue;
+            OrderBook book = books.get(node.order.getStock().getSymbol());
+            if (book != null) {
+                batches.computeIfAbsent(book, SymbolBatch::new).add(node, i);
+            }
+        }
+        return runBatches(batches, batch -> executeCancelBatch(batch, results), results).join();
+    }
+
+    private void executeCancelBatch(SymbolBatch<OrderNode<? extends Order>> batch, boolean[] results) {
+        OrderBook book = batch.book;
+        long waitStart = System.nanoTime();
+        synchronized (book.getStock().getLock()) {
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            boolean changed = false;
+            book.beginUpdate();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    OrderNode<? extends Order> node = batch.get(i);
+                    Order order = node.order;
+                    // Only a node still indexed under its id is resting; it may have been filled meanwhile
+                    OrderNode<? extends Order> current = order instanceof BuyOrder
+                        ? buyOrdersById.get(order.getOrderId()) : sellOrdersById.get(order.getOrderId());
+                    if (current == null && order.isStop()) current = stopOrdersById.get(order.getOrderId());
+                    if (current == node && cancelLocked(book, node)) {
+                        results[batch.position(i)] = true;
+                        changed = true;
+                    }
+                }
+            } finally {
+                book.endUpdate();
+            }
+            if (changed) publishBook(book);
+        }
+    }
+
+    /**
+     * Takes a resting order or a pending stop off its book and out of the id index.
+     * Must be called while holding the stock's lock.
+     * @return false if the order was no longer resting
+     */
+    @SuppressWarnings("unchecked")
+    private boolean cancelLocked(OrderBook book, OrderNode<? extends Order> node) {
+        Order order = node.order;
+        boolean pendingStop = order.isStop() && stopOrdersById.remove(order.getOrderId(), node);
+        if (pendingStop) {
+            if (order instanceof BuyOrder) {
+                book.removeBuyStop((OrderNode<BuyOrder>) node);
+            } else {
+                book.removeSellStop((OrderNode<SellOrder>) node);
+            }
+        } else if (order instanceof BuyOrder) {
+            if (!book.removeBuyOrder((OrderNode<BuyOrder>) node)) return false;
+            buyOrdersById.remove(order.getOrderId());
+        } else {
+            if (!book.removeSellOrder((OrderNode<SellOrder>) node)) return false;
+            sellOrdersById.remove(order.getOrderId());
+        }
+        RiskEngine.release(order);
+        TraderIndex.onDone(order);
+        order.cancel();
+        metrics.recordCancel();
+        OrderJournal journal = this.journal;
+        if (journal != null) journal.recordCancel(order);
+        for (CancelListener listener : cancelListeners) {
+            listener.onCancel(order);
+        }
+        Logger.logOrderCancelled(order);
+        if (echo()) System.out.println("✗ Cancelled: " + order);
+        return true;
+    }
+
+    /**
+     * Runs each symbol's part of a batch under that symbol's lock: on the caller's thread, or
+     * on the symbol's matcher when the matching engine is enabled
+     */
+    private <T> CompletableFuture<boolean[]> runBatches(Map<OrderBook, SymbolBatch<T>> batches,
+                                                        Consumer<SymbolBatch<T>> execute, boolean[] results) {
+        MatchingEngine engine = this.engine;
+        if (engine == null) {
+            for (SymbolBatch<T> batch : batches.values()) {
+                execute.accept(batch);
+            }
+            return CompletableFuture.completedFuture(results);
+        }
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[batches.size()];
+        int i = 0;
+        for (SymbolBatch<T> batch : batches.values()) {
+            parts[i++] = engine.submitTask(batch.book.getStock().getSymbol(), () -> {
+                execute.accept(batch);
+                return true;
+            });
+        }
+        return CompletableFuture.allOf(parts).thenApply(done -> results);
+    }
+
+    /**
+     * The part of a batch that belongs to one symbol, with each item's position in the batch
+     */
+    private static final class SymbolBatch<T> {
+        final OrderBook book;
+        private final List<T> items = new ArrayList<>();
+        private int[] positions = new int[8];
+
+        SymbolBatch(OrderBook book) {
+            this.book = book;
+        }
+
+        void add(T item, int position) {
+            if (items.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[items.size()] = position;
+            items.add(item);
+        }
+
+        int size() {
+            return items.size();
+        }
+
+        T get(int i) {
+            return items.get(i);
+        }
+
+        int position(int i) {
+            return positions[i];
+        }
+    }
+
     public boolean cancelBuyOrderById(long orderId) {
-        BuyOrder order = buyOrdersById.get(orderId);
-        if (order != null) {
+        OrderNode<BuyOrder> node = buyOrdersById.get(orderId);
+        if (node != null) {
+            return cancelBuyOrder(node.order);
+        }
+        OrderNode<? extends Order> stop = stopOrdersById.get(orderId);
+        if (stop != null && stop.order instanceof BuyOrder order) {
             return cancelBuyOrder(order);
         }
         return false;
     }
 
     public boolean cancelSellOrderById(long orderId) {
-        SellOrder order = sellOrdersById.get(orderId);
-        if (order != null) {
+        OrderNode<SellOrder> node = sellOrdersById.get(orderId);
+        if (node != null) {
+            return cancelSellOrder(node.order);
+        }
+        OrderNode<? extends Order> stop = stopOrdersById.get(orderId);
+        if (stop != null && stop.order instanceof SellOrder order) {
             return cancelSellOrder(order);
         }
         return false;
@@ -115,27 +594,62 @@ public class StockExchange {
 
     public boolean editBuyOrder(long orderId, int newQuantity) {
         if (newQuantity <= 0) return false;
-        
-        BuyOrder order = buyOrdersById.get(orderId);
-        if (order == null) return false;
+
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            OrderNode<BuyOrder> node = buyOrdersById.get(orderId);
+            return node != null && engine.editBuyOrder(node.order, newQuantity).join();
+        }
+        return executeEditBuyOrder(orderId, newQuantity);
+    }
+
+    boolean executeEditBuyOrder(long orderId, int newQuantity) {
+        OrderNode<BuyOrder> node = buyOrdersById.get(orderId);
+        if (node == null) return false;
+        BuyOrder order = node.order;
         
         Stock stock = order.getStock();
-        LinkedBlockingDeque<BuyOrder> buyBook = buyBooks.get(stock.getSymbol());
+        OrderBook book = books.get(stock.getSymbol());
         
-        if (buyBook != null) {
+        if (book != null) {
+            long waitStart = System.nanoTime();
             synchronized (stock.getLock()) {
-                if (buyBook.remove(order)) {
-                    int oldQuantity = order.getQuantity();
-                    BuyOrder newOrder = new BuyOrder(order.getTraderName(), stock, newQuantity);
-                    buyBook.add(newOrder);
-                    buyOrdersById.remove(orderId);
-                    buyOrdersById.put(newOrder.getOrderId(), newOrder);
-                    Logger.logEvent(String.format("Order #%d quantity edited: %d -> %d shares", 
-                        orderId, oldQuantity, newQuantity));
-                    System.out.println(String.format("✎ Edited: BUY Order #%d - %s: %d -> %d shares",
-                        orderId, stock.getSymbol(), oldQuantity, newQuantity));
-                    matchOrdersForStock(stock);
-                    return true;
+                metrics.recordLockWait(System.nanoTime() - waitStart);
+                if (node.isLinked()) {
+                    RiskEngine.Reject reject = RiskEngine.checkEdit(order, newQuantity);
+                    if (reject != null) {
+                        onRiskReject(order, reject);
+                        return false;
+                    }
+                }
+                book.beginUpdate();
+                try {
+                    if (book.removeBuyOrder(node)) {
+                        metrics.recordEdit();
+                        int oldQuantity = order.getQuantity();
+                        // The edited order keeps its price but loses its time priority
+                        BuyOrder newOrder = new BuyOrder(Order.newOrderId(), order.getTraderName(), stock, newQuantity,
+                            order.getPriceTicks(), order.getTimeInForce(), order.getDisplayQuantity(), Order.NO_STOP);
+                        // The edit check moved the old order's reservation to the new quantity
+                        newOrder.riskAccount = order.riskAccount;
+                        order.replacement = newOrder;
+                        buyOrdersById.remove(orderId);
+                        buyOrdersById.put(newOrder.getOrderId(), book.addBuyOrder(newOrder));
+                        TraderIndex.onDone(order);
+                        newOrder.traderEntry = order.traderEntry;
+                        traderIndex.onRest(newOrder);
+                        OrderJournal journal = this.journal;
+                        if (journal != null) journal.recordEdit(order, newOrder);
+                        Logger.logOrderModified(order, oldQuantity, newQuantity);
+                        if (echo()) {
+                            System.out.println(String.format("✎ Edited: BUY Order #%d - %s: %d -> %d shares",
+                                orderId, stock.getSymbol(), oldQuantity, newQuantity));
+                        }
+                        matchOrdersForStock(book);
+                        return true;
+                    }
+                } finally {
+                    book.endUpdate();
                 }
             }
         }
@@ -144,27 +658,62 @@ public class StockExchange {
 
     public boolean editSellOrder(long orderId, int newQuantity) {
         if (newQuantity <= 0) return false;
-        
-        SellOrder order = sellOrdersById.get(orderId);
-        if (order == null) return false;
+
+        MatchingEngine engine = this.engine;
+        if (engine != null) {
+            OrderNode<SellOrder> node = sellOrdersById.get(orderId);
+            return node != null && engine.editSellOrder(node.order, newQuantity).join();
+        }
+        return executeEditSellOrder(orderId, newQuantity);
+    }
+
+    boolean executeEditSellOrder(long orderId, int newQuantity) {
+        OrderNode<SellOrder> node = sellOrdersById.get(orderId);
+        if (node == null) return false;
+        SellOrder order = node.order;
         
         Stock stock = order.getStock();
-        LinkedBlockingDeque<SellOrder> sellBook = sellBooks.get(stock.getSymbol());
+        OrderBook book = books.get(stock.getSymbol());
         
-        if (sellBook != null) {
+        if (book != null) {
+            long waitStart = System.nanoTime();
             synchronized (stock.getLock()) {
-                if (sellBook.remove(order)) {
-                    int oldQuantity = order.getQuantity();
-                    SellOrder newOrder = new SellOrder(order.getTraderName(), stock, newQuantity);
-                    sellBook.add(newOrder);
-                    sellOrdersById.remove(orderId);
-                    sellOrdersById.put(newOrder.getOrderId(), newOrder);
-                    Logger.logEvent(String.format("Order #%d quantity edited: %d -> %d shares", 
-                        orderId, oldQuantity, newQuantity));
-                    System.out.println(String.format("✎ Edited: SELL Order #%d - %s: %d -> %d shares",
-                        orderId, stock.getSymbol(), oldQuantity, newQuantity));
-                    matchOrdersForStock(stock);
-                    return true;
+                metrics.recordLockWait(System.nanoTime() - waitStart);
+                if (node.isLinked()) {
+                    RiskEngine.Reject reject = RiskEngine.checkEdit(order, newQuantity);
+                    if (reject != null) {
+                        onRiskReject(order, reject);
+                        return false;
+                    }
+                }
+                book.beginUpdate();
+                try {
+                    if (book.removeSellOrder(node)) {
+                        metrics.recordEdit();
+                        int oldQuantity = order.getQuantity();
+                        // The edited order keeps its price but loses its time priority
+                        SellOrder newOrder = new SellOrder(Order.newOrderId(), order.getTraderName(), stock, newQuantity,
+                            order.getPriceTicks(), order.getTimeInForce(), order.getDisplayQuantity(), Order.NO_STOP);
+                        // The edit check moved the old order's reservation to the new quantity
+                        newOrder.riskAccount = order.riskAccount;
+                        order.replacement = newOrder;
+                        sellOrdersById.remove(orderId);
+                        sellOrdersById.put(newOrder.getOrderId(), book.addSellOrder(newOrder));
+                        TraderIndex.onDone(order);
+                        newOrder.traderEntry = order.traderEntry;
+                        traderIndex.onRest(newOrder);
+                        OrderJournal journal = this.journal;
+                        if (journal != null) journal.recordEdit(order, newOrder);
+                        Logger.logOrderModified(order, oldQuantity, newQuantity);
+                        if (echo()) {
+                            System.out.println(String.format("✎ Edited: SELL Order #%d - %s: %d -> %d shares",
+                                orderId, stock.getSymbol(), oldQuantity, newQuantity));
+                        }
+                        matchOrdersForStock(book);
+                        return true;
+                    }
+                } finally {
+                    book.endUpdate();
                 }
             }
         }
@@ -179,16 +728,11 @@ public class StockExchange {
      */
     public int getOrderQuantity(Order order) {
         synchronized (order.getStock().getLock()) {
-            if (order instanceof BuyOrder) {
-                LinkedBlockingDeque<BuyOrder> buyBook = buyBooks.get(order.getStock().getSymbol());
-                if (buyBook != null && buyBook.contains(order)) {
-                    return order.getQuantity();
-                }
-            } else if (order instanceof SellOrder) {
-                LinkedBlockingDeque<SellOrder> sellBook = sellBooks.get(order.getStock().getSymbol());
-                if (sellBook != null && sellBook.contains(order)) {
-                    return order.getQuantity();
-                }
+            OrderNode<? extends Order> node = order instanceof BuyOrder
+                ? buyOrdersById.get(order.getOrderId()) : sellOrdersById.get(order.getOrderId());
+            if (node == null && order.isStop()) node = stopOrdersById.get(order.getOrderId());
+            if (node != null && node.order == order && node.isLinked()) {
+                return order.getQuantity();
             }
             return -1;
         }
@@ -196,97 +740,618 @@ public class StockExchange {
 
     /**
      * Match orders for a specific stock only.
-     * Orders are matched in chronological order, starting with the latest orders.
-     * The stock price is updated after each transaction.
-     * @param stock The stock to match orders for
+     * Orders are matched with price-time priority: the highest bid against the lowest ask,
+     * oldest first within a price level, for as long as the two sides cross.
+     * The stock price is updated to the last traded price, and stop orders it reaches enter the book.
+     * In auction mode nothing is matched: orders wait for the next uncross.
+     * Must be called while holding the stock's lock.
+     * @param book The order book of the stock to match orders for
      */
-    private void matchOrdersForStock(Stock stock) {
-        LinkedBlockingDeque<BuyOrder> buyBook = buyBooks.get(stock.getSymbol());
-        LinkedBlockingDeque<SellOrder> sellBook = sellBooks.get(stock.getSymbol());
-        
-        if (buyBook == null || sellBook == null) {
+    private void matchOrdersForStock(OrderBook book) {
+        if (book.isAuction()) {
+            publishBook(book);
             return;
         }
-        
-        // Lock only for the actual matching
+        long start = System.nanoTime();
+        int fills = book.match(fillHandler);
+        metrics.recordMatch(System.nanoTime() - start, fills);
+        if (book.getStopOrderCount() > 0) triggerStopsLocked(book);
+        publishBook(book);
+    }
+
+    /**
+     * Puts the stop orders reached by the last trade price into the book, one at a time, each
+     * matched as it arrives; its trades may move the price on and trigger further stops.
+     * Only the stops that trigger are visited. In auction mode they wait for the next uncross.
+     * Must be called while holding the stock's lock.
+     */
+    private void triggerStopsLocked(OrderBook book) {
+        Stock stock = book.getStock();
+        Order order;
+        while ((order = book.pollTriggeredStop(stock.getCurrentPriceTicks())) != null) {
+            stopOrdersById.remove(order.getOrderId());
+            Logger.logEvent("Stop triggered at $" + LogFormat.money(new StringBuilder(), stock.getCurrentPrice())
+                + ": " + order);
+            if (echo()) System.out.println("⚡ Triggered: " + order);
+            enterLocked(book, order);
+            if (!book.isAuction()) {
+                long start = System.nanoTime();
+                int fills = book.match(fillHandler);
+                metrics.recordMatch(System.nanoTime() - start, fills);
+            }
+            cancelRemainderLocked(book, order);
+        }
+    }
+
+    /**
+     * Switches a symbol to call-auction mode: orders accumulate without matching, and every
+     * window the book is uncrossed at the single price that executes the most shares.
+     * Calling it again changes the window.
+     * @return false if the symbol is unknown
+     */
+    public synchronized boolean enableAuction(String symbol, Duration window) {
+        OrderBook book = books.get(symbol);
+        if (book == null) return false;
+        book.setAuction(true);
+        if (auctionTimer == null) {
+            auctionTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "auction-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long windowNanos = window.toNanos();
+        ScheduledFuture<?> previous = auctions.put(symbol, auctionTimer.scheduleAtFixedRate(
+            () -> uncross(book, false), windowNanos, windowNanos, TimeUnit.NANOSECONDS));
+        if (previous != null) previous.cancel(false);
+        Logger.logEvent("Auction mode for " + symbol + " with a window of " + window.toMillis() + " ms");
+        return true;
+    }
+
+    /**
+     * Switches a symbol back to continuous matching, first uncrossing the orders that
+     * accumulated during the auction.
+     * @return The number of fills of that last uncross, or -1 if the symbol was not in auction mode
+     */
+    public synchronized int disableAuction(String symbol) {
+        ScheduledFuture<?> timer = auctions.remove(symbol);
+        if (timer == null) return -1;
+        timer.cancel(false);
+        Logger.logEvent("Continuous matching for " + symbol);
+        return uncross(books.get(symbol), true);
+    }
+
+    public boolean isAuction(String symbol) {
+        OrderBook book = books.get(symbol);
+        return book != null && book.isAuction();
+    }
+
+    /**
+     * Uncrosses a symbol in auction mode now rather than at the end of its window, e.g. at the close.
+     * @return The number of fills, or -1 if the symbol is not in auction mode
+     */
+    public int uncross(String symbol) {
+        OrderBook book = books.get(symbol);
+        if (book == null || !book.isAuction()) return -1;
+        return uncross(book, false);
+    }
+
+    /**
+     * Runs an uncross on the thread that owns the symbol: the caller's, or its matcher's when
+     * the matching engine is enabled.
+     */
+    private int uncross(OrderBook book, boolean thenContinuous) {
+        MatchingEngine engine = this.engine;
+        if (engine == null) return executeUncross(book, thenContinuous);
+        int[] fills = new int[1];
+        engine.submitTask(book.getStock().getSymbol(), () -> {
+            fills[0] = executeUncross(book, thenContinuous);
+            return true;
+        }).join();
+        return fills[0];
+    }
+
+    private int executeUncross(OrderBook book, boolean thenContinuous) {
+        Stock stock = book.getStock();
+        long waitStart = System.nanoTime();
         synchronized (stock.getLock()) {
-            // Process latest orders first (from the end of the deque)
-            while (!buyBook.isEmpty() && !sellBook.isEmpty()) {
-                // Get latest orders (most recent)
-                BuyOrder buyOrder = buyBook.peekLast();
-                SellOrder sellOrder = sellBook.peekLast();
-                
-                if (buyOrder == null || sellOrder == null) break;
-                
-                // Skip zero-quantity orders
-                if (buyOrder.getQuantity() == 0) {
-                    buyBook.pollLast();
-                    continue;
-                }
-                if (sellOrder.getQuantity() == 0) {
-                    sellBook.pollLast();
-                    continue;
+            metrics.recordLockWait(System.nanoTime() - waitStart);
+            book.beginUpdate();
+            try {
+                // Orders arriving after the switch already match continuously, so it happens under the lock
+                if (thenContinuous) book.setAuction(false);
+                long start = System.nanoTime();
+                long clearingTicks = book.getClearingPriceTicks(stock.getCurrentPriceTicks());
+                int fills = book.uncross(fillHandler, clearingTicks);
+                metrics.recordMatch(System.nanoTime() - start, fills);
+                if (book.getStopOrderCount() > 0) triggerStopsLocked(book);
+                if (fills > 0) {
+                    String result = "Auction " + stock.getSymbol() + " uncrossed at $"
+                        + LogFormat.money(new StringBuilder(), stock.toPrice(clearingTicks)) + " with " + fills + " fills";
+                    Logger.logEvent(result);
+                    if (echo()) System.out.println("🔔 " + result);
                 }
-                
-                // Execute trade at current stock price
-                int tradedQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
-                
-                Transaction transaction = new Transaction(buyOrder, sellOrder, tradedQuantity);
-                transactionHistory.add(transaction);
-                
-                buyOrder.reduceQuantity(tradedQuantity);
-                sellOrder.reduceQuantity(tradedQuantity);
-                
-                // Remove fully filled orders from queues and maps
-                if (buyOrder.getQuantity() == 0) {
-                    buyBook.pollLast();
-                    buyOrdersById.remove(buyOrder.getOrderId());
-                }
-                if (sellOrder.getQuantity() == 0) {
-                    sellBook.pollLast();
-                    sellOrdersById.remove(sellOrder.getOrderId());
-                }
-                
-                // Update stock price after the transaction
-                // Price moves based on supply/demand: slight random fluctuation
-                double oldPrice = stock.getCurrentPrice();
-                double priceChange = (Math.random() - 0.5) * 0.02 * oldPrice; // +/- 1% random change
-                double newPrice = oldPrice + priceChange;
-                newPrice = Math.round(newPrice * 100.0) / 100.0; // Round to 2 decimals
-                
-                if (Math.abs(newPrice - oldPrice) > 0.01) {
-                    stock.setCurrentPrice(newPrice);
-                    Logger.logPriceChange(stock, oldPrice, newPrice);
-                }
-                
-                Logger.logTransaction(transaction);
-                System.out.println("★ " + transaction);
+                publishBook(book);
+                return fills;
+            } finally {
+                book.endUpdate();
             }
         }
     }
 
+    /**
+     * Hands the new top of book to the market-data publisher, if enabled.
+     * Must be called while holding the stock's lock.
+     */
+    private void publishBook(OrderBook book) {
+        MarketDataPublisher marketData = this.marketData;
+        if (marketData != null) marketData.onBookChanged(book);
+    }
+
+    private void onFill(BuyOrder buyOrder, SellOrder sellOrder, int quantity, long priceTicks) {
+        Stock stock = buyOrder.getStock();
+        Transaction transaction = new Transaction(buyOrder, sellOrder, quantity, priceTicks);
+        transactionHistory.add(transaction);
+        TraderIndex.onFill(buyOrder, sellOrder, transaction);
+        RiskEngine.onFill(buyOrder, quantity);
+        RiskEngine.onFill(sellOrder, quantity);
+        candles.onFill(stock, priceTicks, quantity, System.currentTimeMillis());
+        metrics.recordFill();
+        OrderJournal journal = this.journal;
+        if (journal != null) journal.recordFill(buyOrder, sellOrder, quantity, priceTicks);
+        TransactionArchive archive = this.archive;
+        if (archive != null) archive.append(transaction);
+
+        // Remove fully filled orders from the maps (the book has already dropped them)
+        if (buyOrder.getQuantity() == 0) {
+            buyOrdersById.remove(buyOrder.getOrderId());
+        }
+        if (sellOrder.getQuantity() == 0) {
+            sellOrdersById.remove(sellOrder.getOrderId());
+        }
+
+        // The market price follows the last trade
+        long oldPriceTicks = stock.getCurrentPriceTicks();
+        if (priceTicks != oldPriceTicks) {
+            stock.setCurrentPriceTicks(priceTicks);
+            Logger.logPriceChange(stock, oldPriceTicks, priceTicks);
+        }
+
+        MarketDataPublisher marketData = this.marketData;
+        if (marketData != null) marketData.onTrade(transaction);
+        for (TradeListener listener : tradeListeners) {
+            listener.onTrade(transaction);
+        }
+
+        Logger.logTransaction(transaction);
+        if (echo()) System.out.println("★ " + transaction);
+    }
+
+    /**
+     * @return Whether the current order event should be printed
+     */
+    private boolean echo() {
+        ConsoleEcho mode = consoleEcho;
+        return mode == ConsoleEcho.ALL
+            || (mode == ConsoleEcho.SAMPLED && ThreadLocalRandom.current().nextInt(echoSampleEvery) == 0);
+    }
+
+    public ConsoleEcho getConsoleEcho() {
+        return consoleEcho;
+    }
+
+    public int getEchoSampleEvery() {
+        return echoSampleEvery;
+    }
+
+    /**
+     * Sets how much of the order flow is printed. Printing formats each line while the stock's
+     * lock is held, so high-rate runs should use {@link ConsoleEcho#OFF} or sample; the log files
+     * are written either way.
+     * @param sampleEvery For {@link ConsoleEcho#SAMPLED}: print one event out of this many
+     */
+    public void setConsoleEcho(ConsoleEcho mode, int sampleEvery) {
+        this.echoSampleEvery = Math.max(1, sampleEvery);
+        this.consoleEcho = mode;
+    }
+
+    /**
+     * @return Aggregated depth of the symbol's best levels, read without blocking the matcher;
+     *         null if the symbol is unknown
+     * @param levels Number of levels per side at most
+     */
+    public BookDepth getDepth(String symbol, int levels) {
+        OrderBook book = books.get(symbol);
+        return book != null ? book.getDepth(levels) : null;
+    }
+
+    /**
+     * @return Copies of every resting order of the symbol as of one version of its book, read
+     *         without blocking the matcher; null if the symbol is unknown
+     */
+    public BookSnapshot getBookSnapshot(String symbol) {
+        OrderBook book = books.get(symbol);
+        return book != null ? book.getSnapshot() : null;
+    }
+
+    /**
+     * @return The live resting buy orders of every book, each book locked while it is copied.
+     *         Pollers should prefer {@link #getBookSnapshot} or {@link #getDepth}.
+     */
     public List<BuyOrder> getBuyOrders() {
         List<BuyOrder> allOrders = new ArrayList<>();
-        for (LinkedBlockingDeque<BuyOrder> buyBook : buyBooks.values()) {
-            allOrders.addAll(buyBook);
+        for (OrderBook book : books.values()) {
+            synchronized (book.getStock().getLock()) {
+                book.addBuyOrdersTo(allOrders);
+            }
         }
         return allOrders;
     }
 
+    /**
+     * @return The live resting sell orders of every book, each book locked while it is copied.
+     *         Pollers should prefer {@link #getBookSnapshot} or {@link #getDepth}.
+     */
     public List<SellOrder> getSellOrders() {
         List<SellOrder> allOrders = new ArrayList<>();
-        for (LinkedBlockingDeque<SellOrder> sellBook : sellBooks.values()) {
-            allOrders.addAll(sellBook);
+        for (OrderBook book : books.values()) {
+            synchronized (book.getStock().getLock()) {
+                book.addSellOrdersTo(allOrders);
+            }
+        }
+        return allOrders;
+    }
+
+    /**
+     * @return The stop orders of every book still waiting for their stop price, buy stops first
+     */
+    public List<Order> getStopOrders() {
+        List<Order> allOrders = new ArrayList<>();
+        for (OrderBook book : books.values()) {
+            synchronized (book.getStock().getLock()) {
+                book.addStopOrdersTo(allOrders);
+            }
         }
         return allOrders;
     }
 
-    public List<Transaction> getTransactionHistory() {
-        return new ArrayList<>(transactionHistory);
+    /**
+     * @return Counters and latency histograms of this exchange, published over JMX while it runs
+     */
+    public ExchangeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return OHLCV candles of every stock, built from the fills
+     */
+    public CandleAggregator getCandles() {
+        return candles;
+    }
+
+    /**
+     * @return Resting orders, fills and totals by trader, kept up to date on every order event
+     */
+    public TraderIndex getTraderIndex() {
+        return traderIndex;
+    }
+
+    Collection<OrderBook> getOrderBooks() {
+        return books.values();
+    }
+
+    /**
+     * @return The recent transactions, queried page by page
+     */
+    public TransactionHistory getTransactionHistory() {
+        return transactionHistory;
+    }
+
+    /**
+     * Replaces the transaction history, e.g. with one that spills to disk.
+     * Should be called before trading starts; the previous history is closed.
+     */
+    public void setTransactionHistory(TransactionHistory history) {
+        TransactionHistory previous = this.transactionHistory;
+        this.transactionHistory = history;
+        previous.close();
+    }
+
+    /**
+     * Switches to single-writer mode: each symbol is owned by one matcher thread and all
+     * order commands are queued to it instead of running on the caller's thread.
+     * @param matcherThreads Number of matcher threads
+     * @param queueCapacity Capacity of each matcher's command queue (power of two)
+     */
+    public synchronized void enableMatchingEngine(int matcherThreads, int queueCapacity) {
+        if (engine != null) return;
+        MatchingEngine newEngine = new MatchingEngine(this, matcherThreads, queueCapacity);
+        newEngine.start();
+        engine = newEngine;
+        Logger.logEvent("Matching engine enabled with " + matcherThreads + " matcher threads");
+    }
+
+    /**
+     * Drains the matcher queues and returns to matching on the caller's thread.
+     */
+    public synchronized void disableMatchingEngine() {
+        MatchingEngine oldEngine = engine;
+        if (oldEngine == null) return;
+        engine = null;
+        oldEngine.stop();
+        Logger.logEvent("Matching engine disabled");
+    }
+
+    public MatchingEngine getMatchingEngine() {
+        return engine;
+    }
+
+    /**
+     * Starts publishing top of book, last trade and trade prints of every symbol.
+     * @return The publisher to subscribe to
+     */
+    public synchronized MarketDataPublisher enableMarketData(int maxSymbols) {
+        if (marketData != null) return marketData;
+        MarketDataPublisher publisher = new MarketDataPublisher(maxSymbols);
+        publisher.start();
+        marketData = publisher;
+        // Books that do not change soon still get an initial quote
+        for (OrderBook book : books.values()) {
+            synchronized (book.getStock().getLock()) {
+                publisher.onBookChanged(book);
+            }
+        }
+        Logger.logEvent("Market data enabled for up to " + maxSymbols + " symbols");
+        return publisher;
+    }
+
+    public MarketDataPublisher enableMarketData() {
+        return enableMarketData(Math.max(MarketDataPublisher.DEFAULT_MAX_SYMBOLS, stocks.size() * 2));
+    }
+
+    /**
+     * Publishes what is still pending and stops the publisher; subscribers receive nothing more.
+     */
+    public synchronized void disableMarketData() {
+        MarketDataPublisher oldPublisher = marketData;
+        if (oldPublisher == null) return;
+        marketData = null;
+        oldPublisher.stop();
+        Logger.logEvent("Market data disabled");
+    }
+
+    public MarketDataPublisher getMarketData() {
+        return marketData;
+    }
+
+    /**
+     * Runs every new or edited order through pre-trade risk checks from now on; orders already
+     * resting are not accounted for. Rejects are counted in the metrics.
+     * @param defaultLimits Limits of traders without limits of their own
+     * @return The risk engine, to set per-trader and per-symbol limits on
+     */
+    public synchronized RiskEngine enableRiskChecks(RiskLimits defaultLimits) {
+        if (risk != null) {
+            risk.setDefaultLimits(defaultLimits);
+        } else {
+            risk = new RiskEngine(defaultLimits);
+        }
+        Logger.logEvent("Risk checks enabled: " + defaultLimits);
+        return risk;
+    }
+
+    /**
+     * Stops checking new orders. Orders checked before keep being accounted for until they are
+     * filled or cancelled.
+     */
+    public synchronized void disableRiskChecks() {
+        if (risk == null) return;
+        risk = null;
+        Logger.logEvent("Risk checks disabled");
+    }
+
+    public RiskEngine getRiskEngine() {
+        return risk;
+    }
+
+    public synchronized void addTradeListener(TradeListener listener) {
+        TradeListener[] listeners = Arrays.copyOf(tradeListeners, tradeListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        tradeListeners = listeners;
+    }
+
+    public synchronized void removeTradeListener(TradeListener listener) {
+        List<TradeListener> listeners = new ArrayList<>(Arrays.asList(tradeListeners));
+        listeners.remove(listener);
+        tradeListeners = listeners.toArray(new TradeListener[0]);
+    }
+
+    public synchronized void addCancelListener(CancelListener listener) {
+        CancelListener[] listeners = Arrays.copyOf(cancelListeners, cancelListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        cancelListeners = listeners;
+    }
+
+    public synchronized void removeCancelListener(CancelListener listener) {
+        List<CancelListener> listeners = new ArrayList<>(Arrays.asList(cancelListeners));
+        listeners.remove(listener);
+        cancelListeners = listeners.toArray(new CancelListener[0]);
+    }
+
+    /**
+     * Records every placement, cancel, edit and fill in the journal from now on.
+     * @param journal The journal to append to, or null to stop journaling
+     */
+    public void setJournal(OrderJournal journal) {
+        this.journal = journal;
+    }
+
+    public OrderJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Appends every transaction to a columnar archive from now on.
+     * @param archive The archive to append to, or null to stop archiving
+     */
+    public void setArchive(TransactionArchive archive) {
+        this.archive = archive;
+    }
+
+    public TransactionArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Copies one symbol's price, resting orders and pending stops, together with the journal
+     * sequence they include. The stock lock is held only for the copy.
+     */
+    ExchangeSnapshot.SymbolImage captureSymbol(Stock stock) {
+        OrderBook book = books.get(stock.getSymbol());
+        List<BuyOrder> buys = new ArrayList<>();
+        List<SellOrder> sells = new ArrayList<>();
+        List<Order> stops = new ArrayList<>();
+        synchronized (stock.getLock()) {
+            OrderJournal journal = this.journal;
+            long sequence = journal != null ? journal.getLastSequence() : 0;
+            book.addBuyOrdersTo(buys);
+            book.addSellOrdersTo(sells);
+            book.addStopOrdersTo(stops);
+            return new ExchangeSnapshot.SymbolImage(stock.getSymbol(), stock.getTickSize(),
+                stock.getCurrentPriceTicks(), sequence, buys, sells, stops);
+        }
+    }
+
+    /**
+     * Removes a symbol with its book, resting orders and pending stops, e.g. to move it to
+     * another exchange. Nothing is journaled or logged for the removed orders.
+     * @return The symbol's price and orders at the moment it was removed, or null if it is unknown
+     */
+    ExchangeSnapshot.SymbolImage detachSymbol(String symbol) {
+        Stock stock = stocks.get(symbol);
+        if (stock == null) return null;
+        synchronized (stock.getLock()) {
+            ExchangeSnapshot.SymbolImage image = captureSymbol(stock);
+            for (Order order : image.buyOrders) {
+                buyOrdersById.remove(order.getOrderId());
+                RiskEngine.release(order);
+                TraderIndex.onDone(order);
+            }
+            for (Order order : image.sellOrders) {
+                sellOrdersById.remove(order.getOrderId());
+                RiskEngine.release(order);
+                TraderIndex.onDone(order);
+            }
+            for (Order order : image.stopOrders) {
+                stopOrdersById.remove(order.getOrderId());
+                RiskEngine.release(order);
+                TraderIndex.onDone(order);
+            }
+            books.remove(symbol);
+            stocks.remove(symbol);
+            return image;
+        }
+    }
+
+    /**
+     * Puts a recovered order back in its book without journaling, logging or matching.
+     */
+    void restoreOrder(Order order) {
+        Stock stock = order.getStock();
+        OrderBook book = books.get(stock.getSymbol());
+        if (book == null) return;
+        synchronized (stock.getLock()) {
+            if (order instanceof BuyOrder buyOrder) {
+                buyOrdersById.put(order.getOrderId(), book.addBuyOrder(buyOrder));
+            } else if (order instanceof SellOrder sellOrder) {
+                sellOrdersById.put(order.getOrderId(), book.addSellOrder(sellOrder));
+            }
+            traderIndex.onRest(order);
+        }
+    }
+
+    /**
+     * Puts a recovered stop order back among its book's pending stops without journaling,
+     * logging or checking whether it triggers.
+     */
+    void restoreStop(Order order) {
+        Stock stock = order.getStock();
+        OrderBook book = books.get(stock.getSymbol());
+        if (book == null) return;
+        synchronized (stock.getLock()) {
+            stopOrdersById.put(order.getOrderId(), order instanceof BuyOrder buyOrder
+                ? book.addBuyStop(buyOrder) : book.addSellStop((SellOrder) order));
+            traderIndex.onRest(order);
+        }
+    }
+
+    /**
+     * Removes a recovered order from its book, or a recovered stop from the pending stops,
+     * without journaling or logging.
+     * @return The removed order, or null if it was neither resting nor pending
+     */
+    @SuppressWarnings("unchecked")
+    Order restoreCancel(boolean buy, long orderId) {
+        OrderNode<? extends Order> stop = stopOrdersById.remove(orderId);
+        if (stop != null) {
+            synchronized (stop.order.getStock().getLock()) {
+                OrderBook book = books.get(stop.order.getStock().getSymbol());
+                if (stop.order instanceof BuyOrder) {
+                    book.removeBuyStop((OrderNode<BuyOrder>) stop);
+                } else {
+                    book.removeSellStop((OrderNode<SellOrder>) stop);
+                }
+                TraderIndex.onDone(stop.order);
+            }
+            return stop.order;
+        }
+        if (buy) {
+            OrderNode<BuyOrder> node = buyOrdersById.remove(orderId);
+            if (node == null) return null;
+            synchronized (node.order.getStock().getLock()) {
+                books.get(node.order.getStock().getSymbol()).removeBuyOrder(node);
+                TraderIndex.onDone(node.order);
+            }
+            return node.order;
+        }
+        OrderNode<SellOrder> node = sellOrdersById.remove(orderId);
+        if (node == null) return null;
+        synchronized (node.order.getStock().getLock()) {
+            books.get(node.order.getStock().getSymbol()).removeSellOrder(node);
+            TraderIndex.onDone(node.order);
+        }
+        return node.order;
+    }
+
+    /**
+     * Applies a recovered fill to the two resting orders without matching.
+     * @return The resulting transaction, or null if either order is unknown
+     */
+    Transaction restoreFill(long buyOrderId, long sellOrderId, int quantity, long priceTicks, long timestampNanos) {
+        OrderNode<BuyOrder> buyNode = buyOrdersById.get(buyOrderId);
+        OrderNode<SellOrder> sellNode = sellOrdersById.get(sellOrderId);
+        if (buyNode == null || sellNode == null) return null;
+        Stock stock = buyNode.order.getStock();
+        OrderBook book = books.get(stock.getSymbol());
+        synchronized (stock.getLock()) {
+            Transaction transaction = new Transaction(buyNode.order, sellNode.order, quantity, priceTicks, timestampNanos);
+            if (book.reduceBuyOrder(buyNode, quantity)) {
+                buyOrdersById.remove(buyOrderId);
+            }
+            if (book.reduceSellOrder(sellNode, quantity)) {
+                sellOrdersById.remove(sellOrderId);
+            }
+            transactionHistory.add(transaction);
+            TraderIndex.onFill(buyNode.order, sellNode.order, transaction);
+            candles.onFill(stock, priceTicks, quantity, EpochClock.toMillis(timestampNanos));
+            stock.setCurrentPriceTicks(priceTicks);
+            return transaction;
+        }
     }
 
     public void start() {
         running = true;
+        metrics.register();
         Logger.logEvent("Stock Exchange STARTED");
         System.out.println("\n" + "=".repeat(80));
         System.out.println("STOCK EXCHANGE SIMULATION STARTED");
@@ -295,6 +1360,16 @@ public class StockExchange {
 
     public void stop() {
         running = false;
+        synchronized (this) {
+            if (auctionTimer != null) {
+                auctionTimer.shutdownNow();
+                auctionTimer = null;
+                auctions.clear();
+            }
+        }
+        disableMatchingEngine();
+        disableMarketData();
+        metrics.unregister();
         Logger.logEvent("Stock Exchange STOPPED");
         System.out.println("\n" + "=".repeat(80));
         System.out.println("STOCK EXCHANGE SIMULATION STOPPED");
@@ -307,29 +1382,38 @@ public class StockExchange {
     }
 
     private void printSummary() {
+        // One snapshot per book serves both the counts and the listings
+        List<BookSnapshot> snapshots = new ArrayList<>();
+        int buyCount = 0;
+        int sellCount = 0;
+        for (OrderBook book : books.values()) {
+            BookSnapshot snapshot = book.getSnapshot();
+            snapshots.add(snapshot);
+            buyCount += snapshot.getBids().size();
+            sellCount += snapshot.getAsks().size();
+        }
+
         System.out.println("\n📊 SIMULATION SUMMARY:");
-        System.out.println("   Total Transactions: " + transactionHistory.size());
-        System.out.println("   Active Buy Orders: " + getBuyOrders().size());
-        System.out.println("   Active Sell Orders: " + getSellOrders().size());
+        System.out.println("   Total Transactions: " + transactionHistory.getTotalCount());
+        System.out.println("   Active Buy Orders: " + buyCount);
+        System.out.println("   Active Sell Orders: " + sellCount);
         
         System.out.println("\n📈 STOCK PRICES:");
         for (Stock stock : stocks.values()) {
             System.out.println("   " + stock);
         }
         
-        List<BuyOrder> allBuyOrders = getBuyOrders();
-        if (!allBuyOrders.isEmpty()) {
+        if (buyCount > 0) {
             System.out.println("\n📋 PENDING BUY ORDERS:");
-            for (BuyOrder order : allBuyOrders) {
-                System.out.println("   " + order);
+            for (BookSnapshot snapshot : snapshots) {
+                printEntries("BUY", snapshot.getStock(), snapshot.getBids());
             }
         }
         
-        List<SellOrder> allSellOrders = getSellOrders();
-        if (!allSellOrders.isEmpty()) {
+        if (sellCount > 0) {
             System.out.println("\n📋 PENDING SELL ORDERS:");
-            for (SellOrder order : allSellOrders) {
-                System.out.println("   " + order);
+            for (BookSnapshot snapshot : snapshots) {
+                printEntries("SELL", snapshot.getStock(), snapshot.getAsks());
             }
         }
         
@@ -338,4 +1422,11 @@ public class StockExchange {
         System.out.println("   - events.log");
         System.out.println("   - price_changes.log");
     }
+
+    private static void printEntries(String orderType, Stock stock, List<BookSnapshot.Entry> entries) {
+        for (BookSnapshot.Entry entry : entries) {
+            System.out.println(LogFormat.order(new StringBuilder("   "), orderType, entry.orderId(), entry.traderName(),
+                stock, entry.quantity(), entry.priceTicks()));
+        }
+    }
 }
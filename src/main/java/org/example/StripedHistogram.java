@@ -0,0 +1,65 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram for hot paths, with the same buckets as {@link LatencyHistogram}.
+ * Each thread records into one of several stripes picked from its thread id, so concurrent
+ * recorders rarely share a cache line and recording never allocates or locks.
+ * Readers merge the stripes into a {@link LatencyHistogram} snapshot.
+ */
+class StripedHistogram {
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    StripedHistogram() {
+        int stripeCount = Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(LatencyHistogram.BUCKETS);
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    void record(long value) {
+        long v = Math.max(0, value);
+        long threadId = Thread.currentThread().threadId();
+        stripes[(int) (threadId ^ (threadId >>> 16)) & mask].incrementAndGet(LatencyHistogram.index(v));
+        sum.add(v);
+        min.accumulate(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * @return The values recorded so far; values recorded while it is taken may be partly included
+     */
+    LatencyHistogram snapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+                long count = stripe.get(i);
+                if (count > 0) histogram.addBucket(i, count);
+            }
+        }
+        if (histogram.getCount() > 0) {
+            histogram.addSummary(sum.sum(), min.get(), max.get());
+        }
+        return histogram;
+    }
+
+    void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+}
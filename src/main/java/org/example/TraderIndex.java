@@ -0,0 +1,312 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resting orders, recent fills and running totals of every trader, kept up to date by the
+ * exchange on every placement, fill, edit and cancel so that per-trader queries cost the size
+ * of their result rather than a scan of the books and the transaction history.
+ * Each trader's entry has its own lock: updates come from the threads of the symbols the trader
+ * trades in, and only contend with updates for the same trader.
+ */
+public class TraderIndex {
+    public static final int DEFAULT_FILLS_PER_TRADER = 1024;
+
+    /**
+     * What a trader has bought and sold in one symbol
+     */
+    public static final class Totals {
+        private final Stock stock;
+        private final long fillCount;
+        private final long boughtQuantity;
+        private final long boughtNotionalTicks;
+        private final long soldQuantity;
+        private final long soldNotionalTicks;
+
+        Totals(Stock stock, long fillCount, long boughtQuantity, long boughtNotionalTicks,
+               long soldQuantity, long soldNotionalTicks) {
+            this.stock = stock;
+            this.fillCount = fillCount;
+            this.boughtQuantity = boughtQuantity;
+            this.boughtNotionalTicks = boughtNotionalTicks;
+            this.soldQuantity = soldQuantity;
+            this.soldNotionalTicks = soldNotionalTicks;
+        }
+
+        public Stock getStock() {
+            return stock;
+        }
+
+        public long getFillCount() {
+            return fillCount;
+        }
+
+        public long getBoughtQuantity() {
+            return boughtQuantity;
+        }
+
+        public long getSoldQuantity() {
+            return soldQuantity;
+        }
+
+        /**
+         * @return Shares bought minus shares sold
+         */
+        public long getNetQuantity() {
+            return boughtQuantity - soldQuantity;
+        }
+
+        /**
+         * @return Average price paid per share, or 0 if nothing was bought
+         */
+        public double getAverageBuyPrice() {
+            return boughtQuantity > 0 ? stock.getTickSize() * boughtNotionalTicks / boughtQuantity : 0;
+        }
+
+        /**
+         * @return Average price received per share, or 0 if nothing was sold
+         */
+        public double getAverageSellPrice() {
+            return soldQuantity > 0 ? stock.getTickSize() * soldNotionalTicks / soldQuantity : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(96).append(stock.getSymbol()).append(": bought ")
+                .append(boughtQuantity).append(" @ $");
+            LogFormat.money(out, getAverageBuyPrice()).append(", sold ").append(soldQuantity).append(" @ $");
+            return LogFormat.money(out, getAverageSellPrice()).append(", net ").append(getNetQuantity()).toString();
+        }
+    }
+
+    private final int fillsPerTrader;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param fillsPerTrader Number of most recent fills kept per trader; totals count every fill
+     */
+    public TraderIndex(int fillsPerTrader) {
+        this.fillsPerTrader = Math.max(1, fillsPerTrader);
+    }
+
+    /**
+     * @return Every trader that has placed an order
+     */
+    public Collection<String> getTraders() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * @return The trader's resting orders, oldest first
+     */
+    public List<Order> getOpenOrders(String traderName) {
+        Entry entry = entries.get(traderName);
+        return entry != null ? entry.openOrders() : List.of();
+    }
+
+    /**
+     * @return Number of the trader's orders resting in the books
+     */
+    public int getOpenOrderCount(String traderName) {
+        Entry entry = entries.get(traderName);
+        return entry != null ? entry.openOrderCount() : 0;
+    }
+
+    /**
+     * Returns the trader's fills from a cursor on, e.g. for a drop copy. Only the most recent
+     * fills are kept; a cursor that fell behind them continues from the oldest one kept.
+     * @param cursor 0 to start from the oldest fill kept, or the next cursor of the previous page
+     * @param limit Maximum number of fills in the page
+     */
+    public TransactionHistory.Page getFills(String traderName, long cursor, int limit) {
+        Entry entry = entries.get(traderName);
+        if (entry == null) return new TransactionHistory.Page(List.of(), 0, false);
+        return entry.fills(cursor, limit);
+    }
+
+    /**
+     * @return Number of fills of the trader since the index was created
+     */
+    public long getFillCount(String traderName) {
+        Entry entry = entries.get(traderName);
+        return entry != null ? entry.fillCount() : 0;
+    }
+
+    /**
+     * @return The trader's totals in every symbol it has traded
+     */
+    public List<Totals> getTotals(String traderName) {
+        Entry entry = entries.get(traderName);
+        return entry != null ? entry.totals() : List.of();
+    }
+
+    /**
+     * @return The trader's totals in one symbol, or null if it has not traded it
+     */
+    public Totals getTotals(String traderName, String symbol) {
+        Entry entry = entries.get(traderName);
+        return entry != null ? entry.totals(symbol) : null;
+    }
+
+    /**
+     * @return Open orders, totals and recent fills of a trader, one per line
+     */
+    public String statement(String traderName, int maxFills) {
+        StringBuilder out = new StringBuilder(1024).append("👤 ").append(traderName).append('\n');
+        for (Order order : getOpenOrders(traderName)) {
+            out.append("   open: ").append(order).append('\n');
+        }
+        for (Totals totals : getTotals(traderName)) {
+            out.append("   ").append(totals).append('\n');
+        }
+        long count = getFillCount(traderName);
+        for (Transaction fill : getFills(traderName, Math.max(0, count - maxFills), maxFills).getTransactions()) {
+            out.append("   fill: ").append(fill).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Indexes an order that was just added to its book. Must be called while holding the stock's lock.
+     */
+    void onRest(Order order) {
+        Entry entry = order.traderEntry;
+        if (entry == null) {
+            entry = entries.get(order.getTraderName());
+            if (entry == null) {
+                entry = entries.computeIfAbsent(order.getTraderName(), name -> new Entry(fillsPerTrader));
+            }
+            order.traderEntry = entry;
+        }
+        entry.addOrder(order);
+    }
+
+    /**
+     * Removes an order that was cancelled, filled or edited away. Must be called while holding the stock's lock.
+     */
+    static void onDone(Order order) {
+        Entry entry = order.traderEntry;
+        if (entry != null) entry.removeOrder(order);
+    }
+
+    /**
+     * Records a fill for both traders and drops orders it completed. Must be called while
+     * holding the stock's lock.
+     */
+    static void onFill(BuyOrder buyOrder, SellOrder sellOrder, Transaction transaction) {
+        Entry buyer = buyOrder.traderEntry;
+        Entry seller = sellOrder.traderEntry;
+        if (buyer != null) buyer.addFill(transaction, buyOrder, true, buyer != seller);
+        if (seller != null) seller.addFill(transaction, sellOrder, false, true);
+    }
+
+    /**
+     * One trader's orders, fills and totals, guarded by its monitor
+     */
+    static final class Entry {
+        private final Map<Long, Order> openOrders = new LinkedHashMap<>();
+        private final Map<String, SymbolTotals> totals = new HashMap<>();
+        private final int capacity;
+        // Ring of the most recent fills, grown up to the capacity before it starts wrapping
+        private Transaction[] fills = new Transaction[4];
+        private long fillCount;
+
+        Entry(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void addOrder(Order order) {
+            openOrders.put(order.getOrderId(), order);
+        }
+
+        synchronized void removeOrder(Order order) {
+            openOrders.remove(order.getOrderId());
+        }
+
+        /**
+         * @param record Whether to keep the transaction among the fills; false for the second side of a self-trade
+         */
+        synchronized void addFill(Transaction transaction, Order order, boolean buy, boolean record) {
+            if (order.getQuantity() == 0) openOrders.remove(order.getOrderId());
+            SymbolTotals symbolTotals = totals.get(transaction.getStock().getSymbol());
+            if (symbolTotals == null) {
+                symbolTotals = new SymbolTotals(transaction.getStock());
+                totals.put(transaction.getStock().getSymbol(), symbolTotals);
+            }
+            symbolTotals.fills++;
+            if (buy) {
+                symbolTotals.bought += transaction.getQuantity();
+                symbolTotals.boughtNotionalTicks += transaction.getTotalValueTicks();
+            } else {
+                symbolTotals.sold += transaction.getQuantity();
+                symbolTotals.soldNotionalTicks += transaction.getTotalValueTicks();
+            }
+            if (record) {
+                if (fillCount == fills.length && fills.length < capacity) {
+                    fills = Arrays.copyOf(fills, Math.min(capacity, fills.length * 2));
+                }
+                fills[(int) (fillCount % fills.length)] = transaction;
+                fillCount++;
+            }
+        }
+
+        synchronized List<Order> openOrders() {
+            return new ArrayList<>(openOrders.values());
+        }
+
+        synchronized int openOrderCount() {
+            return openOrders.size();
+        }
+
+        synchronized long fillCount() {
+            return fillCount;
+        }
+
+        synchronized TransactionHistory.Page fills(long cursor, int limit) {
+            long from = Math.max(cursor, Math.max(0, fillCount - fills.length));
+            long to = Math.min(fillCount, from + Math.max(0, limit));
+            List<Transaction> page = new ArrayList<>((int) (to - from));
+            for (long n = from; n < to; n++) {
+                page.add(fills[(int) (n % fills.length)]);
+            }
+            return new TransactionHistory.Page(page, to, to < fillCount);
+        }
+
+        synchronized List<Totals> totals() {
+            List<Totals> result = new ArrayList<>(totals.size());
+            for (SymbolTotals symbolTotals : totals.values()) {
+                result.add(symbolTotals.snapshot());
+            }
+            return result;
+        }
+
+        synchronized Totals totals(String symbol) {
+            SymbolTotals symbolTotals = totals.get(symbol);
+            return symbolTotals != null ? symbolTotals.snapshot() : null;
+        }
+    }
+
+    private static final class SymbolTotals {
+        final Stock stock;
+        long fills;
+        long bought;
+        long boughtNotionalTicks;
+        long sold;
+        long soldNotionalTicks;
+
+        SymbolTotals(Stock stock) {
+            this.stock = stock;
+        }
+
+        Totals snapshot() {
+            return new Totals(stock, fills, bought, boughtNotionalTicks, sold, soldNotionalTicks);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.example;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Represents a completed stock transaction
@@ -13,18 +12,37 @@ public class Transaction {
     private final String seller;
     private final Stock stock;
     private final int quantity;
-    private final double pricePerShare;
-    private final LocalDateTime timestamp;
-
-    public Transaction(BuyOrder buyOrder, SellOrder sellOrder, int quantity) {
-        this.buyOrderId = buyOrder.getOrderId();
-        this.sellOrderId = sellOrder.getOrderId();
-        this.buyer = buyOrder.getTraderName();
-        this.seller = sellOrder.getTraderName();
-        this.stock = buyOrder.getStock();
+    private final long priceTicks;
+    private final long timestampNanos;
+
+    /**
+     * @param priceTicks The execution price in ticks of the stock
+     */
+    public Transaction(BuyOrder buyOrder, SellOrder sellOrder, int quantity, long priceTicks) {
+        this(buyOrder, sellOrder, quantity, priceTicks, EpochClock.nanos());
+    }
+
+    /**
+     * @param timestampNanos When the trade happened, in nanoseconds since the epoch
+     */
+    Transaction(BuyOrder buyOrder, SellOrder sellOrder, int quantity, long priceTicks, long timestampNanos) {
+        this(buyOrder.getOrderId(), sellOrder.getOrderId(), buyOrder.getTraderName(), sellOrder.getTraderName(),
+            buyOrder.getStock(), quantity, priceTicks, timestampNanos);
+    }
+
+    /**
+     * Recreates a transaction from its stored fields, e.g. when reading spilled history
+     */
+    Transaction(long buyOrderId, long sellOrderId, String buyer, String seller, Stock stock,
+                int quantity, long priceTicks, long timestampNanos) {
+        this.buyOrderId = buyOrderId;
+        this.sellOrderId = sellOrderId;
+        this.buyer = buyer;
+        this.seller = seller;
+        this.stock = stock;
         this.quantity = quantity;
-        this.pricePerShare = stock.getCurrentPrice();
-        this.timestamp = LocalDateTime.now();
+        this.priceTicks = priceTicks;
+        this.timestampNanos = timestampNanos;
     }
 
     public long getBuyOrderId() {
@@ -52,22 +70,38 @@ public class Transaction {
     }
 
     public double getPricePerShare() {
-        return pricePerShare;
+        return stock.toPrice(priceTicks);
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * @return The traded value in ticks, exact as long as it fits in a long
+     */
+    public long getTotalValueTicks() {
+        return quantity * priceTicks;
     }
 
     public double getTotalValue() {
-        return quantity * pricePerShare;
+        return stock.toPrice(getTotalValueTicks());
     }
 
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return EpochClock.toDateTime(timestampNanos);
+    }
+
+    /**
+     * @return When the trade happened, in nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     @Override
     public String toString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-        return String.format("[%s] TRANSACTION: %s bought %d shares of %s from %s @ $%.2f/share (Total: $%.2f) [Buy Order #%d, Sell Order #%d]",
-            timestamp.format(formatter), buyer, quantity, stock.getSymbol(), seller, 
-            pricePerShare, getTotalValue(), buyOrderId, sellOrderId);
+        StringBuilder out = new StringBuilder(160).append('[').append(EpochClock.format(timestampNanos)).append("] ");
+        return LogFormat.transaction(out, this).toString();
     }
 }
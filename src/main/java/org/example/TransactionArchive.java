@@ -0,0 +1,375 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only columnar archive of transactions, for analytics over long trading sessions.
+ * Transactions are queued to a writer thread that collects them into blocks of up to
+ * {@code blockSize} rows and stores each block column by column: timestamps and order ids as
+ * deltas, prices as deltas from the previous price of the same symbol, symbols and trader names
+ * as ids into a dictionary, all as variable-length integers, and every column deflated on its own.
+ * Each block starts with a header holding its row count, its time and order id ranges, the
+ * symbols it contains and the column sizes, so a {@link TransactionArchiveReader} can skip whole
+ * blocks and read only the columns a scan needs.
+ * <p>
+ * File layout: the file header, then blocks of {@code int headerLength, header, columns...}.
+ * A block is written in one go and only counts once complete, so a crash loses at most the
+ * rows not written yet.
+ */
+public class TransactionArchive implements AutoCloseable {
+    static final int MAGIC = 0x54584152; // "TXAR"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+
+    static final int TIMESTAMP = 0;
+    static final int SYMBOL = 1;
+    static final int BUYER = 2;
+    static final int SELLER = 3;
+    static final int BUY_ORDER_ID = 4;
+    static final int SELL_ORDER_ID = 5;
+    static final int QUANTITY = 6;
+    static final int PRICE = 7;
+    static final int COLUMNS = 8;
+
+    // Kinds of dictionary entry in a block header
+    static final int SYMBOL_ENTRY = 0;
+    static final int TRADER_ENTRY = 1;
+
+    private static final long WRITER_PARK_NANOS = 10_000_000;
+
+    private final Path path;
+    private final int blockSize;
+    private final long flushIntervalNanos;
+    private final MpscRingBuffer<Transaction> queue;
+    private final Thread writer;
+    private volatile boolean running;
+
+    // Writer thread only
+    private final FileChannel channel;
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final Map<String, Integer> traderIds = new HashMap<>();
+    private final ByteArrayOutputStream newEntries = new ByteArrayOutputStream();
+    private final DataOutputStream newEntriesOut = new DataOutputStream(newEntries);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Column[] columns = new Column[COLUMNS];
+    private final long[] timestamps;
+    private final int[] symbols;
+    private final int[] buyers;
+    private final int[] sellers;
+    private final long[] buyOrderIds;
+    private final long[] sellOrderIds;
+    private final int[] quantities;
+    private final long[] prices;
+    private long[] lastPriceBySymbol = new long[16];
+    private int rows;
+    private byte[] compressed = new byte[1 << 16];
+
+    private volatile long archivedCount;
+    private volatile long blockCount;
+
+    /**
+     * Opens an archive file, appending after the blocks of an existing one.
+     * @param path The archive file (created if missing)
+     * @param blockSize Rows per block; bigger blocks compress better but are skipped less often
+     * @param queueCapacity Transactions queued to the writer thread (power of two)
+     * @param flushIntervalMs Writes a partial block when transactions have waited this long
+     */
+    public TransactionArchive(Path path, int blockSize, int queueCapacity, long flushIntervalMs) throws IOException {
+        this.path = path;
+        this.blockSize = Math.max(1, blockSize);
+        this.flushIntervalNanos = Math.max(1, flushIntervalMs) * 1_000_000L;
+        this.queue = new MpscRingBuffer<>(queueCapacity);
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Column();
+        }
+        this.timestamps = new long[this.blockSize];
+        this.symbols = new int[this.blockSize];
+        this.buyers = new int[this.blockSize];
+        this.sellers = new int[this.blockSize];
+        this.buyOrderIds = new long[this.blockSize];
+        this.sellOrderIds = new long[this.blockSize];
+        this.quantities = new int[this.blockSize];
+        this.prices = new long[this.blockSize];
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        openExisting();
+
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "archive-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public TransactionArchive(Path path) throws IOException {
+        this(path, 65536, 65536, 1000);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Queues a transaction for the archive, waiting while the queue is full.
+     */
+    public void append(Transaction transaction) {
+        while (!queue.offer(transaction)) {
+            if (!running) return;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(1000);
+        }
+    }
+
+    /**
+     * @return Number of transactions written to complete blocks, including earlier runs
+     */
+    public long getArchivedCount() {
+        return archivedCount;
+    }
+
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Writes everything queued so far, then stops the writer thread and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deflater.end();
+        channel.close();
+    }
+
+    /**
+     * Checks the file header and reloads the dictionaries from the existing blocks, so ids keep
+     * their meaning; a torn block at the end is cut off.
+     */
+    private void openExisting() throws IOException {
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+            channel.write(header, 0);
+            channel.position(FILE_HEADER_SIZE);
+            return;
+        }
+        TransactionArchiveReader.Index index = TransactionArchiveReader.readIndex(channel);
+        for (String symbol : index.symbols) {
+            symbolIds.put(symbol, symbolIds.size());
+        }
+        for (String trader : index.traders) {
+            traderIds.put(trader, traderIds.size());
+        }
+        archivedCount = index.rows;
+        blockCount = index.blocks.size();
+        channel.truncate(index.end);
+        channel.position(index.end);
+    }
+
+    private void writeLoop() {
+        long oldest = 0;
+        while (true) {
+            Transaction transaction = queue.poll();
+            if (transaction != null) {
+                if (rows == 0) oldest = System.nanoTime();
+                add(transaction);
+                if (rows == blockSize) writeBlock();
+                continue;
+            }
+            if (rows > 0 && (!running || System.nanoTime() - oldest >= flushIntervalNanos)) {
+                writeBlock();
+            } else if (!running) {
+                break;
+            } else {
+                LockSupport.parkNanos(WRITER_PARK_NANOS);
+            }
+        }
+    }
+
+    private void add(Transaction transaction) {
+        int row = rows++;
+        Stock stock = transaction.getStock();
+        timestamps[row] = transaction.getTimestampNanos();
+        symbols[row] = symbolId(stock);
+        buyers[row] = traderId(transaction.getBuyer());
+        sellers[row] = traderId(transaction.getSeller());
+        buyOrderIds[row] = transaction.getBuyOrderId();
+        sellOrderIds[row] = transaction.getSellOrderId();
+        quantities[row] = transaction.getQuantity();
+        prices[row] = transaction.getPriceTicks();
+    }
+
+    private int symbolId(Stock stock) {
+        Integer id = symbolIds.get(stock.getSymbol());
+        if (id != null) return id;
+        int newId = symbolIds.size();
+        symbolIds.put(stock.getSymbol(), newId);
+        try {
+            newEntriesOut.writeByte(SYMBOL_ENTRY);
+            newEntriesOut.writeUTF(stock.getSymbol());
+            newEntriesOut.writeDouble(stock.getTickSize());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen for a byte array
+        }
+        return newId;
+    }
+
+    private int traderId(String trader) {
+        Integer id = traderIds.get(trader);
+        if (id != null) return id;
+        int newId = traderIds.size();
+        traderIds.put(trader, newId);
+        try {
+            newEntriesOut.writeByte(TRADER_ENTRY);
+            newEntriesOut.writeUTF(trader);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return newId;
+    }
+
+    /**
+     * Encodes the collected rows as one block and appends it to the file
+     */
+    private void writeBlock() {
+        for (Column column : columns) {
+            column.clear();
+        }
+        if (lastPriceBySymbol.length < symbolIds.size()) {
+            lastPriceBySymbol = new long[Math.max(symbolIds.size(), lastPriceBySymbol.length * 2)];
+        }
+        Arrays.fill(lastPriceBySymbol, 0);
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        long minOrderId = Long.MAX_VALUE;
+        long maxOrderId = Long.MIN_VALUE;
+        long[] symbolMask = new long[(symbolIds.size() + 63) >>> 6];
+        for (int row = 0; row < rows; row++) {
+            columns[TIMESTAMP].writeSigned(timestamps[row] - (row > 0 ? timestamps[row - 1] : 0));
+            columns[SYMBOL].writeUnsigned(symbols[row]);
+            columns[BUYER].writeUnsigned(buyers[row]);
+            columns[SELLER].writeUnsigned(sellers[row]);
+            columns[BUY_ORDER_ID].writeSigned(buyOrderIds[row] - (row > 0 ? buyOrderIds[row - 1] : 0));
+            columns[SELL_ORDER_ID].writeSigned(sellOrderIds[row] - (row > 0 ? sellOrderIds[row - 1] : 0));
+            columns[QUANTITY].writeUnsigned(quantities[row]);
+            columns[PRICE].writeSigned(prices[row] - lastPriceBySymbol[symbols[row]]);
+            lastPriceBySymbol[symbols[row]] = prices[row];
+            minTimestamp = Math.min(minTimestamp, timestamps[row]);
+            maxTimestamp = Math.max(maxTimestamp, timestamps[row]);
+            minOrderId = Math.min(minOrderId, Math.min(buyOrderIds[row], sellOrderIds[row]));
+            maxOrderId = Math.max(maxOrderId, Math.max(buyOrderIds[row], sellOrderIds[row]));
+            symbolMask[symbols[row] >>> 6] |= 1L << symbols[row];
+        }
+
+        long blockStart = -1;
+        try {
+            blockStart = channel.position();
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(256);
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(rows);
+            header.writeLong(minTimestamp);
+            header.writeLong(maxTimestamp);
+            header.writeLong(minOrderId);
+            header.writeLong(maxOrderId);
+            header.writeShort(symbolMask.length);
+            for (long word : symbolMask) {
+                header.writeLong(word);
+            }
+            header.writeInt(newEntries.size());
+            newEntries.writeTo(header);
+            ByteArrayOutputStream body = new ByteArrayOutputStream(rows * 8);
+            for (Column column : columns) {
+                int length = compress(column);
+                header.writeInt(column.size);
+                header.writeInt(length);
+                body.write(compressed, 0, length);
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(4 + headerBytes.size() + body.size());
+            block.putInt(headerBytes.size()).put(headerBytes.toByteArray()).put(body.toByteArray()).flip();
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            newEntries.reset();
+            archivedCount += rows;
+            blockCount++;
+        } catch (IOException e) {
+            System.err.println("Error writing transaction archive, " + rows + " transactions dropped: " + e.getMessage());
+            truncateTo(blockStart);
+        }
+        rows = 0;
+    }
+
+    /**
+     * Cuts off whatever part of a failed block reached the file, so later blocks are not
+     * appended behind a torn one (new dictionary entries are kept for the next block)
+     */
+    private void truncateTo(long blockStart) {
+        if (blockStart < 0) return;
+        try {
+            channel.truncate(blockStart);
+            channel.position(blockStart);
+        } catch (IOException e) {
+            System.err.println("Error truncating transaction archive: " + e.getMessage());
+        }
+    }
+
+    private int compress(Column column) {
+        deflater.reset();
+        deflater.setInput(column.bytes, 0, column.size);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    /**
+     * Growable buffer of variable-length integers
+     */
+    private static final class Column {
+        byte[] bytes = new byte[1 << 12];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Zigzag-encodes the value so small negative deltas stay short
+         */
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeUnsigned(long value) {
+            if (size + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
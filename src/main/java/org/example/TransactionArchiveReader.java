@@ -0,0 +1,620 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Scans a {@link TransactionArchive} file.
+ * Opening reads only the block headers; a scan then skips every block whose time range, symbol
+ * set or order id range rules it out, reads only the columns it needs from the others, and
+ * decodes the blocks in parallel on a fork-join pool, one task per block. Blocks appended after
+ * the reader was opened are not seen.
+ */
+public class TransactionArchiveReader implements AutoCloseable {
+    private static final int[] SUMMARY_COLUMNS = {
+        TransactionArchive.TIMESTAMP, TransactionArchive.SYMBOL, TransactionArchive.QUANTITY, TransactionArchive.PRICE
+    };
+    private static final int[] ALL_COLUMNS = {
+        TransactionArchive.TIMESTAMP, TransactionArchive.SYMBOL, TransactionArchive.BUYER, TransactionArchive.SELLER,
+        TransactionArchive.BUY_ORDER_ID, TransactionArchive.SELL_ORDER_ID, TransactionArchive.QUANTITY,
+        TransactionArchive.PRICE
+    };
+
+    /**
+     * Trades of one symbol over a time window, aggregated by a scan
+     */
+    public static final class Summary {
+        private final Stock stock;
+        private final long tradeCount;
+        private final long volume;
+        private final long notionalTicks;
+        private final long openTicks;
+        private final long highTicks;
+        private final long lowTicks;
+        private final long closeTicks;
+        private final int blocksRead;
+        private final long bytesRead;
+
+        Summary(Stock stock, Totals totals) {
+            this.stock = stock;
+            this.tradeCount = totals.trades;
+            this.volume = totals.volume;
+            this.notionalTicks = totals.notionalTicks;
+            this.openTicks = totals.openTicks;
+            this.highTicks = totals.highTicks;
+            this.lowTicks = totals.lowTicks;
+            this.closeTicks = totals.closeTicks;
+            this.blocksRead = totals.blocksRead;
+            this.bytesRead = totals.bytesRead;
+        }
+
+        public String getSymbol() {
+            return stock.getSymbol();
+        }
+
+        public long getTradeCount() {
+            return tradeCount;
+        }
+
+        public long getVolume() {
+            return volume;
+        }
+
+        public double getNotional() {
+            return stock.toPrice(notionalTicks);
+        }
+
+        /**
+         * @return Volume-weighted average price, or 0 without trades
+         */
+        public double getVwap() {
+            return volume > 0 ? stock.getTickSize() * notionalTicks / volume : 0;
+        }
+
+        /**
+         * @return Price of the earliest trade in the window
+         */
+        public double getOpen() {
+            return stock.toPrice(openTicks);
+        }
+
+        public double getHigh() {
+            return stock.toPrice(highTicks);
+        }
+
+        public double getLow() {
+            return stock.toPrice(lowTicks);
+        }
+
+        /**
+         * @return Price of the latest trade in the window
+         */
+        public double getClose() {
+            return stock.toPrice(closeTicks);
+        }
+
+        /**
+         * @return Blocks the scan had to read; the others were skipped using their headers
+         */
+        public int getBlocksRead() {
+            return blocksRead;
+        }
+
+        /**
+         * @return Compressed column bytes the scan read from the file
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(160).append(stock.getSymbol()).append(": ").append(tradeCount)
+                .append(" trades, ").append(volume).append(" shares, VWAP $");
+            LogFormat.money(out, getVwap());
+            if (tradeCount > 0) {
+                LogFormat.money(out.append(" (O $"), getOpen());
+                LogFormat.money(out.append(" H $"), getHigh());
+                LogFormat.money(out.append(" L $"), getLow());
+                LogFormat.money(out.append(" C $"), getClose()).append(')');
+            }
+            return out.append(", ").append(blocksRead).append(" blocks read").toString();
+        }
+    }
+
+    /**
+     * Position, ranges and column sizes of one block, from its header
+     */
+    static final class Block {
+        int rows;
+        long minTimestamp;
+        long maxTimestamp;
+        long minOrderId;
+        long maxOrderId;
+        long[] symbolMask;
+        final long[] columnOffsets = new long[TransactionArchive.COLUMNS];
+        final int[] rawLengths = new int[TransactionArchive.COLUMNS];
+        final int[] compressedLengths = new int[TransactionArchive.COLUMNS];
+
+        boolean contains(int symbolId) {
+            int word = symbolId >>> 6;
+            return word < symbolMask.length && (symbolMask[word] & (1L << symbolId)) != 0;
+        }
+    }
+
+    /**
+     * Everything known about a file from its block headers
+     */
+    static final class Index {
+        final List<String> symbols = new ArrayList<>();
+        final List<Double> tickSizes = new ArrayList<>();
+        final List<String> traders = new ArrayList<>();
+        final List<Block> blocks = new ArrayList<>();
+        long rows;
+        // End of the last complete block
+        long end = TransactionArchive.FILE_HEADER_SIZE;
+    }
+
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final Index index;
+    private final Stock[] stocks;
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+
+    public TransactionArchiveReader(Path path) throws IOException {
+        this(path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool Pool the blocks are decoded on
+     */
+    public TransactionArchiveReader(Path path, ForkJoinPool pool) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.pool = pool;
+        try {
+            this.index = readIndex(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.stocks = new Stock[index.symbols.size()];
+        for (int i = 0; i < stocks.length; i++) {
+            stocks[i] = new Stock(index.symbols.get(i), 0, index.tickSizes.get(i));
+            symbolIds.put(index.symbols.get(i), i);
+        }
+    }
+
+    public long getTransactionCount() {
+        return index.rows;
+    }
+
+    public int getBlockCount() {
+        return index.blocks.size();
+    }
+
+    /**
+     * @return Every symbol traded in the archive, in order of first trade
+     */
+    public List<String> getSymbols() {
+        return Collections.unmodifiableList(index.symbols);
+    }
+
+    /**
+     * Aggregates the trades of a symbol in a time window, reading only the timestamp, symbol,
+     * quantity and price columns of the blocks that may hold some.
+     * @param from Only trades at or after this time, or null
+     * @param to Only trades before this time, or null
+     */
+    public Summary summarize(String symbol, LocalDateTime from, LocalDateTime to) throws IOException {
+        Integer symbolId = symbolIds.get(symbol);
+        if (symbolId == null) return new Summary(new Stock(symbol, 0), new Totals());
+        Filter filter = new Filter(symbolId, from, to, -1);
+        List<Block> blocks = candidates(filter);
+        if (blocks.isEmpty()) return new Summary(stocks[symbolId], new Totals());
+        try {
+            return new Summary(stocks[symbolId], pool.invoke(new SummaryTask(blocks, 0, blocks.size(), filter)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the matching transactions in the order they were archived.
+     * @param symbol Only transactions of this stock, or null for all
+     * @param from Only transactions at or after this time, or null
+     * @param to Only transactions before this time, or null
+     */
+    public List<Transaction> read(String symbol, LocalDateTime from, LocalDateTime to) throws IOException {
+        int symbolId = -1;
+        if (symbol != null) {
+            Integer id = symbolIds.get(symbol);
+            if (id == null) return List.of();
+            symbolId = id;
+        }
+        return read(new Filter(symbolId, from, to, -1));
+    }
+
+    /**
+     * Reads the fills of one order, looking only at blocks whose order id range includes it
+     */
+    public List<Transaction> readOrder(long orderId) throws IOException {
+        return read(new Filter(-1, null, null, orderId));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private List<Transaction> read(Filter filter) throws IOException {
+        List<Block> blocks = candidates(filter);
+        List<List<Transaction>> parts = new ArrayList<>(Collections.nCopies(blocks.size(), List.of()));
+        try {
+            if (!blocks.isEmpty()) pool.invoke(new ReadTask(blocks, 0, blocks.size(), filter, parts));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<Transaction> transactions = new ArrayList<>(parts.stream().mapToInt(List::size).sum());
+        for (List<Transaction> part : parts) {
+            transactions.addAll(part);
+        }
+        return transactions;
+    }
+
+    private List<Block> candidates(Filter filter) {
+        List<Block> blocks = new ArrayList<>();
+        for (Block block : index.blocks) {
+            if (filter.mayMatch(block)) blocks.add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Reads and inflates the given columns of a block; the others stay null
+     */
+    private Decoder[] readColumns(Block block, int[] columns, Totals totals) {
+        Decoder[] decoders = new Decoder[TransactionArchive.COLUMNS];
+        Inflater inflater = new Inflater();
+        try {
+            for (int column : columns) {
+                ByteBuffer in = ByteBuffer.allocate(block.compressedLengths[column]);
+                long position = block.columnOffsets[column];
+                while (in.hasRemaining()) {
+                    if (channel.read(in, position + in.position()) < 0) throw new EOFException("Truncated archive block");
+                }
+                byte[] raw = new byte[block.rawLengths[column]];
+                inflater.reset();
+                inflater.setInput(in.array());
+                int length = 0;
+                while (length < raw.length) {
+                    int n = inflater.inflate(raw, length, raw.length - length);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new EOFException("Corrupt archive column");
+                    length += n;
+                }
+                decoders[column] = new Decoder(raw);
+                if (totals != null) totals.bytesRead += in.capacity();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt archive column", e));
+        } finally {
+            inflater.end();
+        }
+        return decoders;
+    }
+
+    private Totals summarizeBlock(Block block, Filter filter) {
+        Totals totals = new Totals();
+        totals.blocksRead = 1;
+        Decoder[] columns = readColumns(block, SUMMARY_COLUMNS, totals);
+        Decoder timestamps = columns[TransactionArchive.TIMESTAMP];
+        Decoder symbols = columns[TransactionArchive.SYMBOL];
+        Decoder quantities = columns[TransactionArchive.QUANTITY];
+        Decoder prices = columns[TransactionArchive.PRICE];
+        long[] lastPrices = new long[stocks.length];
+        long timestamp = 0;
+        for (int row = 0; row < block.rows; row++) {
+            timestamp += timestamps.readSigned();
+            int symbol = (int) symbols.readUnsigned();
+            long quantity = quantities.readUnsigned();
+            long price = lastPrices[symbol] += prices.readSigned();
+            if (filter.matches(symbol, timestamp, 0, 0)) {
+                totals.add(timestamp, quantity, price);
+            }
+        }
+        return totals;
+    }
+
+    private List<Transaction> readBlock(Block block, Filter filter) {
+        Decoder[] columns = readColumns(block, ALL_COLUMNS, null);
+        long[] lastPrices = new long[stocks.length];
+        List<Transaction> transactions = new ArrayList<>();
+        long timestamp = 0;
+        long buyOrderId = 0;
+        long sellOrderId = 0;
+        for (int row = 0; row < block.rows; row++) {
+            timestamp += columns[TransactionArchive.TIMESTAMP].readSigned();
+            int symbol = (int) columns[TransactionArchive.SYMBOL].readUnsigned();
+            int buyer = (int) columns[TransactionArchive.BUYER].readUnsigned();
+            int seller = (int) columns[TransactionArchive.SELLER].readUnsigned();
+            buyOrderId += columns[TransactionArchive.BUY_ORDER_ID].readSigned();
+            sellOrderId += columns[TransactionArchive.SELL_ORDER_ID].readSigned();
+            int quantity = (int) columns[TransactionArchive.QUANTITY].readUnsigned();
+            long price = lastPrices[symbol] += columns[TransactionArchive.PRICE].readSigned();
+            if (filter.matches(symbol, timestamp, buyOrderId, sellOrderId)) {
+                transactions.add(new Transaction(buyOrderId, sellOrderId, index.traders.get(buyer),
+                    index.traders.get(seller), stocks[symbol], quantity, price, timestamp));
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Reads the block headers of an archive, stopping at the first incomplete block
+     */
+    static Index readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer fileHeader = ByteBuffer.allocate(TransactionArchive.FILE_HEADER_SIZE);
+        channel.read(fileHeader, 0);
+        fileHeader.flip();
+        if (fileHeader.remaining() < TransactionArchive.FILE_HEADER_SIZE || fileHeader.getInt() != TransactionArchive.MAGIC) {
+            throw new IOException("Not a transaction archive");
+        }
+        int version = fileHeader.getInt();
+        if (version != TransactionArchive.VERSION) {
+            throw new IOException("Unsupported transaction archive version " + version);
+        }
+
+        Index index = new Index();
+        long position = TransactionArchive.FILE_HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, position);
+            int headerLength = lengthBuffer.flip().getInt();
+            if (headerLength <= 0 || position + 4 + headerLength > size) break;
+            ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength);
+            while (headerBuffer.hasRemaining()) {
+                if (channel.read(headerBuffer, position + 4 + headerBuffer.position()) < 0) break;
+            }
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBuffer.array()));
+            Block block = new Block();
+            block.rows = header.readInt();
+            block.minTimestamp = header.readLong();
+            block.maxTimestamp = header.readLong();
+            block.minOrderId = header.readLong();
+            block.maxOrderId = header.readLong();
+            block.symbolMask = new long[header.readUnsignedShort()];
+            for (int i = 0; i < block.symbolMask.length; i++) {
+                block.symbolMask[i] = header.readLong();
+            }
+            // New dictionary entries are only taken once the whole block is known to be there
+            List<String> newSymbols = new ArrayList<>();
+            List<Double> newTickSizes = new ArrayList<>();
+            List<String> newTraders = new ArrayList<>();
+            int entryBytes = header.readInt();
+            int entriesEnd = header.available() - entryBytes;
+            while (header.available() > entriesEnd) {
+                if (header.readByte() == TransactionArchive.SYMBOL_ENTRY) {
+                    newSymbols.add(header.readUTF());
+                    newTickSizes.add(header.readDouble());
+                } else {
+                    newTraders.add(header.readUTF());
+                }
+            }
+            long offset = position + 4 + headerLength;
+            for (int column = 0; column < TransactionArchive.COLUMNS; column++) {
+                block.rawLengths[column] = header.readInt();
+                block.compressedLengths[column] = header.readInt();
+                block.columnOffsets[column] = offset;
+                offset += block.compressedLengths[column];
+            }
+            if (offset > size) break;
+            index.symbols.addAll(newSymbols);
+            index.tickSizes.addAll(newTickSizes);
+            index.traders.addAll(newTraders);
+            index.blocks.add(block);
+            index.rows += block.rows;
+            index.end = offset;
+            position = offset;
+        }
+        return index;
+    }
+
+    private static long toEpochNanos(LocalDateTime dateTime) {
+        return EpochClock.fromMillis(dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Aggregates of a scan, merged from the per-block ones in block order
+     */
+    private static final class Totals {
+        long trades;
+        long volume;
+        long notionalTicks;
+        long highTicks = Long.MIN_VALUE;
+        long lowTicks = Long.MAX_VALUE;
+        long openTimestamp = Long.MAX_VALUE;
+        long openTicks;
+        long closeTimestamp = Long.MIN_VALUE;
+        long closeTicks;
+        int blocksRead;
+        long bytesRead;
+
+        void add(long timestamp, long quantity, long priceTicks) {
+            trades++;
+            volume += quantity;
+            notionalTicks += quantity * priceTicks;
+            highTicks = Math.max(highTicks, priceTicks);
+            lowTicks = Math.min(lowTicks, priceTicks);
+            if (timestamp < openTimestamp) {
+                openTimestamp = timestamp;
+                openTicks = priceTicks;
+            }
+            if (timestamp >= closeTimestamp) {
+                closeTimestamp = timestamp;
+                closeTicks = priceTicks;
+            }
+        }
+
+        /**
+         * Adds the totals of later blocks: ties in time go to the earlier row for the open and
+         * to the later row for the close, as if scanned sequentially
+         */
+        Totals merge(Totals later) {
+            trades += later.trades;
+            volume += later.volume;
+            notionalTicks += later.notionalTicks;
+            highTicks = Math.max(highTicks, later.highTicks);
+            lowTicks = Math.min(lowTicks, later.lowTicks);
+            if (later.openTimestamp < openTimestamp) {
+                openTimestamp = later.openTimestamp;
+                openTicks = later.openTicks;
+            }
+            if (later.trades > 0 && later.closeTimestamp >= closeTimestamp) {
+                closeTimestamp = later.closeTimestamp;
+                closeTicks = later.closeTicks;
+            }
+            blocksRead += later.blocksRead;
+            bytesRead += later.bytesRead;
+            return this;
+        }
+    }
+
+    /**
+     * Reader of the variable-length integers of one inflated column
+     */
+    private static final class Decoder {
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * What a scan is looking for, checked against block headers first and then row by row
+     */
+    private static final class Filter {
+        final int symbolId;
+        final long fromNanos;
+        final long toNanos;
+        final long orderId;
+
+        /**
+         * @param symbolId Only this symbol, or -1 for any
+         * @param orderId Only fills of this order, or -1 for any
+         */
+        Filter(int symbolId, LocalDateTime from, LocalDateTime to, long orderId) {
+            this.symbolId = symbolId;
+            this.fromNanos = from != null ? toEpochNanos(from) : Long.MIN_VALUE;
+            this.toNanos = to != null ? toEpochNanos(to) : Long.MAX_VALUE;
+            this.orderId = orderId;
+        }
+
+        boolean mayMatch(Block block) {
+            return block.maxTimestamp >= fromNanos && block.minTimestamp < toNanos
+                && (symbolId < 0 || block.contains(symbolId))
+                && (orderId < 0 || (orderId >= block.minOrderId && orderId <= block.maxOrderId));
+        }
+
+        boolean matches(int symbol, long timestamp, long buyOrderId, long sellOrderId) {
+            return timestamp >= fromNanos && timestamp < toNanos
+                && (symbolId < 0 || symbol == symbolId)
+                && (orderId < 0 || buyOrderId == orderId || sellOrderId == orderId);
+        }
+    }
+
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private final class SummaryTask extends RecursiveTask<Totals> {
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+        private final Filter filter;
+
+        SummaryTask(List<Block> blocks, int from, int to, Filter filter) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from == 1) return summarizeBlock(blocks.get(from), filter);
+            int middle = (from + to) >>> 1;
+            SummaryTask later = new SummaryTask(blocks, middle, to, filter);
+            later.fork();
+            Totals totals = new SummaryTask(blocks, from, middle, filter).compute();
+            return totals.merge(later.join());
+        }
+    }
+
+    /**
+     * Decodes a range of blocks, each into its own slot of the results so their order is kept
+     */
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private final class ReadTask extends RecursiveAction {
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+        private final Filter filter;
+        private final List<List<Transaction>> results;
+
+        ReadTask(List<Block> blocks, int from, int to, Filter filter, List<List<Transaction>> results) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results.set(from, readBlock(blocks.get(from), filter));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReadTask(blocks, from, middle, filter, results), new ReadTask(blocks, middle, to, filter, results));
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Bounded history of completed transactions.
+ * Every transaction gets a sequence number and the most recent ones are kept in a fixed-size
+ * in-memory ring, optionally limited by age as well, so the heap footprint stays flat however
+ * long the exchange runs. With a spill directory, a background thread appends every transaction
+ * to segment files and transactions leaving the ring stay queryable from disk; without one they
+ * are dropped.
+ * Queries return pages filtered by symbol and time window, with a sequence cursor to continue from.
+ */
+public class TransactionHistory implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "transactions-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_RECORDS = 1 << 20;
+    // Every this many records a segment notes the record's file offset, so reads can seek to a cursor
+    private static final int INDEX_INTERVAL = 1 << 10;
+    private static final int SPILL_BATCH = 256;
+    private static final long SPILLER_PARK_NANOS = 10_000_000;
+    private static final int ITERATOR_PAGE_SIZE = 1024;
+
+    /**
+     * One page of query results
+     */
+    public static final class Page {
+        private final List<Transaction> transactions;
+        private final long nextCursor;
+        private final boolean more;
+
+        Page(List<Transaction> transactions, long nextCursor, boolean more) {
+            this.transactions = transactions;
+            this.nextCursor = nextCursor;
+            this.more = more;
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * @return The cursor to pass to the next query to continue after this page
+         */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * @return true if transactions were recorded after the end of this page
+         */
+        public boolean hasMore() {
+            return more;
+        }
+    }
+
+    /**
+     * Sequence and time range of one spill file, with the file offset of every
+     * {@link #INDEX_INTERVAL}th record
+     */
+    private static final class Segment {
+        final Path path;
+        final long firstSequence;
+        // Written before lastSequence, so an entry is visible to readers once its record is
+        final long[] offsets = new long[SEGMENT_RECORDS / INDEX_INTERVAL];
+        volatile long lastSequence;
+        volatile long minTimestamp = Long.MAX_VALUE;
+        volatile long maxTimestamp = Long.MIN_VALUE;
+
+        Segment(Path path, long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long maxAgeMillis;
+    private final AtomicReferenceArray<Transaction> transactions;
+    private final AtomicLongArray timestamps;
+    // Sequence held by each slot, -1 while the slot is being written
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // First sequence still kept in memory by age; only advanced by the spiller
+    private volatile long memoryStart;
+
+    private final Path directory;
+    private final Thread spiller;
+    private volatile boolean running;
+    private volatile boolean spillerSleeping;
+    // Every sequence below this one has been written to a segment
+    private volatile long spilledUpTo;
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Stock> stocksBySymbol = new ConcurrentHashMap<>();
+    private Segment currentSegment;
+    private DataOutputStream segmentOut;
+
+    /**
+     * Keeps only the most recent transactions in memory
+     * @param capacity Number of transactions kept in memory (rounded up to a power of two)
+     */
+    public TransactionHistory(int capacity) {
+        this(capacity, Duration.ZERO, null);
+    }
+
+    /**
+     * @param capacity Number of transactions kept in memory (rounded up to a power of two)
+     * @param maxAge Transactions older than this leave memory; zero keeps them until the ring is full
+     * @param spillDirectory Directory for the spill segments, or null to drop transactions that
+     *                       leave memory. Segments left there by an earlier run are deleted: the
+     *                       journal, not this history, is the durable record of fills.
+     */
+    public TransactionHistory(int capacity, Duration maxAge, Path spillDirectory) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = this.capacity - 1;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.transactions = new AtomicReferenceArray<>(this.capacity);
+        this.timestamps = new AtomicLongArray(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, -1);
+        }
+        this.directory = spillDirectory;
+        if (spillDirectory != null) {
+            deleteSegments(spillDirectory);
+            this.running = true;
+            this.spiller = new Thread(this::spillLoop, "history-spiller");
+            this.spiller.setDaemon(true);
+            this.spiller.start();
+        } else {
+            this.spiller = null;
+        }
+    }
+
+    /**
+     * Records a completed transaction. When spilling, waits if the ring is full of
+     * transactions that have not been written to disk yet. This is back-pressure on matching:
+     * the exchange calls this with the stock's lock held, so a spiller that falls a whole ring
+     * behind (e.g. a stalled disk) stalls matching rather than losing transactions. The capacity
+     * sets how long a stall is absorbed.
+     */
+    public void add(Transaction transaction) {
+        long sequence = tail.getAndIncrement();
+        if (directory != null) {
+            while (sequence - spilledUpTo >= capacity) {
+                LockSupport.unpark(spiller);
+                LockSupport.parkNanos(1000);
+            }
+        }
+        int slot = (int) sequence & mask;
+        sequences.set(slot, -1);
+        transactions.set(slot, transaction);
+        timestamps.set(slot, EpochClock.toMillis(transaction.getTimestampNanos()));
+        sequences.set(slot, sequence);
+        if (spillerSleeping) {
+            LockSupport.unpark(spiller);
+        }
+    }
+
+    /**
+     * @return Number of transactions recorded since the history was created
+     */
+    public long getTotalCount() {
+        return tail.get();
+    }
+
+    /**
+     * @return Number of transactions currently kept in memory
+     */
+    public int getMemoryCount() {
+        return (int) (tail.get() - memoryLow());
+    }
+
+    /**
+     * @return Up to the given number of the most recent transactions, oldest first
+     */
+    public List<Transaction> latest(int limit) {
+        return query(null, null, null, Math.max(0, tail.get() - limit), limit).getTransactions();
+    }
+
+    /**
+     * Returns the next page of transactions at or after a cursor, in the order they were recorded.
+     * @param symbol Only transactions of this stock, or null for all
+     * @param from Only transactions at or after this time, or null
+     * @param to Only transactions before this time, or null
+     * @param cursor 0 to start from the oldest transaction, or the next cursor of the previous page
+     * @param limit Maximum number of transactions in the page
+     */
+    public Page query(String symbol, LocalDateTime from, LocalDateTime to, long cursor, int limit) {
+        long fromMillis = from != null ? toEpochMillis(from) : Long.MIN_VALUE;
+        long toMillis = to != null ? toEpochMillis(to) : Long.MAX_VALUE;
+        if (directory == null && maxAgeMillis > 0) {
+            // Without spill files, transactions past the retention age are gone
+            fromMillis = Math.max(fromMillis, System.currentTimeMillis() - maxAgeMillis);
+        }
+        List<Transaction> page = new ArrayList<>(Math.min(limit, ITERATOR_PAGE_SIZE));
+        long sequence = Math.max(0, cursor);
+        long end = tail.get();
+        while (sequence < end && page.size() < limit) {
+            long low = memoryLow();
+            if (sequence < low) {
+                sequence = directory != null
+                    ? readSpilled(sequence, low, symbol, fromMillis, toMillis, limit, page)
+                    : low;
+                continue;
+            }
+            int slot = (int) sequence & mask;
+            long before = sequences.get(slot);
+            if (before != sequence) {
+                // Either the slot was overwritten (the next pass goes to disk) or it is still being written
+                if (before > sequence || sequence < tail.get() - capacity) continue;
+                break;
+            }
+            Transaction transaction = transactions.get(slot);
+            long timestamp = timestamps.get(slot);
+            if (transaction == null || sequences.get(slot) != sequence) continue;
+            if (matches(transaction.getStock().getSymbol(), timestamp, symbol, fromMillis, toMillis)) {
+                page.add(transaction);
+            }
+            sequence++;
+        }
+        return new Page(page, sequence, sequence < tail.get());
+    }
+
+    /**
+     * Iterates lazily over all matching transactions, fetching them page by page.
+     * @param symbol Only transactions of this stock, or null for all
+     * @param from Only transactions at or after this time, or null
+     * @param to Only transactions before this time, or null
+     */
+    public Iterator<Transaction> iterator(String symbol, LocalDateTime from, LocalDateTime to) {
+        return new Iterator<>() {
+            private Iterator<Transaction> current = List.<Transaction>of().iterator();
+            private long cursor;
+            private boolean more = true;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && more) {
+                    Page page = query(symbol, from, to, cursor, ITERATOR_PAGE_SIZE);
+                    current = page.getTransactions().iterator();
+                    cursor = page.getNextCursor();
+                    more = page.hasMore();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Stops the spiller after everything recorded so far has been written.
+     */
+    @Override
+    public void close() {
+        if (spiller == null || !running) return;
+        running = false;
+        LockSupport.unpark(spiller);
+        try {
+            spiller.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spillLock.lock();
+        try {
+            if (segmentOut != null) {
+                segmentOut.close();
+                segmentOut = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing transaction history: " + e.getMessage());
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private long memoryLow() {
+        long low = tail.get() - capacity;
+        if (directory != null) {
+            // A slot waiting to be spilled is not overwritten yet, so it can still be read from memory
+            low = Math.min(low, spilledUpTo);
+        }
+        return Math.max(Math.max(low, memoryStart), 0);
+    }
+
+    private static boolean matches(String transactionSymbol, long timestamp, String symbol,
+                                   long fromMillis, long toMillis) {
+        return timestamp >= fromMillis && timestamp < toMillis
+            && (symbol == null || symbol.equals(transactionSymbol));
+    }
+
+    private void spillLoop() {
+        long lastFlushed = 0;
+        while (running || spilledUpTo < tail.get()) {
+            trimExpired();
+            long sequence = spilledUpTo;
+            if (sequence >= tail.get()) {
+                if (sequence > lastFlushed) {
+                    flushSegment();
+                    lastFlushed = sequence;
+                }
+                spillerSleeping = true;
+                if (running && spilledUpTo >= tail.get()) {
+                    LockSupport.parkNanos(SPILLER_PARK_NANOS);
+                }
+                spillerSleeping = false;
+                continue;
+            }
+            spillLock.lock();
+            try {
+                for (int n = 0; n < SPILL_BATCH; n++, sequence++) {
+                    int slot = (int) sequence & mask;
+                    // Stop at a slot whose producer has not finished writing it
+                    if (sequence >= tail.get() || sequences.get(slot) != sequence) break;
+                    write(sequence, timestamps.get(slot), transactions.get(slot));
+                    spilledUpTo = sequence + 1;
+                }
+            } catch (IOException e) {
+                System.err.println("Error spilling transaction history: " + e.getMessage());
+                spilledUpTo = sequence + 1; // Drop the record rather than block producers forever
+            } finally {
+                spillLock.unlock();
+            }
+            if (sequence == spilledUpTo && sequence < tail.get()) {
+                Thread.onSpinWait();
+            }
+        }
+        flushSegment();
+    }
+
+    /**
+     * Moves transactions past the retention age out of memory; they are already on disk.
+     */
+    private void trimExpired() {
+        if (maxAgeMillis <= 0) return;
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        long start = Math.max(memoryStart, tail.get() - capacity);
+        while (start < spilledUpTo) {
+            int slot = (int) start & mask;
+            Transaction transaction = transactions.get(slot);
+            if (sequences.get(slot) != start || timestamps.get(slot) >= cutoff) break;
+            memoryStart = start + 1;
+            transactions.compareAndSet(slot, transaction, null);
+            start++;
+        }
+    }
+
+    private void write(long sequence, long timestamp, Transaction transaction) throws IOException {
+        if (currentSegment == null || sequence - currentSegment.firstSequence >= SEGMENT_RECORDS) {
+            rollSegment(sequence);
+        }
+        Stock stock = transaction.getStock();
+        stocksBySymbol.putIfAbsent(stock.getSymbol(), stock);
+        long index = sequence - currentSegment.firstSequence;
+        if (index % INDEX_INTERVAL == 0) {
+            // Counts the bytes of this segment's stream; a segment stays far below 2 GB
+            currentSegment.offsets[(int) (index / INDEX_INTERVAL)] = segmentOut.size();
+        }
+        segmentOut.writeLong(sequence);
+        segmentOut.writeLong(timestamp);
+        segmentOut.writeUTF(stock.getSymbol());
+        segmentOut.writeUTF(transaction.getBuyer());
+        segmentOut.writeUTF(transaction.getSeller());
+        segmentOut.writeLong(transaction.getBuyOrderId());
+        segmentOut.writeLong(transaction.getSellOrderId());
+        segmentOut.writeInt(transaction.getQuantity());
+        segmentOut.writeLong(transaction.getPriceTicks());
+        currentSegment.minTimestamp = Math.min(currentSegment.minTimestamp, timestamp);
+        currentSegment.maxTimestamp = Math.max(currentSegment.maxTimestamp, timestamp);
+        currentSegment.lastSequence = sequence;
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (segmentOut != null) {
+            segmentOut.close();
+        }
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segmentOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        currentSegment = new Segment(path, firstSequence);
+        segments.add(currentSegment);
+    }
+
+    private void flushSegment() {
+        spillLock.lock();
+        try {
+            if (segmentOut != null) segmentOut.flush();
+        } catch (IOException e) {
+            System.err.println("Error spilling transaction history: " + e.getMessage());
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * Reads matching spilled transactions with sequences in [fromSequence, toSequence) into the page.
+     * @return The sequence to continue from
+     */
+    private long readSpilled(long fromSequence, long toSequence, String symbol, long fromMillis, long toMillis,
+                             int limit, List<Transaction> page) {
+        // Everything below spilledUpTo must be readable from the files
+        flushSegment();
+        long sequence = fromSequence;
+        for (Segment segment : segments) {
+            if (sequence >= toSequence) break;
+            if (segment.lastSequence < sequence) continue;
+            if (segment.maxTimestamp < fromMillis || segment.minTimestamp >= toMillis) {
+                // No transaction of this segment is in the time window
+                sequence = segment.lastSequence + 1;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.path)) {
+                // Start at the indexed record at or before the cursor instead of the file's beginning
+                int entry = (int) ((Math.max(sequence, segment.firstSequence) - segment.firstSequence) / INDEX_INTERVAL);
+                channel.position(segment.offsets[entry]);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+                long last = Math.min(segment.lastSequence, toSequence - 1);
+                for (long s = segment.firstSequence + (long) entry * INDEX_INTERVAL; s <= last; s++) {
+                    long recordSequence = in.readLong();
+                    long timestamp = in.readLong();
+                    String recordSymbol = in.readUTF();
+                    String buyer = in.readUTF();
+                    String seller = in.readUTF();
+                    long buyOrderId = in.readLong();
+                    long sellOrderId = in.readLong();
+                    int quantity = in.readInt();
+                    long priceTicks = in.readLong();
+                    if (recordSequence < sequence) continue;
+                    sequence = recordSequence + 1;
+                    if (matches(recordSymbol, timestamp, symbol, fromMillis, toMillis)) {
+                        Stock stock = stocksBySymbol.get(recordSymbol);
+                        page.add(new Transaction(buyOrderId, sellOrderId, buyer, seller, stock,
+                            quantity, priceTicks, EpochClock.fromMillis(timestamp)));
+                        if (page.size() >= limit) return sequence;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading transaction history: " + e.getMessage());
+                sequence = segment.lastSequence + 1;
+            }
+        }
+        return Math.max(sequence, toSequence);
+    }
+
+    private static void deleteSegments(Path directory) {
+        if (!Files.isDirectory(directory)) return;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    Files.delete(path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error clearing transaction history: " + e.getMessage());
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
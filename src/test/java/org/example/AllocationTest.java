@@ -0,0 +1,59 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the allocation budget of the order hot path: placing and matching may allocate the
+ * order's book node and id-map entry and the transaction of each fill, but no timestamps,
+ * log strings or other per-event garbage.
+ */
+public class AllocationTest {
+    private static final int ORDERS = 20_000;
+    private static final int WARMUP_ROUNDS = 5;
+    // Measured at 240 B per order; formatting log lines on the hot path used to cost about 4.7 KB
+    private static final double MAX_BYTES_PER_ORDER = 400;
+
+    @Test
+    public void placingAndMatchingStaysWithinBudget() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Allocation counting is not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Logger.setDirectory(Files.createTempDirectory("allocation").toString());
+        StockExchange exchange = new StockExchange();
+        exchange.setConsoleEcho(StockExchange.ConsoleEcho.OFF, 1);
+        Stock stock = new Stock("ALLOC", 100.0);
+        exchange.addStock(stock);
+        exchange.start();
+        try {
+            double bytesPerOrder = 0;
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                // The orders are the caller's, so they are created outside the measurement
+                BuyOrder[] buys = new BuyOrder[ORDERS];
+                SellOrder[] sells = new SellOrder[ORDERS];
+                for (int i = 0; i < ORDERS; i++) {
+                    buys[i] = new BuyOrder("buyer", stock, 10, 100.0);
+                    sells[i] = new SellOrder("seller", stock, 10, 100.0);
+                }
+                long before = threads.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < ORDERS; i++) {
+                    exchange.placeBuyOrder(buys[i]);
+                    exchange.placeSellOrder(sells[i]);
+                }
+                bytesPerOrder = (threads.getCurrentThreadAllocatedBytes() - before) / (2.0 * ORDERS);
+            }
+            assertTrue(bytesPerOrder <= MAX_BYTES_PER_ORDER,
+                String.format("Placing and matching allocated %.1f B per order, budget is %.0f B",
+                    bytesPerOrder, MAX_BYTES_PER_ORDER));
+        } finally {
+            exchange.stop();
+        }
+    }
+}
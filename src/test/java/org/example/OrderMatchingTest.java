@@ -0,0 +1,127 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Covers the book rules traders rely on: better prices trade first, equal prices trade in
+ * arrival order at the resting order's price, and cancels and edits act on resting orders only.
+ */
+public class OrderMatchingTest {
+    @TempDir
+    Path logDirectory;
+
+    private StockExchange exchange;
+    private Stock stock;
+
+    @BeforeEach
+    public void setUp() {
+        Logger.setDirectory(logDirectory.toString());
+        exchange = new StockExchange();
+        exchange.setConsoleEcho(StockExchange.ConsoleEcho.OFF, 1);
+        stock = new Stock("MATCH", 100.0);
+        exchange.addStock(stock);
+        exchange.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        exchange.stop();
+        Logger.shutdown();
+    }
+
+    @Test
+    public void bestPriceTradesFirstThenArrivalOrder() {
+        SellOrder expensive = new SellOrder("first", stock, 10, 101.0);
+        SellOrder early = new SellOrder("second", stock, 10, 100.0);
+        SellOrder late = new SellOrder("third", stock, 10, 100.0);
+        exchange.placeSellOrder(expensive);
+        exchange.placeSellOrder(early);
+        exchange.placeSellOrder(late);
+
+        exchange.placeBuyOrder(new BuyOrder("buyer", stock, 25, 101.0));
+
+        List<Transaction> trades = exchange.getTransactionHistory().latest(10);
+        assertEquals(3, trades.size());
+        assertTrade(trades.get(0), early, 10, 100.0);
+        assertTrade(trades.get(1), late, 10, 100.0);
+        assertTrade(trades.get(2), expensive, 5, 101.0);
+
+        List<SellOrder> resting = exchange.getSellOrders();
+        assertEquals(1, resting.size());
+        assertEquals(expensive.getOrderId(), resting.get(0).getOrderId());
+        assertEquals(5, resting.get(0).getQuantity());
+        assertTrue(exchange.getBuyOrders().isEmpty());
+    }
+
+    @Test
+    public void partialFillLeavesTheRemainderResting() {
+        SellOrder sell = new SellOrder("seller", stock, 10, 100.0);
+        exchange.placeSellOrder(sell);
+
+        exchange.placeBuyOrder(new BuyOrder("buyer", stock, 4, 100.0));
+        assertEquals(6, exchange.getOrderQuantity(sell));
+
+        // The larger buy takes the rest and keeps its own remainder in the book
+        BuyOrder buy = new BuyOrder("buyer", stock, 10, 100.0);
+        exchange.placeBuyOrder(buy);
+        assertTrue(exchange.getSellOrders().isEmpty());
+        assertEquals(4, exchange.getOrderQuantity(buy));
+        assertEquals(2, exchange.getTransactionHistory().getTotalCount());
+    }
+
+    @Test
+    public void cancelledOrderNoLongerTrades() {
+        BuyOrder buy = new BuyOrder("buyer", stock, 10, 100.0);
+        exchange.placeBuyOrder(buy);
+
+        assertTrue(exchange.cancelBuyOrderById(buy.getOrderId()));
+        assertFalse(exchange.cancelBuyOrderById(buy.getOrderId()));
+        assertTrue(exchange.getBuyOrders().isEmpty());
+
+        exchange.placeSellOrder(new SellOrder("seller", stock, 10, 100.0));
+        assertEquals(0, exchange.getTransactionHistory().getTotalCount());
+        assertEquals(1, exchange.getSellOrders().size());
+    }
+
+    @Test
+    public void editChangesQuantityAndLosesTimePriority() {
+        SellOrder edited = new SellOrder("first", stock, 10, 100.0);
+        SellOrder other = new SellOrder("second", stock, 10, 100.0);
+        exchange.placeSellOrder(edited);
+        exchange.placeSellOrder(other);
+
+        assertTrue(exchange.editSellOrder(edited.getOrderId(), 7));
+        // The old id is gone once replaced
+        assertFalse(exchange.editSellOrder(edited.getOrderId(), 5));
+
+        List<SellOrder> resting = exchange.getSellOrders();
+        assertEquals(2, resting.size());
+        SellOrder replacement = resting.stream().filter(o -> o.getTraderName().equals("first")).findFirst().orElseThrow();
+        assertNotEquals(edited.getOrderId(), replacement.getOrderId());
+        assertEquals(7, replacement.getQuantity());
+        assertEquals(edited.getPriceTicks(), replacement.getPriceTicks());
+
+        exchange.placeBuyOrder(new BuyOrder("buyer", stock, 10, 100.0));
+        List<Transaction> trades = exchange.getTransactionHistory().latest(10);
+        assertEquals(1, trades.size());
+        assertTrade(trades.get(0), other, 10, 100.0);
+        assertEquals(7, exchange.getOrderQuantity(replacement));
+    }
+
+    private static void assertTrade(Transaction trade, SellOrder seller, int quantity, double price) {
+        assertEquals(seller.getOrderId(), trade.getSellOrderId());
+        assertEquals(quantity, trade.getQuantity());
+        assertEquals(price, trade.getPricePerShare(), 1e-9);
+    }
+}
@@ -0,0 +1,119 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Restarts an exchange from a snapshot plus the journal written after it and checks that
+ * every book, including pending stops, comes back exactly as it was.
+ */
+public class RecoveryTest {
+    @TempDir
+    Path directory;
+
+    private final List<StockExchange> exchanges = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Logger.setDirectory(Files.createDirectories(directory.resolve("logs")).toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (StockExchange exchange : exchanges) {
+            exchange.stop();
+        }
+        Logger.shutdown();
+    }
+
+    @Test
+    public void snapshotAndJournalRestoreTheSameBooks() throws Exception {
+        Path journalDirectory = directory.resolve("journal");
+        Path snapshotDirectory = directory.resolve("snapshots");
+
+        StockExchange exchange = newExchange();
+        Stock alpha = new Stock("ALPHA", 100.0);
+        Stock beta = new Stock("BETA", 50.0);
+        exchange.addStock(alpha);
+        exchange.addStock(beta);
+        OrderJournal journal = new OrderJournal(journalDirectory);
+        exchange.setJournal(journal);
+
+        // Before the snapshot: resting orders, a partial fill, a cancel and a pending stop
+        SellOrder alphaAsk = new SellOrder("ann", alpha, 20, 101.0);
+        exchange.placeSellOrder(alphaAsk);
+        exchange.placeSellOrder(new SellOrder("bob", alpha, 10, 102.0));
+        exchange.placeBuyOrder(new BuyOrder("cat", alpha, 5, 101.0));
+        BuyOrder cancelled = new BuyOrder("dan", alpha, 10, 99.0);
+        exchange.placeBuyOrder(cancelled);
+        exchange.placeBuyOrder(new BuyOrder("eve", alpha, 10, 99.0));
+        assertTrue(exchange.cancelBuyOrderById(cancelled.getOrderId()));
+        exchange.placeSellOrder(new SellOrder("fay", beta, 10, 45.0, Order.TimeInForce.GOOD_TILL_CANCELLED, 0, 48.0));
+        exchange.placeBuyOrder(new BuyOrder("gus", beta, 30, 49.0, Order.TimeInForce.GOOD_TILL_CANCELLED, 10, 0));
+
+        ExchangeSnapshot.writeAndPrune(exchange, snapshotDirectory);
+
+        // After the snapshot: only the journal has these
+        exchange.placeSellOrder(new SellOrder("hal", beta, 12, 49.0));
+        exchange.placeBuyOrder(new BuyOrder("ivy", alpha, 8, 100.0));
+        assertTrue(exchange.editSellOrder(alphaAsk.getOrderId(), 6));
+        exchange.placeSellOrder(new SellOrder("jon", beta, 5, 51.0));
+
+        List<String> expected = books(exchange);
+        exchange.setJournal(null);
+        journal.close();
+
+        StockExchange restored = newExchange();
+        ExchangeRecovery recovery = ExchangeRecovery.recover(journalDirectory, snapshotDirectory, restored);
+
+        assertTrue(recovery.getLastSequence() > 0);
+        assertFalse(expected.isEmpty());
+        assertEquals(1, restored.getStopOrders().size());
+        assertEquals(expected, books(restored));
+        assertEquals(alpha.getCurrentPriceTicks(), restored.getStock("ALPHA").getCurrentPriceTicks());
+        assertEquals(beta.getCurrentPriceTicks(), restored.getStock("BETA").getCurrentPriceTicks());
+    }
+
+    private StockExchange newExchange() {
+        StockExchange exchange = new StockExchange();
+        exchange.setConsoleEcho(StockExchange.ConsoleEcho.OFF, 1);
+        exchange.start();
+        exchanges.add(exchange);
+        return exchange;
+    }
+
+    /**
+     * Lists every resting and pending order in book order, grouped by symbol
+     */
+    private static List<String> books(StockExchange exchange) {
+        List<String> lines = new ArrayList<>();
+        add(lines, "BUY", exchange.getBuyOrders());
+        add(lines, "SELL", exchange.getSellOrders());
+        add(lines, "STOP", exchange.getStopOrders());
+        return lines;
+    }
+
+    private static void add(List<String> lines, String side, List<? extends Order> orders) {
+        List<Order> sorted = new ArrayList<>(orders);
+        // Stable, so orders of one symbol keep their book order
+        sorted.sort(Comparator.comparing(order -> order.getStock().getSymbol()));
+        for (Order order : sorted) {
+            lines.add(String.join(" ", side, order.getStock().getSymbol(), Long.toString(order.getOrderId()),
+                order.getTraderName(), Integer.toString(order.getQuantity()), Long.toString(order.getPriceTicks()),
+                order.getTimeInForce().name(), Integer.toString(order.getDisplayQuantity()),
+                Long.toString(order.getStopPriceTicks())));
+        }
+    }
+}